@@ -0,0 +1,64 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import alfio.manager.user.AuthenticationCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Measures the authentication of a Basic-authenticated API request, with and without the authentication cache.
+ * Run it with: ./gradlew jmh -Pbenchmark=BasicAuthenticationBenchmark
+ */
+@State(Scope.Benchmark)
+public class BasicAuthenticationBenchmark {
+
+    private static final String USERNAME = "operator";
+    private static final String PASSWORD = "password";
+
+    @Param({"default", "caching"})
+    public String provider;
+
+    private AuthenticationProvider authenticationProvider;
+
+    @Setup
+    public void setUp() {
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+        String encoded = passwordEncoder.encode(PASSWORD);
+        DaoAuthenticationProvider daoProvider = new DaoAuthenticationProvider();
+        daoProvider.setUserDetailsService(username -> new User(username, encoded, AuthorityUtils.createAuthorityList("ROLE_OPERATOR")));
+        daoProvider.setPasswordEncoder(passwordEncoder);
+        authenticationProvider = "caching".equals(provider) ? new CachingAuthenticationProvider(daoProvider, new AuthenticationCache()) : daoProvider;
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        return authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(USERNAME, PASSWORD));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Authentication authenticateConcurrently() {
+        return authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(USERNAME, PASSWORD));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.util;
+
+import alfio.config.support.CachingResourceBundleMessageSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.web.servlet.view.mustache.jmustache.JMustacheTemplateLoader;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures the rendering of a ticket email, with and without the caching message source.
+ * Run it with: ./gradlew jmh -Pbenchmark=TicketEmailRenderingBenchmark
+ */
+@State(Scope.Benchmark)
+public class TicketEmailRenderingBenchmark {
+
+    @Param({"default", "caching"})
+    public String messageSource;
+
+    private TemplateManager templateManager;
+    private Map<String, Object> model;
+
+    @Setup
+    public void setUp() {
+        ResourceBundleMessageSource source = "caching".equals(messageSource) ? new CachingResourceBundleMessageSource() : new ResourceBundleMessageSource();
+        source.setBasenames("alfio.i18n.public", "alfio.i18n.admin");
+        source.setFallbackToSystemLocale(false);
+        source.setAlwaysUseMessageFormat(true);
+
+        JMustacheTemplateLoader loader = new JMustacheTemplateLoader();
+        loader.setResourceLoader(new DefaultResourceLoader());
+        templateManager = new TemplateManager(loader, source, null);
+
+        ZonedDateTime begin = ZonedDateTime.of(2017, 10, 19, 9, 0, 0, 0, ZoneId.of("Europe/Zurich"));
+        Map<String, Object> event = new HashMap<>();
+        event.put("displayName", "Event");
+        event.put("location", "Location");
+        event.put("sameDay", true);
+        event.put("begin", begin);
+        event.put("end", begin.plusHours(8));
+        event.put("googleCalendarUrl", "https://www.google.com/calendar/event");
+        Map<String, Object> ticket = new HashMap<>();
+        ticket.put("fullName", "Firstname Lastname");
+        Map<String, Object> organization = new HashMap<>();
+        organization.put("name", "Organization");
+        organization.put("email", "organization@email.tld");
+
+        model = new HashMap<>();
+        model.put("event", event);
+        model.put("ticket", ticket);
+        model.put("organization", organization);
+        model.put("ticketUrl", "http://your-domain.tld/ticket-url");
+    }
+
+    @Benchmark
+    public String renderTicketEmail() {
+        return templateManager.renderTemplate(TemplateResource.TICKET_EMAIL, model, Locale.ENGLISH);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String renderTicketEmailConcurrently() {
+        return templateManager.renderTemplate(TemplateResource.TICKET_EMAIL, model, Locale.ENGLISH);
+    }
+}
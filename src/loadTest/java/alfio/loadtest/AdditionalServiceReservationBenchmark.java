@@ -0,0 +1,153 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.loadtest;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.config.support.QueryInstrumentation;
+import alfio.manager.EventManager;
+import alfio.manager.EventStatisticsManager;
+import alfio.manager.TicketReservationManager;
+import alfio.manager.user.UserManager;
+import alfio.model.AdditionalService;
+import alfio.model.Event;
+import alfio.model.modification.*;
+import alfio.repository.AdditionalServiceRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+
+/**
+ * Measures {@link TicketReservationManager#createTicketReservation} for reservations containing one ticket and many
+ * units of a donation, on the test database (HSQLDB by default, or the one selected with -Ddbenv).
+ * <p>
+ * Parameters (system properties):
+ * <ul>
+ *     <li>{@code benchmark.reservations}: measured reservations (default 200, plus 20 for warm-up)</li>
+ *     <li>{@code benchmark.quantity}: units of the additional service in each reservation (default 50)</li>
+ *     <li>{@code benchmark.limited}: whether the additional service has a limited quantity (default true)</li>
+ *     <li>{@code benchmark.report}: where to write the JSON report (default build/loadtest/additional-services.json)</li>
+ * </ul>
+ */
+@Log4j2
+public class AdditionalServiceReservationBenchmark {
+
+    private static final int WARM_UP = 20;
+
+    public static void main(String[] args) throws Exception {
+        int reservations = Integer.getInteger("benchmark.reservations", 200);
+        int quantity = Integer.getInteger("benchmark.quantity", 50);
+        boolean limited = Boolean.parseBoolean(System.getProperty("benchmark.limited", "true"));
+        Path reportPath = Paths.get(System.getProperty("benchmark.report", "build/loadtest/additional-services.json"));
+
+        initSystemProperties();
+        try(AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext()) {
+            ctx.getEnvironment().setActiveProfiles(Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS);
+            ctx.register(RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class);
+            ctx.refresh();
+
+            int seats = reservations + WARM_UP;
+            Event event = createEvent(ctx, seats);
+            int categoryId = ctx.getBean(EventStatisticsManager.class).loadTicketCategories(event).get(0).getId();
+            int additionalServiceId = createDonation(ctx.getBean(AdditionalServiceRepository.class), event, limited ? seats * quantity : -1);
+            TicketReservationManager ticketReservationManager = ctx.getBean(TicketReservationManager.class);
+
+            for(int i = 0; i < WARM_UP; i++) {
+                reserve(ticketReservationManager, event, categoryId, additionalServiceId, quantity);
+            }
+
+            QueryInstrumentation queryInstrumentation = ctx.getBean(QueryInstrumentation.class);
+            queryInstrumentation.reset();
+            LatencyRecorder recorder = new LatencyRecorder();
+            long start = System.nanoTime();
+            for(int i = 0; i < reservations; i++) {
+                long reservationStart = System.nanoTime();
+                try {
+                    reserve(ticketReservationManager, event, categoryId, additionalServiceId, quantity);
+                    recorder.record(System.nanoTime() - reservationStart);
+                } catch (RuntimeException e) {
+                    log.warn("reservation failed", e);
+                    recorder.recordFailure();
+                }
+            }
+            long duration = System.nanoTime() - start;
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("dialect", ctx.getEnvironment().getProperty("datasource.dialect"));
+            configuration.put("reservations", reservations);
+            configuration.put("quantity", quantity);
+            configuration.put("limited", limited);
+            report.put("configuration", configuration);
+            report.put("createTicketReservation", recorder.summary(duration));
+            //JDBC batches are not counted, since they don't go through the repository proxies
+            Map<String, Double> repositoryCalls = new TreeMap<>();
+            queryInstrumentation.getStatistics().forEach((query, statistics) -> repositoryCalls.put(query, statistics.getCalls() / (double) reservations));
+            report.put("repositoryCallsPerReservation", repositoryCalls);
+            report.put("itemsInDatabase", ctx.getBean(NamedParameterJdbcTemplate.class)
+                .queryForObject("select count(*) from additional_service_item where additional_service_id_fk = :id", new MapSqlParameterSource("id", additionalServiceId), Integer.class));
+            TicketSaleLoadTest.writeReport(report, reportPath);
+        }
+        System.exit(0);
+    }
+
+    private static void reserve(TicketReservationManager ticketReservationManager, Event event, int categoryId, int additionalServiceId, int quantity) {
+        TicketReservationModification ticket = new TicketReservationModification();
+        ticket.setTicketCategoryId(categoryId);
+        ticket.setAmount(1);
+        AdditionalServiceReservationModification donation = new AdditionalServiceReservationModification();
+        donation.setAdditionalServiceId(additionalServiceId);
+        donation.setQuantity(quantity);
+        List<ASReservationWithOptionalCodeModification> additionalServices = new ArrayList<>();
+        additionalServices.add(new ASReservationWithOptionalCodeModification(donation, Optional.empty()));
+        ticketReservationManager.createTicketReservation(event, Collections.singletonList(new TicketReservationWithOptionalCodeModification(ticket, Optional.empty())),
+            additionalServices, DateUtils.addMinutes(new Date(), 25), Optional.empty(), Optional.empty(), Locale.ENGLISH, false);
+    }
+
+    private static Event createEvent(AnnotationConfigApplicationContext ctx, int seats) {
+        ensureMinimalConfiguration(ctx.getBean(ConfigurationRepository.class));
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", seats,
+                new DateTimeModification(LocalDate.now().minusDays(1), LocalTime.now()),
+                new DateTimeModification(LocalDate.now().plusDays(1), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        return initEvent(categories, ctx.getBean(OrganizationRepository.class), ctx.getBean(UserManager.class), ctx.getBean(EventManager.class), seats).getKey();
+    }
+
+    private static int createDonation(AdditionalServiceRepository additionalServiceRepository, Event event, int availableQuantity) {
+        ZonedDateTime now = ZonedDateTime.now(event.getZoneId());
+        return additionalServiceRepository.insert(event.getId(), 500, true, 0, availableQuantity, -1, now.minusDays(1), now.plusDays(1),
+            BigDecimal.ZERO, AdditionalService.VatType.NONE, AdditionalService.AdditionalServiceType.DONATION,
+            AdditionalService.SupplementPolicy.OPTIONAL_UNLIMITED_AMOUNT).getKey();
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.loadtest;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.EventManager;
+import alfio.manager.EventStatisticsManager;
+import alfio.manager.TicketReservationManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.model.result.Result;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+
+/**
+ * Measures the resize of a bounded category and its impact on the buyers of another category of the same event,
+ * on the test database (HSQLDB by default, or the one selected with -Ddbenv).
+ * <p>
+ * The category is first enlarged and then shrunk back to its initial size, while a buyer keeps reserving tickets
+ * of the other category. The latency of these reservations shows for how long the resize keeps the tickets locked.
+ * <p>
+ * Parameters (system properties):
+ * <ul>
+ *     <li>{@code benchmark.seats}: seats of the event (default 50000)</li>
+ *     <li>{@code benchmark.size}: size of the enlarged category (default 40000)</li>
+ *     <li>{@code benchmark.report}: where to write the JSON report (default build/loadtest/category-resize.json)</li>
+ * </ul>
+ */
+@Log4j2
+public class CategoryResizeBenchmark {
+
+    private static final int INITIAL_SIZE = 100;
+    private static final int SALES_SIZE = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int seats = Integer.getInteger("benchmark.seats", 50000);
+        int size = Integer.getInteger("benchmark.size", 40000);
+        Path reportPath = Paths.get(System.getProperty("benchmark.report", "build/loadtest/category-resize.json"));
+        if(size + SALES_SIZE > seats) {
+            throw new IllegalArgumentException("benchmark.seats must be at least benchmark.size + " + SALES_SIZE);
+        }
+
+        initSystemProperties();
+        try(AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext()) {
+            ctx.getEnvironment().setActiveProfiles(Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS);
+            ctx.register(RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class);
+            ctx.refresh();
+
+            ensureMinimalConfiguration(ctx.getBean(ConfigurationRepository.class));
+            EventManager eventManager = ctx.getBean(EventManager.class);
+            Pair<Event, String> pair = initEvent(Arrays.asList(category(null, "resized", INITIAL_SIZE), category(null, "sales", SALES_SIZE)),
+                ctx.getBean(OrganizationRepository.class), ctx.getBean(UserManager.class), eventManager, seats);
+            Event event = pair.getKey();
+            String username = pair.getValue();
+            List<TicketCategory> categories = ctx.getBean(EventStatisticsManager.class).loadTicketCategories(event);
+            int resizedId = categories.stream().filter(c -> c.getName().equals("resized")).findFirst().orElseThrow(IllegalStateException::new).getId();
+            int salesId = categories.stream().filter(c -> c.getName().equals("sales")).findFirst().orElseThrow(IllegalStateException::new).getId();
+
+            TicketReservationManager ticketReservationManager = ctx.getBean(TicketReservationManager.class);
+            LockWaitSampler lockWaitSampler = new LockWaitSampler(ctx.getBean(NamedParameterJdbcTemplate.class), ctx.getEnvironment().getProperty("datasource.dialect"));
+            LatencyRecorder reservations = new LatencyRecorder();
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicInteger progressSamples = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            long start = System.nanoTime();
+            Future<?> buyer = executor.submit(() -> {
+                for(int i = 0; i < SALES_SIZE && running.get(); i++) {
+                    long reservationStart = System.nanoTime();
+                    try {
+                        reserve(ticketReservationManager, event, salesId);
+                        reservations.record(System.nanoTime() - reservationStart);
+                    } catch (RuntimeException e) {
+                        log.warn("reservation failed", e);
+                        reservations.recordFailure();
+                    }
+                }
+            });
+            executor.submit(() -> {
+                while(running.get()) {
+                    eventManager.getTicketOperationProgress(event.getId()).ifPresent(p -> progressSamples.incrementAndGet());
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+
+            long growDuration = resize(eventManager, event, resizedId, size, username);
+            long shrinkDuration = resize(eventManager, event, resizedId, INITIAL_SIZE, username);
+            running.set(false);
+            buyer.get();
+            long duration = System.nanoTime() - start;
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            lockWaitSampler.stop();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("dialect", ctx.getEnvironment().getProperty("datasource.dialect"));
+            configuration.put("seats", seats);
+            configuration.put("size", size);
+            configuration.put("chunkSize", 1000);
+            report.put("configuration", configuration);
+            report.put("growMillis", TimeUnit.NANOSECONDS.toMillis(growDuration));
+            report.put("shrinkMillis", TimeUnit.NANOSECONDS.toMillis(shrinkDuration));
+            report.put("progressSamples", progressSamples.get());
+            report.put("concurrentReservations", reservations.summary(duration));
+            lockWaitSampler.summary().ifPresent(s -> report.put("databaseLockWaits", s));
+            TicketSaleLoadTest.writeReport(report, reportPath);
+        }
+        System.exit(0);
+    }
+
+    private static long resize(EventManager eventManager, Event event, int categoryId, int size, String username) {
+        long start = System.nanoTime();
+        Result<TicketCategory> result = eventManager.updateCategory(categoryId, event, category(categoryId, "resized", size), username);
+        if(!result.isSuccess()) {
+            throw new IllegalStateException("cannot resize category: " + result.getErrors());
+        }
+        long duration = System.nanoTime() - start;
+        log.info("category {} resized to {} in {} ms", categoryId, size, TimeUnit.NANOSECONDS.toMillis(duration));
+        return duration;
+    }
+
+    private static TicketCategoryModification category(Integer id, String name, int size) {
+        return new TicketCategoryModification(id, name, size,
+            new DateTimeModification(LocalDate.now().minusDays(1), LocalTime.now()),
+            new DateTimeModification(LocalDate.now().plusDays(1), LocalTime.now()),
+            DESCRIPTION, BigDecimal.TEN, false, "", true);
+    }
+
+    private static void reserve(TicketReservationManager ticketReservationManager, Event event, int categoryId) {
+        TicketReservationModification ticket = new TicketReservationModification();
+        ticket.setTicketCategoryId(categoryId);
+        ticket.setAmount(1);
+        ticketReservationManager.createTicketReservation(event, Collections.singletonList(new TicketReservationWithOptionalCodeModification(ticket, Optional.empty())),
+            Collections.emptyList(), DateUtils.addMinutes(new Date(), 25), Optional.empty(), Optional.empty(), Locale.ENGLISH, false);
+    }
+}
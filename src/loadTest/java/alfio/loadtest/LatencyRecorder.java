@@ -0,0 +1,71 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the raw latencies of a single step of the scenario, in order to compute exact percentiles at the end of the run.
+ */
+class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count;
+    private final LongAdder failures = new LongAdder();
+
+    synchronized void record(long elapsedNanos) {
+        if(count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = elapsedNanos;
+    }
+
+    void recordFailure() {
+        failures.increment();
+    }
+
+    synchronized Map<String, Object> summary(long durationNanos) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count);
+        result.put("failures", failures.sum());
+        result.put("throughputPerSecond", durationNanos > 0 ? count / (durationNanos / 1_000_000_000.0) : 0);
+        result.put("p50Millis", percentile(sorted, 50));
+        result.put("p90Millis", percentile(sorted, 90));
+        result.put("p95Millis", percentile(sorted, 95));
+        result.put("p99Millis", percentile(sorted, 99));
+        result.put("maxMillis", sorted.length == 0 ? 0 : toMillis(sorted[sorted.length - 1]));
+        return result;
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return toMillis(sorted[Math.max(0, index)]);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
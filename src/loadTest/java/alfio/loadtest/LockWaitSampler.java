@@ -0,0 +1,87 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.loadtest;
+
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically counts the sessions waiting for a lock. Supported only on PostgreSQL (pg_locks).
+ */
+class LockWaitSampler {
+
+    private static final long SAMPLING_INTERVAL_MILLIS = 100;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ScheduledExecutorService executor;
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder samplesWithWaits = new LongAdder();
+    private final AtomicInteger maxWaiting = new AtomicInteger();
+
+    LockWaitSampler(NamedParameterJdbcTemplate jdbc, String dialect) {
+        this.jdbc = jdbc;
+        if("PGSQL".equals(dialect)) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "lock-wait-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this::sample, 0, SAMPLING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    void stop() {
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    Optional<Map<String, Number>> summary() {
+        if(executor == null) {
+            return Optional.empty();
+        }
+        Map<String, Number> result = new LinkedHashMap<>();
+        result.put("samples", samples.sum());
+        result.put("samplesWithWaits", samplesWithWaits.sum());
+        result.put("maxWaitingSessions", maxWaiting.get());
+        return Optional.of(result);
+    }
+
+    private void sample() {
+        try {
+            Integer waiting = jdbc.queryForObject("select count(*) from pg_locks where not granted", EmptySqlParameterSource.INSTANCE, Integer.class);
+            samples.increment();
+            if(waiting != null && waiting > 0) {
+                samplesWithWaits.increment();
+                maxWaiting.accumulateAndGet(waiting, Math::max);
+            }
+        } catch (RuntimeException e) {
+            // a failed sample must not cancel the following ones
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.loadtest;
+
+import alfio.controller.EventController;
+import alfio.controller.ReservationController;
+import alfio.controller.api.admin.CheckInApiController;
+import alfio.controller.form.PaymentForm;
+import alfio.controller.form.ReservationForm;
+import alfio.controller.form.UpdateTicketOwnerForm;
+import alfio.manager.TicketReservationManager;
+import alfio.manager.support.CheckInStatus;
+import alfio.model.Event;
+import alfio.model.Ticket;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.transaction.PaymentProxy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.support.BindingAwareModelMap;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.support.RedirectAttributesModelMap;
+
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * The journey of a single buyer: browse the event page, reserve, pay (offline), get the payment confirmed by the
+ * (fake) payment gateway, assign the tickets and check in. Each step is timed separately.
+ */
+@Log4j2
+class SaleScenario {
+
+    enum Step {
+        BROWSE, RESERVE, PAY, CONFIRM, ASSIGN, CHECK_IN
+    }
+
+    private final EventController eventController;
+    private final ReservationController reservationController;
+    private final CheckInApiController checkInApiController;
+    private final TicketReservationManager ticketReservationManager;
+    private final Event event;
+    private final int categoryId;
+    private final int ticketsPerReservation;
+    private final boolean checkIn;
+    private final Principal operator = () -> "load-test";
+
+    private final Map<Step, LatencyRecorder> recorders = new EnumMap<>(Step.class);
+    final LongAdder soldOut = new LongAdder();
+    final LongAdder confirmedReservations = new LongAdder();
+    final LongAdder confirmedTickets = new LongAdder();
+    final LongAdder checkedInTickets = new LongAdder();
+
+    SaleScenario(EventController eventController,
+                 ReservationController reservationController,
+                 CheckInApiController checkInApiController,
+                 TicketReservationManager ticketReservationManager,
+                 Event event,
+                 int categoryId,
+                 int ticketsPerReservation,
+                 boolean checkIn) {
+        this.eventController = eventController;
+        this.reservationController = reservationController;
+        this.checkInApiController = checkInApiController;
+        this.ticketReservationManager = ticketReservationManager;
+        this.event = event;
+        this.categoryId = categoryId;
+        this.ticketsPerReservation = ticketsPerReservation;
+        this.checkIn = checkIn;
+        Arrays.stream(Step.values()).forEach(s -> recorders.put(s, new LatencyRecorder()));
+    }
+
+    void run(int user) {
+        String eventName = event.getShortName();
+        if(measure(Step.BROWSE, () -> eventController.showEvent(eventName, new BindingAwareModelMap(), new MockHttpServletRequest(), Locale.ENGLISH), "/event/show-event"::equals) == null) {
+            return;
+        }
+
+        String reservationPrefix = "redirect:/event/" + eventName + "/reservation/";
+        String reservationRedirect = measure(Step.RESERVE, this::reserve, Objects::nonNull);
+        if(reservationRedirect == null) {
+            return;
+        }
+        if(!reservationRedirect.startsWith(reservationPrefix)) {
+            soldOut.increment();
+            return;
+        }
+        String reservationId = reservationRedirect.substring(reservationPrefix.length()).replace("/book", "");
+
+        if(measure(Step.PAY, () -> pay(reservationId, user), r -> r.endsWith("/success")) == null) {
+            return;
+        }
+        if(measure(Step.CONFIRM, () -> {
+            ticketReservationManager.confirmOfflinePayment(event, reservationId);
+            return Boolean.TRUE;
+        }, Boolean.TRUE::equals) == null) {
+            return;
+        }
+        confirmedReservations.increment();
+        List<Ticket> tickets = ticketReservationManager.findTicketsInReservation(reservationId);
+        confirmedTickets.add(tickets.size());
+
+        for (Ticket ticket : tickets) {
+            if(measure(Step.ASSIGN, () -> assign(reservationId, ticket, user), r -> r.endsWith("/success")) == null) {
+                return;
+            }
+        }
+
+        if(checkIn) {
+            for (Ticket ticket : ticketReservationManager.findTicketsInReservation(reservationId)) {
+                CheckInApiController.TicketCode code = new CheckInApiController.TicketCode();
+                code.setCode(ticket.ticketCode(event.getPrivateKey()));
+                if(measure(Step.CHECK_IN, () -> checkInApiController.checkIn(event.getId(), ticket.getUuid(), code, operator).getResult().getStatus(), CheckInStatus.SUCCESS::equals) != null) {
+                    checkedInTickets.increment();
+                }
+            }
+        }
+    }
+
+    Map<String, Object> summary(long durationNanos) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        recorders.forEach((step, recorder) -> result.put(step.name(), recorder.summary(durationNanos)));
+        return result;
+    }
+
+    private String reserve() {
+        ReservationForm reservationForm = new ReservationForm();
+        TicketReservationModification ticketReservation = new TicketReservationModification();
+        ticketReservation.setAmount(ticketsPerReservation);
+        ticketReservation.setTicketCategoryId(categoryId);
+        reservationForm.setReservation(Collections.singletonList(ticketReservation));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setMethod("POST");
+        return eventController.reserveTicket(event.getShortName(), reservationForm, new BeanPropertyBindingResult(reservationForm, "reservation"),
+            new BindingAwareModelMap(), new ServletWebRequest(request), new RedirectAttributesModelMap(), Locale.ENGLISH);
+    }
+
+    private String pay(String reservationId, int user) {
+        PaymentForm paymentForm = new PaymentForm();
+        paymentForm.setPaymentMethod(PaymentProxy.OFFLINE);
+        paymentForm.setEmail("buyer" + user + "@example.com");
+        paymentForm.setBillingAddress("billing address");
+        paymentForm.setFirstName("Buyer");
+        paymentForm.setLastName(Integer.toString(user));
+        paymentForm.setTermAndConditionsAccepted(true);
+        paymentForm.setPostponeAssignment(true);
+        return reservationController.handleReservation(event.getShortName(), reservationId, paymentForm, new BeanPropertyBindingResult(paymentForm, "paymentForm"),
+            new BindingAwareModelMap(), new MockHttpServletRequest(), Locale.ENGLISH, new RedirectAttributesModelMap());
+    }
+
+    private String assign(String reservationId, Ticket ticket, int user) throws Exception {
+        UpdateTicketOwnerForm form = new UpdateTicketOwnerForm();
+        form.setFirstName("Attendee");
+        form.setLastName(user + "-" + ticket.getId());
+        form.setEmail("attendee" + ticket.getId() + "@example.com");
+        form.setUserLanguage("en");
+        return reservationController.assignTicketToPerson(event.getShortName(), reservationId, ticket.getUuid(), form,
+            new BeanPropertyBindingResult(form, "updateTicketOwner"), new MockHttpServletRequest(), new BindingAwareModelMap());
+    }
+
+    private <T> T measure(Step step, Callable<T> call, Predicate<T> success) {
+        LatencyRecorder recorder = recorders.get(step);
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            if(success.test(result)) {
+                recorder.record(System.nanoTime() - start);
+                return result;
+            }
+            log.warn("step {} returned an unexpected result: {}", step, result);
+        } catch (Exception e) {
+            log.warn("step " + step + " failed", e);
+        }
+        recorder.recordFailure();
+        return null;
+    }
+}
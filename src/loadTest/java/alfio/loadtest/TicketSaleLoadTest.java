@@ -0,0 +1,259 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.loadtest;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.config.support.ConnectionPoolMetrics;
+import alfio.config.support.LatencyStatistics;
+import alfio.config.support.QueryInstrumentation;
+import alfio.controller.EventController;
+import alfio.controller.ReservationController;
+import alfio.controller.api.admin.CheckInApiController;
+import alfio.manager.EventManager;
+import alfio.manager.EventStatisticsManager;
+import alfio.manager.TicketReservationManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.util.Json;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+
+/**
+ * Boots the application on the test database (HSQLDB by default, or the one selected with -Ddbenv, see
+ * {@link alfio.test.util.IntegrationTestUtil}), with the mock mailer and the background jobs disabled, then runs
+ * {@link SaleScenario} with many concurrent buyers against a single event.
+ * <p>
+ * Parameters (system properties):
+ * <ul>
+ *     <li>{@code loadtest.users}: concurrent buyers (default 50)</li>
+ *     <li>{@code loadtest.iterations}: purchases attempted by each buyer (default 5)</li>
+ *     <li>{@code loadtest.seats}: available seats (default 200)</li>
+ *     <li>{@code loadtest.tickets-per-reservation}: default 1</li>
+ *     <li>{@code loadtest.check-in}: whether the tickets are checked in (default true)</li>
+ *     <li>{@code loadtest.report}: where to write the JSON report (default build/loadtest/report.json)</li>
+ *     <li>{@code loadtest.baseline}: a previous report to compare with</li>
+ * </ul>
+ * The process exits with status 1 if an invariant (no oversell, no undersell, DB consistent with the outcome of the
+ * scenarios) has been violated.
+ */
+@Log4j2
+public class TicketSaleLoadTest {
+
+    private static final List<String> SOLD_STATUSES = Arrays.asList("PENDING", "TO_BE_PAID", "ACQUIRED", "CHECKED_IN");
+
+    @Configuration
+    @ComponentScan(basePackages = {"alfio.controller"})
+    public static class ControllerConfiguration {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("loadtest.users", 50);
+        int iterations = Integer.getInteger("loadtest.iterations", 5);
+        int seats = Integer.getInteger("loadtest.seats", 200);
+        int ticketsPerReservation = Integer.getInteger("loadtest.tickets-per-reservation", 1);
+        boolean checkIn = Boolean.parseBoolean(System.getProperty("loadtest.check-in", "true"));
+        Path reportPath = Paths.get(System.getProperty("loadtest.report", "build/loadtest/report.json"));
+
+        initSystemProperties();
+        if(System.getProperty("datasource.connections.max-active") == null) {
+            System.setProperty("datasource.connections.max-active", "20");
+        }
+
+        boolean violations;
+        try(AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext()) {
+            ctx.getEnvironment().setActiveProfiles(Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS);
+            ctx.register(RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class, ControllerConfiguration.class);
+            ctx.refresh();
+
+            Event event = createEvent(ctx, seats);
+            int categoryId = ctx.getBean(EventStatisticsManager.class).loadTicketCategories(event).get(0).getId();
+            SaleScenario scenario = new SaleScenario(ctx.getBean(EventController.class), ctx.getBean(ReservationController.class),
+                ctx.getBean(CheckInApiController.class), ctx.getBean(TicketReservationManager.class), event, categoryId, ticketsPerReservation, checkIn);
+            ctx.getBean(QueryInstrumentation.class).reset();
+            LockWaitSampler lockWaitSampler = new LockWaitSampler(ctx.getBean(NamedParameterJdbcTemplate.class), ctx.getEnvironment().getProperty("datasource.dialect"));
+
+            log.info("starting load test: {} users, {} iterations, {} seats", users, iterations, seats);
+            long start = System.nanoTime();
+            run(scenario, users, iterations);
+            long duration = System.nanoTime() - start;
+            lockWaitSampler.stop();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            Map<String, Object> configuration = new LinkedHashMap<>();
+            configuration.put("dialect", ctx.getEnvironment().getProperty("datasource.dialect"));
+            configuration.put("users", users);
+            configuration.put("iterations", iterations);
+            configuration.put("seats", seats);
+            configuration.put("ticketsPerReservation", ticketsPerReservation);
+            report.put("configuration", configuration);
+            report.put("durationSeconds", duration / 1_000_000_000.0);
+            report.put("steps", scenario.summary(duration));
+            Map<String, Object> outcome = new LinkedHashMap<>();
+            outcome.put("confirmedReservations", scenario.confirmedReservations.sum());
+            outcome.put("confirmedTickets", scenario.confirmedTickets.sum());
+            outcome.put("checkedInTickets", scenario.checkedInTickets.sum());
+            outcome.put("soldOut", scenario.soldOut.sum());
+            report.put("outcome", outcome);
+            report.put("lockWaits", lockWaits(ctx, lockWaitSampler));
+            List<String> invariantViolations = checkInvariants(ctx.getBean(NamedParameterJdbcTemplate.class), event, seats, scenario, checkIn, report);
+            report.put("violations", invariantViolations);
+            violations = !invariantViolations.isEmpty();
+
+            writeReport(report, reportPath);
+            compareWithBaseline(report);
+        }
+        System.exit(violations ? 1 : 0);
+    }
+
+    private static Event createEvent(AnnotationConfigApplicationContext ctx, int seats) {
+        ensureMinimalConfiguration(ctx.getBean(ConfigurationRepository.class));
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", seats,
+                new DateTimeModification(LocalDate.now().minusDays(1), LocalTime.now()),
+                new DateTimeModification(LocalDate.now().plusDays(1), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        EventManager eventManager = ctx.getBean(EventManager.class);
+        Pair<Event, String> eventAndUser = initEvent(categories, ctx.getBean(OrganizationRepository.class), ctx.getBean(UserManager.class), eventManager, seats);
+        eventManager.toggleActiveFlag(eventAndUser.getKey().getId(), eventAndUser.getValue() + "_owner", true);
+        return eventAndUser.getKey();
+    }
+
+    private static void run(SaleScenario scenario, int users, int iterations) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        AtomicInteger userSequence = new AtomicInteger();
+        for (int i = 0; i < users; i++) {
+            executor.execute(() -> {
+                int user = userSequence.incrementAndGet();
+                try {
+                    startSignal.await();
+                    for (int iteration = 0; iteration < iterations; iteration++) {
+                        scenario.run(user);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        startSignal.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    private static Map<String, Object> lockWaits(AnnotationConfigApplicationContext ctx, LockWaitSampler sampler) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("connectionPool", ctx.getBean(ConnectionPoolMetrics.class).getSnapshot());
+        //"select ... for update" queries: their latency is dominated by the time spent waiting for the lock
+        Map<String, Map<String, Number>> lockingQueries = ctx.getBean(QueryInstrumentation.class).getStatistics().entrySet().stream()
+            .filter(e -> e.getKey().toLowerCase(Locale.ENGLISH).contains("forupdate") || e.getKey().toLowerCase(Locale.ENGLISH).contains("lock"))
+            .collect(Collectors.toMap(Map.Entry::getKey, e -> describe(e.getValue()), (a, b) -> a, LinkedHashMap::new));
+        result.put("lockingQueries", lockingQueries);
+        sampler.summary().ifPresent(s -> result.put("databaseLockWaits", s));
+        return result;
+    }
+
+    private static Map<String, Number> describe(LatencyStatistics statistics) {
+        Map<String, Number> result = new LinkedHashMap<>();
+        result.put("calls", statistics.getCalls());
+        result.put("totalMillis", statistics.getTotalMillis());
+        result.put("averageMillis", statistics.getAverageMillis());
+        result.put("maxMillis", statistics.getMaxMillis());
+        return result;
+    }
+
+    private static List<String> checkInvariants(NamedParameterJdbcTemplate jdbc, Event event, int seats, SaleScenario scenario, boolean checkIn, Map<String, Object> report) {
+        Map<String, Integer> statuses = new TreeMap<>();
+        jdbc.query("select status, count(*) cnt from ticket where event_id = :eventId group by status", new MapSqlParameterSource("eventId", event.getId()),
+            rs -> {
+                statuses.put(rs.getString("status"), rs.getInt("cnt"));
+            });
+        report.put("ticketStatuses", statuses);
+        int sold = SOLD_STATUSES.stream().mapToInt(s -> statuses.getOrDefault(s, 0)).sum();
+        int acquired = statuses.getOrDefault("ACQUIRED", 0) + statuses.getOrDefault("CHECKED_IN", 0);
+        int free = statuses.getOrDefault("FREE", 0);
+        List<String> violations = new ArrayList<>();
+        if(sold > seats) {
+            violations.add("oversell: " + sold + " tickets sold, " + seats + " seats available");
+        }
+        if(acquired != scenario.confirmedTickets.sum()) {
+            violations.add("inconsistent state: " + acquired + " tickets acquired on the database, " + scenario.confirmedTickets.sum() + " confirmed to the buyers");
+        }
+        if(scenario.soldOut.sum() > 0 && free > 0) {
+            violations.add("undersell: " + scenario.soldOut.sum() + " reservations refused while " + free + " tickets were still free");
+        }
+        if(checkIn && statuses.getOrDefault("CHECKED_IN", 0) != scenario.checkedInTickets.sum()) {
+            violations.add("inconsistent check-in: " + statuses.getOrDefault("CHECKED_IN", 0) + " tickets checked in on the database, " + scenario.checkedInTickets.sum() + " confirmed to the operators");
+        }
+        return violations;
+    }
+
+    static void writeReport(Map<String, Object> report, Path reportPath) throws IOException {
+        String json = Json.GSON.toJson(report);
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        Files.write(reportPath, json.getBytes(StandardCharsets.UTF_8));
+        log.info("load test report written to {}:\n{}", reportPath.toAbsolutePath(), json);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void compareWithBaseline(Map<String, Object> report) throws IOException {
+        String baselineFile = System.getProperty("loadtest.baseline");
+        if(baselineFile == null) {
+            return;
+        }
+        Map<String, Object> baseline = Json.GSON.fromJson(new String(Files.readAllBytes(Paths.get(baselineFile)), StandardCharsets.UTF_8), Map.class);
+        Map<String, Map<String, Object>> baselineSteps = (Map<String, Map<String, Object>>) baseline.get("steps");
+        Map<String, Map<String, Object>> currentSteps = (Map<String, Map<String, Object>>) report.get("steps");
+        StringBuilder comparison = new StringBuilder("comparison with baseline ").append(baselineFile).append(':');
+        currentSteps.forEach((step, current) -> Optional.ofNullable(baselineSteps.get(step)).ifPresent(base -> {
+            comparison.append(String.format("%n%-10s", step));
+            for (String metric : Arrays.asList("throughputPerSecond", "p50Millis", "p95Millis", "p99Millis")) {
+                double now = ((Number) current.get(metric)).doubleValue();
+                double before = ((Number) base.get(metric)).doubleValue();
+                double delta = before == 0 ? 0 : (now - before) * 100 / before;
+                comparison.append(String.format(" %s: %.2f (%+.1f%%)", metric, now, delta));
+            }
+        }));
+        log.info(comparison.toString());
+    }
+}
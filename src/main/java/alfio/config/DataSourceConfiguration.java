@@ -16,7 +16,10 @@
  */
 package alfio.config;
 
+import alfio.config.support.CachingResourceBundleMessageSource;
+import alfio.config.support.ConnectionPoolMetrics;
 import alfio.config.support.PlatformProvider;
+import alfio.config.support.ReplicaRoutingDataSource;
 import alfio.manager.Jobs.*;
 import alfio.manager.UploadedResourceManager;
 import alfio.plugin.PluginDataStorageProvider;
@@ -29,6 +32,7 @@ import ch.digitalfondue.npjt.QueryFactory;
 import ch.digitalfondue.npjt.mapper.ZonedDateTimeMapper;
 import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.MigrationVersion;
 import org.quartz.CronTrigger;
@@ -65,6 +69,7 @@ import java.text.ParseException;
 import java.util.EnumSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableTransactionManagement
@@ -91,7 +96,12 @@ public class DataSourceConfiguration implements ResourceLoaderAware {
     }
 
     @Bean
-    public DataSource getDataSource(Environment env, PlatformProvider platform) throws URISyntaxException {
+    public ConnectionPoolMetrics connectionPoolMetrics() {
+        return new ConnectionPoolMetrics();
+    }
+
+    @Bean
+    public DataSource getDataSource(Environment env, PlatformProvider platform, ConnectionPoolMetrics connectionPoolMetrics) throws URISyntaxException {
         if(platform == PlatformProvider.CLOUD_FOUNDRY) {
             return new FakeCFDataSource();
         } else {
@@ -103,9 +113,26 @@ public class DataSourceConfiguration implements ResourceLoaderAware {
             int maxActive = platform.getMaxActive(env);
 
             dataSource.setMaximumPoolSize(maxActive);
+            dataSource.setMetricsTrackerFactory(connectionPoolMetrics);
 
             log.debug("Connection pool properties: max active {}, initial size {}", maxActive, dataSource.getMinimumIdle());
-            return dataSource;
+
+            String replicaUrl = env.getProperty("datasource.replica.url");
+            if(StringUtils.isBlank(replicaUrl)) {
+                return dataSource;
+            }
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica");
+            replica.setJdbcUrl(replicaUrl);
+            replica.setUsername(env.getProperty("datasource.replica.username", dataSource.getUsername()));
+            replica.setPassword(env.getProperty("datasource.replica.password", dataSource.getPassword()));
+            replica.setDriverClassName(dataSource.getDriverClassName());
+            replica.setMaximumPoolSize(env.getProperty("datasource.replica.max-active", Integer.class, maxActive));
+            replica.setReadOnly(true);
+            long maxStaleness = TimeUnit.SECONDS.toMillis(env.getProperty("datasource.replica.max-staleness-seconds", Long.class, 30L));
+            long checkInterval = TimeUnit.SECONDS.toMillis(env.getProperty("datasource.replica.check-interval-seconds", Long.class, 5L));
+            log.info("Read-only replica configured, max staleness {} ms", maxStaleness);
+            return new ReplicaRoutingDataSource(dataSource, replica, maxStaleness, checkInterval);
         }
     }
 
@@ -150,7 +177,7 @@ public class DataSourceConfiguration implements ResourceLoaderAware {
 
     @Bean
     public MessageSource messageSource() {
-        ResourceBundleMessageSource source = new ResourceBundleMessageSource();
+        ResourceBundleMessageSource source = new CachingResourceBundleMessageSource();
         source.setBasenames("alfio.i18n.public", "alfio.i18n.admin");
         //since we have all the english translations in the default file, we don't need
         //the fallback to the system locale.
@@ -263,6 +290,9 @@ public class DataSourceConfiguration implements ResourceLoaderAware {
             buildTrigger(SendEmails.class, "SendEmails", SendEmails.INTERVAL),
             buildTrigger(ProcessReleasedTickets.class, "ProcessReleasedTickets", ProcessReleasedTickets.INTERVAL),
             buildTrigger(CleanupUnreferencedBlobFiles.class, "CleanupUnreferencedBlobFiles", CleanupUnreferencedBlobFiles.INTERVAL),
+            buildTrigger(ArchiveSentEmails.class, "ArchiveSentEmails", ArchiveSentEmails.INTERVAL),
+            buildTrigger(ResumeMessageCampaigns.class, "ResumeMessageCampaigns", ResumeMessageCampaigns.INTERVAL),
+            buildTrigger(ResumeOfflinePaymentReconciliations.class, "ResumeOfflinePaymentReconciliations", ResumeOfflinePaymentReconciliations.INTERVAL),
             buildCron(SendOfflinePaymentReminderToEventOrganizers.class, "SendOfflinePaymentReminderToEventOrganizers", SendOfflinePaymentReminderToEventOrganizers.CRON_EXPRESSION)
         };
     }
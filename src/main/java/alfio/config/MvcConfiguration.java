@@ -17,11 +17,10 @@
 package alfio.config;
 
 import alfio.controller.decorator.EventDescriptor;
-import alfio.manager.i18n.I18nManager;
-import alfio.manager.system.ConfigurationManager;
+import alfio.controller.support.EventContext;
+import alfio.controller.support.EventContextResolver;
 import alfio.model.ContentLanguage;
 import alfio.model.Event;
-import alfio.model.system.Configuration.ConfigurationPathKey;
 import alfio.util.MustacheCustomTagInterceptor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -42,8 +41,6 @@ import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.ui.ModelMap;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 import org.springframework.web.servlet.*;
@@ -62,11 +59,8 @@ import javax.servlet.http.HttpServletResponse;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static alfio.model.system.ConfigurationKeys.GOOGLE_ANALYTICS_KEY;
 
 @Configuration
 @ComponentScan(basePackages = {"alfio.controller", "alfio.config"})
@@ -75,20 +69,17 @@ public class MvcConfiguration extends WebMvcConfigurerAdapter {
 
     private final MessageSource messageSource;
     private final JMustacheTemplateLoader templateLoader;
-    private final I18nManager i18nManager;
-    private final ConfigurationManager configurationManager;
+    private final EventContextResolver eventContextResolver;
     private final Environment environment;
 
     @Autowired
     public MvcConfiguration(MessageSource messageSource,
                             JMustacheTemplateLoader templateLoader,
-                            I18nManager i18nManager,
-                            ConfigurationManager configurationManager,
+                            EventContextResolver eventContextResolver,
                             Environment environment) {
         this.messageSource = messageSource;
         this.templateLoader = templateLoader;
-        this.i18nManager = i18nManager;
-        this.configurationManager = configurationManager;
+        this.eventContextResolver = eventContextResolver;
         this.environment = environment;
     }
 
@@ -122,45 +113,20 @@ public class MvcConfiguration extends WebMvcConfigurerAdapter {
             public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
 
                 if(handler instanceof HandlerMethod) {
-                    HandlerMethod handlerMethod = ((HandlerMethod) handler);
-                    RequestMapping reqMapping = handlerMethod.getMethodAnnotation(RequestMapping.class);
-
-                    //check if the request mapping value has the form "/event/{something}"
-                    Pattern eventPattern = Pattern.compile("^/event/\\{(\\w+)}/{0,1}.*");
-                    if (reqMapping != null && reqMapping.value().length == 1 && eventPattern.matcher(reqMapping.value()[0]).matches()) {
-
-                        Matcher m = eventPattern.matcher(reqMapping.value()[0]);
-                        m.matches();
-
-                        String pathVariableName = m.group(1);
-
-                        //extract the parameter name
-                        Arrays.stream(handlerMethod.getMethodParameters())
-                            .map(methodParameter -> methodParameter.getParameterAnnotation(PathVariable.class))
-                            .filter(Objects::nonNull)
-                            .map(PathVariable::value)
-                            .filter(pathVariableName::equals)
-                            .findFirst().ifPresent((val) -> {
-
-                                //fetch the parameter value
-                                @SuppressWarnings("unchecked")
-                                String eventName = Optional.ofNullable(((Map<String, Object>)request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE)).get(val)).orElse("").toString();
-
-
-                                LocaleResolver resolver = RequestContextUtils.getLocaleResolver(request);
-                                Locale locale = resolver.resolveLocale(request);
-                                List<ContentLanguage> cl = i18nManager.getEventLanguages(eventName);
-
-                                request.setAttribute("ALFIO_EVENT_NAME", eventName);
-
-                                if(cl.stream().noneMatch(contentLanguage -> contentLanguage.getLanguage().equals(Optional.ofNullable(locale).orElse(Locale.ENGLISH).getLanguage()))) {
-                                    //override the user locale if it's not in the one permitted by the event
-                                    resolver.setLocale(request, response, cl.stream().findFirst().map(ContentLanguage::getLocale).orElse(Locale.ENGLISH));
-                                } else {
-                                    resolver.setLocale(request, response, locale);
-                                }
-                            });
-                    }
+                    eventContextResolver.resolve(request, (HandlerMethod) handler).ifPresent(context -> {
+                        LocaleResolver resolver = RequestContextUtils.getLocaleResolver(request);
+                        Locale locale = resolver.resolveLocale(request);
+                        List<ContentLanguage> cl = context.getLanguages();
+
+                        request.setAttribute("ALFIO_EVENT_NAME", context.getEventName());
+
+                        if(cl.stream().noneMatch(contentLanguage -> contentLanguage.getLanguage().equals(Optional.ofNullable(locale).orElse(Locale.ENGLISH).getLanguage()))) {
+                            //override the user locale if it's not in the one permitted by the event
+                            resolver.setLocale(request, response, cl.stream().findFirst().map(ContentLanguage::getLocale).orElse(Locale.ENGLISH));
+                        } else {
+                            resolver.setLocale(request, response, locale);
+                        }
+                    });
                 }
                 return true;
             }
@@ -176,9 +142,10 @@ public class MvcConfiguration extends WebMvcConfigurerAdapter {
                     mv.addObject("request", request);
                     final ModelMap modelMap = mv.getModelMap();
 
-                    Optional.ofNullable(request.getAttribute("ALFIO_EVENT_NAME")).map(Object::toString).ifPresent(eventName -> {
+                    Optional<EventContext> eventContext = EventContextResolver.fromRequest(request);
+                    eventContext.ifPresent(context -> {
 
-                        List<?> availableLanguages = i18nManager.getEventLanguages(eventName);
+                        List<?> availableLanguages = context.getLanguages();
 
                         modelMap.put("showAvailableLanguagesInPageTop", availableLanguages.size() > 1);
                         modelMap.put("availableLanguages", availableLanguages);
@@ -188,8 +155,8 @@ public class MvcConfiguration extends WebMvcConfigurerAdapter {
                     if(!StringUtils.startsWith(mv.getViewName(), "redirect:")) {
                         modelMap.putIfAbsent("pageTitle", "empty");
                         Event event = modelMap.get("event") == null ? null : modelMap.get("event") instanceof Event ? (Event) modelMap.get("event") : ((EventDescriptor) modelMap.get("event")).getEvent();
-                        ConfigurationPathKey googleAnalyticsKey = Optional.ofNullable(event).map(e -> alfio.model.system.Configuration.from(e.getOrganizationId(), e.getId(), GOOGLE_ANALYTICS_KEY)).orElseGet(() -> alfio.model.system.Configuration.getSystemConfiguration(GOOGLE_ANALYTICS_KEY));
-                        modelMap.putIfAbsent("analyticsEnabled", StringUtils.isNotBlank(configurationManager.getStringConfigValue(googleAnalyticsKey, "")));
+                        boolean sameEvent = eventContext.flatMap(EventContext::getEvent).filter(e -> event != null && e.getId() == event.getId()).isPresent();
+                        modelMap.putIfAbsent("analyticsEnabled", sameEvent ? eventContext.get().isAnalyticsEnabled() : eventContextResolver.isAnalyticsEnabled(Optional.ofNullable(event)));
                     }
                 });
             }
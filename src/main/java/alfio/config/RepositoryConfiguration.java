@@ -16,10 +16,13 @@
  */
 package alfio.config;
 
+import alfio.config.support.QueryInstrumentation;
+import alfio.config.support.ReportingQueryRouting;
 import ch.digitalfondue.npjt.QueryFactory;
 import ch.digitalfondue.npjt.QueryRepositoryScanner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 @Configuration
 public class RepositoryConfiguration {
@@ -27,4 +30,14 @@ public class RepositoryConfiguration {
     public static QueryRepositoryScanner queryRepositoryScanner(QueryFactory queryFactory) {
         return new QueryRepositoryScanner(queryFactory, "alfio.repository");
     }
+
+    @Bean
+    public static QueryInstrumentation queryInstrumentation(Environment environment) {
+        return new QueryInstrumentation(environment.getProperty("alfio.slow-query-threshold-ms", Long.class, 500L));
+    }
+
+    @Bean
+    public static ReportingQueryRouting reportingQueryRouting() {
+        return new ReportingQueryRouting();
+    }
 }
@@ -16,18 +16,22 @@
  */
 package alfio.config;
 
+import alfio.config.support.CachingAuthenticationProvider;
+import alfio.manager.user.AuthenticationCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.configurers.CsrfConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.jdbc.JdbcDaoImpl;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.csrf.CsrfTokenRepository;
 import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
@@ -50,21 +54,23 @@ public class WebSecurityConfig {
     public static final String SPONSOR = "SPONSOR";
     private static final String ADMIN = "ADMIN";
     private static final String OWNER = "OWNER";
+    private static final String USERS_BY_USERNAME_QUERY = "select username, password, enabled from ba_user where username = ?";
+    private static final String AUTHORITIES_BY_USERNAME_QUERY = "select username, role from authority where username = ?";
 
 
 
     private static class BaseWebSecurity extends  WebSecurityConfigurerAdapter {
 
         @Autowired
-        private DataSource dataSource;
+        DataSource dataSource;
         @Autowired
-        private PasswordEncoder passwordEncoder;
+        PasswordEncoder passwordEncoder;
 
         @Override
         public void configure(AuthenticationManagerBuilder auth) throws Exception {
             auth.jdbcAuthentication().dataSource(dataSource)
-                    .usersByUsernameQuery("select username, password, enabled from ba_user where username = ?")
-                    .authoritiesByUsernameQuery("select username, role from authority where username = ?")
+                    .usersByUsernameQuery(USERS_BY_USERNAME_QUERY)
+                    .authoritiesByUsernameQuery(AUTHORITIES_BY_USERNAME_QUERY)
                     .passwordEncoder(passwordEncoder);
         }
     }
@@ -78,6 +84,27 @@ public class WebSecurityConfig {
     @Order(1)
     public static class BasicAuthWebSecurity extends BaseWebSecurity {
 
+        @Autowired
+        private AuthenticationCache authenticationCache;
+
+        /**
+         * The mobile apps send the credentials with every request, therefore the successful authentications
+         * are cached for a short time in order to avoid a DB lookup and a BCrypt check on each call.
+         */
+        @Override
+        public void configure(AuthenticationManagerBuilder auth) throws Exception {
+            JdbcDaoImpl userDetailsService = new JdbcDaoImpl();
+            userDetailsService.setDataSource(dataSource);
+            userDetailsService.setUsersByUsernameQuery(USERS_BY_USERNAME_QUERY);
+            userDetailsService.setAuthoritiesByUsernameQuery(AUTHORITIES_BY_USERNAME_QUERY);
+            userDetailsService.afterPropertiesSet();
+            DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+            provider.setUserDetailsService(userDetailsService);
+            provider.setPasswordEncoder(passwordEncoder);
+            provider.afterPropertiesSet();
+            auth.authenticationProvider(new CachingAuthenticationProvider(provider, authenticationCache));
+        }
+
         @Override
         protected void configure(HttpSecurity http) throws Exception {
             http.requestMatcher((request) -> request.getHeader("Authorization") != null).sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
@@ -134,7 +161,7 @@ public class WebSecurityConfig {
                 .and()
                 .authorizeRequests()
                 .antMatchers(ADMIN_API + "/configuration/**", ADMIN_API + "/users/**").hasAnyRole(ADMIN, OWNER)
-                .antMatchers(ADMIN_API + "/organizations/new").hasRole(ADMIN)
+                .antMatchers(ADMIN_API + "/organizations/new", ADMIN_API + "/metrics/**").hasRole(ADMIN)
                 .antMatchers(ADMIN_API + "/check-in/**").hasAnyRole(ADMIN, OWNER, SUPERVISOR)
                 .antMatchers(HttpMethod.GET, ADMIN_API + "/**").hasAnyRole(ADMIN, OWNER, SUPERVISOR)
                 .antMatchers(ADMIN_API + "/**").hasAnyRole(ADMIN, OWNER)
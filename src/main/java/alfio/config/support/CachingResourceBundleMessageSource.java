@@ -0,0 +1,48 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.context.support.ResourceBundleMessageSource;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * {@link ResourceBundleMessageSource} which keeps the resolved {@link MessageFormat} for each (code, locale)
+ * in a bounded, lock-free cache.
+ * The superclass caches the parsed patterns as well, but every lookup has to walk the configured basenames and acquire
+ * a global lock, which becomes a bottleneck when many templates are rendered in parallel.
+ * The returned instances are shared, as in the superclass: {@link org.springframework.context.support.AbstractMessageSource}
+ * synchronizes on them while formatting.
+ */
+public class CachingResourceBundleMessageSource extends ResourceBundleMessageSource {
+
+    private static final int MAX_ENTRIES = 20_000;
+
+    private final Cache<Pair<String, Locale>, Optional<MessageFormat>> formats = Caffeine.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .build();
+
+    @Override
+    protected MessageFormat resolveCode(String code, Locale locale) {
+        return formats.get(Pair.of(code, locale), k -> Optional.ofNullable(super.resolveCode(code, locale))).orElse(null);
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the connection pool metrics published by HikariCP: time spent waiting for a connection, timeouts,
+ * and the number of active/idle connections.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+    private final LatencyStatistics acquisition = new LatencyStatistics();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile PoolStats poolStats;
+    private volatile String poolName;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolName = poolName;
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquisition.record(elapsedAcquiredNanos, 0, false);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("poolName", poolName);
+        Optional.ofNullable(poolStats).ifPresent(stats -> {
+            result.put("activeConnections", stats.getActiveConnections());
+            result.put("idleConnections", stats.getIdleConnections());
+            result.put("totalConnections", stats.getTotalConnections());
+            result.put("pendingThreads", stats.getPendingThreads());
+        });
+        result.put("acquisitions", acquisition.getCalls());
+        result.put("timeouts", timeouts.sum());
+        result.put("averageWaitMillis", acquisition.getAverageMillis());
+        result.put("maxWaitMillis", acquisition.getMaxMillis());
+        result.put("waitHistogram", acquisition.getHistogram());
+        return result;
+    }
+}
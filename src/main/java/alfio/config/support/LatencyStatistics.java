@@ -0,0 +1,94 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free counters for the latency of an operation: calls, errors, total and max time, and a histogram with fixed buckets.
+ */
+public class LatencyStatistics {
+
+    private static final long[] BUCKETS_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] histogram = new LongAdder[BUCKETS_MILLIS.length + 1];
+
+    public LatencyStatistics() {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    public void record(long elapsedNanos, long rowCount, boolean error) {
+        calls.increment();
+        if(error) {
+            errors.increment();
+        }
+        rows.add(rowCount);
+        totalNanos.add(elapsedNanos);
+        maxNanos.accumulate(elapsedNanos);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        int bucket = 0;
+        while(bucket < BUCKETS_MILLIS.length && elapsedMillis > BUCKETS_MILLIS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket].increment();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1_000_000d;
+    }
+
+    public double getAverageMillis() {
+        long count = calls.sum();
+        return count == 0 ? 0 : getTotalMillis() / count;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000d;
+    }
+
+    public Map<String, Long> getHistogram() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+            result.put("<=" + BUCKETS_MILLIS[i] + "ms", histogram[i].sum());
+        }
+        result.put(">" + BUCKETS_MILLIS[BUCKETS_MILLIS.length - 1] + "ms", histogram[BUCKETS_MILLIS.length].sum());
+        return result;
+    }
+}
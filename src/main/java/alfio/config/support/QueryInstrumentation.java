@@ -0,0 +1,185 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps the proxies generated for the {@link QueryRepository} interfaces, in order to record, for each method, the number of
+ * calls, the latency and the number of returned/affected rows.
+ * The queries slower than the configured threshold are logged along with the shape of their parameters (never their values).
+ */
+@Log4j2
+public class QueryInstrumentation implements BeanPostProcessor {
+
+    private final long slowQueryThresholdNanos;
+    private final Map<String, LatencyStatistics> statistics = new ConcurrentHashMap<>();
+
+    public QueryInstrumentation(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if(!Proxy.isProxyClass(bean.getClass())) {
+            return bean;
+        }
+        Class<?>[] interfaces = bean.getClass().getInterfaces();
+        return Arrays.stream(interfaces)
+            .filter(i -> i.isAnnotationPresent(QueryRepository.class))
+            .findFirst()
+            .map(repository -> Proxy.newProxyInstance(repository.getClassLoader(), interfaces, new InstrumentedRepository(bean, repository.getSimpleName())))
+            .orElse(bean);
+    }
+
+    /**
+     * @return the statistics of each repository method, sorted by total time (descending)
+     */
+    public Map<String, LatencyStatistics> getStatistics() {
+        Map<String, LatencyStatistics> result = new LinkedHashMap<>();
+        statistics.entrySet().stream()
+            .sorted(Comparator.comparingDouble((Map.Entry<String, LatencyStatistics> e) -> e.getValue().getTotalMillis()).reversed())
+            .forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    public void reset() {
+        statistics.clear();
+    }
+
+    private final class InstrumentedRepository implements InvocationHandler {
+
+        private final Object target;
+        private final String repositoryName;
+        private final Map<Method, MethodDescriptor> descriptors = new ConcurrentHashMap<>();
+
+        private InstrumentedRepository(Object target, String repositoryName) {
+            this.target = target;
+            this.repositoryName = repositoryName;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            MethodDescriptor descriptor = descriptors.computeIfAbsent(method, m -> new MethodDescriptor(repositoryName, m));
+            if(!descriptor.instrumented) {
+                return invokeTarget(method, args);
+            }
+            long start = System.nanoTime();
+            boolean error = false;
+            Object result = null;
+            try {
+                result = invokeTarget(method, args);
+                return result;
+            } catch (Throwable t) {
+                error = true;
+                throw t;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                statistics.computeIfAbsent(descriptor.name, k -> new LatencyStatistics()).record(elapsed, descriptor.countRows(result), error);
+                if(elapsed > slowQueryThresholdNanos) {
+                    log.warn("slow query {} took {} ms, parameters: {}", descriptor.name, TimeUnit.NANOSECONDS.toMillis(elapsed), descriptor.describeParameters(args));
+                }
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class MethodDescriptor {
+
+        private final String name;
+        private final boolean instrumented;
+        private final boolean select;
+        private final String[] parameterNames;
+
+        private MethodDescriptor(String repositoryName, Method method) {
+            this.name = repositoryName + "." + method.getName();
+            Query query = method.getAnnotation(Query.class);
+            this.instrumented = method.getDeclaringClass() != Object.class && (query == null || query.type() != QueryType.TEMPLATE);
+            this.select = query != null && StringUtils.startsWithIgnoreCase(StringUtils.trimToEmpty(query.value()), "select");
+            Parameter[] parameters = method.getParameters();
+            this.parameterNames = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                Bind bind = parameters[i].getAnnotation(Bind.class);
+                parameterNames[i] = bind != null ? bind.value() : parameters[i].getName();
+            }
+        }
+
+        private long countRows(Object result) {
+            if(result == null) {
+                return 0;
+            } else if(result instanceof Collection) {
+                return ((Collection<?>) result).size();
+            } else if(result instanceof Optional) {
+                return ((Optional<?>) result).isPresent() ? 1 : 0;
+            } else if(result instanceof int[]) {
+                return Arrays.stream((int[]) result).sum();
+            } else if(result instanceof Number && !select) {
+                return ((Number) result).longValue();
+            }
+            return 1;
+        }
+
+        private String describeParameters(Object[] args) {
+            if(args == null) {
+                return "[]";
+            }
+            StringJoiner joiner = new StringJoiner(", ", "[", "]");
+            for (int i = 0; i < args.length; i++) {
+                joiner.add(parameterNames[i] + "=" + describe(args[i]));
+            }
+            return joiner.toString();
+        }
+
+        private static String describe(Object arg) {
+            if(arg == null) {
+                return "null";
+            } else if(arg instanceof Collection) {
+                return arg.getClass().getSimpleName() + "(" + ((Collection<?>) arg).size() + ")";
+            } else if(arg instanceof CharSequence) {
+                return "String(" + ((CharSequence) arg).length() + ")";
+            }
+            return arg.getClass().getSimpleName();
+        }
+    }
+}
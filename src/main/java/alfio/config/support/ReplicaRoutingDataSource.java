@@ -0,0 +1,170 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends read-only work to an optional replica, keeping everything else on the primary pool.
+ * <p>
+ * A connection is routed to the replica if it is requested within a {@code @Transactional(readOnly = true)} method, or
+ * outside a transaction by a repository method marked with {@link alfio.repository.ReportingQuery}.
+ * Since the connection is acquired lazily, the routing decision is taken when the first statement is executed,
+ * that is, after the transaction attributes have been bound to the current thread.
+ * <p>
+ * The replica is used only while it is reachable and its lag is below the configured tolerance. The lag is measured
+ * by periodically writing the current timestamp on the primary (table {@code replica_heartbeat}) and reading it back
+ * from the replica. Until the first successful check, and whenever a check fails, all the work goes to the primary.
+ */
+@Log4j2
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+    private static final ThreadLocal<Boolean> REPORTING = new ThreadLocal<>();
+
+    private enum Target { PRIMARY, REPLICA }
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxStalenessMillis;
+    private final ScheduledExecutorService heartbeatExecutor;
+    private volatile boolean replicaUsable = false;
+    private volatile long lastLagMillis = -1;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long maxStalenessMillis, long checkIntervalMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxStalenessMillis = maxStalenessMillis;
+        setTargetDataSource(new Router());
+        afterPropertiesSet();
+        if(checkIntervalMillis > 0) {
+            this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "replica-heartbeat");
+                t.setDaemon(true);
+                return t;
+            });
+            heartbeatExecutor.scheduleWithFixedDelay(this::checkReplica, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.heartbeatExecutor = null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ReportingCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Executes the given call allowing the queries issued outside a transaction to be served by the replica.
+     */
+    public static <T, E extends Exception> T reporting(ReportingCall<T, E> call) throws E {
+        Boolean previous = REPORTING.get();
+        REPORTING.set(Boolean.TRUE);
+        try {
+            return call.call();
+        } finally {
+            if(previous == null) {
+                REPORTING.remove();
+            } else {
+                REPORTING.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Writes a new heartbeat on the primary and computes the lag of the replica.
+     */
+    public void checkReplica() {
+        try {
+            new JdbcTemplate(primary).update("update replica_heartbeat set heartbeat_millis = ? where id = 1", System.currentTimeMillis());
+            Long replicated = new JdbcTemplate(replica).queryForObject("select heartbeat_millis from replica_heartbeat where id = 1", Long.class);
+            long lag = System.currentTimeMillis() - replicated;
+            boolean usable = lag <= maxStalenessMillis;
+            if(usable != replicaUsable) {
+                log.info("replica is now {} (lag: {} ms, tolerance: {} ms)", usable ? "in use" : "out of service", lag, maxStalenessMillis);
+            }
+            lastLagMillis = lag;
+            replicaUsable = usable;
+        } catch (Exception e) {
+            if(replicaUsable) {
+                log.warn("replica check failed, falling back to the primary pool", e);
+            }
+            lastLagMillis = -1;
+            replicaUsable = false;
+        }
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if(heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+        close(replica);
+        close(primary);
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if(dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    private Target currentTarget() {
+        boolean readOnly = TransactionSynchronizationManager.isActualTransactionActive() ?
+            TransactionSynchronizationManager.isCurrentTransactionReadOnly() : Boolean.TRUE.equals(REPORTING.get());
+        return readOnly && replicaUsable ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    private final class Router extends AbstractRoutingDataSource {
+
+        private Router() {
+            Map<Object, Object> targets = new HashMap<>();
+            targets.put(Target.PRIMARY, primary);
+            targets.put(Target.REPLICA, replica);
+            setTargetDataSources(targets);
+            setDefaultTargetDataSource(primary);
+            setLenientFallback(false);
+            afterPropertiesSet();
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return currentTarget();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import alfio.repository.ReportingQuery;
+import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+/**
+ * Wraps the {@link QueryRepository} proxies having at least one method annotated with {@link ReportingQuery},
+ * so that these methods are executed in "reporting mode" (see {@link ReplicaRoutingDataSource#reporting(ReplicaRoutingDataSource.ReportingCall)}).
+ */
+public class ReportingQueryRouting implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if(!Proxy.isProxyClass(bean.getClass())) {
+            return bean;
+        }
+        Class<?>[] interfaces = bean.getClass().getInterfaces();
+        boolean reporting = Arrays.stream(interfaces)
+            .filter(i -> i.isAnnotationPresent(QueryRepository.class))
+            .flatMap(i -> Arrays.stream(i.getMethods()))
+            .anyMatch(m -> m.isAnnotationPresent(ReportingQuery.class));
+        if(!reporting) {
+            return bean;
+        }
+        return Proxy.newProxyInstance(bean.getClass().getClassLoader(), interfaces, (proxy, method, args) -> {
+            if(method.isAnnotationPresent(ReportingQuery.class)) {
+                return ReplicaRoutingDataSource.reporting(() -> invoke(bean, method, args));
+            }
+            return invoke(bean, method, args);
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package alfio.controller;
 
+import alfio.model.Page;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageConversionException;
@@ -50,4 +51,12 @@ public class ControllerExceptionHandler {
         return "bad request";
     }
 
+    @ExceptionHandler(Page.InvalidCursorException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ResponseBody
+    public String invalidCursor(Page.InvalidCursorException e) {
+        log.debug("invalid cursor", e);
+        return "invalid cursor";
+    }
+
 }
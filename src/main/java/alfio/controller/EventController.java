@@ -21,20 +21,20 @@ import alfio.controller.decorator.EventDescriptor;
 import alfio.controller.decorator.SaleableAdditionalService;
 import alfio.controller.decorator.SaleableTicketCategory;
 import alfio.controller.form.ReservationForm;
+import alfio.controller.support.EventContextResolver;
+import alfio.controller.support.PublicEventSnapshot;
+import alfio.controller.support.PublicEventSnapshotManager;
 import alfio.controller.support.SessionUtil;
+import alfio.manager.AdmissionControlManager;
 import alfio.manager.EventManager;
 import alfio.manager.EventStatisticsManager;
 import alfio.manager.TicketReservationManager;
 import alfio.manager.i18n.I18nManager;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.*;
-import alfio.model.modification.support.LocationDescriptor;
 import alfio.model.result.ValidationResult;
-import alfio.model.system.Configuration;
-import alfio.model.system.ConfigurationKeys;
 import alfio.model.transaction.PaymentProxy;
 import alfio.repository.*;
-import alfio.repository.user.OrganizationRepository;
 import alfio.util.ErrorsCode;
 import alfio.util.EventUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -67,47 +67,44 @@ public class EventController {
     private final EventRepository eventRepository;
     private final EventDescriptionRepository eventDescriptionRepository;
     private final I18nManager i18nManager;
-    private final TicketCategoryRepository ticketCategoryRepository;
-    private final TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository;
     private final ConfigurationManager configurationManager;
-    private final OrganizationRepository organizationRepository;
     private final SpecialPriceRepository specialPriceRepository;
     private final PromoCodeDiscountRepository promoCodeRepository;
     private final EventManager eventManager;
     private final TicketReservationManager ticketReservationManager;
     private final EventStatisticsManager eventStatisticsManager;
     private final AdditionalServiceRepository additionalServiceRepository;
-    private final AdditionalServiceTextRepository additionalServiceTextRepository;
+    private final AdmissionControlManager admissionControlManager;
+    private final EventContextResolver eventContextResolver;
+    private final PublicEventSnapshotManager publicEventSnapshotManager;
 
     @Autowired
     public EventController(ConfigurationManager configurationManager,
                            EventRepository eventRepository,
                            EventDescriptionRepository eventDescriptionRepository,
                            I18nManager i18nManager,
-                           OrganizationRepository organizationRepository,
-                           TicketCategoryRepository ticketCategoryRepository,
-                           TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository,
                            SpecialPriceRepository specialPriceRepository,
                            PromoCodeDiscountRepository promoCodeRepository,
                            EventManager eventManager,
                            TicketReservationManager ticketReservationManager,
                            EventStatisticsManager eventStatisticsManager,
                            AdditionalServiceRepository additionalServiceRepository,
-                           AdditionalServiceTextRepository additionalServiceTextRepository) {
+                           AdmissionControlManager admissionControlManager,
+                           EventContextResolver eventContextResolver,
+                           PublicEventSnapshotManager publicEventSnapshotManager) {
         this.configurationManager = configurationManager;
         this.eventRepository = eventRepository;
         this.eventDescriptionRepository = eventDescriptionRepository;
         this.i18nManager = i18nManager;
-        this.organizationRepository = organizationRepository;
-        this.ticketCategoryRepository = ticketCategoryRepository;
-        this.ticketCategoryDescriptionRepository = ticketCategoryDescriptionRepository;
         this.specialPriceRepository = specialPriceRepository;
         this.promoCodeRepository = promoCodeRepository;
         this.eventManager = eventManager;
         this.ticketReservationManager = ticketReservationManager;
         this.eventStatisticsManager = eventStatisticsManager;
         this.additionalServiceRepository = additionalServiceRepository;
-        this.additionalServiceTextRepository = additionalServiceTextRepository;
+        this.admissionControlManager = admissionControlManager;
+        this.eventContextResolver = eventContextResolver;
+        this.publicEventSnapshotManager = publicEventSnapshotManager;
     }
 
     @RequestMapping(value = "/", method = RequestMethod.HEAD)
@@ -122,7 +119,7 @@ public class EventController {
             return REDIRECT + "/event/" + events.get(0).getShortName() + "/";
         } else {
             model.addAttribute("events", events.stream().map(e -> {
-                String eventDescription = eventDescriptionRepository.findDescriptionByEventIdTypeAndLocale(e.getId(), EventDescription.EventDescriptionType.DESCRIPTION, locale.getLanguage()).orElse("");
+                String eventDescription = publicEventSnapshotManager.getSnapshot(e).getDescription(locale.getLanguage());
                 return new EventDescriptor(e, eventDescription);
             }).collect(Collectors.toList()));
             model.addAttribute("pageTitle", "event-list.header.title");
@@ -151,7 +148,7 @@ public class EventController {
         
         SessionUtil.removeSpecialPriceData(request);
 
-        Optional<Event> optional = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> optional = eventContextResolver.findEvent(eventName);
         if(!optional.isPresent()) {
             return ValidationResult.failed(new ValidationResult.ErrorDescriptor("event", ""));
         }
@@ -191,35 +188,32 @@ public class EventController {
     public String showEvent(@PathVariable("eventName") String eventName,
                             Model model, HttpServletRequest request, Locale locale) {
 
-        return eventRepository.findOptionalByShortName(eventName).map(event -> {
+        return eventContextResolver.findEvent(eventName).map(event -> {
             Optional<String> maybeSpecialCode = SessionUtil.retrieveSpecialPriceCode(request);
             Optional<SpecialPrice> specialCode = maybeSpecialCode.flatMap((trimmedCode) -> optionally(() -> specialPriceRepository.getByCode(trimmedCode)));
 
             Optional<PromoCodeDiscount> promoCodeDiscount = SessionUtil.retrievePromotionCodeDiscount(request)
                 .flatMap((code) -> optionally(() -> promoCodeRepository.findPromoCodeInEventOrOrganization(event.getId(), code)));
 
+            PublicEventSnapshot snapshot = publicEventSnapshotManager.getSnapshot(event);
+            String language = locale.getLanguage();
+            Map<Integer, Integer> availableTickets = ticketReservationManager.countAvailableTickets(event, snapshot.getTicketCategories());
             final ZonedDateTime now = ZonedDateTime.now(event.getZoneId());
             //hide access restricted ticket categories
-            List<SaleableTicketCategory> ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId()).stream()
-                .filter((c) -> !c.isAccessRestricted() || (specialCode.filter(sc -> sc.getTicketCategoryId() == c.getId()).isPresent()))
-                .map((m) -> new SaleableTicketCategory(m, ticketCategoryDescriptionRepository.findByTicketCategoryIdAndLocale(m.getId(), locale.getLanguage()).orElse(""),
-                    now, event, ticketReservationManager.countAvailableTickets(event, m), configurationManager.getIntConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), m.getId(), ConfigurationKeys.MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), 5),
-                    promoCodeDiscount.filter(promoCode -> shouldApplyDiscount(promoCode, m)).orElse(null)))
+            List<SaleableTicketCategory> ticketCategories = snapshot.getCategories().stream()
+                .filter((c) -> !c.getTicketCategory().isAccessRestricted() || (specialCode.filter(sc -> sc.getTicketCategoryId() == c.getTicketCategory().getId()).isPresent()))
+                .map((c) -> {
+                    TicketCategory m = c.getTicketCategory();
+                    return new SaleableTicketCategory(m, c.getDescription(language), now, event, availableTickets.get(m.getId()), c.getMaxTicketsPerReservation(),
+                        promoCodeDiscount.filter(promoCode -> shouldApplyDiscount(promoCode, m)).orElse(null));
+                })
                 .collect(Collectors.toList());
             //
 
-            LocationDescriptor ld = LocationDescriptor.fromGeoData(event.getLatLong(), TimeZone.getTimeZone(event.getTimeZone()),
-                configurationManager.getStringConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.MAPS_CLIENT_API_KEY)));
-
-            final boolean hasAccessPromotions = ticketCategoryRepository.countAccessRestrictedRepositoryByEventId(event.getId()) > 0 ||
-                promoCodeRepository.countByEventAndOrganizationId(event.getId(), event.getOrganizationId()) > 0;
-
-            String eventDescription = eventDescriptionRepository.findDescriptionByEventIdTypeAndLocale(event.getId(), EventDescription.EventDescriptionType.DESCRIPTION, locale.getLanguage()).orElse("");
-
-            final EventDescriptor eventDescriptor = new EventDescriptor(event, eventDescription);
+            final EventDescriptor eventDescriptor = new EventDescriptor(event, snapshot.getDescription(language));
             List<SaleableTicketCategory> expiredCategories = ticketCategories.stream().filter(SaleableTicketCategory::getExpired).collect(Collectors.toList());
             List<SaleableTicketCategory> validCategories = ticketCategories.stream().filter(tc -> !tc.getExpired()).collect(Collectors.toList());
-            List<SaleableAdditionalService> additionalServices = additionalServiceRepository.loadAllForEvent(event.getId()).stream().map((as) -> getSaleableAdditionalService(event, locale, as, promoCodeDiscount.orElse(null))).collect(Collectors.toList());
+            List<SaleableAdditionalService> additionalServices = snapshot.getAdditionalServices().stream().map((as) -> getSaleableAdditionalService(event, language, as, promoCodeDiscount.orElse(null))).collect(Collectors.toList());
             Predicate<SaleableTicketCategory> waitingQueueTargetCategory = tc -> !tc.getExpired() && !tc.isBounded();
             boolean validPaymentConfigured = isEventHasValidPaymentConfigurations(event, configurationManager);
 
@@ -229,22 +223,22 @@ public class EventController {
             List<SaleableAdditionalService> donations = adjustIndex(supplements.size(), notExpiredServices.stream().filter(a -> a.getType() == AdditionalService.AdditionalServiceType.DONATION).collect(Collectors.toList()));
 
             model.addAttribute("event", eventDescriptor)//
-                .addAttribute("organization", organizationRepository.getById(event.getOrganizationId()))
+                .addAttribute("organization", snapshot.getOrganization())
                 .addAttribute("ticketCategories", validCategories)//
                 .addAttribute("expiredCategories", expiredCategories)//
                 .addAttribute("containsExpiredCategories", !expiredCategories.isEmpty())//
                 .addAttribute("showNoCategoriesWarning", validCategories.isEmpty())
-                .addAttribute("hasAccessPromotions", hasAccessPromotions)
+                .addAttribute("hasAccessPromotions", snapshot.isAccessPromotions())
                 .addAttribute("promoCode", specialCode.map(SpecialPrice::getCode).orElse(null))
-                .addAttribute("locationDescriptor", ld)
+                .addAttribute("locationDescriptor", snapshot.getLocationDescriptor())
                 .addAttribute("pageTitle", "show-event.header.title")
                 .addAttribute("hasPromoCodeDiscount", promoCodeDiscount.isPresent())
                 .addAttribute("promoCodeDiscount", promoCodeDiscount.orElse(null))
-                .addAttribute("displayWaitingQueueForm", EventUtil.displayWaitingQueueForm(event, ticketCategories, configurationManager, eventStatisticsManager.noSeatsAvailable()))
+                .addAttribute("displayWaitingQueueForm", EventUtil.displayWaitingQueueForm(event, ticketCategories, snapshot::isPreRegistrationEnabled, snapshot::isWaitingQueueEnabled, eventStatisticsManager.noSeatsAvailable()))
                 .addAttribute("displayCategorySelectionForWaitingQueue", ticketCategories.stream().filter(waitingQueueTargetCategory).count() > 1)
                 .addAttribute("unboundedCategories", ticketCategories.stream().filter(waitingQueueTargetCategory).collect(Collectors.toList()))
                 .addAttribute("preSales", EventUtil.isPreSales(event, ticketCategories))
-                .addAttribute("userLanguage", locale.getLanguage())
+                .addAttribute("userLanguage", language)
                 .addAttribute("showAdditionalServices", !notExpiredServices.isEmpty())
                 .addAttribute("showAdditionalServicesDonations", !donations.isEmpty())
                 .addAttribute("showAdditionalServicesSupplements", !supplements.isEmpty())
@@ -261,7 +255,7 @@ public class EventController {
 
     @RequestMapping(value = "/event/{eventName}/calendar/locale/{locale}", method = {RequestMethod.GET, RequestMethod.HEAD})
     public void calendar(@PathVariable("eventName") String eventName, @PathVariable("locale") String locale, @RequestParam(value = "type", required = false) String calendarType, HttpServletResponse response) throws IOException {
-        Optional<Event> event = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> event = eventContextResolver.findEvent(eventName);
         if (!event.isPresent()) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return;
@@ -293,7 +287,7 @@ public class EventController {
             @ModelAttribute ReservationForm reservation, BindingResult bindingResult, Model model,
             ServletWebRequest request, RedirectAttributes redirectAttributes, Locale locale) {
 
-        return eventRepository.findOptionalByShortName(eventName).map(event -> {
+        return eventContextResolver.findEvent(eventName).map(event -> {
 
             final String redirectToEvent = "redirect:/event/" + eventName + "/";
 
@@ -306,7 +300,20 @@ public class EventController {
 
                     Date expiration = DateUtils.addMinutes(new Date(), ticketReservationManager.getReservationTimeout(event));
 
-                    try {
+                    try (AdmissionControlManager.Admission admission = admissionControlManager.enter(event, SessionUtil.retrieveQueueToken(event.getId(), request.getRequest()))) {
+                        if(!admission.isAdmitted()) {
+                            admission.getQueueToken().ifPresent(token -> SessionUtil.saveQueueToken(event.getId(), token, request.getRequest()));
+                            if(admission.getStatus() == AdmissionControlManager.Admission.Status.QUEUED) {
+                                bindingResult.reject(ErrorsCode.STEP_1_QUEUED, new Object[] { admission.getPosition() }, null);
+                                //the event page polls the waiting room and submits the reservation again once admitted
+                                redirectAttributes.addFlashAttribute("queued", true);
+                            } else {
+                                bindingResult.reject(ErrorsCode.STEP_1_WAITING_ROOM_FULL);
+                            }
+                            addToFlash(bindingResult, redirectAttributes);
+                            return redirectToEvent;
+                        }
+                        SessionUtil.removeQueueToken(event.getId(), request.getRequest());
                         String reservationId = ticketReservationManager.createTicketReservation(event,
                                 selected.getLeft(), selected.getRight(), expiration,
                                 SessionUtil.retrieveSpecialPriceSessionId(request.getRequest()),
@@ -336,9 +343,9 @@ public class EventController {
 
     }
 
-    private SaleableAdditionalService getSaleableAdditionalService(Event event, Locale locale, AdditionalService as, PromoCodeDiscount promoCodeDiscount) {
-        return new SaleableAdditionalService(event, as, additionalServiceTextRepository.findBestMatchByLocaleAndType(as.getId(), locale.getLanguage(), AdditionalServiceText.TextType.TITLE).getValue(),
-            additionalServiceTextRepository.findBestMatchByLocaleAndType(as.getId(), locale.getLanguage(), AdditionalServiceText.TextType.DESCRIPTION).getValue(), promoCodeDiscount, 0);
+    private static SaleableAdditionalService getSaleableAdditionalService(Event event, String language, PublicEventSnapshot.Service service, PromoCodeDiscount promoCodeDiscount) {
+        return new SaleableAdditionalService(event, service.getAdditionalService(), service.getText(language, AdditionalServiceText.TextType.TITLE),
+            service.getText(language, AdditionalServiceText.TextType.DESCRIPTION), promoCodeDiscount, 0);
     }
 
     private static List<SaleableAdditionalService> adjustIndex(int offset, List<SaleableAdditionalService> l) {
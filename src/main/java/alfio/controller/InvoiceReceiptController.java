@@ -16,13 +16,14 @@
  */
 package alfio.controller;
 
+import alfio.controller.support.EventContextResolver;
 import alfio.controller.support.TemplateProcessor;
 import alfio.manager.FileUploadManager;
+import alfio.manager.InvoiceExportManager;
 import alfio.manager.TicketReservationManager;
 import alfio.model.Event;
 import alfio.model.OrderSummary;
 import alfio.model.TicketReservation;
-import alfio.repository.EventRepository;
 import alfio.util.Json;
 import alfio.util.TemplateManager;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,25 +44,28 @@ import java.util.function.Function;
 @Controller
 public class InvoiceReceiptController {
 
-    private final EventRepository eventRepository;
     private final TicketReservationManager ticketReservationManager;
     private final FileUploadManager fileUploadManager;
     private final TemplateManager templateManager;
+    private final InvoiceExportManager invoiceExportManager;
+    private final EventContextResolver eventContextResolver;
 
     @Autowired
-    public InvoiceReceiptController(EventRepository eventRepository,
-                                    TicketReservationManager ticketReservationManager,
+    public InvoiceReceiptController(TicketReservationManager ticketReservationManager,
                                     FileUploadManager fileUploadManager,
-                                    TemplateManager templateManager) {
-        this.eventRepository = eventRepository;
+                                    TemplateManager templateManager,
+                                    InvoiceExportManager invoiceExportManager,
+                                    EventContextResolver eventContextResolver) {
         this.ticketReservationManager = ticketReservationManager;
         this.fileUploadManager = fileUploadManager;
         this.templateManager = templateManager;
+        this.invoiceExportManager = invoiceExportManager;
+        this.eventContextResolver = eventContextResolver;
     }
 
     private ResponseEntity<Void> handleReservationWith(String eventName, String reservationId, BiFunction<Event, TicketReservation, ResponseEntity<Void>> with) {
         ResponseEntity<Void> notFound = ResponseEntity.notFound().build();
-        return eventRepository.findOptionalByShortName(eventName).map(event ->
+        return eventContextResolver.findEvent(eventName).map(event ->
             ticketReservationManager.findById(reservationId).map(ticketReservation ->
                 with.apply(event, ticketReservation)).orElse(notFound)
         ).orElse(notFound);
@@ -111,7 +115,7 @@ public class InvoiceReceiptController {
                 return ResponseEntity.notFound().build();
             }
 
-            Optional<byte[]> res = buildDocument(event, reservation, model -> TemplateProcessor.buildInvoicePdf(event, fileUploadManager, new Locale(reservation.getUserLanguage()), templateManager, model));
+            Optional<byte[]> res = invoiceExportManager.getInvoicePdf(event, reservation);
             boolean success = sendPdf(res, response, eventName, reservationId, "invoice");
             return success ? ResponseEntity.ok(null) : ResponseEntity.<Void>status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         });
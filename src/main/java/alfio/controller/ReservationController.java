@@ -19,6 +19,7 @@ package alfio.controller;
 import alfio.controller.api.support.TicketHelper;
 import alfio.controller.form.PaymentForm;
 import alfio.controller.form.UpdateTicketOwnerForm;
+import alfio.controller.support.EventContextResolver;
 import alfio.controller.support.SessionUtil;
 import alfio.controller.support.TicketDecorator;
 import alfio.manager.*;
@@ -83,6 +84,7 @@ public class ReservationController {
     private final PaymentManager paymentManager;
     private final TicketRepository ticketRepository;
     private final EuVatChecker vatChecker;
+    private final EventContextResolver eventContextResolver;
 
     @RequestMapping(value = "/event/{eventName}/reservation/{reservationId}/book", method = RequestMethod.GET)
     public String showPaymentPage(@PathVariable("eventName") String eventName,
@@ -102,7 +104,7 @@ public class ReservationController {
                                   Model model,
                                   Locale locale) {
 
-        return eventRepository.findOptionalByShortName(eventName)
+        return eventContextResolver.findEvent(eventName)
             .map(event -> ticketReservationManager.findById(reservationId)
                 .map(reservation -> {
 
@@ -194,7 +196,7 @@ public class ReservationController {
                                        Locale locale,
                                        HttpServletRequest request) {
 
-        return eventRepository.findOptionalByShortName(eventName).map(ev -> {
+        return eventContextResolver.findEvent(eventName).map(ev -> {
             Optional<TicketReservation> tr = ticketReservationManager.findById(reservationId);
             return tr.filter(r -> r.getStatus() == TicketReservationStatus.COMPLETE)
                 .map(reservation -> {
@@ -244,7 +246,7 @@ public class ReservationController {
                                        @RequestParam(value = "confirmation-email-sent", required = false, defaultValue = "false") boolean confirmationEmailSent,
                                        @RequestParam(value = "ticket-email-sent", required = false, defaultValue = "false") boolean ticketEmailSent,
                                        Model model) {
-        Optional<Event> event = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> event = eventContextResolver.findEvent(eventName);
         if (!event.isPresent()) {
             return "redirect:/";
         }
@@ -272,7 +274,7 @@ public class ReservationController {
     public String showReservationPage(@PathVariable("eventName") String eventName,
                                       @PathVariable("reservationId") String reservationId,
                                       Model model) {
-        Optional<Event> event = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> event = eventContextResolver.findEvent(eventName);
         if (!event.isPresent()) {
             return "redirect:/";
         }
@@ -285,7 +287,7 @@ public class ReservationController {
                                    @PathVariable("reservationId") String reservationId,
                                    Model model) {
 
-        Optional<Event> event = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> event = eventContextResolver.findEvent(eventName);
         if (!event.isPresent()) {
             return "redirect:/";
         }
@@ -307,7 +309,7 @@ public class ReservationController {
                                    @PathVariable("reservationId") String reservationId,
                                    Model model, Locale locale) {
 
-        Optional<Event> event = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> event = eventContextResolver.findEvent(eventName);
         if (!event.isPresent()) {
             return "redirect:/";
         }
@@ -368,7 +370,7 @@ public class ReservationController {
             @PathVariable("reservationId") String reservationId, PaymentForm paymentForm, BindingResult bindingResult,
             Model model, HttpServletRequest request, Locale locale, RedirectAttributes redirectAttributes) {
 
-        Optional<Event> eventOptional = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> eventOptional = eventContextResolver.findEvent(eventName);
         if (!eventOptional.isPresent()) {
             return "redirect:/";
         }
@@ -441,15 +443,7 @@ public class ReservationController {
 
     private void assignTickets(String eventName, String reservationId, PaymentForm paymentForm, BindingResult bindingResult, HttpServletRequest request, boolean preAssign) {
         if(!paymentForm.isPostponeAssignment()) {
-            paymentForm.getTickets().forEach((ticketId, owner) -> {
-                if (preAssign) {
-                    ticketHelper.preAssignTicket(eventName, reservationId, ticketId, owner, Optional.of(bindingResult), request, (tr) -> {
-                    }, Optional.empty());
-                } else {
-                    ticketHelper.assignTicket(eventName, ticketId, owner, Optional.of(bindingResult), request, (tr) -> {
-                    }, Optional.empty());
-                }
-            });
+            ticketHelper.assignTickets(eventName, reservationId, paymentForm.getTickets(), Optional.of(bindingResult), request, preAssign);
         }
     }
 
@@ -457,7 +451,7 @@ public class ReservationController {
     public String reSendReservationConfirmationEmail(@PathVariable("eventName") String eventName,
             @PathVariable("reservationId") String reservationId, HttpServletRequest request) {
 
-        Optional<Event> event = eventRepository.findOptionalByShortName(eventName);
+        Optional<Event> event = eventContextResolver.findEvent(eventName);
         if (!event.isPresent()) {
             return "redirect:/";
         }
@@ -19,6 +19,7 @@ package alfio.controller;
 import alfio.controller.api.support.TicketHelper;
 import alfio.controller.support.TemplateProcessor;
 import alfio.controller.support.TicketDecorator;
+import alfio.manager.EventCacheManager;
 import alfio.manager.EventManager;
 import alfio.manager.FileUploadManager;
 import alfio.manager.NotificationManager;
@@ -32,7 +33,6 @@ import alfio.model.TicketReservation;
 import alfio.model.system.Configuration;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.user.Organization;
-import alfio.repository.TicketCategoryRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.util.ImageUtil;
 import alfio.util.LocaleUtil;
@@ -60,7 +60,7 @@ public class TicketController {
 
     private final OrganizationRepository organizationRepository;
     private final TicketReservationManager ticketReservationManager;
-    private final TicketCategoryRepository ticketCategoryRepository;
+    private final EventCacheManager eventCacheManager;
     private final TemplateManager templateManager;
     private final NotificationManager notificationManager;
     private final EventManager eventManager;
@@ -71,7 +71,7 @@ public class TicketController {
     @Autowired
     public TicketController(OrganizationRepository organizationRepository,
                             TicketReservationManager ticketReservationManager,
-                            TicketCategoryRepository ticketCategoryRepository,
+                            EventCacheManager eventCacheManager,
                             TemplateManager templateManager,
                             NotificationManager notificationManager,
                             EventManager eventManager,
@@ -80,7 +80,7 @@ public class TicketController {
                             TicketHelper ticketHelper) {
         this.organizationRepository = organizationRepository;
         this.ticketReservationManager = ticketReservationManager;
-        this.ticketCategoryRepository = ticketCategoryRepository;
+        this.eventCacheManager = eventCacheManager;
         this.templateManager = templateManager;
         this.notificationManager = notificationManager;
         this.eventManager = eventManager;
@@ -134,7 +134,7 @@ public class TicketController {
         }
         Triple<Event, TicketReservation, Ticket> data = oData.get();
         Event event = data.getLeft();
-        TicketCategory ticketCategory = ticketCategoryRepository.getById(data.getRight().getCategoryId(), event.getId());
+        TicketCategory ticketCategory = eventCacheManager.getTicketCategory(data.getRight().getCategoryId(), event.getId());
         Organization organization = organizationRepository.getById(event.getOrganizationId());
 
         boolean enableFreeCancellation = configurationManager.getBooleanConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), ticketCategory.getId(), ALLOW_FREE_TICKETS_CANCELLATION), false);
@@ -176,7 +176,7 @@ public class TicketController {
         Organization organization = organizationRepository.getById(event.getOrganizationId());
         notificationManager.sendTicketByEmail(ticket,
             event, locale, TemplateProcessor.buildPartialEmail(event, organization, reservation, templateManager, ticketReservationManager.ticketUpdateUrl(event, ticket.getUuid()), request),
-            reservation, ticketCategoryRepository.getById(ticket.getCategoryId(), event.getId()));
+            reservation, eventCacheManager.getTicketCategory(ticket.getCategoryId(), event.getId()));
         return ticket;
     }
 
@@ -234,7 +234,7 @@ public class TicketController {
     }
 
     private PartialTicketPDFGenerator preparePdfTicket(HttpServletRequest request, Event event, TicketReservation ticketReservation, Ticket ticket) throws WriterException, IOException {
-        TicketCategory ticketCategory = ticketCategoryRepository.getById(ticket.getCategoryId(), event.getId());
+        TicketCategory ticketCategory = eventCacheManager.getTicketCategory(ticket.getCategoryId(), event.getId());
         Organization organization = organizationRepository.getById(event.getOrganizationId());
         String reservationID = ticketReservationManager.getShortReservationID(event, ticketReservation.getId());
         return TemplateProcessor.buildPartialPDFTicket(LocaleUtil.getTicketLanguage(ticket, request), event, ticketReservation,
@@ -249,7 +249,7 @@ public class TicketController {
         Triple<Event, TicketReservation, Ticket> data = oData.get();
 
 
-        TicketCategory ticketCategory = ticketCategoryRepository.getById(data.getRight().getCategoryId(), data.getLeft().getId());
+        TicketCategory ticketCategory = eventCacheManager.getTicketCategory(data.getRight().getCategoryId(), data.getLeft().getId());
         Organization organization = organizationRepository.getById(data.getLeft().getOrganizationId());
         Event event = data.getLeft();
 
@@ -17,9 +17,9 @@
 package alfio.controller;
 
 import alfio.controller.form.WaitingQueueSubscriptionForm;
+import alfio.controller.support.EventContextResolver;
 import alfio.manager.WaitingQueueManager;
 import alfio.model.Event;
-import alfio.repository.EventRepository;
 import alfio.util.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -35,18 +35,18 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 public class WaitingQueueController {
 
     private final WaitingQueueManager waitingQueueManager;
-    private final EventRepository eventRepository;
+    private final EventContextResolver eventContextResolver;
 
     @Autowired
     public WaitingQueueController(WaitingQueueManager waitingQueueManager,
-                                  EventRepository eventRepository) {
+                                  EventContextResolver eventContextResolver) {
         this.waitingQueueManager = waitingQueueManager;
-        this.eventRepository = eventRepository;
+        this.eventContextResolver = eventContextResolver;
     }
 
     @RequestMapping(value = "/event/{eventName}/waiting-queue/subscribe", method = RequestMethod.POST)
     public String subscribe(@ModelAttribute WaitingQueueSubscriptionForm subscription, BindingResult bindingResult, Model model, @PathVariable("eventName") String eventName, RedirectAttributes redirectAttributes) {
-        Event event = eventRepository.findOptionalByShortName(eventName).orElseThrow(IllegalArgumentException::new);
+        Event event = eventContextResolver.findEvent(eventName).orElseThrow(IllegalArgumentException::new);
         Validator.validateWaitingQueueSubscription(subscription, bindingResult, event).ifSuccess(() -> {
             if(waitingQueueManager.subscribe(event, subscription.toCustomerName(event), subscription.getEmail(), subscription.getSelectedCategory(), subscription.getUserLanguage())) {
                 redirectAttributes.addFlashAttribute("subscriptionComplete", true);
@@ -16,21 +16,14 @@
  */
 package alfio.controller.api;
 
-import alfio.controller.api.support.DescriptionsLoader;
 import alfio.controller.api.support.EventListItem;
 import alfio.controller.api.support.PublicCategory;
 import alfio.controller.api.support.PublicEvent;
+import alfio.controller.support.PublicEventSnapshot;
+import alfio.controller.support.PublicEventSnapshotManager;
+import alfio.manager.EventCacheManager;
 import alfio.manager.EventManager;
 import alfio.manager.TicketReservationManager;
-import alfio.manager.system.ConfigurationManager;
-import alfio.model.Event;
-import alfio.model.TicketCategory;
-import alfio.model.system.Configuration;
-import alfio.model.system.ConfigurationKeys;
-import alfio.model.user.Organization;
-import alfio.repository.EventRepository;
-import alfio.repository.TicketCategoryRepository;
-import alfio.repository.user.OrganizationRepository;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -43,6 +36,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
@@ -51,28 +45,19 @@ import java.util.stream.Collectors;
 public class EventPublicApiController {
 
     private final EventManager eventManager;
-    private final OrganizationRepository organizationRepository;
-    private final EventRepository eventRepository;
-    private final TicketCategoryRepository ticketCategoryRepository;
+    private final EventCacheManager eventCacheManager;
     private final TicketReservationManager ticketReservationManager;
-    private final ConfigurationManager configurationManager;
-    private final DescriptionsLoader descriptionsLoader;
+    private final PublicEventSnapshotManager publicEventSnapshotManager;
 
     @Autowired
     public EventPublicApiController(EventManager eventManager,
-                                    OrganizationRepository organizationRepository,
-                                    EventRepository eventRepository,
-                                    TicketCategoryRepository ticketCategoryRepository,
+                                    EventCacheManager eventCacheManager,
                                     TicketReservationManager ticketReservationManager,
-                                    ConfigurationManager configurationManager,
-                                    DescriptionsLoader descriptionsLoader) {
+                                    PublicEventSnapshotManager publicEventSnapshotManager) {
         this.eventManager = eventManager;
-        this.organizationRepository = organizationRepository;
-        this.eventRepository = eventRepository;
-        this.ticketCategoryRepository = ticketCategoryRepository;
+        this.eventCacheManager = eventCacheManager;
         this.ticketReservationManager = ticketReservationManager;
-        this.configurationManager = configurationManager;
-        this.descriptionsLoader = descriptionsLoader;
+        this.publicEventSnapshotManager = publicEventSnapshotManager;
     }
 
     @ExceptionHandler(RuntimeException.class)
@@ -84,21 +69,22 @@ public class EventPublicApiController {
     @RequestMapping("/events")
     public ResponseEntity<List<EventListItem>> getEvents(HttpServletRequest request) {
         List<EventListItem> events = eventManager.getPublishedEvents().stream()
-            .map(e -> new EventListItem(e, request.getContextPath(), descriptionsLoader.eventDescriptions()))
+            .map(e -> new EventListItem(e, request.getContextPath(), publicEventSnapshotManager.getSnapshot(e).eventDescriptions()))
             .collect(Collectors.toList());
         return new ResponseEntity<>(events, getCorsHeaders(), HttpStatus.OK);
     }
 
     @RequestMapping("/events/{shortName}")
     public ResponseEntity<PublicEvent> getEvent(@PathVariable("shortName") String shortName, HttpServletRequest request) {
-        return eventRepository.findOptionalByShortName(shortName)
+        return eventCacheManager.findEventByShortName(shortName)
             .map(e -> {
-                List<PublicCategory> categories = ticketCategoryRepository.findAllTicketCategories(e.getId()).stream()
-                    .filter((c) -> !c.isAccessRestricted())
-                    .map(c -> buildPublicCategory(c, e))
+                PublicEventSnapshot snapshot = publicEventSnapshotManager.getSnapshot(e);
+                Map<Integer, Integer> availableTickets = ticketReservationManager.countAvailableTickets(e, snapshot.getTicketCategories());
+                List<PublicCategory> categories = snapshot.getCategories().stream()
+                    .filter((c) -> !c.getTicketCategory().isAccessRestricted())
+                    .map(c -> new PublicCategory(c.getTicketCategory(), e, availableTickets.get(c.getTicketCategory().getId()), c.getMaxTicketsPerReservation(), snapshot.ticketCategoryDescriptions()))
                     .collect(Collectors.toList());
-                Organization organization = organizationRepository.getById(e.getOrganizationId());
-                return new ResponseEntity<>(new PublicEvent(e, request.getContextPath(), descriptionsLoader.eventDescriptions(), categories, organization), getCorsHeaders(), HttpStatus.OK);
+                return new ResponseEntity<>(new PublicEvent(e, request.getContextPath(), snapshot.eventDescriptions(), categories, snapshot.getOrganization()), getCorsHeaders(), HttpStatus.OK);
             })
             .orElseGet(() -> new ResponseEntity<>(getCorsHeaders(), HttpStatus.NOT_FOUND));
     }
@@ -109,11 +95,4 @@ public class EventPublicApiController {
         return headers;
     }
 
-    private PublicCategory buildPublicCategory(TicketCategory c, Event e) {
-        return new PublicCategory(c, e,
-            ticketReservationManager.countAvailableTickets(e, c),
-            configurationManager.getIntConfigValue(Configuration.from(e.getOrganizationId(), e.getId(), c.getId(), ConfigurationKeys.MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), 5),
-            descriptionsLoader.ticketCategoryDescriptions());
-    }
-
 }
@@ -16,6 +16,7 @@
  */
 package alfio.controller.api.admin;
 
+import alfio.manager.EventCacheManager;
 import alfio.model.AdditionalService;
 import alfio.model.Event;
 import alfio.model.PriceContainer;
@@ -54,14 +55,17 @@ public class AdditionalServiceApiController {
     private final EventRepository eventRepository;
     private final AdditionalServiceRepository additionalServiceRepository;
     private final AdditionalServiceTextRepository additionalServiceTextRepository;
+    private final EventCacheManager eventCacheManager;
 
     @Autowired
     public AdditionalServiceApiController(EventRepository eventRepository,
                                           AdditionalServiceRepository additionalServiceRepository,
-                                          AdditionalServiceTextRepository additionalServiceTextRepository) {
+                                          AdditionalServiceTextRepository additionalServiceTextRepository,
+                                          EventCacheManager eventCacheManager) {
         this.eventRepository = eventRepository;
         this.additionalServiceRepository = additionalServiceRepository;
         this.additionalServiceTextRepository = additionalServiceTextRepository;
+        this.eventCacheManager = eventCacheManager;
     }
 
     @ExceptionHandler({IllegalArgumentException.class})
@@ -109,6 +113,7 @@ public class AdditionalServiceApiController {
                             additionalServiceTextRepository.insert(additionalService.getId(), t.getLocale(), t.getType(), t.getValue());
                         }
                     });
+                eventCacheManager.invalidate(eventId);
                 return ResponseEntity.ok(additionalService);
             }).orElseThrow(IllegalArgumentException::new);
     }
@@ -136,6 +141,7 @@ public class AdditionalServiceApiController {
                 int id = result.getKey();
                 Stream.concat(additionalService.getTitle().stream(), additionalService.getDescription().stream()).
                     forEach(t -> additionalServiceTextRepository.insert(id, t.getLocale(), t.getType(), t.getValue()));
+                eventCacheManager.invalidate(eventId);
 
                 return ResponseEntity.ok(EventModification.AdditionalService.from(additionalServiceRepository.getById(result.getKey(), eventId))
                     .withText(additionalServiceTextRepository.findAllByAdditionalServiceId(result.getKey()))
@@ -155,6 +161,7 @@ public class AdditionalServiceApiController {
                     log.debug("deleted {} texts", deletedTexts);
                     //TODO add configuration fields and values
                     additionalServiceRepository.delete(additionalServiceId, eventId);
+                    eventCacheManager.invalidate(eventId);
                     log.debug("additional service #{} successfully deleted", additionalServiceId);
                     return ResponseEntity.ok("OK");
                 })
@@ -27,6 +27,7 @@ import alfio.repository.EventRepository;
 import alfio.util.MonetaryUtil;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -63,6 +64,13 @@ public class AdminReservationApiController {
         return adminReservationManager.createReservation(reservation, eventName, principal.getName()).map(r -> r.getLeft().getId());
     }
 
+    @RequestMapping(value = "/event/{eventName}/bulk-new", method = RequestMethod.POST)
+    public List<Result<String>> createNewBulk(@PathVariable("eventName") String eventName, @RequestBody List<AdminReservationModification> reservations, Principal principal) {
+        return adminReservationManager.createReservations(reservations, eventName, principal.getName()).stream()
+            .map(result -> result.map(r -> r.getLeft().getId()))
+            .collect(Collectors.toList());
+    }
+
     @RequestMapping(value = "/event/{eventName}/reservations/list", method = RequestMethod.GET)
     public List<TicketReservation> findAll(@PathVariable("eventName") String eventName, Principal principal) {
         Event event = eventRepository.findByShortName(eventName);
@@ -70,6 +78,17 @@ public class AdminReservationApiController {
         return ticketReservationManager.findAllReservationsInEvent(event.getId());
     }
 
+    @RequestMapping(value = "/event/{eventName}/reservations/page", method = RequestMethod.GET)
+    public Page<TicketReservation> findPage(@PathVariable("eventName") String eventName,
+                                            @RequestParam(value = "cursor", required = false) String cursor,
+                                            @RequestParam(value = "search", required = false) String search,
+                                            @RequestParam(value = "limit", required = false) Integer limit,
+                                            Principal principal) {
+        Event event = eventRepository.findByShortName(eventName);
+        eventManager.checkOwnership(event, principal.getName(), event.getOrganizationId());
+        return ticketReservationManager.findReservationsInEvent(event.getId(), Optional.ofNullable(StringUtils.trimToNull(cursor)), search, limit);
+    }
+
     @RequestMapping(value = "/event/{eventName}/{reservationId}/confirm", method = RequestMethod.PUT)
     public Result<TicketReservationDescriptor> confirmReservation(@PathVariable("eventName") String eventName, @PathVariable("reservationId") String reservationId, Principal principal) {
         return adminReservationManager.confirmReservation(eventName, reservationId, principal.getName())
@@ -19,13 +19,17 @@ package alfio.controller.api.admin;
 import alfio.manager.CheckInManager;
 import alfio.manager.support.TicketAndCheckInResult;
 import alfio.model.FullTicketInfo;
+import alfio.model.Page;
+import alfio.model.audit.ScanAudit;
 import lombok.Data;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
+import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -117,6 +121,23 @@ public class CheckInApiController {
         return checkInManager.findAllFullTicketInfo(eventId);
     }
 
+    @RequestMapping(value = "/check-in/{eventId}/tickets/page", method = GET)
+    public Page<FullTicketInfo> listTickets(@PathVariable("eventId") int eventId,
+                                            @RequestParam(value = "cursor", required = false) String cursor,
+                                            @RequestParam(value = "search", required = false) String search,
+                                            @RequestParam(value = "limit", required = false) Integer limit) {
+        return checkInManager.findFullTicketInfo(eventId, Optional.ofNullable(StringUtils.trimToNull(cursor)), search, limit);
+    }
+
+    @RequestMapping(value = "/check-in/{eventId}/audit", method = GET)
+    public Page<ScanAudit> listScanAudit(@PathVariable("eventId") int eventId,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+                                         @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to,
+                                         @RequestParam(value = "limit", required = false) Integer limit) {
+        return checkInManager.findScanAudit(eventId, Optional.ofNullable(StringUtils.trimToNull(cursor)), from, to, limit);
+    }
+
     @RequestMapping(value = "/check-in/{eventName}/offline", method = RequestMethod.GET)
     public Map<String, String> getOfflineEncryptedInfo(@PathVariable("eventName") String eventName) {
         return checkInManager.getEncryptedAttendeesInformation(eventName, Collections.singleton("company"));
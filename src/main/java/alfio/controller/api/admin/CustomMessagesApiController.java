@@ -17,6 +17,7 @@
 package alfio.controller.api.admin;
 
 import alfio.manager.support.CustomMessageManager;
+import alfio.model.MessageCampaign;
 import alfio.model.modification.MessageModification;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -53,11 +54,16 @@ public class CustomMessagesApiController {
     }
 
     @RequestMapping(value= "/send", method = RequestMethod.POST)
-    public void send(@PathVariable("eventName") String eventName,
+    public int send(@PathVariable("eventName") String eventName,
                     @RequestParam(required = false, value = "categoryId") Integer categoryId,
                     @RequestBody List<MessageModification> messageModifications,
                     Principal principal) {
-        customMessageManager.sendMessages(eventName, Optional.ofNullable(categoryId), messageModifications, principal.getName());
+        return customMessageManager.sendMessages(eventName, Optional.ofNullable(categoryId), messageModifications, principal.getName());
+    }
+
+    @RequestMapping(value= "/campaigns", method = RequestMethod.GET)
+    public List<MessageCampaign> loadCampaigns(@PathVariable("eventName") String eventName, Principal principal) {
+        return customMessageManager.loadCampaigns(eventName, principal.getName());
     }
 
 }
@@ -0,0 +1,69 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.admin;
+
+import alfio.config.support.ConnectionPoolMetrics;
+import alfio.config.support.LatencyStatistics;
+import alfio.config.support.QueryInstrumentation;
+import alfio.manager.EventCacheManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+@RestController
+@RequestMapping("/admin/api/metrics/database")
+public class DatabaseMetricsApiController {
+
+    private final QueryInstrumentation queryInstrumentation;
+    private final ConnectionPoolMetrics connectionPoolMetrics;
+    private final EventCacheManager eventCacheManager;
+
+    @Autowired
+    public DatabaseMetricsApiController(QueryInstrumentation queryInstrumentation,
+                                        ConnectionPoolMetrics connectionPoolMetrics,
+                                        EventCacheManager eventCacheManager) {
+        this.queryInstrumentation = queryInstrumentation;
+        this.connectionPoolMetrics = connectionPoolMetrics;
+        this.eventCacheManager = eventCacheManager;
+    }
+
+    @RequestMapping(value = "/queries", method = GET)
+    public Map<String, LatencyStatistics> getQueryStatistics() {
+        return queryInstrumentation.getStatistics();
+    }
+
+    @RequestMapping(value = "/queries", method = DELETE)
+    public boolean resetQueryStatistics() {
+        queryInstrumentation.reset();
+        return true;
+    }
+
+    @RequestMapping(value = "/connection-pool", method = GET)
+    public Map<String, Object> getConnectionPoolMetrics() {
+        return connectionPoolMetrics.getSnapshot();
+    }
+
+    @RequestMapping(value = "/entity-cache", method = GET)
+    public Map<String, Map<String, Number>> getEntityCacheStatistics() {
+        return eventCacheManager.getStatistics();
+    }
+}
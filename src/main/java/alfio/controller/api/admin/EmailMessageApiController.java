@@ -20,18 +20,20 @@ import alfio.manager.EventManager;
 import alfio.manager.NotificationManager;
 import alfio.model.EmailMessage;
 import alfio.model.Event;
+import alfio.model.LightweightMailMessage;
+import alfio.model.Page;
 import lombok.AllArgsConstructor;
 import lombok.experimental.Delegate;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.security.Principal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -49,12 +51,39 @@ public class EmailMessageApiController {
     }
 
     @RequestMapping("/")
-    public List<LightweightEmailMessage> loadEmailMessages(@PathVariable("eventName") String eventName, Principal principal) {
+    public Page<LightweightEmailMessage> loadEmailMessages(@PathVariable("eventName") String eventName,
+                                                           @RequestParam(value = "cursor", required = false) String cursor,
+                                                           @RequestParam(value = "search", required = false) String search,
+                                                           @RequestParam(value = "limit", required = false) Integer limit,
+                                                           Principal principal) {
         Event event = eventManager.getSingleEvent(eventName, principal.getName());
         ZoneId zoneId = event.getZoneId();
-        return notificationManager.loadAllMessagesForEvent(event.getId()).stream()
-            .map(m -> new LightweightEmailMessage(m, zoneId, true))
-            .collect(Collectors.toList());
+        Page<LightweightMailMessage> page = notificationManager.loadAllMessagesForEvent(event.getId(), Optional.ofNullable(StringUtils.trimToNull(cursor)), search, limit);
+        return new Page<>(page.getContent().stream().map(m -> new LightweightEmailMessage(m, zoneId, true)).collect(Collectors.toList()), page.getNextCursor());
+    }
+
+    @RequestMapping("/page")
+    public Page<LightweightEmailMessage> loadEmailMessagesPage(@PathVariable("eventName") String eventName,
+                                                               @RequestParam(value = "cursor", required = false) String cursor,
+                                                               @RequestParam(value = "search", required = false) String search,
+                                                               @RequestParam(value = "limit", required = false) Integer limit,
+                                                               Principal principal) {
+        Event event = eventManager.getSingleEvent(eventName, principal.getName());
+        ZoneId zoneId = event.getZoneId();
+        Page<LightweightMailMessage> page = notificationManager.loadMessagesForEvent(event.getId(), Optional.ofNullable(StringUtils.trimToNull(cursor)), search, limit);
+        return new Page<>(page.getContent().stream().map(m -> new LightweightEmailMessage(m, zoneId, true)).collect(Collectors.toList()), page.getNextCursor());
+    }
+
+    @RequestMapping("/archive/page")
+    public Page<LightweightEmailMessage> loadArchivedEmailMessagesPage(@PathVariable("eventName") String eventName,
+                                                                       @RequestParam(value = "cursor", required = false) String cursor,
+                                                                       @RequestParam(value = "search", required = false) String search,
+                                                                       @RequestParam(value = "limit", required = false) Integer limit,
+                                                                       Principal principal) {
+        Event event = eventManager.getSingleEvent(eventName, principal.getName());
+        ZoneId zoneId = event.getZoneId();
+        Page<LightweightMailMessage> page = notificationManager.loadArchivedMessagesForEvent(event.getId(), Optional.ofNullable(StringUtils.trimToNull(cursor)), search, limit);
+        return new Page<>(page.getContent().stream().map(m -> new LightweightEmailMessage(m, zoneId, true)).collect(Collectors.toList()), page.getNextCursor());
     }
 
     @RequestMapping("/{messageId}")
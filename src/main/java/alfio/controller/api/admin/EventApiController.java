@@ -16,10 +16,10 @@
  */
 package alfio.controller.api.admin;
 
+import alfio.config.support.ReplicaRoutingDataSource;
 import alfio.controller.api.support.DescriptionsLoader;
 import alfio.controller.api.support.EventListItem;
 import alfio.controller.api.support.TicketHelper;
-import alfio.controller.support.TemplateProcessor;
 import alfio.manager.*;
 import alfio.manager.i18n.I18nManager;
 import alfio.manager.user.UserManager;
@@ -32,9 +32,7 @@ import alfio.repository.DynamicFieldTemplateRepository;
 import alfio.repository.SponsorScanRepository;
 import alfio.repository.TicketCategoryDescriptionRepository;
 import alfio.repository.TicketFieldRepository;
-import alfio.util.Json;
 import alfio.util.MonetaryUtil;
-import alfio.util.TemplateManager;
 import alfio.util.Validator;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
@@ -42,13 +40,11 @@ import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.ui.Model;
-import org.springframework.util.StreamUtils;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.*;
 
@@ -59,7 +55,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.math.BigDecimal;
 import java.security.Principal;
 import java.time.ZoneId;
 import java.util.*;
@@ -67,8 +62,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import static alfio.util.OptionalWrapper.optionally;
 import static alfio.util.Validator.*;
@@ -92,8 +85,8 @@ public class EventApiController {
     private final UserManager userManager;
     private final SponsorScanRepository sponsorScanRepository;
     private final PaymentManager paymentManager;
-    private final TemplateManager templateManager;
-    private final FileUploadManager fileUploadManager;
+    private final InvoiceExportManager invoiceExportManager;
+    private final OfflinePaymentReconciliationManager offlinePaymentReconciliationManager;
 
     @Autowired
     public EventApiController(EventManager eventManager,
@@ -108,8 +101,8 @@ public class EventApiController {
                               UserManager userManager,
                               SponsorScanRepository sponsorScanRepository,
                               PaymentManager paymentManager,
-                              TemplateManager templateManager,
-                              FileUploadManager fileUploadManager) {
+                              InvoiceExportManager invoiceExportManager,
+                              OfflinePaymentReconciliationManager offlinePaymentReconciliationManager) {
         this.eventManager = eventManager;
         this.eventStatisticsManager = eventStatisticsManager;
         this.i18nManager = i18nManager;
@@ -122,8 +115,8 @@ public class EventApiController {
         this.userManager = userManager;
         this.sponsorScanRepository = sponsorScanRepository;
         this.paymentManager = paymentManager;
-        this.templateManager = templateManager;
-        this.fileUploadManager = fileUploadManager;
+        this.invoiceExportManager = invoiceExportManager;
+        this.offlinePaymentReconciliationManager = offlinePaymentReconciliationManager;
     }
 
     @ExceptionHandler(DataAccessException.class)
@@ -273,6 +266,14 @@ public class EventApiController {
         return OK;
     }
 
+    @RequestMapping(value = "/events/{eventName}/ticket-operation-progress", method = GET)
+    public ResponseEntity<EventManager.TicketOperationProgress> getTicketOperationProgress(@PathVariable("eventName") String eventName, Principal principal) {
+        Event event = loadEvent(eventName, principal);
+        return eventManager.getTicketOperationProgress(event.getId())
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     private static final List<String> FIXED_FIELDS = Arrays.asList("ID", "Creation", "Category", "Event", "Status", "OriginalPrice", "PaidPrice", "Discount", "VAT", "ReservationID", "Full Name", "First Name", "Last Name", "E-Mail", "Locked", "Language", "Confirmation", "Billing Address");
     private static final int[] BOM_MARKERS = new int[] {0xEF, 0xBB, 0xBF};
 
@@ -339,42 +340,45 @@ public class EventApiController {
         response.setContentType("text/csv;charset=UTF-8");
         response.setHeader("Content-Disposition", "attachment; filename=" + eventName + "-sponsor-scan.csv");
 
-        try(ServletOutputStream out = response.getOutputStream(); CSVWriter writer = new CSVWriter(new OutputStreamWriter(out))) {
-            for (int marker : BOM_MARKERS) {
-                out.write(marker);
-            }
+        // the scans are loaded lazily while writing, so the whole export runs in reporting mode
+        ReplicaRoutingDataSource.reporting(() -> {
+            try(ServletOutputStream out = response.getOutputStream(); CSVWriter writer = new CSVWriter(new OutputStreamWriter(out))) {
+                for (int marker : BOM_MARKERS) {
+                    out.write(marker);
+                }
             
-            List<String> header = new ArrayList<>();
-            header.add("Username");
-            header.add("Timestamp");
-            header.add("Full name");
-            header.add("Email");
-            header.addAll(fields.stream().map(TicketFieldConfiguration::getName).collect(Collectors.toList()));
-            writer.writeNext(header.toArray(new String[header.size()]));
-            userManager.findAllEnabledUsers(principal.getName()).stream()
-                .map(u -> Pair.of(u, userManager.getUserRole(u)))
-                .filter(p -> p.getRight() == Role.SPONSOR)
-                .flatMap(p -> sponsorScanRepository.loadSponsorData(event.getId(), p.getKey().getId(), SponsorScanRepository.DEFAULT_TIMESTAMP)
-                    .stream()
-                    .map(v -> Pair.of(v, ticketFieldRepository.findAllValuesForTicketId(v.getTicket().getId()))))
-                .map(p -> {
-                    DetailedScanData data = p.getLeft();
-                    Map<String, String> descriptions = p.getRight();
-                    return Pair.of(data, fields.stream().map(x -> descriptions.getOrDefault(x.getName(), "")).collect(Collectors.toList()));
-                }).map(p -> {
-                    List<String> line = new ArrayList<>();
-                    Ticket ticket = p.getLeft().getTicket();
-                    SponsorScan sponsorScan = p.getLeft().getSponsorScan();
-                    line.add(userManager.findUser(sponsorScan.getUserId()).getUsername());
-                    line.add(sponsorScan.getTimestamp().toString());
-                    line.add(ticket.getFullName());
-                    line.add(ticket.getEmail());
-                    line.addAll(p.getRight());
-                    return line.toArray(new String[line.size()]);
-                }).forEachOrdered(writer::writeNext);
-            writer.flush();
-            out.flush();
-        }
+                List<String> header = new ArrayList<>();
+                header.add("Username");
+                header.add("Timestamp");
+                header.add("Full name");
+                header.add("Email");
+                header.addAll(fields.stream().map(TicketFieldConfiguration::getName).collect(Collectors.toList()));
+                writer.writeNext(header.toArray(new String[header.size()]));
+                userManager.findAllEnabledUsers(principal.getName()).stream()
+                    .map(u -> Pair.of(u, userManager.getUserRole(u)))
+                    .filter(p -> p.getRight() == Role.SPONSOR)
+                    .flatMap(p -> sponsorScanRepository.streamSponsorData(event.getId(), p.getKey().getId(), Page.MAX_SIZE)
+                        .map(v -> Pair.of(v, ticketFieldRepository.findAllValuesForTicketId(v.getTicket().getId()))))
+                    .map(p -> {
+                        DetailedScanData data = p.getLeft();
+                        Map<String, String> descriptions = p.getRight();
+                        return Pair.of(data, fields.stream().map(x -> descriptions.getOrDefault(x.getName(), "")).collect(Collectors.toList()));
+                    }).map(p -> {
+                        List<String> line = new ArrayList<>();
+                        Ticket ticket = p.getLeft().getTicket();
+                        SponsorScan sponsorScan = p.getLeft().getSponsorScan();
+                        line.add(userManager.findUser(sponsorScan.getUserId()).getUsername());
+                        line.add(sponsorScan.getTimestamp().toString());
+                        line.add(ticket.getFullName());
+                        line.add(ticket.getEmail());
+                        line.addAll(p.getRight());
+                        return line.toArray(new String[line.size()]);
+                    }).forEachOrdered(writer::writeNext);
+                writer.flush();
+                out.flush();
+            }
+            return null;
+        });
     }
 
     @RequestMapping("/events/{eventName}/fields")
@@ -444,28 +448,24 @@ public class EventApiController {
     }
 
     @RequestMapping(value = "/events/{eventName}/pending-payments/bulk-confirmation", method = POST)
-    public List<Triple<Boolean, String, String>> bulkConfirmation(@PathVariable("eventName") String eventName,
-                                                                  Principal principal,
-                                                                  @RequestBody UploadBase64FileModification file) throws IOException {
+    public OfflinePaymentReconciliation bulkConfirmation(@PathVariable("eventName") String eventName,
+                                                         Principal principal,
+                                                         @RequestBody UploadBase64FileModification file) throws IOException {
 
         try(InputStreamReader isr = new InputStreamReader(file.getInputStream()); CSVReader reader = new CSVReader(isr)) {
-            Event event = loadEvent(eventName, principal);
-            return reader.readAll().stream()
-                    .map(line -> {
-                        String reservationID = null;
-                        try {
-                            Validate.isTrue(line.length >= 2);
-                            reservationID = line[0];
-                            ticketReservationManager.validateAndConfirmOfflinePayment(reservationID, event, new BigDecimal(line[1]));
-                            return Triple.of(Boolean.TRUE, reservationID, "");
-                        } catch (Exception e) {
-                            return Triple.of(Boolean.FALSE, Optional.ofNullable(reservationID).orElse(""), e.getMessage());
-                        }
-                    })
-                    .collect(Collectors.toList());
+            return offlinePaymentReconciliationManager.startReconciliation(eventName, reader.readAll(), principal.getName());
         }
     }
 
+    @RequestMapping(value = "/events/{eventName}/pending-payments/bulk-confirmation/{reconciliationId}", method = GET)
+    public ResponseEntity<OfflinePaymentReconciliation> getBulkConfirmation(@PathVariable("eventName") String eventName,
+                                                                            @PathVariable("reconciliationId") int reconciliationId,
+                                                                            Principal principal) {
+        return offlinePaymentReconciliationManager.loadReconciliation(eventName, reconciliationId, principal.getName())
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @RequestMapping(value = "/events/{eventName}/categories/{categoryId}/tickets/{ticketId}/toggle-locking", method = PUT)
     public boolean toggleTicketLocking(@PathVariable("eventName") String eventName,
                                        @PathVariable("categoryId") int categoryId,
@@ -486,18 +486,40 @@ public class EventApiController {
         response.setContentType("application/zip");
         response.setHeader("Content-Disposition", "attachment; filename=" + eventName + "-invoices.zip");
 
-        try(OutputStream os = response.getOutputStream(); ZipOutputStream zipOS = new ZipOutputStream(os)) {
-            for (TicketReservation reservation : ticketReservationManager.findAllInvoices(event.getId())) {
-                OrderSummary orderSummary = Json.fromJson(reservation.getInvoiceModel(), OrderSummary.class);
-                Optional<String> vat = Optional.ofNullable(orderSummary.getVatPercentage());
-                Map<String, Object> reservationModel = ticketReservationManager.prepareModelForReservationEmail(event, reservation, vat, orderSummary);
-                Optional<byte[]> pdf = TemplateProcessor.buildInvoicePdf(event, fileUploadManager, new Locale(reservation.getUserLanguage()), templateManager, reservationModel);
+        try(OutputStream os = response.getOutputStream()) {
+            invoiceExportManager.exportInvoices(event, os);
+        }
+    }
 
-                if(pdf.isPresent()) {
-                    zipOS.putNextEntry(new ZipEntry("invoice-" + eventName + "-id-" + reservation.getId() + "-invoice-nr-" + reservation.getInvoiceNumber() + ".pdf"));
-                    StreamUtils.copy(pdf.get(), zipOS);
-                }
-            }
+    @RequestMapping(value = "/events/{eventName}/all-invoices/export", method = POST)
+    public InvoiceExportManager.ExportStatus startInvoicesExport(@PathVariable("eventName") String eventName, Principal principal) {
+        return invoiceExportManager.startExport(loadEvent(eventName, principal));
+    }
+
+    @RequestMapping(value = "/events/{eventName}/all-invoices/export/{exportId}", method = GET)
+    public ResponseEntity<InvoiceExportManager.ExportStatus> getInvoicesExport(@PathVariable("eventName") String eventName,
+                                                                               @PathVariable("exportId") String exportId,
+                                                                               Principal principal) {
+        Event event = loadEvent(eventName, principal);
+        return invoiceExportManager.getExport(event.getId(), exportId)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @RequestMapping(value = "/events/{eventName}/all-invoices/export/{exportId}/download", method = GET)
+    public void downloadInvoicesExport(@PathVariable("eventName") String eventName,
+                                       @PathVariable("exportId") String exportId,
+                                       HttpServletResponse response,
+                                       Principal principal) throws IOException {
+        Event event = loadEvent(eventName, principal);
+        if(!invoiceExportManager.getExport(event.getId(), exportId).filter(e -> e.getStatus() == InvoiceExportManager.ExportStatus.Status.COMPLETED).isPresent()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment; filename=" + eventName + "-invoices.zip");
+        try(OutputStream os = response.getOutputStream()) {
+            invoiceExportManager.downloadExport(event.getId(), exportId, os);
         }
     }
 
@@ -0,0 +1,51 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.admin;
+
+import alfio.config.support.LatencyStatistics;
+import alfio.manager.ShardedJobExecutor;
+import alfio.model.JobShardStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+@RestController
+@RequestMapping("/admin/api/metrics/jobs")
+public class JobMetricsApiController {
+
+    private final ShardedJobExecutor shardedJobExecutor;
+
+    @Autowired
+    public JobMetricsApiController(ShardedJobExecutor shardedJobExecutor) {
+        this.shardedJobExecutor = shardedJobExecutor;
+    }
+
+    @RequestMapping(value = "/shards", method = GET)
+    public List<JobShardStatus> getShardStatus() {
+        return shardedJobExecutor.getShardStatus();
+    }
+
+    @RequestMapping(value = "/local", method = GET)
+    public Map<String, LatencyStatistics> getLocalStatistics() {
+        return shardedJobExecutor.getLocalStatistics();
+    }
+}
@@ -19,6 +19,7 @@ package alfio.controller.api.support;
 import alfio.controller.form.UpdateTicketOwnerForm;
 import alfio.controller.support.TemplateProcessor;
 import alfio.manager.FileUploadManager;
+import alfio.manager.TicketFieldManager;
 import alfio.manager.TicketReservationManager;
 import alfio.manager.support.PartialTicketTextGenerator;
 import alfio.model.*;
@@ -64,6 +65,7 @@ public class TicketHelper {
     private final FileUploadManager fileUploadManager;
     private final TicketFieldRepository ticketFieldRepository;
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
+    private final TicketFieldManager ticketFieldManager;
 
     @Autowired
     public TicketHelper(TicketReservationManager ticketReservationManager,
@@ -73,7 +75,8 @@ public class TicketHelper {
                         TemplateManager templateManager,
                         FileUploadManager fileUploadManager,
                         TicketFieldRepository ticketFieldRepository,
-                        AdditionalServiceItemRepository additionalServiceItemRepository) {
+                        AdditionalServiceItemRepository additionalServiceItemRepository,
+                        TicketFieldManager ticketFieldManager) {
         this.ticketReservationManager = ticketReservationManager;
         this.organizationRepository = organizationRepository;
         this.ticketCategoryRepository = ticketCategoryRepository;
@@ -82,6 +85,7 @@ public class TicketHelper {
         this.fileUploadManager = fileUploadManager;
         this.ticketFieldRepository = ticketFieldRepository;
         this.additionalServiceItemRepository = additionalServiceItemRepository;
+        this.ticketFieldManager = ticketFieldManager;
     }
 
     public List<TicketFieldConfigurationDescriptionAndValue> findTicketFieldConfigurationAndValue(int eventId, Ticket ticket, Locale locale) {
@@ -128,6 +132,46 @@ public class TicketHelper {
                                                                  Triple<Event, TicketReservation, Ticket> result) {
         Ticket t = result.getRight();
         final Event event = result.getLeft();
+        final TicketReservation ticketReservation = result.getMiddle();
+        ValidationResult validationResult = validateAssignment(updateTicketOwner, bindingResult, event, t)
+                .ifSuccess(() -> updateTicketOwner(updateTicketOwner, request, t, event, ticketReservation, userDetails, true));
+        return Triple.of(validationResult, event, ticketRepository.findByUUID(t.getUuid()));
+    }
+
+    /**
+     * Assigns all the tickets of a reservation. The additional field values of the valid assignments are saved with a single
+     * batch, then each owner is updated.
+     *
+     * @param preAssign whether the tickets must be pre-assigned (reservation not yet paid), see {@link #preAssignTicket}
+     */
+    public void assignTickets(String eventName,
+                              String reservationId,
+                              Map<String, UpdateTicketOwnerForm> owners,
+                              Optional<Errors> bindingResult,
+                              HttpServletRequest request,
+                              boolean preAssign) {
+        List<Pair<UpdateTicketOwnerForm, Triple<Event, TicketReservation, Ticket>>> valid = new ArrayList<>();
+        owners.forEach((ticketIdentifier, updateTicketOwner) -> {
+            Optional<Triple<Event, TicketReservation, Ticket>> result = preAssign ?
+                ticketReservationManager.from(eventName, reservationId, ticketIdentifier)
+                    .filter(temp -> PENDING_RESERVATION_STATUSES.contains(temp.getMiddle().getStatus()) && temp.getRight().getStatus() == Ticket.TicketStatus.PENDING) :
+                ticketReservationManager.fetchComplete(eventName, ticketIdentifier);
+            result.filter(r -> validateAssignment(updateTicketOwner, bindingResult, r.getLeft(), r.getRight()).isSuccess())
+                .ifPresent(r -> valid.add(Pair.of(updateTicketOwner, r)));
+        });
+        if(valid.isEmpty()) {
+            return;
+        }
+        Map<Integer, Map<String, List<String>>> fieldValues = new HashMap<>();
+        valid.forEach(p -> Optional.ofNullable(p.getLeft().getAdditional()).ifPresent(values -> fieldValues.put(p.getRight().getRight().getId(), values)));
+        ticketFieldManager.updateOrInsert(fieldValues, valid.get(0).getRight().getLeft());
+        valid.forEach(p -> {
+            Triple<Event, TicketReservation, Ticket> r = p.getRight();
+            updateTicketOwner(p.getLeft(), request, r.getRight(), r.getLeft(), r.getMiddle(), Optional.empty(), false);
+        });
+    }
+
+    private ValidationResult validateAssignment(UpdateTicketOwnerForm updateTicketOwner, Optional<Errors> bindingResult, Event event, Ticket t) {
         if(t.getLockedAssignment()) {
             //in case of locked assignment, fullName and Email will be overwritten
             updateTicketOwner.setFirstName(t.getFirstName());
@@ -135,12 +179,8 @@ public class TicketHelper {
             updateTicketOwner.setFullName(t.getFullName());
             updateTicketOwner.setEmail(t.getEmail());
         }
-
-        final TicketReservation ticketReservation = result.getMiddle();
-        List<TicketFieldConfiguration> fieldConf = ticketFieldRepository.findAdditionalFieldsForEvent(event.getId());
-        ValidationResult validationResult = Validator.validateTicketAssignment(updateTicketOwner, fieldConf, bindingResult, event)
-                .ifSuccess(() -> updateTicketOwner(updateTicketOwner, request, t, event, ticketReservation, userDetails));
-        return Triple.of(validationResult, event, ticketRepository.findByUUID(t.getUuid()));
+        List<TicketFieldConfiguration> fieldConf = ticketFieldManager.findAdditionalFieldsForEvent(event.getId());
+        return Validator.validateTicketAssignment(updateTicketOwner, fieldConf, bindingResult, event);
     }
 
     /**
@@ -217,15 +257,18 @@ public class TicketHelper {
             .collect(Collectors.toList());
     }
 
-    private void updateTicketOwner(UpdateTicketOwnerForm updateTicketOwner, HttpServletRequest request, Ticket t, Event event, TicketReservation ticketReservation, Optional<UserDetails> userDetails) {
+    private void updateTicketOwner(UpdateTicketOwnerForm updateTicketOwner, HttpServletRequest request, Ticket t, Event event, TicketReservation ticketReservation, Optional<UserDetails> userDetails, boolean saveAdditionalFields) {
         Locale language = Optional.ofNullable(updateTicketOwner.getUserLanguage())
                 .filter(StringUtils::isNotBlank)
                 .map(Locale::forLanguageTag)
                 .orElseGet(() -> RequestContextUtils.getLocale(request));
-        ticketReservationManager.updateTicketOwner(t, language, event, updateTicketOwner,
-                getConfirmationTextBuilder(request, event, ticketReservation, t),
-                getOwnerChangeTextBuilder(request, t, event),
-                userDetails);
+        PartialTicketTextGenerator confirmationTextBuilder = getConfirmationTextBuilder(request, event, ticketReservation, t);
+        PartialTicketTextGenerator ownerChangeTextBuilder = getOwnerChangeTextBuilder(request, t, event);
+        if(saveAdditionalFields) {
+            ticketReservationManager.updateTicketOwner(t, language, event, updateTicketOwner, confirmationTextBuilder, ownerChangeTextBuilder, userDetails);
+        } else {
+            ticketReservationManager.updateTicketOwnerExcludingAdditionalFields(t, language, event, updateTicketOwner, confirmationTextBuilder, ownerChangeTextBuilder, userDetails);
+        }
     }
 
     private PartialTicketTextGenerator getOwnerChangeTextBuilder(HttpServletRequest request, Ticket t, Event event) {
@@ -21,12 +21,15 @@ import alfio.controller.api.support.EventListItem;
 import alfio.controller.api.support.PublicCategory;
 import alfio.controller.api.support.PublicEvent;
 import alfio.controller.form.ReservationForm;
+import alfio.controller.support.SessionUtil;
+import alfio.manager.AdmissionControlManager;
 import alfio.manager.EventManager;
 import alfio.manager.TicketReservationManager;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
 import alfio.model.SpecialPrice;
 import alfio.model.TicketCategory;
+import alfio.model.result.ErrorCode;
 import alfio.model.result.Result;
 import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeys;
@@ -37,6 +40,7 @@ import alfio.util.ErrorsCode;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -55,6 +59,9 @@ import static alfio.util.OptionalWrapper.optionally;
 @RequestMapping("/api/public/")
 public class RestEventApiController {
 
+    private static final String QUEUE_TOKEN_HEADER = "X-Queue-Token";
+    private static final String QUEUE_POSITION_HEADER = "X-Queue-Position";
+
     private final EventManager eventManager;
     private final OrganizationRepository organizationRepository;
     private final EventRepository eventRepository;
@@ -65,6 +72,7 @@ public class RestEventApiController {
     private final TicketCategoryRepository ticketCategoryRepository;
     private final TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository;
     private final AdditionalServiceRepository additionalServiceRepository;
+    private final AdmissionControlManager admissionControlManager;
 
 
     @Autowired
@@ -77,7 +85,8 @@ public class RestEventApiController {
                                   SpecialPriceRepository specialPriceRepository,
                                   TicketCategoryRepository ticketCategoryRepository,
                                   TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository,
-                                  AdditionalServiceRepository additionalServiceRepository) {
+                                  AdditionalServiceRepository additionalServiceRepository,
+                                  AdmissionControlManager admissionControlManager) {
         this.eventManager = eventManager;
         this.organizationRepository = organizationRepository;
         this.eventRepository = eventRepository;
@@ -88,6 +97,7 @@ public class RestEventApiController {
         this.ticketCategoryRepository = ticketCategoryRepository;
         this.ticketCategoryDescriptionRepository = ticketCategoryDescriptionRepository;
         this.additionalServiceRepository = additionalServiceRepository;
+        this.admissionControlManager = admissionControlManager;
     }
 
 
@@ -123,32 +133,67 @@ public class RestEventApiController {
 
      */
     @RequestMapping(value = "events/{shortName}/reserve-tickets", method = RequestMethod.POST)
-    public ResponseEntity<Result<String>> reserveTickets(@PathVariable("shortName") String shortName, @RequestBody ReservationForm reservation, BindingResult bindingResult, Locale locale) {
+    public ResponseEntity<Result<String>> reserveTickets(@PathVariable("shortName") String shortName, @RequestBody ReservationForm reservation, BindingResult bindingResult,
+                                                         @RequestHeader(value = QUEUE_TOKEN_HEADER, required = false) String queueToken, Locale locale) {
         return eventRepository.findOptionalByShortName(shortName).map(event -> {
-            Optional<String> reservationUrl = reservation.validate(bindingResult, ticketReservationManager, additionalServiceRepository, eventManager, event).flatMap(selected -> {
-                Date expiration = DateUtils.addMinutes(new Date(), ticketReservationManager.getReservationTimeout(event));
-                try {
-                    String reservationId = ticketReservationManager.createTicketReservation(event,
-                        selected.getLeft(), selected.getRight(), expiration,
-                        Optional.ofNullable(reservation.getPromoCode()), //FIXME check
-                        Optional.ofNullable(reservation.getPromoCode()), //FIXME check
-                        locale, false);
-                    return Optional.of("/event/" + shortName + "/reservation/" + reservationId + "/book");
-                } catch (TicketReservationManager.NotEnoughTicketsException nete) {
-                    bindingResult.reject(ErrorsCode.STEP_1_NOT_ENOUGH_TICKETS);
-                } catch (TicketReservationManager.MissingSpecialPriceTokenException missing) {
-                    bindingResult.reject(ErrorsCode.STEP_1_ACCESS_RESTRICTED);
-                } catch (TicketReservationManager.InvalidSpecialPriceTokenException invalid) {
-                    bindingResult.reject(ErrorsCode.STEP_1_CODE_NOT_FOUND);
+            try (AdmissionControlManager.Admission admission = admissionControlManager.enter(event, Optional.ofNullable(StringUtils.trimToNull(queueToken)))) {
+                if(!admission.isAdmitted()) {
+                    return notAdmitted(admission);
                 }
-                return Optional.empty();
-            });
-
-            Result<String> result = reservationUrl.map(url -> Result.success(url)).orElseGet(() -> Result.validationError(bindingResult.getAllErrors()));
-            return new ResponseEntity<>(result, HttpStatus.OK);
+                return createReservation(shortName, event, reservation, bindingResult, locale);
+            }
         }).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    @RequestMapping(value = "events/{shortName}/waiting-room", method = RequestMethod.GET)
+    public ResponseEntity<AdmissionControlManager.QueueStatus> getWaitingRoomStatus(@PathVariable("shortName") String shortName,
+                                                                                    @RequestHeader(value = QUEUE_TOKEN_HEADER, required = false) String queueToken,
+                                                                                    HttpServletRequest request) {
+        return eventRepository.findOptionalByShortName(shortName)
+            .flatMap(event -> {
+                Optional<String> token = Optional.ofNullable(StringUtils.trimToNull(queueToken));
+                return (token.isPresent() ? token : SessionUtil.retrieveQueueToken(event.getId(), request))
+                    .flatMap(t -> admissionControlManager.getQueueStatus(event, t));
+            })
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    private static ResponseEntity<Result<String>> notAdmitted(AdmissionControlManager.Admission admission) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(AdmissionControlManager.RETRY_AFTER_SECONDS));
+        if(admission.getStatus() == AdmissionControlManager.Admission.Status.QUEUED) {
+            admission.getQueueToken().ifPresent(token -> headers.set(QUEUE_TOKEN_HEADER, token));
+            headers.set(QUEUE_POSITION_HEADER, String.valueOf(admission.getPosition()));
+            return new ResponseEntity<>(Result.error(ErrorCode.ReservationError.QUEUED), headers, HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return new ResponseEntity<>(Result.error(ErrorCode.ReservationError.WAITING_ROOM_FULL), headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private ResponseEntity<Result<String>> createReservation(String shortName, Event event, ReservationForm reservation, BindingResult bindingResult, Locale locale) {
+        Optional<String> reservationUrl = reservation.validate(bindingResult, ticketReservationManager, additionalServiceRepository, eventManager, event).flatMap(selected -> {
+            Date expiration = DateUtils.addMinutes(new Date(), ticketReservationManager.getReservationTimeout(event));
+            try {
+                String reservationId = ticketReservationManager.createTicketReservation(event,
+                    selected.getLeft(), selected.getRight(), expiration,
+                    Optional.ofNullable(reservation.getPromoCode()), //FIXME check
+                    Optional.ofNullable(reservation.getPromoCode()), //FIXME check
+                    locale, false);
+                return Optional.of("/event/" + shortName + "/reservation/" + reservationId + "/book");
+            } catch (TicketReservationManager.NotEnoughTicketsException nete) {
+                bindingResult.reject(ErrorsCode.STEP_1_NOT_ENOUGH_TICKETS);
+            } catch (TicketReservationManager.MissingSpecialPriceTokenException missing) {
+                bindingResult.reject(ErrorsCode.STEP_1_ACCESS_RESTRICTED);
+            } catch (TicketReservationManager.InvalidSpecialPriceTokenException invalid) {
+                bindingResult.reject(ErrorsCode.STEP_1_CODE_NOT_FOUND);
+            }
+            return Optional.empty();
+        });
+
+        Result<String> result = reservationUrl.map(url -> Result.success(url)).orElseGet(() -> Result.validationError(bindingResult.getAllErrors()));
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
     private PublicCategory buildPublicCategory(TicketCategory c, Event e) {
         return new PublicCategory(c, e,
             ticketReservationManager.countAvailableTickets(e, c),
@@ -0,0 +1,75 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import alfio.model.ContentLanguage;
+import alfio.model.Event;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Holds the event referenced by the current request, together with its languages and display settings.
+ * Every value is loaded at most once, the first time it is requested. Instances are bound to a single request and are not thread-safe.
+ */
+public class EventContext {
+
+    @Getter
+    private final String eventName;
+    private final Supplier<Optional<Event>> eventLoader;
+    private final Function<Event, List<ContentLanguage>> languagesLoader;
+    private final Function<Optional<Event>, Boolean> analyticsLoader;
+
+    private Optional<Event> event;
+    private List<ContentLanguage> languages;
+    private Boolean analyticsEnabled;
+
+    EventContext(String eventName,
+                 Supplier<Optional<Event>> eventLoader,
+                 Function<Event, List<ContentLanguage>> languagesLoader,
+                 Function<Optional<Event>, Boolean> analyticsLoader) {
+        this.eventName = eventName;
+        this.eventLoader = eventLoader;
+        this.languagesLoader = languagesLoader;
+        this.analyticsLoader = analyticsLoader;
+    }
+
+    public Optional<Event> getEvent() {
+        if(event == null) {
+            event = eventLoader.get();
+        }
+        return event;
+    }
+
+    public List<ContentLanguage> getLanguages() {
+        if(languages == null) {
+            languages = getEvent().map(languagesLoader).orElseGet(Collections::emptyList);
+        }
+        return languages;
+    }
+
+    public boolean isAnalyticsEnabled() {
+        if(analyticsEnabled == null) {
+            analyticsEnabled = analyticsLoader.apply(getEvent());
+        }
+        return analyticsEnabled;
+    }
+}
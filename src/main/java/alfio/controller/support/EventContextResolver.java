@@ -0,0 +1,144 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import alfio.manager.EventCacheManager;
+import alfio.manager.i18n.I18nManager;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.system.Configuration;
+import alfio.model.system.Configuration.ConfigurationPathKey;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static alfio.model.system.ConfigurationKeys.GOOGLE_ANALYTICS_KEY;
+
+/**
+ * Creates the {@link EventContext} for the requests handled by methods mapped as "/event/{something}".
+ * The name of the path variable containing the event short name is resolved once for each handler method, when the
+ * application context is refreshed; the context itself is stored as request attribute and shared between
+ * interceptors and controllers, so that the event is loaded at most once per request.
+ */
+@Component
+@Log4j2
+public class EventContextResolver implements ApplicationListener<ContextRefreshedEvent> {
+
+    private static final String REQUEST_ATTRIBUTE = EventContext.class.getName();
+    private static final Pattern EVENT_PATTERN = Pattern.compile("^/event/\\{(\\w+)}/{0,1}.*");
+
+    private final Map<Method, Optional<String>> eventPathVariables = new ConcurrentHashMap<>();
+    private final EventCacheManager eventCacheManager;
+    private final I18nManager i18nManager;
+    private final ConfigurationManager configurationManager;
+
+    @Autowired
+    public EventContextResolver(EventCacheManager eventCacheManager,
+                                I18nManager i18nManager,
+                                ConfigurationManager configurationManager) {
+        this.eventCacheManager = eventCacheManager;
+        this.i18nManager = i18nManager;
+        this.configurationManager = configurationManager;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        event.getApplicationContext().getBeansOfType(RequestMappingHandlerMapping.class).values().stream()
+            .flatMap(mapping -> mapping.getHandlerMethods().values().stream())
+            .forEach(this::getEventPathVariable);
+        log.debug("resolved event path variables for {} handler methods", eventPathVariables.size());
+    }
+
+    /**
+     * Creates the context for the given request, if the handler method refers to an event.
+     */
+    public Optional<EventContext> resolve(HttpServletRequest request, HandlerMethod handlerMethod) {
+        return getEventPathVariable(handlerMethod).map(pathVariableName -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> uriVariables = (Map<String, Object>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+            String eventName = Optional.ofNullable(uriVariables).map(v -> v.get(pathVariableName)).orElse("").toString();
+            EventContext context = new EventContext(eventName,
+                () -> eventCacheManager.findEventByShortName(eventName),
+                e -> i18nManager.getEventLanguages(e.getLocales()),
+                this::isAnalyticsEnabled);
+            request.setAttribute(REQUEST_ATTRIBUTE, context);
+            return context;
+        });
+    }
+
+    public static Optional<EventContext> fromRequest(HttpServletRequest request) {
+        return Optional.ofNullable((EventContext) request.getAttribute(REQUEST_ATTRIBUTE));
+    }
+
+    /**
+     * Returns the event having the given short name, reusing the one already loaded for the current request, if any.
+     */
+    public Optional<Event> findEvent(String eventName) {
+        return Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+            .map(attributes -> (EventContext) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST))
+            .filter(context -> context.getEventName().equals(eventName))
+            .map(EventContext::getEvent)
+            .orElseGet(() -> eventCacheManager.findEventByShortName(eventName));
+    }
+
+    public boolean isAnalyticsEnabled(Optional<Event> event) {
+        ConfigurationPathKey googleAnalyticsKey = event.map(e -> Configuration.from(e.getOrganizationId(), e.getId(), GOOGLE_ANALYTICS_KEY))
+            .orElseGet(() -> Configuration.getSystemConfiguration(GOOGLE_ANALYTICS_KEY));
+        return StringUtils.isNotBlank(configurationManager.getStringConfigValue(googleAnalyticsKey, ""));
+    }
+
+    private Optional<String> getEventPathVariable(HandlerMethod handlerMethod) {
+        return eventPathVariables.computeIfAbsent(handlerMethod.getMethod(), m -> findEventPathVariable(handlerMethod));
+    }
+
+    private static Optional<String> findEventPathVariable(HandlerMethod handlerMethod) {
+        RequestMapping reqMapping = handlerMethod.getMethodAnnotation(RequestMapping.class);
+        //check if the request mapping value has the form "/event/{something}"
+        if(reqMapping == null || reqMapping.value().length != 1) {
+            return Optional.empty();
+        }
+        Matcher m = EVENT_PATTERN.matcher(reqMapping.value()[0]);
+        if(!m.matches()) {
+            return Optional.empty();
+        }
+        String pathVariableName = m.group(1);
+        //check that the variable is bound to a method parameter
+        return Arrays.stream(handlerMethod.getMethodParameters())
+            .map(methodParameter -> methodParameter.getParameterAnnotation(PathVariable.class))
+            .filter(Objects::nonNull)
+            .map(PathVariable::value)
+            .filter(pathVariableName::equals)
+            .findFirst();
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import alfio.controller.api.support.DataLoader;
+import alfio.model.*;
+import alfio.model.modification.support.LocationDescriptor;
+import alfio.model.user.Organization;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Immutable public view of an {@link Event}: everything needed to render the public event pages, except the data which
+ * depends on the current request (availability, promo codes, CSRF token...).
+ * The texts are stored for all the locales; the localized values are selected in memory.
+ */
+@Getter
+@AllArgsConstructor
+public class PublicEventSnapshot {
+
+    private final Event event;
+    private final Organization organization;
+    private final List<EventDescription> descriptions;
+    private final List<Category> categories;
+    private final List<Service> additionalServices;
+    private final LocationDescriptor locationDescriptor;
+    private final boolean accessPromotions;
+    private final boolean preRegistrationEnabled;
+    private final boolean waitingQueueEnabled;
+
+    public String getDescription(String locale) {
+        return descriptions.stream()
+            .filter(d -> d.getEventDescriptionType() == EventDescription.EventDescriptionType.DESCRIPTION && locale.equals(d.getLocale()))
+            .map(EventDescription::getDescription)
+            .findFirst()
+            .orElse("");
+    }
+
+    public List<TicketCategory> getTicketCategories() {
+        return categories.stream().map(Category::getTicketCategory).collect(toList());
+    }
+
+    public DataLoader<Event, EventDescription> eventDescriptions() {
+        return e -> descriptions;
+    }
+
+    public DataLoader<TicketCategory, TicketCategoryDescription> ticketCategoryDescriptions() {
+        return tc -> categories.stream()
+            .filter(c -> c.getTicketCategory().getId() == tc.getId())
+            .findFirst()
+            .map(Category::getDescriptions)
+            .orElse(Collections.emptyList());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Category {
+        private final TicketCategory ticketCategory;
+        private final List<TicketCategoryDescription> descriptions;
+        private final int maxTicketsPerReservation;
+
+        public String getDescription(String locale) {
+            return descriptions.stream()
+                .filter(d -> locale.equals(d.getLocale()))
+                .map(TicketCategoryDescription::getDescription)
+                .findFirst()
+                .orElse("");
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Service {
+        private final AdditionalService additionalService;
+        private final List<AdditionalServiceText> texts;
+
+        /**
+         * In-memory equivalent of {@link alfio.repository.AdditionalServiceTextRepository#findBestMatchByLocaleAndType(int, String, AdditionalServiceText.TextType)}.
+         */
+        public String getText(String locale, AdditionalServiceText.TextType type) {
+            Predicate<AdditionalServiceText> sameType = t -> t.getType() == type;
+            AdditionalServiceText match = texts.stream().filter(sameType.and(t -> locale.equals(t.getLocale()))).findFirst()
+                .orElseGet(() -> texts.stream().filter(sameType).findFirst().orElse(null));
+            return match != null ? match.getValue() : "N/A";
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import alfio.manager.EventCacheManager;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.modification.support.LocationDescriptor;
+import alfio.model.system.Configuration;
+import alfio.repository.*;
+import alfio.repository.user.OrganizationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static alfio.model.system.ConfigurationKeys.*;
+import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Builds and caches the {@link PublicEventSnapshot} of the public events.
+ * A snapshot is bound to the {@link Event} instance held by the {@link EventCacheManager}, which is replaced every
+ * time the event is invalidated (locally or by another node), therefore every write path which calls
+ * {@link EventCacheManager#invalidate(int)} refreshes the snapshot as well. Values inherited from the organization or
+ * system configuration are not tracked, so the snapshots expire after {@link #SNAPSHOT_TTL_SECONDS} seconds.
+ */
+@Component
+@Log4j2
+public class PublicEventSnapshotManager {
+
+    static final long SNAPSHOT_TTL_SECONDS = 60;
+    private static final int MAX_EVENTS = 1000;
+
+    private final EventCacheManager eventCacheManager;
+    private final OrganizationRepository organizationRepository;
+    private final EventDescriptionRepository eventDescriptionRepository;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository;
+    private final AdditionalServiceRepository additionalServiceRepository;
+    private final AdditionalServiceTextRepository additionalServiceTextRepository;
+    private final PromoCodeDiscountRepository promoCodeDiscountRepository;
+    private final ConfigurationManager configurationManager;
+    private final Cache<Integer, PublicEventSnapshot> snapshots = Caffeine.newBuilder()
+        .maximumSize(MAX_EVENTS)
+        .expireAfterWrite(SNAPSHOT_TTL_SECONDS, TimeUnit.SECONDS)
+        .build();
+
+    @Autowired
+    public PublicEventSnapshotManager(EventCacheManager eventCacheManager,
+                                      OrganizationRepository organizationRepository,
+                                      EventDescriptionRepository eventDescriptionRepository,
+                                      TicketCategoryRepository ticketCategoryRepository,
+                                      TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository,
+                                      AdditionalServiceRepository additionalServiceRepository,
+                                      AdditionalServiceTextRepository additionalServiceTextRepository,
+                                      PromoCodeDiscountRepository promoCodeDiscountRepository,
+                                      ConfigurationManager configurationManager) {
+        this.eventCacheManager = eventCacheManager;
+        this.organizationRepository = organizationRepository;
+        this.eventDescriptionRepository = eventDescriptionRepository;
+        this.ticketCategoryRepository = ticketCategoryRepository;
+        this.ticketCategoryDescriptionRepository = ticketCategoryDescriptionRepository;
+        this.additionalServiceRepository = additionalServiceRepository;
+        this.additionalServiceTextRepository = additionalServiceTextRepository;
+        this.promoCodeDiscountRepository = promoCodeDiscountRepository;
+        this.configurationManager = configurationManager;
+    }
+
+    public PublicEventSnapshot getSnapshot(Event event) {
+        Event current = eventCacheManager.getEvent(event.getId());
+        PublicEventSnapshot snapshot = snapshots.getIfPresent(current.getId());
+        if(snapshot == null || snapshot.getEvent() != current) {
+            snapshot = buildSnapshot(current);
+            snapshots.put(current.getId(), snapshot);
+            log.trace("built public snapshot for event {}", current.getShortName());
+        }
+        return snapshot;
+    }
+
+    private PublicEventSnapshot buildSnapshot(Event event) {
+        int eventId = event.getId();
+        int organizationId = event.getOrganizationId();
+        List<PublicEventSnapshot.Category> categories = ticketCategoryRepository.findAllTicketCategories(eventId).stream()
+            .map(c -> new PublicEventSnapshot.Category(c, unmodifiableList(ticketCategoryDescriptionRepository.findByTicketCategoryId(c.getId())),
+                configurationManager.getIntConfigValue(Configuration.from(organizationId, eventId, c.getId(), MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), 5)))
+            .collect(toList());
+        List<PublicEventSnapshot.Service> additionalServices = additionalServiceRepository.loadAllForEvent(eventId).stream()
+            .map(as -> new PublicEventSnapshot.Service(as, unmodifiableList(additionalServiceTextRepository.findAllByAdditionalServiceId(as.getId()))))
+            .collect(toList());
+        LocationDescriptor locationDescriptor = LocationDescriptor.fromGeoData(event.getLatLong(), TimeZone.getTimeZone(event.getTimeZone()),
+            configurationManager.getStringConfigValue(Configuration.from(organizationId, eventId, MAPS_CLIENT_API_KEY)));
+        boolean accessPromotions = ticketCategoryRepository.countAccessRestrictedRepositoryByEventId(eventId) > 0 ||
+            promoCodeDiscountRepository.countByEventAndOrganizationId(eventId, organizationId) > 0;
+        return new PublicEventSnapshot(event,
+            organizationRepository.getById(organizationId),
+            unmodifiableList(eventDescriptionRepository.findByEventId(eventId)),
+            unmodifiableList(categories),
+            unmodifiableList(additionalServices),
+            locationDescriptor,
+            accessPromotions,
+            configurationManager.getBooleanConfigValue(Configuration.from(organizationId, eventId, ENABLE_PRE_REGISTRATION), false),
+            configurationManager.getBooleanConfigValue(Configuration.from(organizationId, eventId, ENABLE_WAITING_QUEUE), false));
+    }
+}
@@ -30,6 +30,7 @@ public final class SessionUtil {
     private static final String SPECIAL_PRICE_CODE = "SPECIAL_PRICE_CODE";
     
     private static final String PROMOTIONAL_CODE_DISCOUNT = "PROMOTIONAL_CODE_DISCOUNT";
+    private static final String QUEUE_TOKEN = "QUEUE_TOKEN_";
 
     private SessionUtil() {}
 
@@ -62,6 +63,18 @@ public final class SessionUtil {
         request.getSession().removeAttribute(PROMOTIONAL_CODE_DISCOUNT);
     }
 
+    public static void saveQueueToken(int eventId, String queueToken, HttpServletRequest request) {
+        request.getSession().setAttribute(QUEUE_TOKEN + eventId, queueToken);
+    }
+
+    public static Optional<String> retrieveQueueToken(int eventId, HttpServletRequest request) {
+        return Optional.ofNullable((String) request.getSession().getAttribute(QUEUE_TOKEN + eventId));
+    }
+
+    public static void removeQueueToken(int eventId, HttpServletRequest request) {
+        request.getSession().removeAttribute(QUEUE_TOKEN + eventId);
+    }
+
     public static void addToFlash(BindingResult bindingResult, RedirectAttributes redirectAttributes) {
         redirectAttributes.addFlashAttribute("error", bindingResult).addFlashAttribute("hasErrors", true);
     }
@@ -28,6 +28,7 @@ import alfio.model.modification.TicketCategoryModification;
 import alfio.model.result.ErrorCode;
 import alfio.model.result.Result;
 import alfio.model.result.Result.ResultStatus;
+import alfio.model.result.ValidationResult.ErrorDescriptor;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.user.Organization;
 import alfio.repository.*;
@@ -35,6 +36,7 @@ import alfio.util.Json;
 import alfio.util.MonetaryUtil;
 import alfio.util.TemplateManager;
 import alfio.util.TemplateResource;
+import alfio.util.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
@@ -45,10 +47,13 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.util.Assert;
+import org.springframework.validation.Errors;
+import org.springframework.validation.MapBindingResult;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
@@ -56,6 +61,7 @@ import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static alfio.util.EventUtil.generateEmptyTickets;
@@ -80,11 +86,13 @@ public class AdminReservationManager {
     private final PlatformTransactionManager transactionManager;
     private final SpecialPriceTokenGenerator specialPriceTokenGenerator;
     private final TicketFieldRepository ticketFieldRepository;
+    private final TicketFieldManager ticketFieldManager;
     private final PaymentManager paymentManager;
     private final NotificationManager notificationManager;
     private final MessageSource messageSource;
     private final TemplateManager templateManager;
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
+    private final EventCacheManager eventCacheManager;
 
     public Result<Triple<TicketReservation, List<Ticket>, Event>> confirmReservation(String eventName, String reservationId, String username) {
         DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
@@ -229,15 +237,125 @@ public class AdminReservationManager {
         }
     }
 
+    /**
+     * Creates several reservations for the same event. The event is locked once for the whole import and the
+     * capacity of the existing categories is adjusted in a single pass. Then each reservation is created in
+     * its own savepoint, so that a failure does not affect the other ones.
+     *
+     * @param input the reservations to create
+     * @param eventName the event short name
+     * @param username the current user
+     * @return a result for each element of {@code input}, in the same order
+     */
+    public List<Result<Pair<TicketReservation, List<Ticket>>>> createReservations(List<AdminReservationModification> input, String eventName, String username) {
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        TransactionStatus status = transactionManager.getTransaction(definition);
+        try {
+            List<Result<Pair<TicketReservation, List<Ticket>>>> results = eventRepository.findOptionalByShortNameForUpdate(eventName)
+                .flatMap(e -> optionally(() -> {
+                    eventManager.checkOwnership(e, username, e.getOrganizationId());
+                    return e;
+                })).map(event -> processReservations(input, username, event))
+                .orElseGet(() -> input.stream()
+                    .map(arm -> Result.<Pair<TicketReservation, List<Ticket>>>error(singletonList(ErrorCode.EventError.NOT_FOUND)))
+                    .collect(toList()));
+            transactionManager.commit(status);
+            return results;
+        } catch(Exception e) {
+            log.error("Error during bulk creation of reservations eventName: {}, username: {}, reservations: {}", eventName, username, input.size());
+            transactionManager.rollback(status);
+            return input.stream()
+                .map(arm -> Result.<Pair<TicketReservation, List<Ticket>>>error(singletonList(ErrorCode.custom("", e.getMessage()))))
+                .collect(toList());
+        }
+    }
+
+    private List<Result<Pair<TicketReservation, List<Ticket>>>> processReservations(List<AdminReservationModification> input, String username, Event event) {
+        List<TicketFieldConfiguration> fields = ticketFieldManager.findAdditionalFieldsForEvent(event.getId());
+        List<List<ErrorCode>> validationErrors = input.stream()
+            .map(arm -> validateAdditionalInfo(arm, fields))
+            .collect(toList());
+        adjustCapacity(IntStream.range(0, input.size())
+            .filter(i -> validationErrors.get(i).isEmpty())
+            .mapToObj(input::get), event, username);
+        return IntStream.range(0, input.size())
+            .mapToObj(i -> validationErrors.get(i).isEmpty() ? processReservationInSavepoint(input.get(i), username, event.getId()) : Result.<Pair<TicketReservation, List<Ticket>>>error(validationErrors.get(i)))
+            .collect(toList());
+    }
+
+    /**
+     * Grows the existing categories once for all the given reservations, instead of once per reservation.
+     * If this is not possible, the capacity check is left to each reservation.
+     */
+    private void adjustCapacity(Stream<AdminReservationModification> reservations, Event event, String username) {
+        reservations.flatMap(arm -> arm.getTicketsInfo().stream())
+            .filter(ti -> ti.getCategory().isExisting())
+            .collect(groupingBy(ti -> ti.getCategory().getExistingCategoryId()))
+            .values()
+            .forEach(list -> list.stream().reduce(AdminReservationManager::merge).ifPresent(ti -> {
+                TransactionStatus savepoint = transactionManager.getTransaction(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+                try {
+                    Result<TicketCategory> result = checkExistingCategory(ti, eventRepository.findById(event.getId()), username);
+                    if(result.isSuccess()) {
+                        transactionManager.commit(savepoint);
+                    } else {
+                        log.debug("cannot adjust the capacity of category {} for {} tickets: {}", ti.getCategory().getExistingCategoryId(), ti.getAttendees().size(), result.getErrors());
+                        transactionManager.rollback(savepoint);
+                    }
+                } catch(Exception e) {
+                    log.warn("error while adjusting the capacity of category {}", ti.getCategory().getExistingCategoryId(), e);
+                    transactionManager.rollback(savepoint);
+                }
+            }));
+    }
+
+    private Result<Pair<TicketReservation, List<Ticket>>> processReservationInSavepoint(AdminReservationModification input, String username, int eventId) {
+        TransactionStatus savepoint = transactionManager.getTransaction(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+        try {
+            Result<Pair<TicketReservation, List<Ticket>>> result = processReservation(input, username, eventRepository.findById(eventId));
+            if(result.isSuccess()) {
+                transactionManager.commit(savepoint);
+            } else {
+                log.debug("Error during creation of reservation eventId: {}, username: {}, reservation: {}", eventId, username, AdminReservationModification.summary(input));
+                transactionManager.rollback(savepoint);
+            }
+            return result;
+        } catch(Exception e) {
+            log.error("Error during creation of reservation eventId: {}, username: {}, reservation: {}", eventId, username, AdminReservationModification.summary(input));
+            transactionManager.rollback(savepoint);
+            return Result.error(singletonList(ErrorCode.custom("", e.getMessage())));
+        }
+    }
+
     private Result<Pair<TicketReservation, List<Ticket>>> transactionalCreateReservation(AdminReservationModification input, String eventName, String username) {
         return eventRepository.findOptionalByShortNameForUpdate(eventName)
             .flatMap(e -> optionally(() -> {
                 eventManager.checkOwnership(e, username, e.getOrganizationId());
                 return e;
-            })).map(event -> processReservation(input, username, event))
+            })).map(event -> {
+                List<ErrorCode> validationErrors = validateAdditionalInfo(input, ticketFieldManager.findAdditionalFieldsForEvent(event.getId()));
+                if(!validationErrors.isEmpty()) {
+                    return Result.<Pair<TicketReservation, List<Ticket>>>error(validationErrors);
+                }
+                return processReservation(input, username, event);
+            })
             .orElseGet(() -> Result.error(singletonList(ErrorCode.EventError.NOT_FOUND)));
     }
 
+    /**
+     * Applies to the attendees' additional info the same field validation used when a ticket is assigned.
+     */
+    private static List<ErrorCode> validateAdditionalInfo(AdminReservationModification input, List<TicketFieldConfiguration> fields) {
+        return input.getTicketsInfo().stream()
+            .flatMap(ti -> ti.getAttendees().stream())
+            .filter(a -> !a.isEmpty())
+            .flatMap(a -> {
+                Errors errors = new MapBindingResult(new HashMap<>(), "attendee");
+                Validator.validateAdditionalFields(a.getAdditionalInfo(), fields, errors);
+                return errors.getFieldErrors().stream().map(ErrorDescriptor::fromFieldError);
+            }).collect(toList());
+    }
+
     private Result<Pair<TicketReservation, List<Ticket>>> processReservation(AdminReservationModification input, String username, Event event) {
         return input.getTicketsInfo().stream()
             .map(ti -> checkCategoryCapacity(ti, event, input, username))
@@ -289,8 +407,10 @@ public class AdminReservationManager {
         TicketPriceContainer priceContainer = TicketPriceContainer.from(ticket, null, event, null);
         ticketRepository.updateTicketPrice(reservedForUpdate, categoryId, event.getId(), category.getSrcPriceCts(), MonetaryUtil.unitToCents(priceContainer.getFinalPrice()), MonetaryUtil.unitToCents(priceContainer.getVAT()), MonetaryUtil.unitToCents(priceContainer.getAppliedDiscount()));
         List<SpecialPrice> codes = category.isAccessRestricted() ? bindSpecialPriceTokens(specialPriceSessionId, categoryId, attendees) : Collections.emptyList();
-        assignTickets(attendees, reservedForUpdate, codes, reservationId, arm.getLanguage(), category.getSrcPriceCts());
-        List<Ticket> tickets = reservedForUpdate.stream().map(id -> ticketRepository.findById(id, categoryId)).collect(toList());
+        assignTickets(event, attendees, reservedForUpdate, codes, reservationId, arm.getLanguage(), category.getSrcPriceCts());
+        List<Ticket> tickets = ticketRepository.findByIds(reservedForUpdate).stream()
+            .sorted(Comparator.comparing(Ticket::getId))
+            .collect(toList());
         return Result.success(tickets);
     }
 
@@ -325,15 +445,18 @@ public class AdminReservationManager {
             .map(entry -> {
                 TicketsInfo ticketsInfo = entry.getValue()
                     .stream()
-                    .reduce((ti1, ti2) -> {
-                        List<Attendee> attendees = new ArrayList<>(ti1.getAttendees());
-                        attendees.addAll(ti2.getAttendees());
-                        return new TicketsInfo(ti1.getCategory(), attendees, ti1.isAddSeatsIfNotAvailable() && ti2.isAddSeatsIfNotAvailable(), ti1.isUpdateAttendees() && ti2.isUpdateAttendees());
-                    }).orElse(empty);
+                    .reduce(AdminReservationManager::merge)
+                    .orElse(empty);
                 return Pair.of(ticketCategoryRepository.getById(entry.getKey(), event.getId()), ticketsInfo);
             });
     }
 
+    private static TicketsInfo merge(TicketsInfo ti1, TicketsInfo ti2) {
+        List<Attendee> attendees = new ArrayList<>(ti1.getAttendees());
+        attendees.addAll(ti2.getAttendees());
+        return new TicketsInfo(ti1.getCategory(), attendees, ti1.isAddSeatsIfNotAvailable() && ti2.isAddSeatsIfNotAvailable(), ti1.isUpdateAttendees() && ti2.isUpdateAttendees());
+    }
+
     private List<SpecialPrice> bindSpecialPriceTokens(String specialPriceSessionId, int categoryId, List<Attendee> attendees) {
         specialPriceTokenGenerator.generatePendingCodesForCategory(categoryId);
         List<SpecialPrice> codes = specialPriceRepository.findActiveNotAssignedByCategoryId(categoryId)
@@ -344,16 +467,41 @@ public class AdminReservationManager {
         return codes;
     }
 
-    private void assignTickets(List<Attendee> attendees, List<Integer> reservedForUpdate, List<SpecialPrice> codes, String reservationId, String userLanguage, int srcPriceCts) {
+    private void assignTickets(Event event, List<Attendee> attendees, List<Integer> reservedForUpdate, List<SpecialPrice> codes, String reservationId, String userLanguage, int srcPriceCts) {
         Optional<Iterator<SpecialPrice>> specialPriceIterator = Optional.of(codes).filter(c -> !c.isEmpty()).map(Collection::iterator);
+        List<MapSqlParameterSource> owners = new ArrayList<>();
+        List<MapSqlParameterSource> specialPrices = new ArrayList<>();
+        Map<Integer, Map<String, List<String>>> fieldValues = new HashMap<>();
         for(int i=0; i<reservedForUpdate.size(); i++) {
             Attendee attendee = attendees.get(i);
             if(!attendee.isEmpty()) {
                 Integer ticketId = reservedForUpdate.get(i);
-                ticketRepository.updateTicketOwnerById(ticketId, attendee.getEmailAddress(), attendee.getFullName(), attendee.getFirstName(), attendee.getLastName());
-                specialPriceIterator.map(Iterator::next).ifPresent(code -> ticketRepository.reserveTicket(reservationId, ticketId, code.getId(), userLanguage, srcPriceCts));
+                owners.add(new MapSqlParameterSource("id", ticketId)
+                    .addValue("email", attendee.getEmailAddress())
+                    .addValue("fullName", attendee.getFullName())
+                    .addValue("firstName", attendee.getFirstName())
+                    .addValue("lastName", attendee.getLastName()));
+                specialPriceIterator.map(Iterator::next).ifPresent(code -> specialPrices.add(new MapSqlParameterSource("ticketId", ticketId)
+                    .addValue("reservationId", reservationId)
+                    .addValue("specialCodeId", code.getId())
+                    .addValue("userLanguage", userLanguage)
+                    .addValue("srcPriceCts", srcPriceCts)));
+                if(!attendee.getAdditionalInfo().isEmpty()) {
+                    fieldValues.put(ticketId, attendee.getAdditionalInfo());
+                }
             }
         }
+        batchUpdate(ticketRepository.bulkTicketOwnerUpdate(), owners);
+        batchUpdate(ticketRepository.bulkReserveTicketWithSpecialPrice(), specialPrices);
+        if(!fieldValues.isEmpty()) {
+            ticketFieldManager.updateOrInsert(fieldValues, event);
+        }
+    }
+
+    private void batchUpdate(String query, List<MapSqlParameterSource> params) {
+        if(!params.isEmpty()) {
+            jdbc.batchUpdate(query, params.toArray(new MapSqlParameterSource[params.size()]));
+        }
     }
 
     private Result<List<TicketsInfo>> checkCategoryCapacity(TicketsInfo ti, Event event, AdminReservationModification reservation, String username) {
@@ -382,6 +530,7 @@ public class AdminReservationManager {
             //update seats and reload event
             log.debug("adding {} extra seats to the event", missingTickets);
             eventRepository.updateAvailableSeats(event.getId(), event.getAvailableSeats() + missingTickets);
+            eventCacheManager.invalidate(event.getId());
             modified = eventRepository.findById(event.getId());
         }
         return modified;
@@ -0,0 +1,316 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.system.Configuration;
+import alfio.model.system.ConfigurationKeys;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Protects the reservation process from sale spikes. For each event, only a limited number of reservations can be created
+ * concurrently; the buyers exceeding the limit are put in a FIFO waiting room and receive a signed queue token.
+ * Queued buyers are admitted at a configurable rate, and must present their token again in order to enter.
+ * <p>
+ * The waiting room is local to the current node, a token issued by another node is therefore treated as a new arrival.
+ * The permit of an admitted buyer is kept as long as the buyer keeps polling the status of the queue.
+ */
+@Component
+@Log4j2
+public class AdmissionControlManager {
+
+    public static final int RETRY_AFTER_SECONDS = 5;
+    private static final int DEFAULT_MAX_CONCURRENCY = -1;
+    private static final int DEFAULT_RATE = 10;
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 10_000;
+
+    private final ConfigurationManager configurationManager;
+    private final Clock clock;
+    private final Cache<Integer, Limits> limits = Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .build();
+    private final Cache<Integer, EventGate> gates = Caffeine.newBuilder()
+        .expireAfterAccess(2, TimeUnit.HOURS)
+        .build();
+
+    @Autowired
+    public AdmissionControlManager(ConfigurationManager configurationManager) {
+        this(configurationManager, Clock.systemUTC());
+    }
+
+    AdmissionControlManager(ConfigurationManager configurationManager, Clock clock) {
+        this.configurationManager = configurationManager;
+        this.clock = clock;
+    }
+
+    /**
+     * Tries to enter the reservation process. The returned {@link Admission} must be closed once the reservation has been created.
+     *
+     * @param event the event
+     * @param queueToken the token received while waiting, if any
+     * @return the result of the admission
+     */
+    public Admission enter(Event event, Optional<String> queueToken) {
+        Limits eventLimits = limits.get(event.getId(), id -> loadLimits(event));
+        if(eventLimits.maxConcurrency < 1) {
+            return new Admission(Admission.Status.ADMITTED, null, null, 0);
+        }
+        EventGate gate = gates.get(event.getId(), id -> new EventGate(eventLimits, clock));
+        gate.configure(eventLimits);
+        Optional<Long> number = queueToken.flatMap(t -> parseToken(event, gate, t));
+        if(number.isPresent()) {
+            long n = number.get();
+            if(gate.claim(n)) {
+                return new Admission(Admission.Status.ADMITTED, gate, null, 0);
+            }
+            if(gate.isQueued(n)) {
+                return new Admission(Admission.Status.QUEUED, null, queueToken.get(), gate.position(n));
+            }
+            //the admission has expired before being claimed: the buyer goes back to the end of the queue
+        }
+        if(gate.tryEnter()) {
+            return new Admission(Admission.Status.ADMITTED, gate, null, 0);
+        }
+        if(gate.waiting() >= eventLimits.maxQueueSize) {
+            log.warn("the waiting room for event {} is full", event.getShortName());
+            return new Admission(Admission.Status.REJECTED, null, null, 0);
+        }
+        long n = gate.enqueue();
+        return new Admission(Admission.Status.QUEUED, null, generateToken(event, gate, n), gate.position(n));
+    }
+
+    /**
+     * Returns the status of a queued buyer, without entering the reservation process. If the buyer has been admitted,
+     * the permit is kept reserved for another {@link EventGate#CLAIM_TIMEOUT_MILLIS} milliseconds.
+     *
+     * @param event the event
+     * @param queueToken the token received while waiting
+     * @return the status, or an empty Optional if the token is not valid
+     */
+    public Optional<QueueStatus> getQueueStatus(Event event, String queueToken) {
+        return Optional.ofNullable(gates.getIfPresent(event.getId()))
+            .flatMap(gate -> parseToken(event, gate, queueToken).map(n -> new QueueStatus(gate.isAdmitted(n), gate.position(n), RETRY_AFTER_SECONDS)));
+    }
+
+    private Limits loadLimits(Event event) {
+        return new Limits(getIntConfigValue(event, ConfigurationKeys.ADMISSION_CONTROL_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY),
+            Math.max(1, getIntConfigValue(event, ConfigurationKeys.ADMISSION_CONTROL_RATE, DEFAULT_RATE)),
+            getIntConfigValue(event, ConfigurationKeys.ADMISSION_CONTROL_MAX_QUEUE_SIZE, DEFAULT_MAX_QUEUE_SIZE));
+    }
+
+    private int getIntConfigValue(Event event, ConfigurationKeys key, int defaultValue) {
+        return configurationManager.getIntConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), key), defaultValue);
+    }
+
+    private static String generateToken(Event event, EventGate gate, long number) {
+        String payload = gate.id + "." + number;
+        return payload + "." + sign(event, payload);
+    }
+
+    private static Optional<Long> parseToken(Event event, EventGate gate, String token) {
+        String[] parts = StringUtils.split(token, '.');
+        if(parts == null || parts.length != 3 || !gate.id.equals(parts[0]) || !StringUtils.isNumeric(parts[1])) {
+            return Optional.empty();
+        }
+        String signature = sign(event, parts[0] + "." + parts[1]);
+        if(!MessageDigest.isEqual(signature.getBytes(StandardCharsets.UTF_8), parts[2].getBytes(StandardCharsets.UTF_8))) {
+            return Optional.empty();
+        }
+        return Optional.of(Long.valueOf(parts[1]));
+    }
+
+    private static String sign(Event event, String payload) {
+        return HmacUtils.hmacSha256Hex(event.getPrivateKey(), event.getId() + "." + payload);
+    }
+
+    @RequiredArgsConstructor
+    private static final class Limits {
+        private final int maxConcurrency;
+        private final int rate;
+        private final int maxQueueSize;
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    public static final class QueueStatus {
+        private final boolean admitted;
+        private final long position;
+        private final int retryAfterSeconds;
+    }
+
+    public static final class Admission implements AutoCloseable {
+
+        public enum Status {
+            ADMITTED, QUEUED, REJECTED
+        }
+
+        @Getter
+        private final Status status;
+        private final EventGate gate;
+        private final String queueToken;
+        @Getter
+        private final long position;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Admission(Status status, EventGate gate, String queueToken, long position) {
+            this.status = status;
+            this.gate = gate;
+            this.queueToken = queueToken;
+            this.position = position;
+        }
+
+        public boolean isAdmitted() {
+            return status == Status.ADMITTED;
+        }
+
+        public Optional<String> getQueueToken() {
+            return Optional.ofNullable(queueToken);
+        }
+
+        @Override
+        public void close() {
+            if(gate != null && released.compareAndSet(false, true)) {
+                gate.release();
+            }
+        }
+    }
+
+    /**
+     * Keeps track of the admissions for a single event. Queued buyers receive an increasing number and are admitted in order,
+     * at the configured rate, as long as a permit is available. The permit of an admitted number is reserved until its
+     * holder claims it, so that new arrivals cannot take it. The reservation expires if the holder doesn't poll its status
+     * for {@link #CLAIM_TIMEOUT_MILLIS} milliseconds.
+     */
+    private static final class EventGate {
+
+        private static final long CLAIM_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(RETRY_AFTER_SECONDS * 3);
+
+        private final String id = UUID.randomUUID().toString().replace("-", "");
+        //admitted numbers not yet claimed, with their expiration
+        private final Map<Long, Long> reserved = new HashMap<>();
+        private int maxConcurrency;
+        private int rate;
+        private int inUse;
+        private long issued;
+        private long nextToAdmit;
+        private final Clock clock;
+        private long lastAdmission;
+
+        private EventGate(Limits limits, Clock clock) {
+            this.maxConcurrency = limits.maxConcurrency;
+            this.rate = limits.rate;
+            this.clock = clock;
+            this.lastAdmission = clock.millis();
+        }
+
+        /**
+         * Applies the current limits. The permits in use are counted, so that changing the limit never alters them.
+         */
+        private synchronized void configure(Limits limits) {
+            maxConcurrency = limits.maxConcurrency;
+            rate = limits.rate;
+        }
+
+        /**
+         * Takes a permit for a new arrival, if nobody is waiting and a permit is available.
+         */
+        private synchronized boolean tryEnter() {
+            admitWaiting();
+            if(waiting() == 0 && reserved.isEmpty() && hasFreePermits()) {
+                inUse++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Takes the permit reserved for the given number, if it has been admitted.
+         */
+        private synchronized boolean claim(long number) {
+            admitWaiting();
+            if(reserved.remove(number) != null) {
+                inUse++;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void release() {
+            inUse = Math.max(0, inUse - 1);
+        }
+
+        private synchronized long enqueue() {
+            return issued++;
+        }
+
+        private synchronized long waiting() {
+            return issued - nextToAdmit;
+        }
+
+        private synchronized boolean isQueued(long number) {
+            return number >= nextToAdmit && number < issued;
+        }
+
+        /**
+         * Checks whether the given number has been admitted. If so, its reservation is renewed.
+         */
+        private synchronized boolean isAdmitted(long number) {
+            admitWaiting();
+            return reserved.computeIfPresent(number, (n, expiration) -> clock.millis() + CLAIM_TIMEOUT_MILLIS) != null;
+        }
+
+        private synchronized long position(long number) {
+            admitWaiting();
+            return reserved.containsKey(number) ? 0 : Math.max(0, number - nextToAdmit + 1);
+        }
+
+        private boolean hasFreePermits() {
+            return inUse + reserved.size() < maxConcurrency;
+        }
+
+        private void admitWaiting() {
+            long now = clock.millis();
+            reserved.values().removeIf(expiration -> expiration < now);
+            long count = (now - lastAdmission) * rate / 1000;
+            if(count > 0) {
+                lastAdmission = now;
+                for(long i = 0; i < count && nextToAdmit < issued && hasFreePermits(); i++) {
+                    reserved.put(nextToAdmit++, now + CLAIM_TIMEOUT_MILLIS);
+                }
+            }
+        }
+    }
+}
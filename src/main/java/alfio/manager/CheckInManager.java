@@ -22,12 +22,12 @@ import alfio.manager.support.OnSitePaymentResult;
 import alfio.manager.support.TicketAndCheckInResult;
 import alfio.model.Event;
 import alfio.model.FullTicketInfo;
+import alfio.model.Page;
 import alfio.model.Ticket;
 import alfio.model.Ticket.TicketStatus;
 import alfio.model.TicketReservation;
 import alfio.model.audit.ScanAudit;
 import alfio.model.transaction.PaymentProxy;
-import alfio.repository.EventRepository;
 import alfio.repository.TicketFieldRepository;
 import alfio.repository.TicketRepository;
 import alfio.repository.TicketReservationRepository;
@@ -52,6 +52,7 @@ import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.function.Function;
@@ -67,21 +68,24 @@ import static alfio.util.OptionalWrapper.optionally;
 public class CheckInManager {
 
     private final TicketRepository ticketRepository;
-    private final EventRepository eventRepository;
+    private final EventCacheManager eventCacheManager;
     private final TicketReservationRepository ticketReservationRepository;
     private final TicketFieldRepository ticketFieldRepository;
+    private final ScanAuditWriter scanAuditWriter;
     private final ScanAuditRepository scanAuditRepository;
 
     @Autowired
     public CheckInManager(TicketRepository ticketRepository,
-                          EventRepository eventRepository,
+                          EventCacheManager eventCacheManager,
                           TicketReservationRepository ticketReservationRepository,
                           TicketFieldRepository ticketFieldRepository,
+                          ScanAuditWriter scanAuditWriter,
                           ScanAuditRepository scanAuditRepository) {
         this.ticketRepository = ticketRepository;
-        this.eventRepository = eventRepository;
+        this.eventCacheManager = eventCacheManager;
         this.ticketReservationRepository = ticketReservationRepository;
         this.ticketFieldRepository = ticketFieldRepository;
+        this.scanAuditWriter = scanAuditWriter;
         this.scanAuditRepository = scanAuditRepository;
     }
 
@@ -99,7 +103,7 @@ public class CheckInManager {
     }
 
     public TicketAndCheckInResult confirmOnSitePayment(String eventName, String ticketIdentifier, Optional<String> ticketCode, String user) {
-        return eventRepository.findOptionalByShortName(eventName)
+        return eventCacheManager.findEventByShortName(eventName)
             .flatMap(e -> confirmOnSitePayment(ticketIdentifier).map((String s) -> Pair.of(s, e)))
             .map(p -> checkIn(p.getRight().getId(), ticketIdentifier, ticketCode, user))
             .orElseGet(() -> new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.TICKET_NOT_FOUND, "")));
@@ -115,14 +119,14 @@ public class CheckInManager {
     }
 
     public TicketAndCheckInResult checkIn(String shortName, String ticketIdentifier, Optional<String> ticketCode, String user) {
-        return eventRepository.findOptionalByShortName(shortName).map(e -> checkIn(e.getId(), ticketIdentifier, ticketCode, user)).orElseGet(() -> new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.EVENT_NOT_FOUND, "event not found")));
+        return eventCacheManager.findEventByShortName(shortName).map(e -> checkIn(e.getId(), ticketIdentifier, ticketCode, user)).orElseGet(() -> new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.EVENT_NOT_FOUND, "event not found")));
     }
 
     public TicketAndCheckInResult checkIn(int eventId, String ticketIdentifier, Optional<String> ticketCode, String user) {
         TicketAndCheckInResult descriptor = extractStatus(eventId, ticketRepository.findByUUIDForUpdate(ticketIdentifier), ticketIdentifier, ticketCode);
         if(descriptor.getResult().getStatus() == OK_READY_TO_BE_CHECKED_IN) {
             checkIn(ticketIdentifier);
-            scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(), user, SUCCESS, ScanAudit.Operation.SCAN);
+            scanAuditWriter.record(ticketIdentifier, eventId, user, SUCCESS, ScanAudit.Operation.SCAN);
             return new TicketAndCheckInResult(descriptor.getTicket(), new DefaultCheckInResult(SUCCESS, "success"));
         }
         return descriptor;
@@ -137,7 +141,7 @@ public class CheckInManager {
             }
 
             checkIn(ticketIdentifier);
-            scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(), user, SUCCESS, ScanAudit.Operation.SCAN);
+            scanAuditWriter.record(ticketIdentifier, eventId, user, SUCCESS, ScanAudit.Operation.SCAN);
             return true;
         }).orElse(false);
     }
@@ -148,7 +152,7 @@ public class CheckInManager {
                 TicketReservation reservation = ticketReservationRepository.findReservationById(t.getTicketsReservationId());
                 TicketStatus revertedStatus = reservation.getPaymentMethod() == PaymentProxy.ON_SITE ? TicketStatus.TO_BE_PAID : TicketStatus.ACQUIRED;
                 ticketRepository.updateTicketStatusWithUUID(ticketIdentifier, revertedStatus.toString());
-                scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(), user, OK_READY_TO_BE_CHECKED_IN, ScanAudit.Operation.REVERT);
+                scanAuditWriter.record(ticketIdentifier, eventId, user, OK_READY_TO_BE_CHECKED_IN, ScanAudit.Operation.REVERT);
                 return true;
             }
             return false;
@@ -159,20 +163,39 @@ public class CheckInManager {
         return ticketRepository.findByUUIDForUpdate(uuid);
     }
 
+    @Transactional(readOnly = true)
     public List<FullTicketInfo> findAllFullTicketInfo(int eventId) {
         return ticketRepository.findAllFullTicketInfoAssignedByEventId(eventId);
     }
 
+    public Page<FullTicketInfo> findFullTicketInfo(int eventId, Optional<String> cursor, String search, Integer limit) {
+        int pageSize = Page.sanitizeLimit(limit);
+        int afterId = Page.numericCursor(cursor);
+        return Page.of(ticketRepository.findFullTicketInfoAssignedByEventIdAfter(eventId, afterId, Page.toLikeFilter(search), pageSize), pageSize, FullTicketInfo::getId);
+    }
+
+    /**
+     * Loads the scan audit of an event in the given time window (from inclusive, to exclusive).
+     * Entries which are still waiting to be written by {@link ScanAuditWriter} are not included.
+     */
+    public Page<ScanAudit> findScanAudit(int eventId, Optional<String> cursor, ZonedDateTime from, ZonedDateTime to, Integer limit) {
+        int pageSize = Page.sanitizeLimit(limit);
+        int afterId = Page.numericCursor(cursor);
+        ZonedDateTime lowerBound = Optional.ofNullable(from).orElseGet(() -> ZonedDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        ZonedDateTime upperBound = Optional.ofNullable(to).orElseGet(() -> ZonedDateTime.now(ZoneOffset.UTC).plusDays(1));
+        return Page.of(scanAuditRepository.findForEventAfter(eventId, afterId, lowerBound, upperBound, pageSize), pageSize, ScanAudit::getId);
+    }
+
     public TicketAndCheckInResult evaluateTicketStatus(int eventId, String ticketIdentifier, Optional<String> ticketCode) {
-        return extractStatus(optionally(() -> eventRepository.findById(eventId)), optionally(() -> ticketRepository.findByUUID(ticketIdentifier)), ticketIdentifier, ticketCode);
+        return extractStatus(optionally(() -> eventCacheManager.getEvent(eventId)), optionally(() -> ticketRepository.findByUUID(ticketIdentifier)), ticketIdentifier, ticketCode);
     }
 
     public TicketAndCheckInResult evaluateTicketStatus(String eventName, String ticketIdentifier, Optional<String> ticketCode) {
-        return extractStatus(eventRepository.findOptionalByShortName(eventName), optionally(() -> ticketRepository.findByUUID(ticketIdentifier)), ticketIdentifier, ticketCode);
+        return extractStatus(eventCacheManager.findEventByShortName(eventName), optionally(() -> ticketRepository.findByUUID(ticketIdentifier)), ticketIdentifier, ticketCode);
     }
 
     private TicketAndCheckInResult extractStatus(int eventId, Optional<Ticket> maybeTicket, String ticketIdentifier, Optional<String> ticketCode) {
-        return extractStatus(optionally(() -> eventRepository.findById(eventId)), maybeTicket, ticketIdentifier, ticketCode);
+        return extractStatus(optionally(() -> eventCacheManager.getEvent(eventId)), maybeTicket, ticketIdentifier, ticketCode);
     }
 
     private TicketAndCheckInResult extractStatus(Optional<Event> maybeEvent, Optional<Ticket> maybeTicket, String ticketIdentifier, Optional<String> ticketCode) {
@@ -260,8 +283,9 @@ public class CheckInManager {
         }
     }
 
+    @Transactional(readOnly = true)
     public Map<String,String> getEncryptedAttendeesInformation(String eventName, Set<String> additionalFields) {
-        return eventRepository.findOptionalByShortName(eventName).map(event -> {
+        return eventCacheManager.findEventByShortName(eventName).map(event -> {
             String eventKey = event.getPrivateKey();
             Function<FullTicketInfo, String> hashedHMAC = ticket -> DigestUtils.sha256Hex(ticket.hmacTicketInfo(eventKey));
 
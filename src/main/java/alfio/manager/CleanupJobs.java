@@ -34,12 +34,14 @@ public class CleanupJobs {
     private final VacuumQuartzTables vacuumQuartzTables;
     private final PlatformProvider platform;
     private final Environment environment;
+    private final InvoiceExportManager invoiceExportManager;
 
     @Autowired
-    public CleanupJobs(VacuumQuartzTables vacuumQuartzTables, PlatformProvider platform, Environment environment) {
+    public CleanupJobs(VacuumQuartzTables vacuumQuartzTables, PlatformProvider platform, Environment environment, InvoiceExportManager invoiceExportManager) {
         this.vacuumQuartzTables = vacuumQuartzTables;
         this.platform = platform;
         this.environment = environment;
+        this.invoiceExportManager = invoiceExportManager;
     }
 
     /* The vacuum will be scheduled for 00:00.00 GMT */
@@ -51,4 +53,10 @@ public class CleanupJobs {
             log.debug("end vacuuming quartz tables");
         }
     }
+
+    /* The exported files are local to each node, therefore this job must not be run by quartz */
+    @Scheduled(fixedDelay = 1000 * 60 * 30)
+    public void cleanupInvoiceExports() {
+        invoiceExportManager.cleanupExpiredExports();
+    }
 }
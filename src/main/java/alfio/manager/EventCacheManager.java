@@ -0,0 +1,226 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.config.Initializer;
+import alfio.model.Event;
+import alfio.model.EventCacheVersion;
+import alfio.model.TicketCategory;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Read-through cache for {@link Event} and {@link TicketCategory}.
+ * Every entry is stored together with the value of event.cache_version read before loading it. Writers must call
+ * {@link #invalidate(int)}, which increments the version on the database and evicts the local entries; the other nodes
+ * detect the change by comparing the cached versions with the database every {@link #VERSION_CHECK_INTERVAL_MILLIS}
+ * milliseconds. The periodic check is disabled if the {@link Initializer#PROFILE_DISABLE_JOBS} profile is active.
+ * Do not use it for reads that must be consistent with the current transaction (e.g. "select for update").
+ */
+@Component
+@Log4j2
+public class EventCacheManager {
+
+    static final long VERSION_CHECK_INTERVAL_MILLIS = 5000;
+    private static final int MAX_EVENTS = 1000;
+    private static final int MAX_CATEGORIES = 10_000;
+
+    private final EventRepository eventRepository;
+    private final TicketCategoryRepository ticketCategoryRepository;
+    private final Cache<Integer, Versioned<Event>> events = Caffeine.newBuilder()
+        .maximumSize(MAX_EVENTS)
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .recordStats()
+        .build();
+    private final Cache<String, Integer> eventIdsByShortName = Caffeine.newBuilder()
+        .maximumSize(MAX_EVENTS)
+        .recordStats()
+        .build();
+    private final Cache<Integer, Versioned<TicketCategory>> categories = Caffeine.newBuilder()
+        .maximumSize(MAX_CATEGORIES)
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .recordStats()
+        .build();
+    private final ScheduledExecutorService versionChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "event-cache-version-checker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public EventCacheManager(EventRepository eventRepository,
+                             TicketCategoryRepository ticketCategoryRepository,
+                             Environment environment) {
+        this.eventRepository = eventRepository;
+        this.ticketCategoryRepository = ticketCategoryRepository;
+        if(!environment.acceptsProfiles(Initializer.PROFILE_DISABLE_JOBS)) {
+            versionChecker.scheduleWithFixedDelay(this::checkVersionsQuietly, VERSION_CHECK_INTERVAL_MILLIS, VERSION_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Event getEvent(int eventId) {
+        return events.get(eventId, id -> {
+            int version = eventRepository.getCacheVersion(id).getCacheVersion();
+            return new Versioned<>(id, version, eventRepository.findById(id));
+        }).value;
+    }
+
+    public Optional<Event> findEventByShortName(String shortName) {
+        Integer eventId = eventIdsByShortName.getIfPresent(shortName);
+        if(eventId != null) {
+            Versioned<Event> cached = events.getIfPresent(eventId);
+            if(cached != null) {
+                return Optional.of(cached.value);
+            }
+        }
+        Optional<EventCacheVersion> version = eventRepository.findCacheVersionByShortName(shortName);
+        return version.flatMap(v -> eventRepository.findOptionalByShortName(shortName).map(event -> {
+            events.put(event.getId(), new Versioned<>(event.getId(), v.getCacheVersion(), event));
+            eventIdsByShortName.put(shortName, event.getId());
+            return event;
+        }));
+    }
+
+    /**
+     * Returns the active category having the given id, see {@link TicketCategoryRepository#getById(int, int)}.
+     */
+    public TicketCategory getTicketCategory(int categoryId, int eventId) {
+        Versioned<TicketCategory> category = categories.get(categoryId, id -> {
+            int version = eventRepository.getCacheVersion(eventId).getCacheVersion();
+            return new Versioned<>(eventId, version, ticketCategoryRepository.getById(id, eventId));
+        });
+        if(category.eventId != eventId) {
+            //should never happen, since the category ids are unique, but we must preserve the repository semantic
+            return ticketCategoryRepository.getById(categoryId, eventId);
+        }
+        return category.value;
+    }
+
+    /**
+     * Marks the given event and its categories as modified. Must be called by every write path.
+     * The local entries are evicted immediately and once again at the end of the current transaction,
+     * in order to discard values loaded in the meantime.
+     */
+    public void invalidate(int eventId) {
+        eventRepository.incrementCacheVersion(eventId);
+        evict(eventId);
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(eventId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Evicts all the entries whose version differs from the one on the database.
+     */
+    public void checkVersions() {
+        List<Integer> eventIds = new ArrayList<>(cachedEventIds());
+        if(eventIds.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> versions = eventRepository.findCacheVersions(eventIds).stream()
+            .collect(toMap(EventCacheVersion::getId, EventCacheVersion::getCacheVersion));
+        List<Integer> stale = new ArrayList<>();
+        events.asMap().values().stream().filter(v -> !v.isCurrent(versions)).forEach(v -> stale.add(v.eventId));
+        categories.asMap().values().stream().filter(v -> !v.isCurrent(versions)).forEach(v -> stale.add(v.eventId));
+        stale.stream().distinct().forEach(this::evict);
+        if(!stale.isEmpty()) {
+            log.debug("evicted stale entries for events {}", stale);
+        }
+    }
+
+    public Map<String, Map<String, Number>> getStatistics() {
+        Map<String, Map<String, Number>> result = new LinkedHashMap<>();
+        result.put("event", toMap(events.stats(), events.estimatedSize()));
+        result.put("eventShortName", toMap(eventIdsByShortName.stats(), eventIdsByShortName.estimatedSize()));
+        result.put("ticketCategory", toMap(categories.stats(), categories.estimatedSize()));
+        return result;
+    }
+
+    private static Map<String, Number> toMap(CacheStats stats, long size) {
+        Map<String, Number> result = new LinkedHashMap<>();
+        result.put("size", size);
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRatio", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+
+    private Set<Integer> cachedEventIds() {
+        Set<Integer> ids = new HashSet<>(events.asMap().keySet());
+        ids.addAll(categories.asMap().values().stream().map(v -> v.eventId).collect(toList()));
+        return ids;
+    }
+
+    private void evict(int eventId) {
+        events.invalidate(eventId);
+        eventIdsByShortName.asMap().values().removeIf(id -> id == eventId);
+        categories.asMap().values().removeIf(v -> v.eventId == eventId);
+    }
+
+    private void checkVersionsQuietly() {
+        try {
+            checkVersions();
+        } catch (Exception e) {
+            log.warn("cannot check event cache versions", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        versionChecker.shutdownNow();
+    }
+
+    private static final class Versioned<T> {
+        private final int eventId;
+        private final int version;
+        private final T value;
+
+        private Versioned(int eventId, int version, T value) {
+            this.eventId = eventId;
+            this.version = version;
+            this.value = value;
+        }
+
+        private boolean isCurrent(Map<Integer, Integer> versions) {
+            return Integer.valueOf(version).equals(versions.get(eventId));
+        }
+    }
+}
@@ -19,6 +19,7 @@ package alfio.manager;
 import alfio.manager.location.LocationManager;
 import alfio.manager.plugin.PluginManager;
 import alfio.manager.support.CategoryEvaluator;
+import alfio.manager.support.JobShard;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
@@ -38,6 +39,7 @@ import alfio.util.Json;
 import alfio.util.MonetaryUtil;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
 import lombok.Data;
+import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -49,7 +51,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
@@ -58,8 +63,13 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -77,6 +87,11 @@ import static java.util.stream.Collectors.toList;
 public class EventManager {
 
     private static final Predicate<TicketCategory> IS_CATEGORY_BOUNDED = TicketCategory::isBounded;
+    /**
+     * Max number of tickets (or tokens) locked and modified with a single statement while resizing categories.
+     * It keeps the "in (:ids)" lists below the bind parameters limit of the supported databases.
+     */
+    static final int CHUNK_SIZE = 1000;
     private final UserManager userManager;
     private final EventRepository eventRepository;
     private final EventDescriptionRepository eventDescriptionRepository;
@@ -96,6 +111,10 @@ public class EventManager {
     private final AdditionalServiceTextRepository additionalServiceTextRepository;
     private final InvoiceSequencesRepository invoiceSequencesRepository;
     private final Flyway flyway;
+    private final TicketFieldManager ticketFieldManager;
+    private final EventCacheManager eventCacheManager;
+    private final TransactionTemplate tx;
+    private final Map<Integer, TicketOperationProgress> runningOperations = new ConcurrentHashMap<>();
 
     @Autowired
     public EventManager(UserManager userManager,
@@ -115,7 +134,10 @@ public class EventManager {
                         EventDeleterRepository eventDeleterRepository,
                         AdditionalServiceRepository additionalServiceRepository, AdditionalServiceTextRepository additionalServiceTextRepository,
                         InvoiceSequencesRepository invoiceSequencesRepository,
-                        Flyway flyway) {
+                        Flyway flyway,
+                        TicketFieldManager ticketFieldManager,
+                        EventCacheManager eventCacheManager,
+                        PlatformTransactionManager transactionManager) {
         this.userManager = userManager;
         this.eventRepository = eventRepository;
         this.eventDescriptionRepository = eventDescriptionRepository;
@@ -135,6 +157,9 @@ public class EventManager {
         this.additionalServiceTextRepository = additionalServiceTextRepository;
         this.invoiceSequencesRepository = invoiceSequencesRepository;
         this.flyway = flyway;
+        this.ticketFieldManager = ticketFieldManager;
+        this.eventCacheManager = eventCacheManager;
+        this.tx = new TransactionTemplate(transactionManager);
     }
 
     public Event getSingleEvent(String eventName, String username) {
@@ -191,12 +216,14 @@ public class EventManager {
         createCategoriesForEvent(em, event);
         createAllTicketsForEvent(event);
         initPlugins(event);
+        eventCacheManager.invalidate(eventId);
     }
 
     public void toggleActiveFlag(int id, String username, boolean activate) {
         Event event = eventRepository.findById(id);
         checkOwnership(event, username, event.getOrganizationId());
         eventRepository.updateEventStatus(id, activate ? Event.Status.PUBLIC : Event.Status.DRAFT);
+        eventCacheManager.invalidate(id);
     }
 
     private void createAllAdditionalServices(int eventId, List<EventModification.AdditionalService> additionalServices, ZoneId zoneId) {
@@ -258,6 +285,7 @@ public class EventManager {
         Context context = linkedAdditionalService.isPresent() ? Context.ADDITIONAL_SERVICE : Context.ATTENDEE;
 		int configurationId = ticketFieldRepository.insertConfiguration(event.getId(), f.getName(), order, f.getType(), serializedRestrictedValues, f.getMaxLength(), f.getMinLength(), f.isRequired(), context, additionalServiceId).getKey();
 		f.getDescription().forEach((locale, value) -> ticketFieldRepository.insertDescription(configurationId, locale, Json.GSON.toJson(value)));
+		ticketFieldManager.invalidateConfiguration(event.getId());
 	}
 
     private Integer findAdditionalService(Event event, EventModification.AdditionalService as) {
@@ -292,8 +320,16 @@ public class EventManager {
         if(!original.getBegin().equals(begin) || !original.getEnd().equals(end)) {
             fixOutOfRangeCategories(em, username, zoneId, end);
         }
+        //name, dates and logo of the event are printed on the invoices
+        eventDeleterRepository.deleteInvoiceDocuments(eventId);
+        eventCacheManager.invalidate(eventId);
     }
 
+    /**
+     * Updates the prices and the number of seats of the event. The tickets are created or invalidated in chunks, each
+     * one committed together with the updated number of seats, therefore a resize can be safely interrupted and resumed.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void updateEventPrices(Event original, EventModification em, String username) {
         checkOwnership(original, username, em.getOrganizationId());
         int eventId = original.getId();
@@ -311,18 +347,30 @@ public class EventManager {
 
         String paymentProxies = collectPaymentProxies(em);
         BigDecimal vat = em.isFreeOfCharge() ? BigDecimal.ZERO : em.getVatPercentage();
-        eventRepository.updatePrices(em.getCurrency(), em.getAvailableSeats(), em.isVatIncluded(), vat, paymentProxies, eventId, em.getVatStatus(), em.getPriceInCents());
+        int originalSeats = original.getAvailableSeats();
+        //the number of seats is updated together with the tickets
+        eventRepository.updatePrices(em.getCurrency(), originalSeats, em.isVatIncluded(), vat, paymentProxies, eventId, em.getVatStatus(), em.getPriceInCents());
+        eventCacheManager.invalidate(eventId);
         if(seatsDifference != 0) {
             Event modified = eventRepository.findById(eventId);
             if(seatsDifference > 0) {
-                final MapSqlParameterSource[] params = generateEmptyTickets(modified, Date.from(ZonedDateTime.now(modified.getZoneId()).toInstant()), seatsDifference).toArray(MapSqlParameterSource[]::new);
-                jdbc.batchUpdate(ticketRepository.bulkTicketInitialization(), params);
+                batchUpdateInChunks(eventId, ticketRepository.bulkTicketInitialization(),
+                    generateEmptyTickets(modified, Date.from(ZonedDateTime.now(modified.getZoneId()).toInstant()), seatsDifference),
+                    seatsDifference,
+                    processed -> eventRepository.updateAvailableSeats(eventId, originalSeats + processed),
+                    "ticket creation for event "+eventId);
             } else {
-                List<Integer> ids = ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, Math.abs(seatsDifference), singletonList(TicketStatus.FREE.name()));
-                Validate.isTrue(ids.size() == Math.abs(seatsDifference), "cannot lock enough tickets for deletion.");
-                int invalidatedTickets = ticketRepository.invalidateTickets(ids);
-                Validate.isTrue(ids.size() == invalidatedTickets, String.format("error during ticket invalidation: expected %d, got %d", ids.size(), invalidatedTickets));
+                processTicketsInChunks(eventId, Math.abs(seatsDifference),
+                    amount -> ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, amount, singletonList(TicketStatus.FREE.name())),
+                    (ids, processed) -> {
+                        int invalidatedTickets = ticketRepository.invalidateTickets(ids);
+                        Validate.isTrue(ids.size() == invalidatedTickets, String.format("error during ticket invalidation: expected %d, got %d", ids.size(), invalidatedTickets));
+                        eventRepository.updateAvailableSeats(eventId, originalSeats - processed - ids.size());
+                    },
+                    found -> { throw new IllegalArgumentException("cannot lock enough tickets for deletion."); },
+                    "ticket invalidation for event "+eventId);
             }
+            eventCacheManager.invalidate(eventId);
         }
     }
 
@@ -357,6 +405,7 @@ public class EventManager {
      * This method has been modified to use the new Result<T> mechanism.
      * It will be replaced by {@link #updateCategory(int, Event, TicketCategoryModification, String)} in the next releases
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void updateCategory(int categoryId, int eventId, TicketCategoryModification tcm, String username) {
         final Event event = eventRepository.findById(eventId);
         checkOwnership(event, username, event.getOrganizationId());
@@ -374,6 +423,12 @@ public class EventManager {
         }
     }
 
+    /**
+     * Updates the given category. The tickets are moved in chunks, each one committed together with the updated size
+     * of the category, unless the caller is already running in a transaction. Submitting again the same modification
+     * resumes an interrupted resize. The progress can be monitored using {@link #getTicketOperationProgress(int)}.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Result<TicketCategory> updateCategory(int categoryId, Event event, TicketCategoryModification tcm, String username) {
         checkOwnership(event, username, event.getOrganizationId());
         int eventId = event.getId();
@@ -421,6 +476,7 @@ public class EventManager {
         return new GeolocationResult(coordinates, locationManager.getTimezone(coordinates));
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void reallocateTickets(int srcCategoryId, int targetCategoryId, int eventId) {
         Event event = eventRepository.findById(eventId);
         reallocateTickets(eventStatisticsManager.loadTicketCategoryWithStats(srcCategoryId, event), Optional.of(ticketCategoryRepository.getById(targetCategoryId, event.getId())), event);
@@ -432,24 +488,34 @@ public class EventManager {
             log.debug("since all the ticket have been sold, ticket moving is not needed anymore.");
             return;
         }
-        List<Integer> lockedTickets = ticketRepository.selectTicketInCategoryForUpdate(event.getId(), src.getId(), notSoldTickets, singletonList(TicketStatus.FREE.name()));
-        int locked = lockedTickets.size();
-        if(locked != notSoldTickets) {
-            throw new IllegalStateException(String.format("Expected %d free tickets, got %d.", notSoldTickets, locked));
-        }
-        ticketCategoryRepository.updateSeatsAvailability(src.getId(), src.getSoldTickets());
+        //the seats follow the tickets chunk by chunk: an interrupted reallocation leaves both categories consistent and can be resumed
+        int srcSeats = src.getMaxTickets();
+        IntFunction<List<Integer>> locker = amount -> ticketRepository.selectTicketInCategoryForUpdate(event.getId(), src.getId(), amount, singletonList(TicketStatus.FREE.name()));
+        IntConsumer onMissingTickets = found -> { throw new IllegalStateException(String.format("Expected %d free tickets, got %d.", notSoldTickets, found)); };
         if(target.isPresent()) {
             TicketCategory targetCategory = target.get();
-            ticketCategoryRepository.updateSeatsAvailability(targetCategory.getId(), targetCategory.getMaxTickets() + locked);
-            ticketRepository.moveToAnotherCategory(lockedTickets, targetCategory.getId(), targetCategory.getSrcPriceCts());
-            insertTokens(targetCategory, locked);
+            processTicketsInChunks(event.getId(), notSoldTickets, locker,
+                (ids, processed) -> {
+                    ticketRepository.moveToAnotherCategory(ids, targetCategory.getId(), targetCategory.getSrcPriceCts());
+                    ticketCategoryRepository.updateSeatsAvailability(src.getId(), srcSeats - processed - ids.size());
+                    ticketCategoryRepository.updateSeatsAvailability(targetCategory.getId(), targetCategory.getMaxTickets() + processed + ids.size());
+                },
+                onMissingTickets, "ticket reallocation from category "+src.getId()+" to "+targetCategory.getId());
+            insertTokens(targetCategory, notSoldTickets);
         } else {
-            int result = ticketRepository.unbindTicketsFromCategory(event.getId(), src.getId(), lockedTickets);
-            Validate.isTrue(result == locked, String.format("Expected %d modified tickets, got %d.", locked, result));
+            processTicketsInChunks(event.getId(), notSoldTickets, locker,
+                (ids, processed) -> {
+                    int result = ticketRepository.unbindTicketsFromCategory(event.getId(), src.getId(), ids);
+                    Validate.isTrue(result == ids.size(), String.format("Expected %d modified tickets, got %d.", ids.size(), result));
+                    ticketCategoryRepository.updateSeatsAvailability(src.getId(), srcSeats - processed - ids.size());
+                },
+                onMissingTickets, "ticket unbinding from category "+src.getId());
         }
         specialPriceRepository.cancelExpiredTokens(src.getId());
+        eventCacheManager.invalidate(event.getId());
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void unbindTickets(String eventName, int categoryId, String username) {
         Event event = getSingleEvent(eventName, username);
         Validate.isTrue(ticketCategoryRepository.countUnboundedCategoriesByEventId(event.getId()) > 0, "cannot unbind tickets: there aren't any unbounded categories");
@@ -460,6 +526,11 @@ public class EventManager {
 
     MapSqlParameterSource[] prepareTicketsBulkInsertParameters(ZonedDateTime creation,
                                                                Event event) {
+        return generateTicketsBulkInsertParameters(creation, event).toArray(MapSqlParameterSource[]::new);
+    }
+
+    private Stream<MapSqlParameterSource> generateTicketsBulkInsertParameters(ZonedDateTime creation,
+                                                                              Event event) {
 
         //FIXME: the date should be inserted as ZonedDateTime !
         Date creationDate = Date.from(creation.toInstant());
@@ -473,10 +544,10 @@ public class EventManager {
                 .mapToInt(TicketCategory::getMaxTickets)
                 .sum();
         if(existingTickets >= event.getAvailableSeats()) {
-            return boundedTickets.toArray(MapSqlParameterSource[]::new);
+            return boundedTickets;
         }
 
-        return Stream.concat(boundedTickets, generateEmptyTickets(event, creationDate, event.getAvailableSeats() - existingTickets)).toArray(MapSqlParameterSource[]::new);
+        return Stream.concat(boundedTickets, generateEmptyTickets(event, creationDate, event.getAvailableSeats() - existingTickets));
     }
 
     private Stream<MapSqlParameterSource> generateTicketsForCategory(TicketCategory tc,
@@ -512,8 +583,7 @@ public class EventManager {
 
             if (tc.isTokenGenerationRequested()) {
                 final TicketCategory ticketCategory = ticketCategoryRepository.getById(category.getKey(), event.getId());
-                final MapSqlParameterSource[] args = prepareTokenBulkInsertParameters(ticketCategory, ticketCategory.getMaxTickets());
-                jdbc.batchUpdate(specialPriceRepository.bulkInsert(), args);
+                insertTokens(ticketCategory);
             }
         });
     }
@@ -526,14 +596,18 @@ public class EventManager {
             tc.getExpiration().toZonedDateTime(zoneId), tc.getName(), tc.isBounded() ? tc.getMaxTickets() : 0, tc.isTokenGenerationRequested(), eventId, tc.isBounded(), price);
         TicketCategory ticketCategory = ticketCategoryRepository.getById(category.getKey(), eventId);
         if(tc.isBounded()) {
-            List<Integer> lockedTickets = ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, ticketCategory.getMaxTickets(), singletonList(TicketStatus.FREE.name()));
-            jdbc.batchUpdate(ticketRepository.bulkTicketUpdate(), lockedTickets.stream().map(id -> new MapSqlParameterSource("id", id).addValue("categoryId", ticketCategory.getId()).addValue("srcPriceCts", ticketCategory.getSrcPriceCts())).toArray(MapSqlParameterSource[]::new));
+            processTicketsInChunks(eventId, ticketCategory.getMaxTickets(),
+                amount -> ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, amount, singletonList(TicketStatus.FREE.name())),
+                (ids, processed) -> ticketRepository.moveToAnotherCategory(ids, ticketCategory.getId(), ticketCategory.getSrcPriceCts()),
+                found -> log.warn("category {}: requested {} tickets, only {} were available", ticketCategory.getId(), ticketCategory.getMaxTickets(), found),
+                "ticket allocation for category "+ticketCategory.getId());
             if(tc.isTokenGenerationRequested()) {
                 insertTokens(ticketCategory);
             }
         }
 
         insertOrUpdateTicketCategoryDescription(category.getKey(), tc, event);
+        eventCacheManager.invalidate(eventId);
         return category.getKey();
     }
 
@@ -542,8 +616,8 @@ public class EventManager {
     }
 
     private void insertTokens(TicketCategory ticketCategory, int requiredTokens) {
-        final MapSqlParameterSource[] args = prepareTokenBulkInsertParameters(ticketCategory, requiredTokens);
-        jdbc.batchUpdate(specialPriceRepository.bulkInsert(), args);
+        batchUpdateInChunks(ticketCategory.getEventId(), specialPriceRepository.bulkInsert(), prepareTokenBulkInsertParameters(ticketCategory, requiredTokens),
+            requiredTokens, processed -> {}, "token creation for category "+ticketCategory.getId());
     }
 
     private void insertOrUpdateTicketCategoryDescription(int tcId, TicketCategoryModification tc, Event event) {
@@ -562,33 +636,45 @@ public class EventManager {
         int eventId = event.getId();
         final int price = evaluatePrice(tc.getPriceInCents(), freeOfCharge);
         TicketCategory original = ticketCategoryRepository.getById(tc.getId(), eventId);
-        ticketCategoryRepository.update(tc.getId(), tc.getName(), tc.getInception().toZonedDateTime(zoneId),
-                tc.getExpiration().toZonedDateTime(zoneId), tc.getMaxTickets(), tc.isTokenGenerationRequested(), price);
-        TicketCategory updated = ticketCategoryRepository.getById(tc.getId(), eventId);
+        //the size is updated while the tickets are moved, except when the category becomes bounded
+        int maxTickets = !original.isBounded() && tc.isBounded() ? tc.getMaxTickets() : original.getMaxTickets();
+        tx.execute(status -> {
+            ticketCategoryRepository.update(tc.getId(), tc.getName(), tc.getInception().toZonedDateTime(zoneId),
+                tc.getExpiration().toZonedDateTime(zoneId), maxTickets, tc.isTokenGenerationRequested(), price);
+            insertOrUpdateTicketCategoryDescription(tc.getId(), tc, event);
+            return null;
+        });
+        eventCacheManager.invalidate(eventId);
         int addedTickets = 0;
         if(original.isBounded() ^ tc.isBounded()) {
             handleTicketAllocationStrategyChange(event, original, tc);
         } else {
-            addedTickets = updated.getMaxTickets() - original.getMaxTickets();
-            handleTicketNumberModification(event, original, updated, addedTickets);
+            addedTickets = tc.getMaxTickets() - original.getMaxTickets();
+            handleTicketNumberModification(event, original, ticketCategoryRepository.getById(tc.getId(), eventId), addedTickets);
         }
+        TicketCategory updated = ticketCategoryRepository.getById(tc.getId(), eventId);
         handleTokenModification(original, updated, addedTickets);
-        handlePriceChange(event, original, updated);
-
-        insertOrUpdateTicketCategoryDescription(tc.getId(), tc, event);
+        tx.execute(status -> {
+            handlePriceChange(event, original, updated);
+            return null;
+        });
+        eventCacheManager.invalidate(eventId);
     }
 
     private void handleTicketAllocationStrategyChange(Event event, TicketCategory original, TicketCategoryModification updated) {
         if(updated.isBounded()) {
             //the ticket allocation strategy has been changed to "bounded",
             //therefore we have to link the tickets which have not yet been acquired to this category
+            //the tickets already linked by an interrupted attempt are taken into account
             int eventId = event.getId();
             int newSize = updated.getMaxTickets();
-            int confirmed = ticketRepository.countConfirmedForCategory(eventId, original.getId());
-            int addedTickets = newSize - confirmed;
-            List<Integer> ids = ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, addedTickets, singletonList(TicketStatus.FREE.name()));
-            Validate.isTrue(ids.size() == addedTickets, "not enough tickets");
-            Validate.isTrue(ticketRepository.moveToAnotherCategory(ids, original.getId(), updated.getPriceInCents()) == ids.size(), "not enough tickets");
+            int allocated = ticketRepository.countAllocatedTicketsForCategory(eventId, original.getId());
+            int addedTickets = newSize - allocated;
+            processTicketsInChunks(eventId, addedTickets,
+                amount -> ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, amount, singletonList(TicketStatus.FREE.name())),
+                (ids, processed) -> Validate.isTrue(ticketRepository.moveToAnotherCategory(ids, original.getId(), updated.getPriceInCents()) == ids.size(), "not enough tickets"),
+                found -> { throw new IllegalArgumentException("not enough tickets"); },
+                "ticket allocation for category "+original.getId());
         } else {
             reallocateTickets(eventStatisticsManager.loadTicketCategoryWithStats(original.getId(), event), Optional.empty(), event);
         }
@@ -610,19 +696,20 @@ public class EventManager {
     void handleTokenModification(TicketCategory original, TicketCategory updated, int addedTickets) {
         if(original.isAccessRestricted() ^ updated.isAccessRestricted()) {
             if(updated.isAccessRestricted()) {
-                final MapSqlParameterSource[] args = prepareTokenBulkInsertParameters(updated, updated.getMaxTickets());
-                jdbc.batchUpdate(specialPriceRepository.bulkInsert(), args);
+                insertTokens(updated);
             } else {
                 specialPriceRepository.cancelExpiredTokens(updated.getId());
             }
         } else if(updated.isAccessRestricted() && addedTickets != 0) {
             if(addedTickets > 0) {
-                jdbc.batchUpdate(specialPriceRepository.bulkInsert(), prepareTokenBulkInsertParameters(updated, addedTickets));
+                insertTokens(updated, addedTickets);
             } else {
                 int absDifference = Math.abs(addedTickets);
-                final List<Integer> ids = specialPriceRepository.lockTokens(updated.getId(), absDifference);
-                Validate.isTrue(ids.size() - absDifference == 0, "not enough tokens");
-                specialPriceRepository.cancelTokens(ids);
+                tx.execute(status -> {
+                    final List<Integer> ids = specialPriceRepository.lockTokens(updated.getId(), absDifference);
+                    Validate.isTrue(ids.size() - absDifference == 0, "not enough tokens");
+                    return specialPriceRepository.cancelTokens(ids);
+                });
             }
         }
 
@@ -638,24 +725,128 @@ public class EventManager {
 
         if(addedTickets > 0) {
             //the updated category contains more tickets than the older one
-            List<Integer> lockedTickets = ticketRepository.selectNotAllocatedTicketsForUpdate(event.getId(), addedTickets, singletonList(TicketStatus.FREE.name()));
-            jdbc.batchUpdate(ticketRepository.bulkTicketUpdate(), lockedTickets.stream()
-                    .map(id -> new MapSqlParameterSource("id", id).addValue("categoryId", updated.getId()).addValue("srcPriceCts", updated.getSrcPriceCts()))
-                    .toArray(MapSqlParameterSource[]::new));
+            processTicketsInChunks(event.getId(), addedTickets,
+                amount -> ticketRepository.selectNotAllocatedTicketsForUpdate(event.getId(), amount, singletonList(TicketStatus.FREE.name())),
+                (ids, processed) -> {
+                    ticketRepository.moveToAnotherCategory(ids, updated.getId(), updated.getSrcPriceCts());
+                    ticketCategoryRepository.updateSeatsAvailability(updated.getId(), original.getMaxTickets() + processed + ids.size());
+                },
+                found -> log.warn("category {}: requested {} tickets, only {} were available", updated.getId(), addedTickets, found),
+                "ticket allocation for category "+updated.getId());
         } else {
             int absDifference = Math.abs(addedTickets);
-            final List<Integer> ids = ticketRepository.lockTicketsToInvalidate(event.getId(), updated.getId(), absDifference);
-            int actualDifference = ids.size();
-            if(actualDifference < absDifference) {
-                throw new IllegalStateException("Cannot invalidate "+absDifference+" tickets. There are only "+actualDifference+" free tickets");
+            Date creationDate = Date.from(ZonedDateTime.now(event.getZoneId()).toInstant());
+            processTicketsInChunks(event.getId(), absDifference,
+                amount -> ticketRepository.lockTicketsToInvalidate(event.getId(), updated.getId(), amount),
+                (ids, processed) -> {
+                    ticketRepository.invalidateTickets(ids);
+                    //the invalidated seats are given back to the event
+                    jdbc.batchUpdate(ticketRepository.bulkTicketInitialization(), generateEmptyTickets(event, creationDate, ids.size()).toArray(MapSqlParameterSource[]::new));
+                    ticketCategoryRepository.updateSeatsAvailability(updated.getId(), original.getMaxTickets() - processed - ids.size());
+                },
+                found -> { throw new IllegalStateException("Cannot invalidate "+absDifference+" tickets. There are only "+found+" free tickets"); },
+                "ticket invalidation for category "+updated.getId());
+        }
+    }
+
+    /**
+     * Returns the progress of the chunked ticket operation (e.g. a category resize) currently running for the given event.
+     * Only the operations running on this node are tracked.
+     */
+    public Optional<TicketOperationProgress> getTicketOperationProgress(int eventId) {
+        return Optional.ofNullable(runningOperations.get(eventId));
+    }
+
+    /**
+     * Locks and processes up to {@code amount} tickets, {@link #CHUNK_SIZE} at a time. Each chunk is committed in its
+     * own transaction, unless the caller is already running in one: the processor, which receives the locked tickets
+     * and the number of tickets processed by the previous chunks, must update the number of seats accordingly.
+     * If the locker returns less tickets than requested, {@code onMissingTickets} is notified with the number of tickets
+     * found so far, before processing the last chunk. It can throw an exception in order to abort the operation; the
+     * chunks already committed are kept.
+     *
+     * @return the number of processed tickets
+     */
+    private int processTicketsInChunks(int eventId,
+                                       int amount,
+                                       IntFunction<List<Integer>> locker,
+                                       ObjIntConsumer<List<Integer>> processor,
+                                       IntConsumer onMissingTickets,
+                                       String description) {
+        TicketOperationProgress progress = new TicketOperationProgress(description, amount);
+        TicketOperationProgress previous = runningOperations.put(eventId, progress);
+        try {
+            int processed = 0;
+            while(processed < amount) {
+                int requested = Math.min(CHUNK_SIZE, amount - processed);
+                int alreadyProcessed = processed;
+                int found = tx.execute(status -> {
+                    List<Integer> ids = locker.apply(requested);
+                    if(ids.size() < requested) {
+                        onMissingTickets.accept(alreadyProcessed + ids.size());
+                    }
+                    if(!ids.isEmpty()) {
+                        processor.accept(ids, alreadyProcessed);
+                    }
+                    return ids.size();
+                });
+                processed += found;
+                progress.processed.set(processed);
+                log.debug("{}: {}/{} tickets processed", description, processed, amount);
+                if(found < requested) {
+                    break;
+                }
+            }
+            return processed;
+        } finally {
+            restoreProgress(eventId, progress, previous);
+        }
+    }
+
+    /**
+     * Executes the given TEMPLATE statement in batches of {@link #CHUNK_SIZE} rows, without materializing all the parameters at once.
+     * Each batch is committed in its own transaction, unless the caller is already running in one, together with the
+     * update performed by {@code afterChunk}, which receives the number of rows inserted so far.
+     */
+    private void batchUpdateInChunks(int eventId,
+                                     String statement,
+                                     Stream<MapSqlParameterSource> parameters,
+                                     int total,
+                                     IntConsumer afterChunk,
+                                     String description) {
+        TicketOperationProgress progress = new TicketOperationProgress(description, total);
+        TicketOperationProgress previous = runningOperations.put(eventId, progress);
+        try {
+            Iterator<MapSqlParameterSource> iterator = parameters.iterator();
+            List<MapSqlParameterSource> chunk = new ArrayList<>(CHUNK_SIZE);
+            while(iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if(chunk.size() == CHUNK_SIZE || !iterator.hasNext()) {
+                    int processed = progress.getProcessed() + chunk.size();
+                    tx.execute(status -> {
+                        jdbc.batchUpdate(statement, chunk.toArray(new MapSqlParameterSource[chunk.size()]));
+                        afterChunk.accept(processed);
+                        return null;
+                    });
+                    progress.processed.set(processed);
+                    log.debug("{}: {} rows inserted", description, processed);
+                    chunk.clear();
+                }
             }
-            ticketRepository.invalidateTickets(ids);
-            final MapSqlParameterSource[] params = generateEmptyTickets(event, Date.from(ZonedDateTime.now(event.getZoneId()).toInstant()), Math.abs(addedTickets)).toArray(MapSqlParameterSource[]::new);
-            jdbc.batchUpdate(ticketRepository.bulkTicketInitialization(), params);
+        } finally {
+            restoreProgress(eventId, progress, previous);
         }
     }
 
-    private MapSqlParameterSource[] prepareTokenBulkInsertParameters(TicketCategory tc, int limit) {
+    private void restoreProgress(int eventId, TicketOperationProgress progress, TicketOperationProgress previous) {
+        if(previous != null) {
+            runningOperations.replace(eventId, progress, previous);
+        } else {
+            runningOperations.remove(eventId, progress);
+        }
+    }
+
+    private Stream<MapSqlParameterSource> prepareTokenBulkInsertParameters(TicketCategory tc, int limit) {
         return generateStreamForTicketCreation(limit)
                 .map(ps -> {
                     ps.addValue("code", UUID.randomUUID().toString());
@@ -663,13 +854,13 @@ public class EventManager {
                     ps.addValue("ticketCategoryId", tc.getId());
                     ps.addValue("status", SpecialPrice.Status.WAITING.name());
                     return ps;
-                })
-                .toArray(MapSqlParameterSource[]::new);
+                });
     }
 
     private void createAllTicketsForEvent(Event event) {
-        final MapSqlParameterSource[] params = prepareTicketsBulkInsertParameters(ZonedDateTime.now(event.getZoneId()), event);
-        jdbc.batchUpdate(ticketRepository.bulkTicketInitialization(), params);
+        batchUpdateInChunks(event.getId(), ticketRepository.bulkTicketInitialization(),
+            generateTicketsBulkInsertParameters(ZonedDateTime.now(event.getZoneId()), event),
+            event.getAvailableSeats(), processed -> {}, "ticket creation for event "+event.getId());
     }
 
     private int insertEvent(EventModification em) {
@@ -723,10 +914,15 @@ public class EventManager {
         //
 
         promoCodeRepository.addPromoCode(promoCode, eventId, organizationId, start, end, discountAmount, discountType.toString(), Json.GSON.toJson(categoriesId));
+        if(eventId != null) {
+            eventCacheManager.invalidate(eventId);
+        }
     }
     
     public void deletePromoCode(int promoCodeId) {
+        Optional<Integer> eventId = optionally(() -> promoCodeRepository.findById(promoCodeId)).map(PromoCodeDiscount::getEventId);
         promoCodeRepository.deletePromoCode(promoCodeId);
+        eventId.ifPresent(eventCacheManager::invalidate);
     }
 
     public void updatePromoCode(int promoCodeId, ZonedDateTime start, ZonedDateTime end) {
@@ -747,6 +943,7 @@ public class EventManager {
         return StringUtils.removeEnd(configurationManager.getRequiredValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.BASE_URL)), "/") + "/event/" + event.getShortName() + "/";
     }
 
+    @Transactional(readOnly = true)
     public List<TicketCSVInfo> findAllConfirmedTicketsForCSV(String eventName, String username) {
         Event event = getSingleEvent(eventName, username);
         checkOwnership(event, username, event.getOrganizationId());
@@ -761,8 +958,19 @@ public class EventManager {
         return getActiveEventsStream().collect(toList());
     }
 
+    /**
+     * @return the active events belonging to the given shard
+     */
+    public List<Event> getActiveEvents(JobShard shard) {
+        return filterActive(eventRepository.findAllInShard(shard.getIndex(), shard.getCount()).stream()).collect(toList());
+    }
+
     private Stream<Event> getActiveEventsStream() {
-        return eventRepository.findAll().stream()
+        return filterActive(eventRepository.findAll().stream());
+    }
+
+    private static Stream<Event> filterActive(Stream<Event> events) {
+        return events
             .filter(e -> e.getEnd().truncatedTo(ChronoUnit.DAYS).plusDays(1).isAfter(ZonedDateTime.now(e.getZoneId()).truncatedTo(ChronoUnit.DAYS)));
     }
 
@@ -792,9 +1000,11 @@ public class EventManager {
 	}
 	
 	public void deleteAdditionalField(int ticketFieldConfigurationId) {
+		int eventId = ticketFieldRepository.findById(ticketFieldConfigurationId).getEventId();
 		ticketFieldRepository.deleteValues(ticketFieldConfigurationId);
 		ticketFieldRepository.deleteDescription(ticketFieldConfigurationId);
 		ticketFieldRepository.deleteField(ticketFieldConfigurationId);
+		ticketFieldManager.invalidateConfiguration(eventId);
 	}
 	
 	public void swapAdditionalFieldPosition(int eventId, int id1, int id2) {
@@ -804,11 +1014,13 @@ public class EventManager {
 		Assert.isTrue(eventId == field2.getEventId(), "eventId does not match field2.eventId");
 		ticketFieldRepository.updateFieldOrder(id1, field2.getOrder());
 		ticketFieldRepository.updateFieldOrder(id2, field1.getOrder());
+		ticketFieldManager.invalidateConfiguration(eventId);
 	}
 	
 	public void deleteEvent(int eventId, String username) {
 		final Event event = eventRepository.findById(eventId);
 		checkOwnership(event, username, event.getOrganizationId());
+		eventCacheManager.invalidate(eventId);
 		
 		eventDeleterRepository.deleteWaitingQueue(eventId);
 		
@@ -819,6 +1031,9 @@ public class EventManager {
 		eventDeleterRepository.deleteConfigurationTicketCategory(eventId);
 		
 		eventDeleterRepository.deleteEmailMessage(eventId);
+		eventDeleterRepository.deleteEmailMessageArchive(eventId);
+		eventDeleterRepository.deleteMessageCampaigns(eventId);
+		eventDeleterRepository.deleteOfflinePaymentReconciliations(eventId);
 		
 		eventDeleterRepository.deleteTicketFieldValue(eventId);
 		eventDeleterRepository.deleteFieldDescription(eventId);
@@ -828,12 +1043,14 @@ public class EventManager {
         eventDeleterRepository.deleteAdditionalServiceItems(eventId);
 
 		eventDeleterRepository.deleteTicketFieldConfiguration(eventId);
+		ticketFieldManager.invalidateConfiguration(eventId);
 
         eventDeleterRepository.deleteAdditionalServices(eventId);
 
 		eventDeleterRepository.deleteEventMigration(eventId);
 		eventDeleterRepository.deleteSponsorScan(eventId);
 		eventDeleterRepository.deleteTicket(eventId);
+		eventDeleterRepository.deleteInvoiceDocuments(eventId);
 		eventDeleterRepository.deleteReservation(eventId);
 		
 		eventDeleterRepository.deletePromoCode(eventId);
@@ -848,6 +1065,23 @@ public class EventManager {
 		
 	}
 
+    public static final class TicketOperationProgress {
+        @Getter
+        private final String description;
+        @Getter
+        private final int total;
+        private final AtomicInteger processed = new AtomicInteger();
+
+        private TicketOperationProgress(String description, int total) {
+            this.description = description;
+            this.total = total;
+        }
+
+        public int getProcessed() {
+            return processed.get();
+        }
+    }
+
     @Data
     private static final class GeolocationResult {
         private final Pair<String, String> coordinates;
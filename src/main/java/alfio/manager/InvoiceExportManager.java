@@ -0,0 +1,307 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.controller.support.TemplateProcessor;
+import alfio.model.Event;
+import alfio.model.OrderSummary;
+import alfio.model.TicketReservation;
+import alfio.repository.InvoiceDocumentRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.util.Json;
+import alfio.util.TemplateManager;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.AbstractLobCreatingPreparedStatementCallback;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders and exports the invoices of an event.
+ * The PDFs are rendered in parallel on a bounded pool and written to the ZIP as soon as they are ready, keeping at most
+ * {@link #MAX_PENDING_DOCUMENTS} documents in memory for each export. Rendered documents are stored in the invoice_document
+ * table, keyed by reservation and invoice number, so that each invoice is generated only once.
+ * Very large events can be exported in background: the ZIP is written to a temporary file, which can be downloaded
+ * for {@link #EXPORT_RETENTION_HOURS} hours.
+ */
+@Component
+@Log4j2
+public class InvoiceExportManager {
+
+    static final int RENDERING_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    static final int MAX_PENDING_DOCUMENTS = RENDERING_THREADS * 4;
+    private static final int EXPORT_RETENTION_HOURS = 6;
+
+    private final TicketReservationManager ticketReservationManager;
+    private final TicketReservationRepository ticketReservationRepository;
+    private final InvoiceDocumentRepository invoiceDocumentRepository;
+    private final FileUploadManager fileUploadManager;
+    private final TemplateManager templateManager;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ExecutorService renderingExecutor = Executors.newFixedThreadPool(RENDERING_THREADS, daemonThreadFactory("invoice-renderer"));
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(daemonThreadFactory("invoice-export"));
+    private final Cache<String, ExportStatus> exports = Caffeine.newBuilder()
+        .expireAfterWrite(EXPORT_RETENTION_HOURS, TimeUnit.HOURS)
+        .<String, ExportStatus>removalListener((id, export, cause) -> deleteExportFile(export))
+        .build();
+
+    @Autowired
+    public InvoiceExportManager(TicketReservationManager ticketReservationManager,
+                                TicketReservationRepository ticketReservationRepository,
+                                InvoiceDocumentRepository invoiceDocumentRepository,
+                                FileUploadManager fileUploadManager,
+                                TemplateManager templateManager,
+                                NamedParameterJdbcTemplate jdbc) {
+        this.ticketReservationManager = ticketReservationManager;
+        this.ticketReservationRepository = ticketReservationRepository;
+        this.invoiceDocumentRepository = invoiceDocumentRepository;
+        this.fileUploadManager = fileUploadManager;
+        this.templateManager = templateManager;
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Returns the invoice of the given reservation, rendering and storing it if it hasn't been generated yet.
+     */
+    public Optional<byte[]> getInvoicePdf(Event event, TicketReservation reservation) {
+        String invoiceNumber = reservation.getInvoiceNumber();
+        if(invoiceNumber == null) {
+            return Optional.empty();
+        }
+        Optional<byte[]> stored = loadDocument(reservation.getId(), invoiceNumber);
+        if(stored.isPresent()) {
+            return stored;
+        }
+        Optional<byte[]> pdf = renderInvoice(event, reservation);
+        pdf.ifPresent(content -> storeDocument(event, reservation, content));
+        return pdf;
+    }
+
+    /**
+     * Writes a ZIP containing all the invoices of the given event to the output stream.
+     */
+    public void exportInvoices(Event event, OutputStream os) throws IOException {
+        writeInvoices(event, ticketReservationRepository.findAllReservationIdsWithInvoices(event.getId()), os, processed -> {});
+    }
+
+    /**
+     * Starts the export of all the invoices of the given event in background.
+     */
+    public ExportStatus startExport(Event event) {
+        List<String> reservationIds = ticketReservationRepository.findAllReservationIdsWithInvoices(event.getId());
+        ExportStatus export = new ExportStatus(UUID.randomUUID().toString(), event.getId(), reservationIds.size());
+        exports.put(export.getId(), export);
+        exportExecutor.execute(() -> runExport(event, reservationIds, export));
+        return export;
+    }
+
+    public Optional<ExportStatus> getExport(int eventId, String exportId) {
+        return Optional.ofNullable(exports.getIfPresent(exportId)).filter(e -> e.getEventId() == eventId);
+    }
+
+    /**
+     * Copies the ZIP produced by a completed background export to the output stream.
+     *
+     * @return false if the export doesn't exist or is not completed
+     */
+    public boolean downloadExport(int eventId, String exportId, OutputStream os) throws IOException {
+        Optional<ExportStatus> export = getExport(eventId, exportId).filter(e -> e.getStatus() == ExportStatus.Status.COMPLETED);
+        if(!export.isPresent()) {
+            return false;
+        }
+        Files.copy(export.get().file.toPath(), os);
+        return true;
+    }
+
+    private void runExport(Event event, List<String> reservationIds, ExportStatus export) {
+        try {
+            export.file = File.createTempFile("alfio-invoices-" + event.getId() + "-", ".zip");
+            try(OutputStream os = new BufferedOutputStream(new FileOutputStream(export.file))) {
+                writeInvoices(event, reservationIds, os, export.processed::set);
+            }
+            export.status = ExportStatus.Status.COMPLETED;
+            log.info("exported {} invoices for event {}", reservationIds.size(), event.getShortName());
+        } catch (Exception e) {
+            log.error("cannot export invoices for event {}", event.getShortName(), e);
+            export.status = ExportStatus.Status.FAILED;
+            deleteExportFile(export);
+        }
+    }
+
+    private void writeInvoices(Event event, List<String> reservationIds, OutputStream os, IntConsumer onProgress) throws IOException {
+        CompletionService<Optional<Pair<String, byte[]>>> completionService = new ExecutorCompletionService<>(renderingExecutor);
+        Set<Future<Optional<Pair<String, byte[]>>>> pending = new HashSet<>();
+        Iterator<String> ids = reservationIds.iterator();
+        int processed = 0;
+        try(ZipOutputStream zipOS = new ZipOutputStream(os)) {
+            while(ids.hasNext() || !pending.isEmpty()) {
+                while(pending.size() < MAX_PENDING_DOCUMENTS && ids.hasNext()) {
+                    String reservationId = ids.next();
+                    pending.add(completionService.submit(() -> renderEntry(event, reservationId)));
+                }
+                Future<Optional<Pair<String, byte[]>>> completed = completionService.take();
+                pending.remove(completed);
+                Optional<Pair<String, byte[]>> entry = completed.get();
+                if(entry.isPresent()) {
+                    zipOS.putNextEntry(new ZipEntry(entry.get().getLeft()));
+                    StreamUtils.copy(entry.get().getRight(), zipOS);
+                    zipOS.closeEntry();
+                }
+                onProgress.accept(++processed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("invoice export has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("cannot render invoice", e.getCause());
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private Optional<Pair<String, byte[]>> renderEntry(Event event, String reservationId) {
+        return ticketReservationManager.findById(reservationId)
+            .flatMap(reservation -> getInvoicePdf(event, reservation)
+                .map(pdf -> Pair.of("invoice-" + event.getShortName() + "-id-" + reservation.getId() + "-invoice-nr-" + reservation.getInvoiceNumber() + ".pdf", pdf)));
+    }
+
+    private Optional<byte[]> renderInvoice(Event event, TicketReservation reservation) {
+        OrderSummary orderSummary = Json.fromJson(reservation.getInvoiceModel(), OrderSummary.class);
+        Optional<String> vat = Optional.ofNullable(orderSummary.getVatPercentage());
+        Map<String, Object> reservationModel = ticketReservationManager.prepareModelForReservationEmail(event, reservation, vat, orderSummary);
+        return TemplateProcessor.buildInvoicePdf(event, fileUploadManager, new Locale(reservation.getUserLanguage()), templateManager, reservationModel);
+    }
+
+    private Optional<byte[]> loadDocument(String reservationId, String invoiceNumber) {
+        MapSqlParameterSource params = new MapSqlParameterSource("reservationId", reservationId).addValue("invoiceNumber", invoiceNumber);
+        List<byte[]> result = jdbc.query(invoiceDocumentRepository.documentContent(), params, (rs, rowNum) -> {
+            try (InputStream is = rs.getBinaryStream("content")) {
+                return StreamUtils.copyToByteArray(is);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error while copying data", e);
+            }
+        });
+        return result.stream().findFirst();
+    }
+
+    private void storeDocument(Event event, TicketReservation reservation, byte[] content) {
+        try {
+            invoiceDocumentRepository.deleteForReservation(reservation.getId());
+            jdbc.getJdbcOperations().execute(invoiceDocumentRepository.insertTemplate(),
+                new AbstractLobCreatingPreparedStatementCallback(new DefaultLobHandler()) {
+                    @Override
+                    protected void setValues(PreparedStatement ps, LobCreator lobCreator) throws SQLException {
+                        ps.setString(1, reservation.getId());
+                        ps.setString(2, reservation.getInvoiceNumber());
+                        ps.setInt(3, event.getId());
+                        ps.setInt(4, content.length);
+                        lobCreator.setBlobAsBytes(ps, 5, content);
+                    }
+                });
+        } catch (DataAccessException e) {
+            //the document has been stored concurrently: it is not a problem, since it will be generated again if needed
+            log.warn("cannot store invoice {} for reservation {}", reservation.getInvoiceNumber(), reservation.getId(), e);
+        }
+    }
+
+    /**
+     * Evicts the expired exports, deleting their temporary files. Caffeine performs the eviction only while the cache
+     * is in use, therefore this must be called periodically.
+     */
+    public void cleanupExpiredExports() {
+        exports.cleanUp();
+    }
+
+    private static void deleteExportFile(ExportStatus export) {
+        File file = export != null ? export.file : null;
+        if(file != null) {
+            export.file = null;
+            if(!file.delete()) {
+                log.warn("cannot delete temporary file {}", file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        exportExecutor.shutdownNow();
+        renderingExecutor.shutdownNow();
+        exports.invalidateAll();
+        exports.cleanUp();
+    }
+
+    public static class ExportStatus {
+
+        public enum Status {
+            RUNNING, COMPLETED, FAILED
+        }
+
+        @Getter
+        private final String id;
+        @Getter
+        private final int eventId;
+        @Getter
+        private final int total;
+        private final AtomicInteger processed = new AtomicInteger();
+        private volatile Status status = Status.RUNNING;
+        private volatile File file;
+
+        ExportStatus(String id, int eventId, int total) {
+            this.id = id;
+            this.eventId = eventId;
+            this.total = total;
+        }
+
+        public int getProcessed() {
+            return processed.get();
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.CustomMessageManager;
+import alfio.manager.support.JobShard;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.time.DateUtils;
 import org.quartz.DisallowConcurrentExecution;
@@ -31,6 +33,7 @@ import java.util.Date;
 public class Jobs {
 
     private static final int ONE_MINUTE = 1000 * 60;
+    private static final int FIVE_MINUTES = 5 * ONE_MINUTE;
     private static final int THIRTY_MINUTES = 30 * ONE_MINUTE;
     private static final int THIRTY_SECONDS = 1000 * 30;
     private static final int FIVE_SECONDS = 1000 * 5;
@@ -39,31 +42,51 @@ public class Jobs {
     private final SpecialPriceTokenGenerator specialPriceTokenGenerator;
     private final FileUploadManager fileUploadManager;
     private final WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
+    private final CustomMessageManager customMessageManager;
+    private final OfflinePaymentReconciliationManager offlinePaymentReconciliationManager;
+    private final ShardedJobExecutor shardedJobExecutor;
 
     @Autowired
     public Jobs(TicketReservationManager ticketReservationManager,
                 NotificationManager notificationManager,
                 SpecialPriceTokenGenerator specialPriceTokenGenerator,
                 FileUploadManager fileUploadManager,
-                WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor) {
+                WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
+                CustomMessageManager customMessageManager,
+                OfflinePaymentReconciliationManager offlinePaymentReconciliationManager,
+                ShardedJobExecutor shardedJobExecutor) {
         this.ticketReservationManager = ticketReservationManager;
         this.notificationManager = notificationManager;
         this.specialPriceTokenGenerator = specialPriceTokenGenerator;
         this.fileUploadManager = fileUploadManager;
         this.waitingQueueSubscriptionProcessor = waitingQueueSubscriptionProcessor;
+        this.customMessageManager = customMessageManager;
+        this.offlinePaymentReconciliationManager = offlinePaymentReconciliationManager;
+        this.shardedJobExecutor = shardedJobExecutor;
+        //the work of these jobs is split by event (or by reservation), so that it can be processed by all the nodes of the cluster
+        shardedJobExecutor.register(CleanupExpiredPendingReservation.NAME, CleanupExpiredPendingReservation.INTERVAL, this::cleanupExpiredPendingReservation);
+        shardedJobExecutor.register(SendOfflinePaymentReminder.NAME, SendOfflinePaymentReminder.INTERVAL, ticketReservationManager::sendReminderForOfflinePayments);
+        shardedJobExecutor.register(SendTicketAssignmentReminder.NAME, SendTicketAssignmentReminder.INTERVAL, this::sendTicketAssignmentReminder);
+        shardedJobExecutor.register(GenerateSpecialPriceCodes.NAME, FIVE_MINUTES, specialPriceTokenGenerator::generatePendingCodes);
+        shardedJobExecutor.register(ProcessReleasedTickets.NAME, FIVE_MINUTES, waitingQueueSubscriptionProcessor::handleWaitingTickets);
     }
 
 
     public void cleanupExpiredPendingReservation() {
+        shardedJobExecutor.requestExecution(CleanupExpiredPendingReservation.NAME);
+    }
+
+    private int cleanupExpiredPendingReservation(JobShard shard) {
         //cleanup reservation that have a expiration older than "now minus 10 minutes": this give some additional slack.
+        //pending reservations are normally released by the ReservationExpiryScheduler, this is only a safety net.
         final Date expirationDate = DateUtils.addMinutes(new Date(), -10);
-        ticketReservationManager.cleanupExpiredReservations(expirationDate);
-        ticketReservationManager.cleanupExpiredOfflineReservations(expirationDate);
-        ticketReservationManager.markExpiredInPaymentReservationAsStuck(expirationDate);
+        return ticketReservationManager.cleanupExpiredReservations(expirationDate, shard)
+            + ticketReservationManager.cleanupExpiredOfflineReservations(expirationDate, shard)
+            + ticketReservationManager.markExpiredInPaymentReservationAsStuck(expirationDate, shard);
     }
 
     public void sendOfflinePaymentReminder() {
-        ticketReservationManager.sendReminderForOfflinePayments();
+        shardedJobExecutor.requestExecution(SendOfflinePaymentReminder.NAME);
     }
 
     public void sendOfflinePaymentReminderToEventOrganizers() {
@@ -71,12 +94,16 @@ public class Jobs {
     }
 
     public void sendTicketAssignmentReminder() {
-        ticketReservationManager.sendReminderForTicketAssignment();
-        ticketReservationManager.sendReminderForOptionalData();
+        shardedJobExecutor.requestExecution(SendTicketAssignmentReminder.NAME);
+    }
+
+    private int sendTicketAssignmentReminder(JobShard shard) {
+        return ticketReservationManager.sendReminderForTicketAssignment(shard)
+            + ticketReservationManager.sendReminderForOptionalData(shard);
     }
 
     public void generateSpecialPriceCodes() {
-        specialPriceTokenGenerator.generatePendingCodes();
+        shardedJobExecutor.requestExecution(GenerateSpecialPriceCodes.NAME);
     }
 
     public void sendEmails() {
@@ -84,13 +111,25 @@ public class Jobs {
     }
 
     public void processReleasedTickets() {
-        waitingQueueSubscriptionProcessor.handleWaitingTickets();
+        shardedJobExecutor.requestExecution(ProcessReleasedTickets.NAME);
     }
 
     public void cleanupUnreferencedBlobFiles() {
         fileUploadManager.cleanupUnreferencedBlobFiles();
     }
 
+    public void archiveSentEmails() {
+        notificationManager.archiveSentMessages();
+    }
+
+    public void resumeMessageCampaigns() {
+        customMessageManager.resumeCampaigns();
+    }
+
+    public void resumeOfflinePaymentReconciliations() {
+        offlinePaymentReconciliationManager.resumeReconciliations();
+    }
+
     @DisallowConcurrentExecution
     @Log4j2
     public static class SendOfflinePaymentReminderToEventOrganizers implements Job {
@@ -117,7 +156,8 @@ public class Jobs {
     @Log4j2
     public static class CleanupExpiredPendingReservation implements Job {
 
-        public static long INTERVAL = THIRTY_SECONDS;
+        public static final String NAME = "CleanupExpiredPendingReservation";
+        public static long INTERVAL = FIVE_MINUTES;
 
         @Autowired
         private Jobs jobs;
@@ -133,6 +173,7 @@ public class Jobs {
     @Log4j2
     public static class SendOfflinePaymentReminder implements  Job {
 
+        public static final String NAME = "SendOfflinePaymentReminder";
         public static long INTERVAL = THIRTY_MINUTES;
 
         @Autowired
@@ -149,6 +190,7 @@ public class Jobs {
     @Log4j2
     public static class SendTicketAssignmentReminder implements  Job {
 
+        public static final String NAME = "SendTicketAssignmentReminder";
         public static long INTERVAL = THIRTY_MINUTES;
 
         @Autowired
@@ -166,6 +208,7 @@ public class Jobs {
     @Log4j2
     public static class GenerateSpecialPriceCodes implements  Job {
 
+        public static final String NAME = "GenerateSpecialPriceCodes";
         public static long INTERVAL = THIRTY_SECONDS;
 
         @Autowired
@@ -198,6 +241,7 @@ public class Jobs {
     @Log4j2
     public static class ProcessReleasedTickets implements Job {
 
+        public static final String NAME = "ProcessReleasedTickets";
         public static long INTERVAL = THIRTY_SECONDS;
 
         @Autowired
@@ -226,4 +270,52 @@ public class Jobs {
         }
     }
 
+    @DisallowConcurrentExecution
+    @Log4j2
+    public static class ArchiveSentEmails implements Job {
+
+        public static long INTERVAL = ONE_MINUTE * 60;
+
+        @Autowired
+        private Jobs jobs;
+
+        @Override
+        public void execute(JobExecutionContext context) throws JobExecutionException {
+            log.trace("running job " + getClass().getSimpleName());
+            jobs.archiveSentEmails();
+        }
+    }
+
+    @DisallowConcurrentExecution
+    @Log4j2
+    public static class ResumeMessageCampaigns implements Job {
+
+        public static long INTERVAL = THIRTY_SECONDS;
+
+        @Autowired
+        private Jobs jobs;
+
+        @Override
+        public void execute(JobExecutionContext context) throws JobExecutionException {
+            log.trace("running job " + getClass().getSimpleName());
+            jobs.resumeMessageCampaigns();
+        }
+    }
+
+    @DisallowConcurrentExecution
+    @Log4j2
+    public static class ResumeOfflinePaymentReconciliations implements Job {
+
+        public static long INTERVAL = THIRTY_SECONDS;
+
+        @Autowired
+        private Jobs jobs;
+
+        @Override
+        public void execute(JobExecutionContext context) throws JobExecutionException {
+            log.trace("running job " + getClass().getSimpleName());
+            jobs.resumeOfflinePaymentReconciliations();
+        }
+    }
+
 }
@@ -20,6 +20,7 @@ import alfio.controller.support.TemplateProcessor;
 import alfio.manager.support.CustomMessageManager;
 import alfio.manager.support.PDFTemplateGenerator;
 import alfio.manager.support.PartialTicketTextGenerator;
+import alfio.manager.support.SimpleEmail;
 import alfio.manager.support.TextTemplateGenerator;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.Mailer;
@@ -55,6 +56,8 @@ import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -85,11 +88,14 @@ import static alfio.model.EmailMessage.Status.*;
 public class NotificationManager {
 
     public static final Clock UTC = Clock.systemUTC();
+    static final String ARCHIVE_CURSOR_PREFIX = "archive-";
     private final Mailer mailer;
     private final MessageSource messageSource;
     private final EmailMessageRepository emailMessageRepository;
     private final TransactionTemplate tx;
     private final EventRepository eventRepository;
+    private final EventCacheManager eventCacheManager;
+    private final NamedParameterJdbcTemplate jdbc;
     private final OrganizationRepository organizationRepository;
     private final ConfigurationManager configurationManager;
     private final Gson gson;
@@ -111,11 +117,15 @@ public class NotificationManager {
                                ConfigurationManager configurationManager,
                                FileUploadManager fileUploadManager,
                                TemplateManager templateManager,
-                               TicketReservationRepository ticketReservationRepository) {
+                               TicketReservationRepository ticketReservationRepository,
+                               EventCacheManager eventCacheManager,
+                               NamedParameterJdbcTemplate jdbc) {
         this.messageSource = messageSource;
         this.mailer = mailer;
         this.emailMessageRepository = emailMessageRepository;
         this.eventRepository = eventRepository;
+        this.eventCacheManager = eventCacheManager;
+        this.jdbc = jdbc;
         this.organizationRepository = organizationRepository;
         this.tx = new TransactionTemplate(transactionManager);
         this.configurationManager = configurationManager;
@@ -130,11 +140,11 @@ public class NotificationManager {
             Locale locale;
             if(model.containsKey("eventId")) {
                 //legacy branch, now we generate the ics as a reinterpreted ticket
-                event = eventRepository.findById(Integer.valueOf(model.get("eventId"), 10));
+                event = eventCacheManager.getEvent(Integer.valueOf(model.get("eventId"), 10));
                 locale = Json.fromJson(model.get("locale"), Locale.class);
             } else {
                 Ticket ticket = Json.fromJson(model.get("ticket"), Ticket.class);
-                event = eventRepository.findById(ticket.getEventId());
+                event = eventCacheManager.getEvent(ticket.getEventId());
                 locale = Locale.forLanguageTag(ticket.getUserLanguage());
             }
             String description = eventDescriptionRepository.findDescriptionByEventIdTypeAndLocale(event.getId(), EventDescription.EventDescriptionType.DESCRIPTION, locale.getLanguage()).orElse("");
@@ -158,7 +168,7 @@ public class NotificationManager {
         attachmentTransformer.put(Mailer.AttachmentIdentifier.PASSBOOK, (model) -> {
             Ticket ticket = Json.fromJson(model.get("ticket"), Ticket.class);
             int eventId = ticket.getEventId();
-            Event event = eventRepository.findById(eventId);
+            Event event = eventCacheManager.getEvent(eventId);
             Organization organization = organizationRepository.getById(Integer.valueOf(model.get("organizationId"), 10));
             int organizationId = organization.getId();
 
@@ -258,7 +268,7 @@ public class NotificationManager {
             try {
                 TicketReservation reservation = ticketReservationRepository.findReservationById(ticket.getTicketsReservationId());
                 TicketCategory ticketCategory = Json.fromJson(model.get("ticketCategory"), TicketCategory.class);
-                Event event = eventRepository.findById(ticket.getEventId());
+                Event event = eventCacheManager.getEvent(ticket.getEventId());
                 Organization organization = organizationRepository.getById(Integer.valueOf(model.get("organizationId"), 10));
                 PDFTemplateGenerator pdfTemplateGenerator = TemplateProcessor.buildPDFTicket(Locale.forLanguageTag(ticket.getUserLanguage()), event, reservation,
                     ticket, ticketCategory, organization, templateManager, fileUploadManager, configurationManager.getShortReservationID(event, ticket.getTicketsReservationId()));
@@ -304,7 +314,7 @@ public class NotificationManager {
     public Function<Map<String, String>, byte[]> receiptOrInvoiceFactory(Function<Triple<Event, Locale, Map<String, Object>>, Optional<byte[]>> pdfGenerator) {
         return (model) -> {
             String reservationId = model.get("reservationId");
-            Event event = eventRepository.findById(Integer.valueOf(model.get("eventId"), 10));
+            Event event = eventCacheManager.getEvent(Integer.valueOf(model.get("eventId"), 10));
             Locale language = Json.fromJson(model.get("language"), Locale.class);
 
             Map<String, Object> reservationEmailModel = Json.fromJson(model.get("reservationEmailModel"), new TypeReference<Map<String, Object>>() {});
@@ -372,12 +382,113 @@ public class NotificationManager {
         }
     }
 
-    public List<LightweightMailMessage> loadAllMessagesForEvent(int eventId) {
-        return emailMessageRepository.findByEventId(eventId);
+    /**
+     * Set-based version of {@link #sendSimpleEmail(Event, String, String, TextTemplateGenerator, List)}: the messages
+     * already present on the database are set back to WAITING, the others are inserted with a single batch.
+     * Must be called within a transaction.
+     *
+     * @return the number of inserted messages
+     */
+    public int sendSimpleEmails(Event event, List<SimpleEmail> messages) {
+        if(messages.isEmpty()) {
+            return 0;
+        }
+        String encodedCC = Json.toJson(Collections.emptyList());
+        Date requestTimestamp = Date.from(ZonedDateTime.now(UTC).toInstant());
+        Map<String, MapSqlParameterSource> byChecksum = new LinkedHashMap<>();
+        messages.forEach(m -> {
+            List<Mailer.Attachment> attachments = m.getAttachments();
+            String encodedAttachments = attachments.isEmpty() ? null : encodeAttachments(attachments.toArray(new Mailer.Attachment[attachments.size()]));
+            String checksum = calculateChecksum(m.getRecipient(), encodedAttachments, m.getSubject(), m.getText());
+            byChecksum.putIfAbsent(checksum, new MapSqlParameterSource("eventId", event.getId())
+                .addValue("recipient", m.getRecipient())
+                .addValue("subject", m.getSubject())
+                .addValue("message", m.getText())
+                .addValue("attachments", encodedAttachments)
+                .addValue("checksum", checksum)
+                .addValue("timestamp", requestTimestamp)
+                .addValue("emailCC", encodedCC));
+        });
+        List<String> existing = emailMessageRepository.findExistingChecksums(event.getId(), new ArrayList<>(byChecksum.keySet()));
+        if(!existing.isEmpty()) {
+            emailMessageRepository.updateStatusToWaiting(event.getId(), existing);
+            byChecksum.keySet().removeAll(existing);
+        }
+        if(!byChecksum.isEmpty()) {
+            jdbc.batchUpdate(emailMessageRepository.bulkInsert(), byChecksum.values().toArray(new MapSqlParameterSource[byChecksum.size()]));
+        }
+        return byChecksum.size();
+    }
+
+    /**
+     * Loads a page of all the messages of the event: the archived messages come first, followed by the messages which
+     * have not been archived yet. The cursor of the archived messages is prefixed by {@link #ARCHIVE_CURSOR_PREFIX}.
+     */
+    public Page<LightweightMailMessage> loadAllMessagesForEvent(int eventId, Optional<String> cursor, String search, Integer limit) {
+        int pageSize = Page.sanitizeLimit(limit);
+        String filter = Page.toLikeFilter(search);
+        if(cursor.isPresent() && !cursor.get().startsWith(ARCHIVE_CURSOR_PREFIX)) {
+            return Page.of(emailMessageRepository.findByEventIdAfter(eventId, Page.numericCursor(cursor), filter, pageSize), pageSize, EmailMessage::getId);
+        }
+        int afterId = Page.numericCursor(cursor.map(c -> c.substring(ARCHIVE_CURSOR_PREFIX.length())));
+        List<LightweightMailMessage> archived = emailMessageRepository.findArchivedByEventIdAfter(eventId, afterId, filter, pageSize);
+        if(archived.size() == pageSize) {
+            return new Page<>(archived, ARCHIVE_CURSOR_PREFIX + archived.get(pageSize - 1).getId());
+        }
+        //the archive is exhausted: the page is completed with the first messages which have not been archived
+        int remaining = pageSize - archived.size();
+        List<LightweightMailMessage> messages = emailMessageRepository.findByEventIdAfter(eventId, -1, filter, remaining);
+        List<LightweightMailMessage> content = new ArrayList<>(archived);
+        content.addAll(messages);
+        return new Page<>(content, messages.size() < remaining ? null : String.valueOf(messages.get(remaining - 1).getId()));
+    }
+
+    public Page<LightweightMailMessage> loadMessagesForEvent(int eventId, Optional<String> cursor, String search, Integer limit) {
+        int pageSize = Page.sanitizeLimit(limit);
+        int afterId = Page.numericCursor(cursor);
+        return Page.of(emailMessageRepository.findByEventIdAfter(eventId, afterId, Page.toLikeFilter(search), pageSize), pageSize, EmailMessage::getId);
+    }
+
+    public Page<LightweightMailMessage> loadArchivedMessagesForEvent(int eventId, Optional<String> cursor, String search, Integer limit) {
+        int pageSize = Page.sanitizeLimit(limit);
+        int afterId = Page.numericCursor(cursor);
+        return Page.of(emailMessageRepository.findArchivedByEventIdAfter(eventId, afterId, Page.toLikeFilter(search), pageSize), pageSize, EmailMessage::getId);
     }
 
     public Optional<EmailMessage> loadSingleMessageForEvent(int eventId, int messageId) {
-        return emailMessageRepository.findByEventIdAndMessageId(eventId, messageId);
+        Optional<EmailMessage> message = emailMessageRepository.findByEventIdAndMessageId(eventId, messageId);
+        return message.isPresent() ? message : emailMessageRepository.findArchivedByEventIdAndMessageId(eventId, messageId);
+    }
+
+    /**
+     * Moves the sent messages to the archive and deletes the archived messages which are older than the configured retention.
+     * The thresholds are defined by {@link ConfigurationKeys#MAIL_ARCHIVE_AFTER_DAYS} and {@link ConfigurationKeys#MAIL_ARCHIVE_RETENTION_DAYS}.
+     */
+    void archiveSentMessages() {
+        ZonedDateTime now = ZonedDateTime.now(UTC);
+        emailMessageRepository.findEventIdsWithSentMessages().forEach(eventId -> {
+            int archiveAfterDays = getDaysConfiguration(eventId, ConfigurationKeys.MAIL_ARCHIVE_AFTER_DAYS, 30);
+            if(archiveAfterDays >= 0) {
+                ZonedDateTime sentBefore = now.minusDays(archiveAfterDays);
+                int archived = tx.execute(status -> {
+                    emailMessageRepository.archiveSentMessages(eventId, sentBefore);
+                    return emailMessageRepository.deleteArchivedMessages(eventId, sentBefore);
+                });
+                log.debug("archived {} messages for event {}", archived, eventId);
+            }
+        });
+        emailMessageRepository.findEventIdsWithArchivedMessages().forEach(eventId -> {
+            int retentionDays = getDaysConfiguration(eventId, ConfigurationKeys.MAIL_ARCHIVE_RETENTION_DAYS, -1);
+            if(retentionDays >= 0) {
+                int deleted = tx.execute(status -> emailMessageRepository.deleteExpiredArchivedMessages(eventId, now.minusDays(retentionDays)));
+                log.debug("deleted {} archived messages for event {}", deleted, eventId);
+            }
+        });
+    }
+
+    private int getDaysConfiguration(int eventId, ConfigurationKeys key, int defaultValue) {
+        int organizationId = eventRepository.findOrganizationIdByEventId(eventId);
+        return configurationManager.getIntConfigValue(Configuration.from(organizationId, eventId, key), defaultValue);
     }
 
     void sendWaitingMessages() {
@@ -417,7 +528,7 @@ public class NotificationManager {
     }
 
     private void sendMessage(EmailMessage message) {
-        Event event = eventRepository.findById(message.getEventId());
+        Event event = eventCacheManager.getEvent(message.getEventId());
         mailer.send(event, message.getRecipient(), message.getCc(), message.getSubject(), message.getMessage(), Optional.empty(), decodeAttachments(message.getAttachments()));
         emailMessageRepository.updateStatusToSent(message.getEventId(), message.getChecksum(), ZonedDateTime.now(UTC), Collections.singletonList(IN_PROCESS.name()));
     }
@@ -0,0 +1,322 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.Event;
+import alfio.model.OfflinePaymentReconciliation;
+import alfio.model.TicketReservation;
+import alfio.model.TotalPrice;
+import alfio.repository.OfflinePaymentReconciliationRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.util.Json;
+import alfio.util.MonetaryUtil;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static alfio.repository.TicketReservationRepository.SHORT_ID_LENGTH;
+import static alfio.repository.TicketReservationRepository.toShortId;
+
+/**
+ * Confirms the offline payments listed in a bank statement.
+ * Every upload is persisted as an {@link OfflinePaymentReconciliation} and processed in background: the rows are matched
+ * against the reservations of the event with a single query, then the payments are confirmed in chunks. Each chunk is
+ * committed together with its results, stored one row per payment, and the progress counter, therefore a reconciliation interrupted by a restart
+ * is resumed (see {@link #resumeReconciliations()}) from the first unprocessed row.
+ * The reservations to notify are recorded together with the results of the chunk, and the confirmation emails and
+ * the plugin notifications are sent after the commit; a reconciliation resumed after a restart sends the notifications
+ * which have not been sent yet.
+ */
+@Component
+@Log4j2
+public class OfflinePaymentReconciliationManager {
+
+    static final int CHUNK_SIZE = 50;
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(5);
+    private static final Clock UTC = Clock.systemUTC();
+
+    private final EventManager eventManager;
+    private final TicketReservationManager ticketReservationManager;
+    private final TicketReservationRepository ticketReservationRepository;
+    private final OfflinePaymentReconciliationRepository reconciliationRepository;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final ExecutorService reconciliationExecutor = Executors.newSingleThreadExecutor(daemonThreadFactory("offline-payment-reconciliation"));
+    private final Set<Integer> scheduledReconciliations = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public OfflinePaymentReconciliationManager(EventManager eventManager,
+                                               TicketReservationManager ticketReservationManager,
+                                               TicketReservationRepository ticketReservationRepository,
+                                               OfflinePaymentReconciliationRepository reconciliationRepository,
+                                               NamedParameterJdbcTemplate jdbc,
+                                               PlatformTransactionManager transactionManager) {
+        this.eventManager = eventManager;
+        this.ticketReservationManager = ticketReservationManager;
+        this.ticketReservationRepository = ticketReservationRepository;
+        this.reconciliationRepository = reconciliationRepository;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Saves the uploaded rows and starts the reconciliation in background.
+     *
+     * @param eventName the event
+     * @param lines the rows of the uploaded file: reservation ID (full or partial) and paid amount
+     * @param username the current user
+     * @return the reconciliation, in its initial state
+     */
+    public OfflinePaymentReconciliation startReconciliation(String eventName, List<String[]> lines, String username) {
+        Event event = eventManager.getSingleEvent(eventName, username);
+        List<List<String>> payments = lines.stream().map(Arrays::asList).collect(Collectors.toList());
+        int id = reconciliationRepository.insert(event.getId(), username, Json.toJson(payments), payments.size(), ZonedDateTime.now(UTC)).getKey();
+        schedule(id);
+        return reconciliationRepository.findById(id);
+    }
+
+    public Optional<OfflinePaymentReconciliation> loadReconciliation(String eventName, int id, String username) {
+        Event event = eventManager.getSingleEvent(eventName, username);
+        return reconciliationRepository.findByIdAndEventId(id, event.getId()).stream().findFirst()
+            .map(r -> r.withResults(reconciliationRepository.findResults(r.getId())));
+    }
+
+    /**
+     * Internal method used by automated jobs: schedules the reconciliations which are waiting or have been abandoned by another node.
+     */
+    public void resumeReconciliations() {
+        reconciliationRepository.findResumableIds(ZonedDateTime.now(UTC)).forEach(this::schedule);
+    }
+
+    private void schedule(int reconciliationId) {
+        if(scheduledReconciliations.add(reconciliationId)) {
+            reconciliationExecutor.execute(() -> {
+                try {
+                    processReconciliation(reconciliationId);
+                } finally {
+                    scheduledReconciliations.remove(reconciliationId);
+                }
+            });
+        }
+    }
+
+    void processReconciliation(int reconciliationId) {
+        ZonedDateTime now = ZonedDateTime.now(UTC);
+        if(reconciliationRepository.acquireLease(reconciliationId, now, now.plus(LEASE_DURATION)) == 0) {
+            log.debug("reconciliation {} is not available", reconciliationId);
+            return;
+        }
+        try {
+            OfflinePaymentReconciliation reconciliation = reconciliationRepository.findById(reconciliationId);
+            Event event = eventManager.getSingleEventById(reconciliation.getEventId(), reconciliation.getUsername());
+            List<List<String>> rows = reconciliation.getPayments();
+            List<Payment> payments = new ArrayList<>();
+            for(int i = reconciliation.getProcessedCount(); i < rows.size(); i++) {
+                payments.add(Payment.parse(i + 1, rows.get(i)));
+            }
+            match(event, payments);
+
+            Set<String> notificationAttempts = new HashSet<>();
+            //notifications of a previous run which has been interrupted
+            sendConfirmations(reconciliationId, event, notificationAttempts);
+            Set<String> confirmedReservations = new HashSet<>();
+            for(int from = 0; from < payments.size(); from += CHUNK_SIZE) {
+                List<Payment> chunk = payments.subList(from, Math.min(from + CHUNK_SIZE, payments.size()));
+                if(!confirmChunk(reconciliationId, event, chunk, confirmedReservations)) {
+                    log.warn("reconciliation {} has been taken over by another node", reconciliationId);
+                    return;
+                }
+                sendConfirmations(reconciliationId, event, notificationAttempts);
+            }
+            reconciliationRepository.updateStatus(reconciliationId, OfflinePaymentReconciliation.Status.COMPLETED.name(), ZonedDateTime.now(UTC));
+        } catch (Exception e) {
+            log.error("error while processing reconciliation " + reconciliationId, e);
+            reconciliationRepository.updateStatus(reconciliationId, OfflinePaymentReconciliation.Status.FAILED.name(), ZonedDateTime.now(UTC));
+        }
+    }
+
+    /**
+     * Resolves the reservation of each payment. The prefixes having at least {@link TicketReservationRepository#SHORT_ID_LENGTH}
+     * characters, i.e. the ones printed on invoices and bank transfers, are resolved with a single lookup on the indexed
+     * "short_id" column; shorter prefixes fall back to the prefix query.
+     */
+    private void match(Event event, List<Payment> payments) {
+        List<String> shortIds = payments.stream()
+            .filter(p -> p.error == null && p.partialId.length() >= SHORT_ID_LENGTH)
+            .map(p -> toShortId(p.partialId))
+            .distinct()
+            .collect(Collectors.toList());
+        Map<String, List<TicketReservation>> candidates = shortIds.isEmpty() ? Collections.emptyMap() :
+            ticketReservationRepository.findByShortIdsInEvent(shortIds, event.getId()).stream()
+                .collect(Collectors.groupingBy(r -> toShortId(r.getId())));
+
+        payments.stream().filter(p -> p.error == null).forEach(p -> {
+            List<TicketReservation> found;
+            if(p.partialId.length() >= SHORT_ID_LENGTH) {
+                found = candidates.getOrDefault(toShortId(p.partialId), Collections.emptyList()).stream()
+                    .filter(r -> r.getId().toLowerCase(Locale.ENGLISH).startsWith(p.partialId))
+                    .collect(Collectors.toList());
+            } else {
+                found = ticketReservationRepository.findByPartialIDInEvent(p.partialId, event.getId());
+            }
+            if(found.isEmpty()) {
+                p.error = "reservation not found";
+            } else if(found.size() > 1) {
+                p.error = "multiple results found. Try handling this reservation manually.";
+            } else {
+                p.reservation = found.get(0);
+            }
+        });
+    }
+
+    /**
+     * @return false if the chunk has already been processed by another node
+     */
+    private boolean confirmChunk(int reconciliationId, Event event, List<Payment> chunk, Set<String> confirmedReservations) {
+        List<String> reservationIds = chunk.stream().filter(p -> p.reservation != null).map(p -> p.reservation.getId()).distinct().collect(Collectors.toList());
+        Set<String> confirmedInChunk = new HashSet<>();
+        return tx.execute(status -> {
+            Map<String, TicketReservation> locked = Collections.emptyMap();
+            if(!reservationIds.isEmpty()) {
+                ticketReservationRepository.lockReservationsForUpdate(reservationIds);
+                locked = ticketReservationRepository.findReservationsByIds(reservationIds).stream().collect(Collectors.toMap(TicketReservation::getId, Function.identity()));
+            }
+            Map<String, TotalPrice> totals = ticketReservationManager.totalReservationCostWithVAT(event, new ArrayList<>(locked.values()));
+            for(Payment payment : chunk) {
+                if(payment.error == null) {
+                    confirm(event, payment, locked.get(payment.reservation.getId()), totals.get(payment.reservation.getId()), confirmedReservations, confirmedInChunk);
+                }
+            }
+            int confirmed = (int) chunk.stream().filter(p -> p.confirmed).count();
+            ZonedDateTime now = ZonedDateTime.now(UTC);
+            int lastRow = chunk.get(chunk.size() - 1).row;
+            if(reconciliationRepository.updateProgress(reconciliationId, chunk.get(0).row - 1, lastRow,
+                confirmed, chunk.size() - confirmed, now, now.plus(LEASE_DURATION)) == 0) {
+                status.setRollbackOnly();
+                chunk.forEach(p -> p.confirmed = false);
+                return false;
+            }
+            MapSqlParameterSource[] params = chunk.stream()
+                .map(p -> new MapSqlParameterSource("reconciliationId", reconciliationId)
+                    .addValue("row", p.row)
+                    .addValue("success", p.confirmed)
+                    .addValue("reservationId", p.reservationId)
+                    .addValue("message", StringUtils.defaultString(p.error))
+                    .addValue("notifyReservationId", p.confirmed ? p.reservation.getId() : null))
+                .toArray(MapSqlParameterSource[]::new);
+            jdbc.batchUpdate(reconciliationRepository.bulkInsertResult(), params);
+            confirmedReservations.addAll(confirmedInChunk);
+            return true;
+        });
+    }
+
+    private void confirm(Event event, Payment payment, TicketReservation reservation, TotalPrice total, Set<String> confirmedReservations, Set<String> confirmedInChunk) {
+        try {
+            Validate.notNull(reservation, "reservation not found");
+            Validate.isTrue(!confirmedReservations.contains(reservation.getId()) && !confirmedInChunk.contains(reservation.getId()), "payment already registered by a previous row");
+            Validate.isTrue(MonetaryUtil.centsToUnit(total.getPriceWithVAT()).compareTo(payment.amount) == 0, "paid price differs from due price");
+            //completeOfflinePayment runs in a savepoint: a failure rolls it back without affecting the rest of the chunk
+            ticketReservationManager.completeOfflinePayment(event, reservation);
+            payment.confirmed = true;
+            confirmedInChunk.add(reservation.getId());
+        } catch (Exception e) {
+            payment.error = e.getMessage();
+        }
+    }
+
+    /**
+     * Sends the confirmations which have been recorded by the committed chunks, and marks them as sent.
+     * A confirmation which cannot be sent is not retried in the same run.
+     */
+    private void sendConfirmations(int reconciliationId, Event event, Set<String> attempts) {
+        reconciliationRepository.findReservationsToNotify(reconciliationId).stream()
+            .filter(attempts::add)
+            .forEach(reservationId -> {
+                try {
+                    ticketReservationManager.sendOfflinePaymentConfirmation(event, reservationId);
+                    reconciliationRepository.markAsNotified(reconciliationId, reservationId);
+                } catch (Exception e) {
+                    log.warn("cannot send the payment confirmation for reservation " + reservationId, e);
+                }
+            });
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reconciliationExecutor.shutdownNow();
+    }
+
+    private static final class Payment {
+        private final int row;
+        private final String reservationId;
+        private final String partialId;
+        private final BigDecimal amount;
+        private String error;
+        private TicketReservation reservation;
+        private boolean confirmed;
+
+        private Payment(int row, String reservationId, String partialId, BigDecimal amount, String error) {
+            this.row = row;
+            this.reservationId = reservationId;
+            this.partialId = partialId;
+            this.amount = amount;
+            this.error = error;
+        }
+
+        private static Payment parse(int row, List<String> line) {
+            String reservationId = line.isEmpty() ? "" : StringUtils.trimToEmpty(line.get(0));
+            try {
+                Validate.isTrue(line.size() >= 2, "expected reservation ID and amount");
+                Validate.notBlank(reservationId, "invalid reservationId");
+                Validate.matchesPattern(reservationId, "^[^%_]*$", "invalid character found");
+                BigDecimal amount = new BigDecimal(StringUtils.trimToEmpty(line.get(1)));
+                return new Payment(row, reservationId, reservationId.toLowerCase(Locale.ENGLISH), amount, null);
+            } catch (Exception e) {
+                return new Payment(row, reservationId, null, null, StringUtils.defaultIfBlank(e.getMessage(), "invalid amount"));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.config.Initializer;
+import alfio.manager.support.ReservationExpiryQueue;
+import alfio.model.TicketReservation;
+import alfio.repository.TicketReservationRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Releases the pending reservations as soon as they expire, using the deadlines registered in the {@link ReservationExpiryQueue}.
+ * On startup the queue is rebuilt from the pending reservations stored in the database. Reservations whose validity has been
+ * extended in the meantime are scheduled again, while the {@link Jobs.CleanupExpiredPendingReservation} job acts as a safety net
+ * for the reservations that have been created by other nodes.
+ * The scheduler is disabled if the {@link Initializer#PROFILE_DISABLE_JOBS} profile is active.
+ */
+@Component
+@Log4j2
+public class ReservationExpiryScheduler implements ApplicationListener<ContextRefreshedEvent> {
+
+    private final ReservationExpiryQueue reservationExpiryQueue;
+    private final TicketReservationManager ticketReservationManager;
+    private final TicketReservationRepository ticketReservationRepository;
+    private final boolean enabled;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "reservation-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ReservationExpiryScheduler(ReservationExpiryQueue reservationExpiryQueue,
+                                      TicketReservationManager ticketReservationManager,
+                                      TicketReservationRepository ticketReservationRepository,
+                                      Environment environment) {
+        this.reservationExpiryQueue = reservationExpiryQueue;
+        this.ticketReservationManager = ticketReservationManager;
+        this.ticketReservationRepository = ticketReservationRepository;
+        this.enabled = !environment.acceptsProfiles(Initializer.PROFILE_DISABLE_JOBS);
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if(!enabled || !started.compareAndSet(false, true)) {
+            return;
+        }
+        List<TicketReservation> pending = ticketReservationRepository.findAllPendingReservations();
+        pending.forEach(r -> reservationExpiryQueue.schedule(r.getId(), r.getValidity()));
+        log.debug("scheduled the expiration of {} pending reservations", pending.size());
+        executor.execute(this::processExpirations);
+    }
+
+    private void processExpirations() {
+        while(!Thread.currentThread().isInterrupted()) {
+            try {
+                releaseExpired(reservationExpiryQueue.takeExpired());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("error while releasing expired reservations", e);
+            }
+        }
+    }
+
+    void releaseExpired(List<String> reservationIds) {
+        List<String> released = ticketReservationManager.cleanupExpiredReservations(reservationIds, new Date());
+        log.debug("released {} expired reservations", released.size());
+        List<String> remaining = new ArrayList<>(reservationIds);
+        remaining.removeAll(released);
+        if(!remaining.isEmpty()) {
+            ticketReservationRepository.findReservationsByIds(remaining).stream()
+                .filter(r -> r.getStatus() == TicketReservation.TicketReservationStatus.PENDING)
+                .forEach(r -> reservationExpiryQueue.schedule(r.getId(), r.getValidity()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
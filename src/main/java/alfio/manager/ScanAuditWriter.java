@@ -0,0 +1,263 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.config.Initializer;
+import alfio.manager.support.CheckInStatus;
+import alfio.model.audit.ScanAudit;
+import alfio.repository.audit.ScanAuditRepository;
+import alfio.util.Json;
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Collects the scan audit entries in a bounded buffer and writes them with JDBC batch inserts, outside of the check-in transaction.
+ * An entry recorded within a transaction is buffered only after that transaction has been committed.
+ * The buffer is flushed every {@link #FLUSH_INTERVAL_MILLIS} milliseconds or as soon as it contains {@link #BATCH_SIZE} entries.
+ * If the buffer is full the entries are written synchronously, and on shutdown the remaining entries are written synchronously.
+ * The entries that cannot be written to the database are dumped to a file in the {@code alfio.scan-audit.dump-dir} directory,
+ * and replayed as soon as the application has been started.
+ * The background flush is disabled if the {@link Initializer#PROFILE_DISABLE_JOBS} profile is active.
+ */
+@Component
+@Log4j2
+public class ScanAuditWriter implements ApplicationListener<ContextRefreshedEvent> {
+
+    static final int BATCH_SIZE = 100;
+    static final long FLUSH_INTERVAL_MILLIS = 2000;
+    static final int CAPACITY = 10_000;
+    static final String DUMP_DIR_PROPERTY = "alfio.scan-audit.dump-dir";
+    private static final String DUMP_PREFIX = "scan-audit-";
+    private static final String DUMP_SUFFIX = ".json";
+
+    private final ScanAuditRepository scanAuditRepository;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<ScanAudit> buffer = new ArrayBlockingQueue<>(CAPACITY);
+    private final boolean backgroundFlushEnabled;
+    private final Path dumpDirectory;
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "scan-audit-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ScanAuditWriter(ScanAuditRepository scanAuditRepository,
+                           NamedParameterJdbcTemplate jdbc,
+                           PlatformTransactionManager transactionManager,
+                           Environment environment) {
+        this.scanAuditRepository = scanAuditRepository;
+        this.jdbc = jdbc;
+        //the entries may be written from an afterCommit callback, so we must not join the (completed) surrounding transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        this.backgroundFlushEnabled = !environment.acceptsProfiles(Initializer.PROFILE_DISABLE_JOBS);
+        this.dumpDirectory = Paths.get(environment.getProperty(DUMP_DIR_PROPERTY, Paths.get(System.getProperty("java.io.tmpdir"), "alfio-scan-audit").toString()));
+        if(backgroundFlushEnabled) {
+            flushExecutor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records a scan. If called within a transaction, the entry is buffered after the commit and discarded on rollback.
+     */
+    public void record(String ticketUuid, int eventId, String username, CheckInStatus status, ScanAudit.Operation operation) {
+        ScanAudit audit = new ScanAudit(0, ticketUuid, eventId, ZonedDateTime.now(ZoneOffset.UTC), username, status, operation);
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    enqueue(audit);
+                }
+            });
+        } else {
+            enqueue(audit);
+        }
+    }
+
+    private void enqueue(ScanAudit audit) {
+        if(!buffer.offer(audit)) {
+            log.warn("scan audit buffer is full, writing synchronously");
+            flush();
+            if(!buffer.offer(audit)) {
+                List<ScanAudit> failed = write(Collections.singletonList(audit));
+                if(!failed.isEmpty()) {
+                    dump(failed);
+                }
+            }
+        } else if(backgroundFlushEnabled && buffer.size() % BATCH_SIZE == 0) {
+            flushExecutor.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Writes all the buffered entries, each batch in a new transaction. The entries which cannot be written are dumped to a file.
+     *
+     * @return the number of written entries
+     */
+    public synchronized int flush() {
+        int written = 0;
+        List<ScanAudit> failed = new ArrayList<>();
+        List<ScanAudit> batch = new ArrayList<>(BATCH_SIZE);
+        while(buffer.drainTo(batch, BATCH_SIZE) > 0) {
+            List<ScanAudit> notWritten = write(batch);
+            written += batch.size() - notWritten.size();
+            failed.addAll(notWritten);
+            batch.clear();
+        }
+        if(!failed.isEmpty()) {
+            dump(failed);
+        }
+        return written;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("cannot write scan audit entries", e);
+        }
+    }
+
+    /**
+     * @return the entries which have not been written
+     */
+    private List<ScanAudit> write(List<ScanAudit> batch) {
+        List<MapSqlParameterSource> params = batch.stream().map(ScanAuditWriter::toParams).collect(toList());
+        try {
+            transactionTemplate.execute(status -> jdbc.batchUpdate(scanAuditRepository.bulkInsert(), params.toArray(new MapSqlParameterSource[params.size()])));
+            return Collections.emptyList();
+        } catch (Exception e) {
+            log.warn("batch insert of {} scan audit entries failed, falling back to single inserts", batch.size(), e);
+            return batch.stream().filter(audit -> !writeSingle(audit)).collect(toList());
+        }
+    }
+
+    private boolean writeSingle(ScanAudit audit) {
+        try {
+            transactionTemplate.execute(status -> jdbc.update(scanAuditRepository.bulkInsert(), toParams(audit)));
+            return true;
+        } catch (Exception e) {
+            log.error("cannot write scan audit entry {}", Json.toJson(audit), e);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("cannot flush scan audit entries on shutdown", e);
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        replayDumps();
+    }
+
+    /**
+     * Writes the entries which have been dumped to a file. A file is deleted once its entries have been processed.
+     */
+    synchronized void replayDumps() {
+        if(!Files.isDirectory(dumpDirectory)) {
+            return;
+        }
+        //the entries which still cannot be written are dumped again, so we must list the files before replaying them
+        List<Path> dumps = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dumpDirectory, DUMP_PREFIX + "*" + DUMP_SUFFIX)) {
+            files.forEach(dumps::add);
+        } catch (IOException e) {
+            log.error("cannot read scan audit dumps from {}", dumpDirectory, e);
+        }
+        dumps.forEach(this::replay);
+    }
+
+    private void replay(Path file) {
+        try {
+            List<ScanAudit> audits = Json.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), new TypeReference<List<ScanAudit>>() {});
+            List<ScanAudit> failed = new ArrayList<>();
+            for(int i = 0; i < audits.size(); i += BATCH_SIZE) {
+                failed.addAll(write(audits.subList(i, Math.min(i + BATCH_SIZE, audits.size()))));
+            }
+            Files.delete(file);
+            if(!failed.isEmpty()) {
+                dump(failed);
+            }
+            log.info("{} scan audit entries have been restored from {}", audits.size() - failed.size(), file);
+        } catch (Exception e) {
+            log.error("cannot restore scan audit entries from {}", file, e);
+        }
+    }
+
+    private void dump(List<ScanAudit> audits) {
+        try {
+            Files.createDirectories(dumpDirectory);
+            String name = DUMP_PREFIX + System.currentTimeMillis() + "-" + UUID.randomUUID();
+            //write to a temporary file first, so that a partially written dump is never replayed
+            Path tmp = Files.write(dumpDirectory.resolve(name + ".tmp"), Json.toJson(audits).getBytes(StandardCharsets.UTF_8));
+            Path file = Files.move(tmp, dumpDirectory.resolve(name + DUMP_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            log.warn("{} scan audit entries have been saved to {}", audits.size(), file);
+        } catch (IOException e) {
+            log.error("cannot save scan audit entries: {}", Json.toJson(audits), e);
+        }
+    }
+
+    private static MapSqlParameterSource toParams(ScanAudit audit) {
+        return new MapSqlParameterSource("ticketUuid", audit.getTicketUuid())
+            .addValue("eventId", audit.getEventId())
+            .addValue("scanTs", Date.from(audit.getScanTimestamp().toInstant()))
+            .addValue("username", audit.getUsername())
+            .addValue("status", audit.getCheckInStatus().name())
+            .addValue("operation", audit.getOperation().name());
+    }
+}
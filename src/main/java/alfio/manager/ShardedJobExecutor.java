@@ -0,0 +1,255 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.config.Initializer;
+import alfio.config.support.LatencyStatistics;
+import alfio.manager.support.JobShard;
+import alfio.model.JobShardStatus;
+import alfio.repository.JobShardRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Splits the work of the background jobs in {@link JobShard}s, which can be processed by any node of the cluster.
+ * <p>
+ * The clustered Quartz scheduler still defines when a job must run, but the node which fires the trigger only calls
+ * {@link #requestExecution(String)}, which marks all the shards of the job as "to be executed". Every node polls the
+ * {@code job_shard} table and claims the pending shards by acquiring a lease on them; a shard is never processed by two
+ * nodes at the same time: the lease is renewed while the shard is being processed, and expires only if the node
+ * which claimed it stops working. The outcome of each execution (duration, processed items, failures)
+ * is stored on the same table, and is also collected locally.
+ * <p>
+ * Polling is disabled if the {@link Initializer#PROFILE_DISABLE_JOBS} profile is active.
+ */
+@Component
+@Log4j2
+public class ShardedJobExecutor {
+
+    static final long POLL_INTERVAL_MILLIS = 5000;
+
+    private final JobShardRepository jobShardRepository;
+    private final int shardCount;
+    private final int threads;
+    private final String nodeId;
+    private final boolean pollingEnabled;
+    private final Map<String, ShardedJob> jobs = new ConcurrentHashMap<>();
+    private final Set<String> initializedJobs = ConcurrentHashMap.newKeySet();
+    private final Map<String, LatencyStatistics> statistics = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "job-shard-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService workers;
+    private final ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "job-shard-lease-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ShardedJobExecutor(JobShardRepository jobShardRepository, Environment environment) {
+        this.jobShardRepository = jobShardRepository;
+        this.shardCount = environment.getProperty("alfio.jobs.shards", Integer.class, 4);
+        this.threads = environment.getProperty("alfio.jobs.shard-threads", Integer.class, 2);
+        this.nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "job-shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pollingEnabled = !environment.acceptsProfiles(Initializer.PROFILE_DISABLE_JOBS);
+        if(pollingEnabled) {
+            poller.scheduleWithFixedDelay(this::pollQuietly, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Registers the worker of a job.
+     *
+     * @param jobName the job name
+     * @param leaseMillis for how long a shard is reserved to the node which claimed it. The lease is renewed every
+     *                    {@code leaseMillis / 3} milliseconds while the shard is being processed
+     * @param worker processes a shard, returns the number of processed items
+     */
+    public void register(String jobName, long leaseMillis, ToIntFunction<JobShard> worker) {
+        jobs.put(jobName, new ShardedJob(jobName, leaseMillis, worker));
+    }
+
+    /**
+     * Asks for a new execution of all the shards of the given job, then starts processing them on this node.
+     */
+    public void requestExecution(String jobName) {
+        if(initializedJobs.add(jobName)) {
+            createMissingShards(jobName);
+        }
+        jobShardRepository.requestExecution(jobName, shardCount);
+        if(pollingEnabled) {
+            poller.execute(this::pollQuietly);
+        }
+    }
+
+    /**
+     * Claims and processes, in the current thread, all the pending shards of the given job.
+     *
+     * @return the number of processed items
+     */
+    int executePendingShards(String jobName) {
+        ShardedJob job = jobs.get(jobName);
+        int processed = 0;
+        for (Integer shard : jobShardRepository.findClaimable(jobName, shardCount, now())) {
+            if(claim(job, shard)) {
+                processed += execute(job, shard);
+            }
+        }
+        return processed;
+    }
+
+    public List<JobShardStatus> getShardStatus() {
+        return jobShardRepository.findAll();
+    }
+
+    /**
+     * @return the statistics of the shards processed by this node, by job
+     */
+    public Map<String, LatencyStatistics> getLocalStatistics() {
+        return new TreeMap<>(statistics);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        workers.shutdownNow();
+        leaseRenewer.shutdownNow();
+    }
+
+    private void createMissingShards(String jobName) {
+        Set<Integer> existing = new HashSet<>(jobShardRepository.findShards(jobName));
+        for (int shard = 0; shard < shardCount; shard++) {
+            if(!existing.contains(shard)) {
+                try {
+                    jobShardRepository.insert(jobName, shard);
+                } catch (DataIntegrityViolationException e) {
+                    log.trace("shard {} of job {} has been created by another node", shard, jobName);
+                }
+            }
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (Exception e) {
+            log.warn("error while polling the job shards", e);
+        }
+    }
+
+    private void poll() {
+        for (ShardedJob job : jobs.values()) {
+            if(running.get() >= threads) {
+                return;
+            }
+            for (Integer shard : jobShardRepository.findClaimable(job.name, shardCount, now())) {
+                if(running.get() >= threads) {
+                    return;
+                }
+                if(claim(job, shard)) {
+                    running.incrementAndGet();
+                    workers.execute(() -> {
+                        try {
+                            execute(job, shard);
+                        } finally {
+                            running.decrementAndGet();
+                            if(!poller.isShutdown()) {
+                                poller.execute(this::pollQuietly);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private boolean claim(ShardedJob job, int shard) {
+        ZonedDateTime now = now();
+        return jobShardRepository.claim(job.name, shard, nodeId, now, leaseExpiration(job, now)) == 1;
+    }
+
+    private void renewLease(ShardedJob job, int shard) {
+        try {
+            if(jobShardRepository.renewLease(job.name, shard, nodeId, leaseExpiration(job, now())) == 0) {
+                log.warn("the lease on shard {} of job {} has been lost", shard, job.name);
+            }
+        } catch (Exception e) {
+            log.warn("cannot renew the lease on shard " + shard + " of job " + job.name, e);
+        }
+    }
+
+    private int execute(ShardedJob job, int shard) {
+        long start = System.nanoTime();
+        int processed = 0;
+        boolean error = false;
+        long renewalInterval = Math.max(1, job.leaseMillis / 3);
+        ScheduledFuture<?> renewal = leaseRenewer.scheduleAtFixedRate(() -> renewLease(job, shard), renewalInterval, renewalInterval, TimeUnit.MILLISECONDS);
+        try {
+            processed = job.worker.applyAsInt(new JobShard(shard, shardCount));
+        } catch (Exception e) {
+            error = true;
+            log.error("error while executing shard " + shard + " of job " + job.name, e);
+        } finally {
+            renewal.cancel(false);
+        }
+        long elapsed = System.nanoTime() - start;
+        statistics.computeIfAbsent(job.name, k -> new LatencyStatistics()).record(elapsed, processed, error);
+        jobShardRepository.release(job.name, shard, nodeId, TimeUnit.NANOSECONDS.toMillis(elapsed), processed, error ? 1 : 0);
+        return processed;
+    }
+
+    private static ZonedDateTime leaseExpiration(ShardedJob job, ZonedDateTime now) {
+        return now.plusNanos(TimeUnit.MILLISECONDS.toNanos(job.leaseMillis));
+    }
+
+    private static ZonedDateTime now() {
+        return ZonedDateTime.now(Clock.systemUTC());
+    }
+
+    private static final class ShardedJob {
+        private final String name;
+        private final long leaseMillis;
+        private final ToIntFunction<JobShard> worker;
+
+        private ShardedJob(String name, long leaseMillis, ToIntFunction<JobShard> worker) {
+            this.name = name;
+            this.leaseMillis = leaseMillis;
+            this.worker = worker;
+        }
+    }
+}
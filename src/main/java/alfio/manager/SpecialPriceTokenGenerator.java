@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.JobShard;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
 import alfio.model.SpecialPrice;
@@ -32,6 +33,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * Class SpecialPriceTokenGenerator.
  * This class generates a bunch of tokens which will be used for
@@ -66,12 +69,18 @@ public class SpecialPriceTokenGenerator {
     }
 
     void generatePendingCodes() {
+        generatePendingCodes(JobShard.ALL);
+    }
+
+    int generatePendingCodes(JobShard shard) {
         StopWatch stopWatch = new StopWatch();
         log.trace("start pending codes generation");
         stopWatch.start();
-        specialPriceRepository.findWaitingElements().forEach(this::generateCode);
+        List<SpecialPrice> waitingElements = specialPriceRepository.findWaitingElements(shard.getIndex(), shard.getCount());
+        waitingElements.forEach(this::generateCode);
         stopWatch.stop();
         log.trace("end. Took {} ms", stopWatch.getTime());
+        return waitingElements.size();
     }
 
     void generatePendingCodesForCategory(int categoryId) {
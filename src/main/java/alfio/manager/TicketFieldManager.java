@@ -0,0 +1,118 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.Event;
+import alfio.model.Ticket;
+import alfio.model.TicketFieldConfiguration;
+import alfio.repository.TicketFieldRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Persists the values of the additional ticket fields.
+ * The field configurations are cached per event, and the values of one or more tickets are written with
+ * two JDBC batches (upsert and delete), regardless of the number of fields and tickets.
+ * <p>
+ * The configuration cache is local to the node: {@link #invalidateConfiguration(int)} only evicts the entry of the
+ * current instance, therefore in a clustered deployment the other nodes may keep validating and saving against the
+ * previous field definitions for up to one minute after an edit.
+ */
+@Component
+@Transactional
+@Log4j2
+public class TicketFieldManager {
+
+    private final TicketFieldRepository ticketFieldRepository;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final Cache<Integer, List<TicketFieldConfiguration>> configurationCache = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .build();
+
+    @Autowired
+    public TicketFieldManager(TicketFieldRepository ticketFieldRepository,
+                              NamedParameterJdbcTemplate jdbc) {
+        this.ticketFieldRepository = ticketFieldRepository;
+        this.jdbc = jdbc;
+    }
+
+    public List<TicketFieldConfiguration> findAdditionalFieldsForEvent(int eventId) {
+        return configurationCache.get(eventId, id -> Collections.unmodifiableList(ticketFieldRepository.findAdditionalFieldsForEvent(id)));
+    }
+
+    /**
+     * Must be called every time the field configuration of an event is modified.
+     *
+     * @param eventId the event id
+     */
+    public void invalidateConfiguration(int eventId) {
+        configurationCache.invalidate(eventId);
+    }
+
+    public void updateOrInsert(Map<String, List<String>> values, Ticket ticket, Event event) {
+        updateOrInsert(Collections.singletonMap(ticket.getId(), Optional.ofNullable(values).orElseGet(Collections::emptyMap)), event);
+    }
+
+    /**
+     * Saves the given values. A blank value removes the existing one, unknown fields are ignored.
+     *
+     * @param valuesByTicketId field values, grouped by ticket id
+     * @param event the event
+     */
+    public void updateOrInsert(Map<Integer, Map<String, List<String>>> valuesByTicketId, Event event) {
+        Map<String, Integer> fieldNameToId = findAdditionalFieldsForEvent(event.getId()).stream()
+            .collect(toMap(TicketFieldConfiguration::getName, TicketFieldConfiguration::getId));
+        List<MapSqlParameterSource> upserts = new ArrayList<>();
+        List<MapSqlParameterSource> deletions = new ArrayList<>();
+        valuesByTicketId.forEach((ticketId, values) -> values.forEach((fieldName, fieldValues) -> {
+            Integer fieldConfigurationId = fieldNameToId.get(fieldName);
+            if(fieldConfigurationId == null) {
+                return;
+            }
+            String fieldValue = TicketFieldRepository.toFieldValue(fieldValues);
+            MapSqlParameterSource params = new MapSqlParameterSource("ticketId", ticketId)
+                .addValue("fieldConfigurationId", fieldConfigurationId);
+            if(StringUtils.isNotBlank(fieldValue)) {
+                upserts.add(params.addValue("value", fieldValue));
+            } else {
+                deletions.add(params);
+            }
+        }));
+        batchUpdate(ticketFieldRepository.bulkUpsertValue(), upserts);
+        batchUpdate(ticketFieldRepository.bulkDeleteValue(), deletions);
+        log.trace("saved {} and removed {} field values for {} tickets", upserts.size(), deletions.size(), valuesByTicketId.size());
+    }
+
+    private void batchUpdate(String query, List<MapSqlParameterSource> params) {
+        if(!params.isEmpty()) {
+            jdbc.batchUpdate(query, params.toArray(new MapSqlParameterSource[params.size()]));
+        }
+    }
+}
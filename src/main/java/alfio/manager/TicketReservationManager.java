@@ -19,8 +19,10 @@ package alfio.manager;
 import alfio.controller.form.UpdateTicketOwnerForm;
 import alfio.manager.plugin.PluginManager;
 import alfio.manager.support.CategoryEvaluator;
+import alfio.manager.support.JobShard;
 import alfio.manager.support.PartialTicketTextGenerator;
 import alfio.manager.support.PaymentResult;
+import alfio.manager.support.ReservationExpiryQueue;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.Mailer;
 import alfio.model.*;
@@ -47,10 +49,13 @@ import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.context.MessageSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -59,6 +64,7 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Clock;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -76,8 +82,7 @@ import static alfio.util.MonetaryUtil.unitToCents;
 import static alfio.util.OptionalWrapper.optionally;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
+import static java.util.stream.Collectors.*;
 import static org.apache.commons.lang3.time.DateUtils.addHours;
 import static org.apache.commons.lang3.time.DateUtils.truncate;
 
@@ -105,13 +110,18 @@ public class TicketReservationManager {
     private final MessageSource messageSource;
     private final TemplateManager templateManager;
     private final TransactionTemplate requiresNewTransactionTemplate;
+    private final TransactionTemplate transactionTemplate;
     private final WaitingQueueManager waitingQueueManager;
     private final PluginManager pluginManager;
     private final TicketFieldRepository ticketFieldRepository;
+    private final TicketFieldManager ticketFieldManager;
+    private final ReservationExpiryQueue reservationExpiryQueue;
     private final AdditionalServiceRepository additionalServiceRepository;
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
     private final AdditionalServiceTextRepository additionalServiceTextRepository;
     private final InvoiceSequencesRepository invoiceSequencesRepository;
+    private final InvoiceDocumentRepository invoiceDocumentRepository;
+    private final NamedParameterJdbcTemplate jdbc;
 
     public static class NotEnoughTicketsException extends RuntimeException {
 
@@ -149,7 +159,11 @@ public class TicketReservationManager {
                                     AdditionalServiceRepository additionalServiceRepository,
                                     AdditionalServiceItemRepository additionalServiceItemRepository,
                                     AdditionalServiceTextRepository additionalServiceTextRepository,
-                                    InvoiceSequencesRepository invoiceSequencesRepository) {
+                                    InvoiceSequencesRepository invoiceSequencesRepository,
+                                    InvoiceDocumentRepository invoiceDocumentRepository,
+                                    TicketFieldManager ticketFieldManager,
+                                    ReservationExpiryQueue reservationExpiryQueue,
+                                    NamedParameterJdbcTemplate jdbc) {
         this.eventRepository = eventRepository;
         this.organizationRepository = organizationRepository;
         this.ticketRepository = ticketRepository;
@@ -167,11 +181,16 @@ public class TicketReservationManager {
         this.waitingQueueManager = waitingQueueManager;
         this.pluginManager = pluginManager;
         this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.ticketFieldRepository = ticketFieldRepository;
         this.additionalServiceRepository = additionalServiceRepository;
         this.additionalServiceItemRepository = additionalServiceItemRepository;
         this.additionalServiceTextRepository = additionalServiceTextRepository;
         this.invoiceSequencesRepository = invoiceSequencesRepository;
+        this.invoiceDocumentRepository = invoiceDocumentRepository;
+        this.ticketFieldManager = ticketFieldManager;
+        this.reservationExpiryQueue = reservationExpiryQueue;
+        this.jdbc = jdbc;
     }
     
     /**
@@ -215,12 +234,13 @@ public class TicketReservationManager {
                 additionalServices.add(new ASReservationWithOptionalCodeModification(asrm, Optional.empty()));
         });
 
-        additionalServices.forEach(as -> reserveAdditionalServicesForReservation(event.getId(), reservationId, as, discount.orElse(null)));
+        reserveAdditionalServicesForReservation(event, reservationId, additionalServices, discount.orElse(null));
 
         TicketReservation reservation = ticketReservationRepository.findReservationById(reservationId);
 
         OrderSummary orderSummary = orderSummaryForReservationId(reservation.getId(), event, Locale.forLanguageTag(reservation.getUserLanguage()));
         ticketReservationRepository.addReservationInvoiceOrReceiptModel(reservationId, Json.toJson(orderSummary));
+        reservationExpiryQueue.schedule(reservationId, reservationExpiration);
 
         return reservationId;
     }
@@ -229,6 +249,11 @@ public class TicketReservationManager {
         return ticketReservationRepository.findAllReservationsInEvent(eventId);
     }
 
+    public Page<TicketReservation> findReservationsInEvent(int eventId, Optional<String> cursor, String search, Integer limit) {
+        int pageSize = Page.sanitizeLimit(limit);
+        return Page.of(ticketReservationRepository.findReservationsInEventAfter(eventId, Page.uuidCursor(cursor), Page.toLikeFilter(search), pageSize), pageSize, TicketReservation::getId);
+    }
+
     void reserveTicketsForCategory(Event event, Optional<String> specialPriceSessionId, String transactionId, TicketReservationWithOptionalCodeModification ticketReservation, Locale locale, boolean forWaitingQueue, PromoCodeDiscount discount) {
         //first check if there is another pending special price token bound to the current sessionId
         Optional<SpecialPrice> specialPrice = fixToken(ticketReservation.getSpecialPrice(), ticketReservation.getTicketCategoryId(), event.getId(), specialPriceSessionId, ticketReservation);
@@ -255,22 +280,48 @@ public class TicketReservationManager {
         ticketRepository.updateTicketPrice(reservedForUpdate, category.getId(), event.getId(), category.getSrcPriceCts(), MonetaryUtil.unitToCents(priceContainer.getFinalPrice()), MonetaryUtil.unitToCents(priceContainer.getVAT()), MonetaryUtil.unitToCents(priceContainer.getAppliedDiscount()));
     }
 
-    private void reserveAdditionalServicesForReservation(int eventId, String transactionId, ASReservationWithOptionalCodeModification additionalServiceReservation, PromoCodeDiscount discount) {
-        Optional.ofNullable(additionalServiceReservation.getAdditionalServiceId())
-            .flatMap(id -> optionally(() -> additionalServiceRepository.getById(id, eventId)))
-            .filter(as -> additionalServiceReservation.getQuantity() > 0 && (as.isFixPrice() || Optional.ofNullable(additionalServiceReservation.getAmount()).filter(a -> a.compareTo(BigDecimal.ZERO) > 0).isPresent()))
-            .map(as -> Pair.of(eventRepository.findById(eventId), as))
-            .ifPresent(pair -> {
-                Event e = pair.getKey();
-                AdditionalService as = pair.getValue();
-                IntStream.range(0, additionalServiceReservation.getQuantity())
-                    .forEach(i -> {
-                        AdditionalServicePriceContainer pc = AdditionalServicePriceContainer.from(additionalServiceReservation.getAmount(), as, e, discount);
-                        additionalServiceItemRepository.insert(UUID.randomUUID().toString(), ZonedDateTime.now(Clock.systemUTC()), transactionId,
-                            as.getId(), AdditionalServiceItemStatus.PENDING, eventId, pc.getSrcPriceCts(), unitToCents(pc.getFinalPrice()), unitToCents(pc.getVAT()), unitToCents(pc.getAppliedDiscount()));
-                    });
-            });
+    /**
+     * Reserves the requested additional services. The price is computed once for each request and all the items are
+     * inserted with a single JDBC batch. The services having a limited quantity are locked before the insert and then
+     * checked with a single statement: if one of them has been overbooked, {@link NotEnoughTicketsException} is thrown
+     * and the whole reservation is rolled back.
+     */
+    private void reserveAdditionalServicesForReservation(Event event, String transactionId, List<ASReservationWithOptionalCodeModification> additionalServiceReservations, PromoCodeDiscount discount) {
+        if(additionalServiceReservations.isEmpty()) {
+            return;
+        }
+        Map<Integer, AdditionalService> additionalServices = additionalServiceRepository.loadAllForEvent(event.getId()).stream()
+            .collect(toMap(AdditionalService::getId, Function.identity()));
+        Date creation = Date.from(ZonedDateTime.now(Clock.systemUTC()).toInstant());
+        List<MapSqlParameterSource> items = new ArrayList<>();
+        Set<Integer> reservedServiceIds = new TreeSet<>();
+        additionalServiceReservations.forEach(asr -> Optional.ofNullable(asr.getAdditionalServiceId())
+            .map(additionalServices::get)
+            .filter(as -> asr.getQuantity() > 0 && (as.isFixPrice() || Optional.ofNullable(asr.getAmount()).filter(a -> a.compareTo(BigDecimal.ZERO) > 0).isPresent()))
+            .ifPresent(as -> {
+                AdditionalServicePriceContainer pc = AdditionalServicePriceContainer.from(asr.getAmount(), as, event, discount);
+                MapSqlParameterSource prices = new MapSqlParameterSource("creation", creation)
+                    .addValue("ticketsReservationUuid", transactionId)
+                    .addValue("additionalServiceId", as.getId())
+                    .addValue("status", AdditionalServiceItemStatus.PENDING.name())
+                    .addValue("eventId", event.getId())
+                    .addValue("srcPriceCts", pc.getSrcPriceCts())
+                    .addValue("finalPriceCts", unitToCents(pc.getFinalPrice()))
+                    .addValue("vatCts", unitToCents(pc.getVAT()))
+                    .addValue("discountCts", unitToCents(pc.getAppliedDiscount()));
+                IntStream.range(0, asr.getQuantity())
+                    .forEach(i -> items.add(new MapSqlParameterSource(prices.getValues()).addValue("uuid", UUID.randomUUID().toString())));
+                reservedServiceIds.add(as.getId());
+            }));
 
+        if(items.isEmpty()) {
+            return;
+        }
+        List<Integer> limitedServiceIds = additionalServiceRepository.lockServicesWithLimitedQuantity(new ArrayList<>(reservedServiceIds));
+        jdbc.batchUpdate(additionalServiceItemRepository.batchInsert(), items.toArray(new MapSqlParameterSource[items.size()]));
+        if(!limitedServiceIds.isEmpty() && !additionalServiceRepository.findOverbookedServices(limitedServiceIds).isEmpty()) {
+            throw new NotEnoughTicketsException();
+        }
     }
 
     List<Integer> reserveTickets(int eventId, TicketReservationWithOptionalCodeModification ticketReservation, List<TicketStatus> requiredStatuses) {
@@ -316,62 +367,103 @@ public class TicketReservationManager {
         return specialPrice;
     }
 
+    /**
+     * Confirms the reservation. If the payment must be processed by an external gateway (Stripe, PayPal), the confirmation is split in three stages:
+     * <ol>
+     *     <li>a short transaction flags the reservation as IN_PAYMENT</li>
+     *     <li>the payment gateway is called, without holding any database connection or lock</li>
+     *     <li>a second short transaction completes the reservation, or reverts it to PENDING if the payment has been refused</li>
+     * </ol>
+     * If the process dies between the 2nd and the 3rd stage, the reservation is recovered by {@link #markExpiredInPaymentReservationAsStuck(Date)}.
+     * The other payment methods are processed in a single transaction.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public PaymentResult confirm(String gatewayToken, String payerId, Event event, String reservationId,
                                  String email, CustomerName customerName, Locale userLanguage, String billingAddress,
                                  TotalPrice reservationCost, Optional<String> specialPriceSessionId, Optional<PaymentProxy> method,
                                  boolean invoiceRequested, String vatCountryCode, String vatNr, PriceContainer.VatStatus vatStatus) {
         PaymentProxy paymentProxy = evaluatePaymentProxy(method, reservationCost);
-        if(!initPaymentProcess(reservationCost, paymentProxy, reservationId, email, customerName, userLanguage, billingAddress)) {
+        if(!requiresGatewayCall(reservationCost, paymentProxy)) {
+            return confirmWithoutGateway(event, reservationId, email, customerName, userLanguage, billingAddress, reservationCost,
+                specialPriceSessionId, paymentProxy, invoiceRequested, vatCountryCode, vatNr, vatStatus);
+        }
+
+        if(!initPaymentProcess(paymentProxy, reservationId, email, customerName, userLanguage, billingAddress, invoiceRequested, vatCountryCode, vatNr, vatStatus)) {
             return PaymentResult.unsuccessful("error.STEP2_UNABLE_TO_TRANSITION");
         }
         try {
             PaymentResult paymentResult;
-            ticketReservationRepository.lockReservationForUpdate(reservationId);
-            if(reservationCost.getPriceWithVAT() > 0) {
-                if(invoiceRequested && configurationManager.hasAllConfigurationsForInvoice(event)) {
-                    int invoiceSequence = invoiceSequencesRepository.lockReservationForUpdate(event.getOrganizationId());
-                    invoiceSequencesRepository.incrementSequenceFor(event.getOrganizationId());
-                    String pattern = configurationManager.getStringConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.INVOICE_NUMBER_PATTERN), "%d");
-                    ticketReservationRepository.setInvoiceNumber(reservationId, String.format(pattern, invoiceSequence));
-                }
-                ticketReservationRepository.updateBillingData(vatStatus, vatNr, vatCountryCode, invoiceRequested, reservationId);
-                switch(paymentProxy) {
-                    case STRIPE:
-                        paymentResult = paymentManager.processStripePayment(reservationId, gatewayToken, reservationCost.getPriceWithVAT(), event, email, customerName, billingAddress);
-                        if(!paymentResult.isSuccessful()) {
-                            reTransitionToPending(reservationId);
-                            return paymentResult;
-                        }
-                        break;
-                    case PAYPAL:
-                        paymentResult = paymentManager.processPaypalPayment(reservationId, gatewayToken, payerId, reservationCost.getPriceWithVAT(), event);
-                        if(!paymentResult.isSuccessful()) {
-                            reTransitionToPending(reservationId);
-                            return paymentResult;
-                        }
-                        break;
-                    case OFFLINE:
-                        transitionToOfflinePayment(event, reservationId, email, customerName, billingAddress);
-                        paymentResult = PaymentResult.successful(NOT_YET_PAID_TRANSACTION_ID);
-                        break;
-                    case ON_SITE:
-                        paymentResult = PaymentResult.successful(NOT_YET_PAID_TRANSACTION_ID);
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Payment proxy "+paymentProxy+ " not recognized");
-                }
+            if(paymentProxy == PaymentProxy.STRIPE) {
+                paymentResult = paymentManager.processStripePayment(reservationId, gatewayToken, reservationCost.getPriceWithVAT(), event, email, customerName, billingAddress);
             } else {
-                paymentResult = PaymentResult.successful(NOT_YET_PAID_TRANSACTION_ID);
+                paymentResult = paymentManager.processPaypalPayment(reservationId, gatewayToken, payerId, reservationCost.getPriceWithVAT(), event);
             }
-            completeReservation(event.getId(), reservationId, email, customerName, userLanguage, billingAddress, specialPriceSessionId, paymentProxy);
+            transactionTemplate.execute(status -> {
+                if(paymentResult.isSuccessful()) {
+                    if(invoiceRequested && configurationManager.hasAllConfigurationsForInvoice(event)) {
+                        assignInvoiceNumber(event, reservationId);
+                    }
+                    completeReservation(event.getId(), reservationId, email, customerName, userLanguage, billingAddress, specialPriceSessionId, paymentProxy);
+                } else {
+                    reTransitionToPending(reservationId);
+                }
+                return null;
+            });
             return paymentResult;
         } catch(Exception ex) {
-            //it is guaranteed that in this case we're dealing with "local" error (e.g. database failure),
-            //thus it is safer to not rollback the reservation status
+            //the reservation is still IN_PAYMENT. If the payment has been recorded, it will be completed by the recovery job.
             log.error("unexpected error during payment confirmation", ex);
             return PaymentResult.unsuccessful("error.STEP2_STRIPE_unexpected");
         }
+    }
 
+    private PaymentResult confirmWithoutGateway(Event event, String reservationId, String email, CustomerName customerName, Locale userLanguage,
+                                                String billingAddress, TotalPrice reservationCost, Optional<String> specialPriceSessionId,
+                                                PaymentProxy paymentProxy, boolean invoiceRequested, String vatCountryCode, String vatNr,
+                                                PriceContainer.VatStatus vatStatus) {
+        try {
+            return transactionTemplate.execute(status -> {
+                ticketReservationRepository.lockReservationForUpdate(reservationId);
+                if(reservationCost.getPriceWithVAT() > 0) {
+                    ticketReservationRepository.updateBillingData(vatStatus, vatNr, vatCountryCode, invoiceRequested, reservationId);
+                    switch(paymentProxy) {
+                        case OFFLINE:
+                            transitionToOfflinePayment(event, reservationId, email, customerName, billingAddress);
+                            break;
+                        case ON_SITE:
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Payment proxy "+paymentProxy+ " not recognized");
+                    }
+                    if(invoiceRequested && configurationManager.hasAllConfigurationsForInvoice(event)) {
+                        assignInvoiceNumber(event, reservationId);
+                    }
+                }
+                completeReservation(event.getId(), reservationId, email, customerName, userLanguage, billingAddress, specialPriceSessionId, paymentProxy);
+                return PaymentResult.successful(NOT_YET_PAID_TRANSACTION_ID);
+            });
+        } catch(Exception ex) {
+            log.error("unexpected error during payment confirmation", ex);
+            return PaymentResult.unsuccessful("error.STEP2_STRIPE_unexpected");
+        }
+    }
+
+    private static boolean requiresGatewayCall(TotalPrice reservationCost, PaymentProxy paymentProxy) {
+        return reservationCost.getPriceWithVAT() > 0 && (paymentProxy == PaymentProxy.STRIPE || paymentProxy == PaymentProxy.PAYPAL);
+    }
+
+    /**
+     * Assigns the next invoice number of the organization to the reservation.
+     * The invoice sequence row stays locked until the end of the current transaction, in order to guarantee a gapless numbering,
+     * therefore this method must be called as late as possible, and never before contacting the payment provider.
+     *
+     * @param event the event
+     * @param reservationId the reservation id
+     */
+    private void assignInvoiceNumber(Event event, String reservationId) {
+        String pattern = configurationManager.getStringConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.INVOICE_NUMBER_PATTERN), "%d");
+        int invoiceSequence = invoiceSequencesRepository.nextSequenceFor(event.getOrganizationId());
+        ticketReservationRepository.setInvoiceNumber(reservationId, String.format(pattern, invoiceSequence));
     }
 
     private PaymentProxy evaluatePaymentProxy(Optional<PaymentProxy> method, TotalPrice reservationCost) {
@@ -384,15 +476,19 @@ public class TicketReservationManager {
         return PaymentProxy.STRIPE;
     }
 
-    private boolean initPaymentProcess(TotalPrice reservationCost, PaymentProxy paymentProxy, String reservationId, String email, CustomerName customerName, Locale userLanguage, String billingAddress) {
-        if(reservationCost.getPriceWithVAT() > 0 && paymentProxy == PaymentProxy.STRIPE) {
-            try {
-                transitionToInPayment(reservationId, email, customerName, userLanguage, billingAddress);
-            } catch (Exception e) {
-                //unable to do the transition. Exiting.
-                log.debug(String.format("unable to flag the reservation %s as IN_PAYMENT", reservationId), e);
-                return false;
-            }
+    private boolean initPaymentProcess(PaymentProxy paymentProxy, String reservationId, String email, CustomerName customerName, Locale userLanguage,
+                                       String billingAddress, boolean invoiceRequested, String vatCountryCode, String vatNr, PriceContainer.VatStatus vatStatus) {
+        try {
+            transactionTemplate.execute(status -> {
+                ticketReservationRepository.lockReservationForUpdate(reservationId);
+                ticketReservationRepository.updateBillingData(vatStatus, vatNr, vatCountryCode, invoiceRequested, reservationId);
+                transitionToInPayment(paymentProxy, reservationId, email, customerName, userLanguage, billingAddress);
+                return null;
+            });
+        } catch (Exception e) {
+            //unable to do the transition. Exiting.
+            log.debug(String.format("unable to flag the reservation %s as IN_PAYMENT", reservationId), e);
+            return false;
         }
         return true;
     }
@@ -400,12 +496,34 @@ public class TicketReservationManager {
     public void confirmOfflinePayment(Event event, String reservationId) {
         TicketReservation ticketReservation = findById(reservationId).orElseThrow(IllegalArgumentException::new);
         ticketReservationRepository.lockReservationForUpdate(reservationId);
+        completeOfflinePayment(event, ticketReservation);
+        sendOfflinePaymentConfirmation(event, reservationId);
+    }
+
+    /**
+     * Registers the offline payment and acquires the items of the reservation, without sending any notification.
+     * The caller must hold the lock on the reservation and call {@link #sendOfflinePaymentConfirmation(Event, String)} once the transaction has been committed.
+     *
+     * When called within an existing transaction, the work is done in a savepoint, therefore a failure is rolled back
+     * without marking the caller's transaction as rollback-only.
+     *
+     * @param event the event
+     * @param ticketReservation the reservation, as loaded before acquiring the lock
+     */
+    @Transactional(propagation = Propagation.NESTED)
+    public void completeOfflinePayment(Event event, TicketReservation ticketReservation) {
+        String reservationId = ticketReservation.getId();
         Validate.isTrue(ticketReservation.getPaymentMethod() == PaymentProxy.OFFLINE, "invalid payment method");
         Validate.isTrue(ticketReservation.getStatus() == TicketReservationStatus.OFFLINE_PAYMENT, "invalid status");
         ticketReservationRepository.confirmOfflinePayment(reservationId, TicketReservationStatus.COMPLETE.name(), ZonedDateTime.now());
         CustomerName customerName = new CustomerName(ticketReservation.getFullName(), ticketReservation.getFirstName(), ticketReservation.getLastName(), event);
         acquireItems(TicketStatus.ACQUIRED, AdditionalServiceItemStatus.ACQUIRED, PaymentProxy.OFFLINE, reservationId, ticketReservation.getEmail(), customerName, ticketReservation.getUserLanguage(), ticketReservation.getBillingAddress());
+    }
 
+    /**
+     * Sends the confirmation email for a reservation whose offline payment has been registered, and notifies the plugins.
+     */
+    public void sendOfflinePaymentConfirmation(Event event, String reservationId) {
         Locale language = findReservationLanguage(reservationId);
 
         sendConfirmationEmail(event, findById(reservationId).orElseThrow(IllegalArgumentException::new), language);
@@ -440,7 +558,11 @@ public class TicketReservationManager {
     }
 
     private Locale findReservationLanguage(String reservationId) {
-        return Optional.ofNullable(ticketReservationRepository.findReservationById(reservationId).getUserLanguage()).map(Locale::forLanguageTag).orElse(Locale.ENGLISH);
+        return reservationLanguage(ticketReservationRepository.findReservationById(reservationId));
+    }
+
+    private static Locale reservationLanguage(TicketReservation reservation) {
+        return Optional.ofNullable(reservation.getUserLanguage()).map(Locale::forLanguageTag).orElse(Locale.ENGLISH);
     }
 
     public void deleteOfflinePayment(Event event, String reservationId, boolean expired) {
@@ -455,7 +577,6 @@ public class TicketReservationManager {
         );
     }
 
-    @Transactional(readOnly = true)
     public Map<String, Object> prepareModelForReservationEmail(Event event, TicketReservation reservation, Optional<String> vat, OrderSummary summary) {
         Organization organization = organizationRepository.getById(event.getOrganizationId());
         List<Ticket> tickets = findTicketsInReservation(reservation.getId());
@@ -467,20 +588,16 @@ public class TicketReservationManager {
         return TemplateResource.prepareModelForConfirmationEmail(organization, event, reservation, vat, tickets, summary, reservationUrl, reservationShortID, invoiceAddress, bankAccountNr, bankAccountOwner);
     }
 
-    @Transactional(readOnly = true)
     public Map<String, Object> prepareModelForReservationEmail(Event event, TicketReservation reservation) {
         Optional<String> vat = getVAT(event);
         OrderSummary summary = orderSummaryForReservationId(reservation.getId(), event, Locale.forLanguageTag(reservation.getUserLanguage()));
         return prepareModelForReservationEmail(event, reservation, vat, summary);
     }
 
-    private void transitionToInPayment(String reservationId, String email, CustomerName customerName, Locale userLanguage, String billingAddress) {
-        requiresNewTransactionTemplate.execute(status -> {
-            int updatedReservation = ticketReservationRepository.updateTicketReservation(reservationId, IN_PAYMENT.toString(), email,
-                customerName.getFullName(), customerName.getFirstName(), customerName.getLastName(), userLanguage.getLanguage(), billingAddress, null, PaymentProxy.STRIPE.toString());
-            Validate.isTrue(updatedReservation == 1, "expected exactly one updated reservation, got " + updatedReservation);
-            return null;
-        });
+    private void transitionToInPayment(PaymentProxy paymentProxy, String reservationId, String email, CustomerName customerName, Locale userLanguage, String billingAddress) {
+        int updatedReservation = ticketReservationRepository.updateTicketReservation(reservationId, IN_PAYMENT.toString(), email,
+            customerName.getFullName(), customerName.getFirstName(), customerName.getLastName(), userLanguage.getLanguage(), billingAddress, null, paymentProxy.toString());
+        Validate.isTrue(updatedReservation == 1, "expected exactly one updated reservation, got " + updatedReservation);
     }
 
     private void transitionToOfflinePayment(Event event, String reservationId, String email, CustomerName customerName, String billingAddress) {
@@ -615,21 +732,53 @@ public class TicketReservationManager {
 
     @Transactional
     void cleanupExpiredReservations(Date expirationDate) {
-        List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservation(expirationDate);
+        cleanupExpiredReservations(expirationDate, JobShard.ALL);
+    }
+
+    @Transactional
+    int cleanupExpiredReservations(Date expirationDate, JobShard shard) {
+        List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservation(expirationDate, shard.getIndex(), shard.getCount());
+        cleanupReservations(expiredReservationIds);
+        return expiredReservationIds.size();
+    }
+
+    /**
+     * Releases the given reservations, if they are still pending and expired. The reservations are locked before being released,
+     * so that each one of them is claimed by only one node of the cluster.
+     *
+     * @param reservationIds the candidate reservations
+     * @param expirationDate expiration date
+     * @return the ids of the released reservations
+     */
+    @Transactional
+    public List<String> cleanupExpiredReservations(List<String> reservationIds, Date expirationDate) {
+        List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservationForUpdate(reservationIds, expirationDate);
+        cleanupReservations(expiredReservationIds);
+        return expiredReservationIds;
+    }
+
+    private void cleanupReservations(List<String> expiredReservationIds) {
         if(expiredReservationIds.isEmpty()) {
             return;
         }
-        
+
         specialPriceRepository.updateStatusForReservation(expiredReservationIds, Status.FREE.toString());
         ticketRepository.resetCategoryIdForUnboundedCategories(expiredReservationIds);
         ticketFieldRepository.deleteAllValuesForReservations(expiredReservationIds);
         ticketRepository.freeFromReservation(expiredReservationIds);
         waitingQueueManager.cleanExpiredReservations(expiredReservationIds);
+        invoiceDocumentRepository.deleteForReservations(expiredReservationIds);
         ticketReservationRepository.remove(expiredReservationIds);
     }
 
     void cleanupExpiredOfflineReservations(Date expirationDate) {
-        ticketReservationRepository.findExpiredOfflineReservations(expirationDate).forEach(this::cleanupOfflinePayment);
+        cleanupExpiredOfflineReservations(expirationDate, JobShard.ALL);
+    }
+
+    int cleanupExpiredOfflineReservations(Date expirationDate, JobShard shard) {
+        List<String> expiredReservationIds = ticketReservationRepository.findExpiredOfflineReservations(expirationDate, shard.getIndex(), shard.getCount());
+        expiredReservationIds.forEach(this::cleanupOfflinePayment);
+        return expiredReservationIds.size();
     }
 
     private void cleanupOfflinePayment(String reservationId) {
@@ -650,7 +799,14 @@ public class TicketReservationManager {
      * @param expirationDate expiration date
      */
     public void markExpiredInPaymentReservationAsStuck(Date expirationDate) {
-        final List<String> stuckReservations = ticketReservationRepository.findStuckReservations(expirationDate);
+        markExpiredInPaymentReservationAsStuck(expirationDate, JobShard.ALL);
+    }
+
+    int markExpiredInPaymentReservationAsStuck(Date expirationDate, JobShard shard) {
+        //the shards are defined by event, so that each organizer receives only one notification for each event
+        final List<String> stuckReservations = ticketReservationRepository.findStuckReservations(expirationDate, shard.getIndex(), shard.getCount()).stream()
+            .filter(reservationId -> !recoverPaidReservation(reservationId))
+            .collect(toList());
         stuckReservations.forEach(reservationId -> ticketReservationRepository.updateTicketStatus(reservationId, TicketReservationStatus.STUCK.name()));
         stuckReservations.stream()
                 .map(ticketRepository::findFirstTicketInReservation)
@@ -664,6 +820,40 @@ public class TicketReservationManager {
                                 STUCK_TICKETS_SUBJECT,
                                 () -> String.format(STUCK_TICKETS_MSG, pair.getLeft().getShortName()))
                 );
+        return stuckReservations.size();
+    }
+
+    /**
+     * Completes a reservation left IN_PAYMENT, if the payment gateway has already accepted the payment.
+     * This can happen if the application dies between the payment and the completion of the reservation.
+     *
+     * @param reservationId the reservation id
+     * @return true if the reservation has been completed
+     */
+    private boolean recoverPaidReservation(String reservationId) {
+        if(!transactionRepository.loadOptionalByReservationId(reservationId).isPresent()) {
+            return false;
+        }
+        try {
+            requiresNewTransactionTemplate.execute(status -> {
+                ticketReservationRepository.lockReservationForUpdate(reservationId);
+                TicketReservation reservation = ticketReservationRepository.findReservationById(reservationId);
+                Validate.isTrue(reservation.getStatus() == IN_PAYMENT, "unexpected status " + reservation.getStatus());
+                Event event = eventRepository.findByReservationId(reservationId);
+                if(reservation.isInvoiceRequested() && configurationManager.hasAllConfigurationsForInvoice(event)) {
+                    assignInvoiceNumber(event, reservationId);
+                }
+                CustomerName customerName = new CustomerName(reservation.getFullName(), reservation.getFirstName(), reservation.getLastName(), event);
+                completeReservation(event.getId(), reservationId, reservation.getEmail(), customerName, reservationLanguage(reservation),
+                    reservation.getBillingAddress(), Optional.empty(), reservation.getPaymentMethod());
+                return null;
+            });
+            log.warn("reservation {} has been paid but not completed. Recovered.", reservationId);
+            return true;
+        } catch (Exception e) {
+            log.error("unable to recover reservation "+reservationId, e);
+            return false;
+        }
     }
 
     private static TotalPrice totalReservationCostWithVAT(PromoCodeDiscount promoCodeDiscount,
@@ -693,6 +883,35 @@ public class TicketReservationManager {
         return p -> p.getValue().stream().map(asi -> AdditionalServiceItemPriceContainer.from(asi, p.getKey(), event, discount));
     }
 
+    /**
+     * Computes the total cost of the given reservations, loading their tickets and additional items with one query each.
+     *
+     * @param event the event the reservations belong to
+     * @param reservations the reservations
+     * @return the total cost, by reservation id
+     */
+    public Map<String, TotalPrice> totalReservationCostWithVAT(Event event, List<TicketReservation> reservations) {
+        if(reservations.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> reservationIds = reservations.stream().map(TicketReservation::getId).collect(toList());
+        Map<String, List<Ticket>> tickets = ticketRepository.findTicketsInReservations(reservationIds).stream()
+            .collect(groupingBy(Ticket::getTicketsReservationId));
+        Map<String, List<AdditionalServiceItem>> items = additionalServiceItemRepository.findByReservationUuids(reservationIds).stream()
+            .collect(groupingBy(AdditionalServiceItem::getTicketsReservationUuid));
+        Map<Integer, PromoCodeDiscount> promoCodes = new HashMap<>();
+        Map<Integer, AdditionalService> additionalServices = new HashMap<>();
+        return reservations.stream().collect(toMap(TicketReservation::getId, r -> {
+            PromoCodeDiscount promoCodeDiscount = Optional.ofNullable(r.getPromoCodeDiscountId()).map(id -> promoCodes.computeIfAbsent(id, promoCodeDiscountRepository::findById)).orElse(null);
+            Stream<Pair<AdditionalService, List<AdditionalServiceItem>>> additionalServiceItems = items.getOrDefault(r.getId(), Collections.emptyList()).stream()
+                .collect(groupingBy(AdditionalServiceItem::getAdditionalServiceId))
+                .entrySet()
+                .stream()
+                .map(entry -> Pair.of(additionalServices.computeIfAbsent(entry.getKey(), id -> additionalServiceRepository.getById(id, event.getId())), entry.getValue()));
+            return totalReservationCostWithVAT(promoCodeDiscount, event, r.getVatStatus(), tickets.getOrDefault(r.getId(), Collections.emptyList()), additionalServiceItems);
+        }));
+    }
+
     /**
      * Get the total cost with VAT if it's not included in the ticket price.
      * 
@@ -800,20 +1019,35 @@ public class TicketReservationManager {
 
     public String reservationUrl(String reservationId, Event event) {
         TicketReservation reservation = ticketReservationRepository.findReservationById(reservationId);
-        return StringUtils.removeEnd(configurationManager.getRequiredValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.BASE_URL)), "/")
-                + "/event/" + event.getShortName() + "/reservation/" + reservationId + "?lang="+reservation.getUserLanguage();
+        return reservationUrl(baseUrl(event), event, reservation);
+    }
+
+    /**
+     * Builds the reservation url without accessing the database. See {@link #baseUrl(Event)}
+     */
+    public static String reservationUrl(String baseUrl, Event event, TicketReservation reservation) {
+        return baseUrl + "/event/" + event.getShortName() + "/reservation/" + reservation.getId() + "?lang="+reservation.getUserLanguage();
     }
 
     String ticketUrl(Event event, String ticketId) {
         Ticket ticket = ticketRepository.findByUUID(ticketId);
-        return StringUtils.removeEnd(configurationManager.getRequiredValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.BASE_URL)), "/")
-                + "/event/" + event.getShortName() + "/ticket/" + ticketId + "?lang=" + ticket.getUserLanguage();
+        return baseUrl(event) + "/event/" + event.getShortName() + "/ticket/" + ticketId + "?lang=" + ticket.getUserLanguage();
     }
 
     public String ticketUpdateUrl(Event event, String ticketId) {
         Ticket ticket = ticketRepository.findByUUID(ticketId);
-        return StringUtils.removeEnd(configurationManager.getRequiredValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.BASE_URL)), "/")
-            + "/event/" + event.getShortName() + "/ticket/" + ticketId + "/update?lang="+ticket.getUserLanguage();
+        return ticketUpdateUrl(baseUrl(event), event, ticket);
+    }
+
+    /**
+     * Builds the ticket update url without accessing the database. See {@link #baseUrl(Event)}
+     */
+    public static String ticketUpdateUrl(String baseUrl, Event event, Ticket ticket) {
+        return baseUrl + "/event/" + event.getShortName() + "/ticket/" + ticket.getUuid() + "/update?lang="+ticket.getUserLanguage();
+    }
+
+    public String baseUrl(Event event) {
+        return StringUtils.removeEnd(configurationManager.getRequiredValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.BASE_URL)), "/");
     }
 
     public int maxAmountOfTicketsForCategory(int organizationId, int eventId, int ticketCategoryId) {
@@ -824,10 +1058,6 @@ public class TicketReservationManager {
         return optionally(() -> ticketReservationRepository.findReservationById(reservationId));
     }
 
-    private Optional<TicketReservation> findByIdForNotification(String reservationId, ZoneId eventZoneId, int quietPeriod) {
-        return findById(reservationId).filter(notificationNotSent(eventZoneId, quietPeriod));
-    }
-
     private static Predicate<TicketReservation> notificationNotSent(ZoneId eventZoneId, int quietPeriod) {
         return r -> r.latestNotificationTimestamp(eventZoneId)
                 .map(t -> t.truncatedTo(ChronoUnit.DAYS).plusDays(quietPeriod).isBefore(ZonedDateTime.now(eventZoneId).truncatedTo(ChronoUnit.DAYS)))
@@ -855,6 +1085,7 @@ public class TicketReservationManager {
     private void deleteReservations(List<String> reservationIdsToRemove) {
         //handle removal of ticket
         waitingQueueManager.cleanExpiredReservations(reservationIdsToRemove);
+        invoiceDocumentRepository.deleteForReservations(reservationIdsToRemove);
         int removedReservation = ticketReservationRepository.remove(reservationIdsToRemove);
         Validate.isTrue(removedReservation == 1, "expected exactly one removed reservation, got " + removedReservation);
     }
@@ -913,6 +1144,22 @@ public class TicketReservationManager {
                                   PartialTicketTextGenerator confirmationTextBuilder,
                                   PartialTicketTextGenerator ownerChangeTextBuilder,
                                   Optional<UserDetails> userDetails) {
+        ticketFieldManager.updateOrInsert(updateTicketOwner.getAdditional(), ticket, event);
+        updateTicketOwnerExcludingAdditionalFields(ticket, locale, event, updateTicketOwner, confirmationTextBuilder, ownerChangeTextBuilder, userDetails);
+    }
+
+    /**
+     * Same as {@link #updateTicketOwner(Ticket, Locale, Event, UpdateTicketOwnerForm, PartialTicketTextGenerator, PartialTicketTextGenerator, Optional)},
+     * but leaves the additional field values untouched. Used when the caller saves the values of several tickets at once
+     * through {@link TicketFieldManager#updateOrInsert(Map, Event)}.
+     */
+    public void updateTicketOwnerExcludingAdditionalFields(Ticket ticket,
+                                                           Locale locale,
+                                                           Event event,
+                                                           UpdateTicketOwnerForm updateTicketOwner,
+                                                           PartialTicketTextGenerator confirmationTextBuilder,
+                                                           PartialTicketTextGenerator ownerChangeTextBuilder,
+                                                           Optional<UserDetails> userDetails) {
 
         String newEmail = updateTicketOwner.getEmail().trim();
         CustomerName customerName = new CustomerName(updateTicketOwner.getFullName(), updateTicketOwner.getFirstName(), updateTicketOwner.getLastName(), event);
@@ -922,7 +1169,6 @@ public class TicketReservationManager {
         Locale userLocale = Optional.ofNullable(StringUtils.trimToNull(updateTicketOwner.getUserLanguage())).map(Locale::forLanguageTag).orElse(locale);
 
         ticketRepository.updateOptionalTicketInfo(ticket.getUuid(), userLocale.getLanguage());
-        ticketFieldRepository.updateOrInsert(updateTicketOwner.getAdditional(), ticket, event);
 
         Ticket newTicket = ticketRepository.findByUUID(ticket.getUuid());
         if (newTicket.getStatus() == TicketStatus.ACQUIRED
@@ -1003,8 +1249,13 @@ public class TicketReservationManager {
     }
 
     void sendReminderForOfflinePayments() {
+        sendReminderForOfflinePayments(JobShard.ALL);
+    }
+
+    int sendReminderForOfflinePayments(JobShard shard) {
         Date expiration = truncate(addHours(new Date(), configurationManager.getIntConfigValue(Configuration.getSystemConfiguration(OFFLINE_REMINDER_HOURS), 24)), Calendar.DATE);
-        ticketReservationRepository.findAllOfflinePaymentReservationForNotification(expiration).stream()
+        List<TicketReservation> reservations = ticketReservationRepository.findAllOfflinePaymentReservationForNotification(expiration, shard.getIndex(), shard.getCount());
+        reservations.stream()
                 .map(reservation -> {
                     Optional<Ticket> ticket = ticketRepository.findFirstTicketInReservation(reservation.getId());
                     Optional<Event> event = ticket.map(t -> eventRepository.findById(t.getEventId()));
@@ -1025,6 +1276,7 @@ public class TicketReservationManager {
                     ticketReservationRepository.flagAsOfflinePaymentReminderSent(reservation.getId());
                     notificationManager.sendSimpleEmail(event, reservation.getEmail(), messageSource.getMessage("reservation.reminder.mail.subject", new Object[]{getShortReservationID(event, reservation.getId())}, locale), () -> templateManager.renderTemplate(event, TemplateResource.REMINDER_EMAIL, model, locale));
                 });
+        return reservations.size();
     }
 
     //called heach hour
@@ -1049,41 +1301,68 @@ public class TicketReservationManager {
     }
 
     void sendReminderForTicketAssignment() {
-        getNotifiableEventsStream()
-                .map(e -> Pair.of(e, ticketRepository.findAllReservationsConfirmedButNotAssigned(e.getId())))
-                .filter(p -> !p.getRight().isEmpty())
-                .forEach(p -> Wrappers.voidTransactionWrapper(this::sendAssignmentReminder, p));
+        sendReminderForTicketAssignment(JobShard.ALL);
+    }
+
+    int sendReminderForTicketAssignment(JobShard shard) {
+        Map<Integer, Event> events = getNotifiableEventsStream(shard).collect(toMap(Event::getId, Function.identity()));
+        if(events.isEmpty()) {
+            return 0;
+        }
+        //events sharing the same "quiet period" threshold are checked with a single query
+        Map<Integer, List<String>> reservationsByEvent = events.values().stream()
+                .collect(groupingBy(this::getAssignmentReminderThreshold, mapping(Event::getId, toList())))
+                .entrySet().stream()
+                .flatMap(e -> ticketRepository.findReservationsWaitingForAssignmentReminder(e.getValue(), e.getKey()).stream())
+                .collect(groupingBy(ReservationIdAndEventId::getEventId, mapping(ReservationIdAndEventId::getId, toList())));
+        reservationsByEvent.forEach((eventId, reservationIds) -> Wrappers.voidTransactionWrapper(this::sendAssignmentReminder, Pair.of(events.get(eventId), reservationIds)));
+        return reservationsByEvent.values().stream().mapToInt(List::size).sum();
     }
 
     void sendReminderForOptionalData() {
-        getNotifiableEventsStream()
-                .filter(e -> ticketFieldRepository.countAdditionalFieldsForEvent(e.getId()) > 0)
-                .map(e -> Pair.of(e, ticketRepository.findAllAssignedButNotYetNotified(e.getId())))
-                .filter(p -> !p.getRight().isEmpty())
-                .forEach(p -> Wrappers.voidTransactionWrapper(this::sendOptionalDataReminder, p));
+        sendReminderForOptionalData(JobShard.ALL);
+    }
+
+    int sendReminderForOptionalData(JobShard shard) {
+        Map<Integer, Event> events = getNotifiableEventsStream(shard).collect(toMap(Event::getId, Function.identity()));
+        if(events.isEmpty()) {
+            return 0;
+        }
+        List<Integer> eventsWithAdditionalFields = ticketFieldRepository.findEventsWithAdditionalFields(new ArrayList<>(events.keySet()));
+        if(eventsWithAdditionalFields.isEmpty()) {
+            return 0;
+        }
+        List<Ticket> tickets = ticketRepository.findAllAssignedButNotYetNotified(eventsWithAdditionalFields);
+        tickets.stream()
+                .collect(groupingBy(Ticket::getEventId))
+                .forEach((eventId, eventTickets) -> Wrappers.voidTransactionWrapper(this::sendOptionalDataReminder, Pair.of(events.get(eventId), eventTickets)));
+        return tickets.size();
     }
 
     private void sendOptionalDataReminder(Pair<Event, List<Ticket>> eventAndTickets) {
         requiresNewTransactionTemplate.execute(ts -> {
             Event event = eventAndTickets.getLeft();
             int daysBeforeStart = configurationManager.getIntConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.ASSIGNMENT_REMINDER_START), 10);
-            List<Ticket> tickets = eventAndTickets.getRight().stream().filter(t -> !ticketFieldRepository.hasOptionalData(t.getId())).collect(toList());
-            Set<String> notYetNotifiedReservations = tickets.stream().map(Ticket::getTicketsReservationId).distinct().filter(rid -> findByIdForNotification(rid, event.getZoneId(), daysBeforeStart).isPresent()).collect(toSet());
-            tickets.stream()
-                    .filter(t -> notYetNotifiedReservations.contains(t.getTicketsReservationId()))
-                    .forEach(t -> {
-                        int result = ticketRepository.flagTicketAsReminderSent(t.getId());
-                        Validate.isTrue(result == 1);
-                        Map<String, Object> model = TemplateResource.prepareModelForReminderTicketAdditionalInfo(organizationRepository.getById(event.getOrganizationId()), event, t, ticketUpdateUrl(event, t.getUuid()));
-                        Locale locale = Optional.ofNullable(t.getUserLanguage()).map(Locale::forLanguageTag).orElseGet(() -> findReservationLanguage(t.getTicketsReservationId()));
-                        notificationManager.sendSimpleEmail(event, t.getEmail(), messageSource.getMessage("reminder.ticket-additional-info.subject", new Object[]{event.getDisplayName()}, locale), () -> templateManager.renderTemplate(event, TemplateResource.REMINDER_TICKET_ADDITIONAL_INFO, model, locale));
-                    });
+            List<Ticket> tickets = eventAndTickets.getRight();
+            Map<String, TicketReservation> notYetNotifiedReservations = findReservationsForNotification(tickets.stream().map(Ticket::getTicketsReservationId).distinct().collect(toList()), event.getZoneId(), daysBeforeStart);
+            List<Ticket> toBeNotified = tickets.stream().filter(t -> notYetNotifiedReservations.containsKey(t.getTicketsReservationId())).collect(toList());
+            if(toBeNotified.isEmpty()) {
+                return null;
+            }
+            int result = ticketRepository.flagTicketsAsReminderSent(toBeNotified.stream().map(Ticket::getId).collect(toList()));
+            Validate.isTrue(result == toBeNotified.size(), "expected "+toBeNotified.size()+" flagged tickets, got "+result);
+            Organization organization = organizationRepository.getById(event.getOrganizationId());
+            toBeNotified.forEach(t -> {
+                Map<String, Object> model = TemplateResource.prepareModelForReminderTicketAdditionalInfo(organization, event, t, ticketUpdateUrl(event, t.getUuid()));
+                Locale locale = Optional.ofNullable(t.getUserLanguage()).map(Locale::forLanguageTag).orElseGet(() -> reservationLanguage(notYetNotifiedReservations.get(t.getTicketsReservationId())));
+                notificationManager.sendSimpleEmail(event, t.getEmail(), messageSource.getMessage("reminder.ticket-additional-info.subject", new Object[]{event.getDisplayName()}, locale), () -> templateManager.renderTemplate(event, TemplateResource.REMINDER_TICKET_ADDITIONAL_INFO, model, locale));
+            });
             return null;
         });
     }
 
-    Stream<Event> getNotifiableEventsStream() {
-        return eventRepository.findAll().stream()
+    Stream<Event> getNotifiableEventsStream(JobShard shard) {
+        return eventRepository.findAllNotYetStarted(ZonedDateTime.now(Clock.systemUTC()), shard.getIndex(), shard.getCount()).stream()
                 .filter(e -> {
                     int daysBeforeStart = configurationManager.getIntConfigValue(Configuration.from(e.getOrganizationId(), e.getId(), ConfigurationKeys.ASSIGNMENT_REMINDER_START), 10);
                     //we don't want to define events SO far away, don't we?
@@ -1092,22 +1371,43 @@ public class TicketReservationManager {
                 });
     }
 
+    /**
+     * Returns the instant before which the latest reminder must have been sent in order to send a new one.
+     * This is the same condition checked by {@link #notificationNotSent(ZoneId, int)}, expressed in UTC so that it can be used in a query.
+     *
+     * @param event the event
+     * @return the threshold
+     */
+    private ZonedDateTime getAssignmentReminderThreshold(Event event) {
+        int quietPeriod = configurationManager.getIntConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.ASSIGNMENT_REMINDER_INTERVAL), 3);
+        return ZonedDateTime.now(event.getZoneId()).truncatedTo(ChronoUnit.DAYS).minusDays(quietPeriod).withZoneSameInstant(ZoneOffset.UTC);
+    }
+
+    private Map<String, TicketReservation> findReservationsForNotification(List<String> reservationIds, ZoneId eventZoneId, int quietPeriod) {
+        if(reservationIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return ticketReservationRepository.findReservationsByIds(reservationIds).stream()
+            .filter(notificationNotSent(eventZoneId, quietPeriod))
+            .collect(toMap(TicketReservation::getId, Function.identity()));
+    }
+
     private void sendAssignmentReminder(Pair<Event, List<String>> p) {
         try {
             requiresNewTransactionTemplate.execute(status -> {
                 Event event = p.getLeft();
                 ZoneId eventZoneId = event.getZoneId();
                 int quietPeriod = configurationManager.getIntConfigValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.ASSIGNMENT_REMINDER_INTERVAL), 3);
-                p.getRight().stream()
-                        .map(id -> findByIdForNotification(id, eventZoneId, quietPeriod))
-                        .filter(Optional::isPresent)
-                        .map(Optional::get)
-                        .forEach(reservation -> {
-                            Map<String, Object> model = prepareModelForReservationEmail(event, reservation);
-                            ticketReservationRepository.updateLatestReminderTimestamp(reservation.getId(), ZonedDateTime.now(eventZoneId));
-                            Locale locale = findReservationLanguage(reservation.getId());
-                            notificationManager.sendSimpleEmail(event, reservation.getEmail(), messageSource.getMessage("reminder.ticket-not-assigned.subject", new Object[]{event.getDisplayName()}, locale), () -> templateManager.renderTemplate(event, TemplateResource.REMINDER_TICKETS_ASSIGNMENT_EMAIL, model, locale));
-                        });
+                Map<String, TicketReservation> reservations = findReservationsForNotification(p.getRight(), eventZoneId, quietPeriod);
+                if(reservations.isEmpty()) {
+                    return null;
+                }
+                ticketReservationRepository.updateLatestReminderTimestamp(new ArrayList<>(reservations.keySet()), ZonedDateTime.now(eventZoneId));
+                reservations.values().forEach(reservation -> {
+                    Map<String, Object> model = prepareModelForReservationEmail(event, reservation);
+                    Locale locale = reservationLanguage(reservation);
+                    notificationManager.sendSimpleEmail(event, reservation.getEmail(), messageSource.getMessage("reminder.ticket-not-assigned.subject", new Object[]{event.getDisplayName()}, locale), () -> templateManager.renderTemplate(event, TemplateResource.REMINDER_TICKETS_ASSIGNMENT_EMAIL, model, locale));
+                });
                 return null;
             });
         } catch (Exception ex) {
@@ -1115,10 +1415,10 @@ public class TicketReservationManager {
         }
     }
 
-    public TicketReservation findByPartialID(String reservationId) {
+    public TicketReservation findByPartialID(String reservationId, Event event) {
         Validate.notBlank(reservationId, "invalid reservationId");
-        Validate.matchesPattern(reservationId, "^[^%]*$", "invalid character found");
-        List<TicketReservation> results = ticketReservationRepository.findByPartialID(StringUtils.trimToEmpty(reservationId).toLowerCase() + "%");
+        Validate.matchesPattern(reservationId, "^[^%_]*$", "invalid character found");
+        List<TicketReservation> results = ticketReservationRepository.findByPartialIDInEvent(StringUtils.trimToEmpty(reservationId).toLowerCase(Locale.ENGLISH), event.getId());
         Validate.isTrue(results.size() > 0, "reservation not found");
         Validate.isTrue(results.size() == 1, "multiple results found. Try handling this reservation manually.");
         return results.get(0);
@@ -1135,6 +1435,25 @@ public class TicketReservationManager {
         return ticketRepository.countFreeTicketsForUnbounded(event.getId());
     }
 
+    /**
+     * Same as {@link #countAvailableTickets(Event, TicketCategory)}, but for all the given categories at once,
+     * using a single query.
+     *
+     * @return available tickets, by category id
+     */
+    public Map<Integer, Integer> countAvailableTickets(Event event, List<? extends TicketCategory> categories) {
+        List<FreeTicketsCount> freeTickets = ticketRepository.countFreeTicketsByCategory(event.getId());
+        Map<Integer, Integer> bounded = freeTickets.stream()
+            .filter(c -> c.getCategoryId() != null)
+            .collect(toMap(FreeTicketsCount::getCategoryId, FreeTicketsCount::getCount));
+        int unbounded = freeTickets.stream()
+            .filter(c -> c.getCategoryId() == null)
+            .mapToInt(FreeTicketsCount::getCount)
+            .sum();
+        return categories.stream()
+            .collect(toMap(TicketCategory::getId, c -> c.isBounded() ? bounded.getOrDefault(c.getId(), 0) : unbounded));
+    }
+
     public void releaseTicket(Event event, TicketReservation ticketReservation, Ticket ticket) {
         TicketCategory category = ticketCategoryRepository.getById(ticket.getCategoryId(), event.getId());
         if(!CategoryEvaluator.isTicketCancellationAvailable(ticketCategoryRepository, ticket)) {
@@ -1174,7 +1493,7 @@ public class TicketReservationManager {
     }
 
     public void validateAndConfirmOfflinePayment(String reservationId, Event event, BigDecimal paidAmount) {
-        TicketReservation reservation = findByPartialID(reservationId);
+        TicketReservation reservation = findByPartialID(reservationId, event);
         Optional<OrderSummary> optionalOrderSummary = optionally(() -> orderSummaryForReservationId(reservation.getId(), event, Locale.forLanguageTag(reservation.getUserLanguage())));
         Validate.isTrue(optionalOrderSummary.isPresent(), "Reservation not found");
         OrderSummary orderSummary = optionalOrderSummary.get();
@@ -1182,6 +1501,7 @@ public class TicketReservationManager {
         confirmOfflinePayment(event, reservation.getId());
     }
 
+    @Transactional(readOnly = true)
     public List<Pair<TicketReservation, OrderSummary>> getPendingPayments(EventWithStatistics eventWithStatistics) {
         Event event = eventWithStatistics.getEvent();
 
@@ -1197,6 +1517,7 @@ public class TicketReservationManager {
         return fetchWaitingForPayment(reservationIds, event, Locale.ENGLISH);
     }
 
+    @Transactional(readOnly = true)
     public List<TicketReservation> findAllInvoices(int eventId) {
         return ticketReservationRepository.findAllReservationsWithInvoices(eventId);
     }
@@ -34,8 +34,10 @@ package alfio.manager;
 
 import alfio.model.UploadedResource;
 import alfio.model.modification.UploadBase64FileModification;
+import alfio.repository.InvoiceDocumentRepository;
 import alfio.repository.UploadedResourceRepository;
 import alfio.util.Json;
+import alfio.util.TemplateResource;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -70,11 +72,15 @@ public class UploadedResourceManager {
 
     private final NamedParameterJdbcTemplate jdbc;
     private final UploadedResourceRepository uploadedResourceRepository;
+    private final InvoiceDocumentRepository invoiceDocumentRepository;
 
     @Autowired
-    public UploadedResourceManager(NamedParameterJdbcTemplate jdbc, UploadedResourceRepository uploadedResourceRepository) {
+    public UploadedResourceManager(NamedParameterJdbcTemplate jdbc,
+                                   UploadedResourceRepository uploadedResourceRepository,
+                                   InvoiceDocumentRepository invoiceDocumentRepository) {
         this.jdbc = jdbc;
         this.uploadedResourceRepository = uploadedResourceRepository;
+        this.invoiceDocumentRepository = invoiceDocumentRepository;
     }
 
     public boolean hasResource(String name) {
@@ -139,6 +145,9 @@ public class UploadedResourceManager {
         if (hasResource(file.getName())) {
             uploadedResourceRepository.delete(file.getName());
         }
+        if (isInvoiceTemplate(file.getName())) {
+            invoiceDocumentRepository.deleteAll();
+        }
         LobHandler lobHandler = new DefaultLobHandler();
         return jdbc.getJdbcOperations().execute(uploadedResourceRepository.uploadTemplate(file.getName()),
             new AbstractLobCreatingPreparedStatementCallback(lobHandler) {
@@ -154,6 +163,9 @@ public class UploadedResourceManager {
         if (hasResource(organizationId, file.getName())) {
             uploadedResourceRepository.delete(organizationId, file.getName());
         }
+        if (isInvoiceTemplate(file.getName())) {
+            invoiceDocumentRepository.deleteForOrganization(organizationId);
+        }
         LobHandler lobHandler = new DefaultLobHandler();
         return jdbc.getJdbcOperations().execute(uploadedResourceRepository.uploadTemplate(organizationId, file.getName()),
             new AbstractLobCreatingPreparedStatementCallback(lobHandler) {
@@ -169,6 +181,9 @@ public class UploadedResourceManager {
         if (hasResource(organizationId, eventId, file.getName())) {
             uploadedResourceRepository.delete(organizationId, eventId, file.getName());
         }
+        if (isInvoiceTemplate(file.getName())) {
+            invoiceDocumentRepository.deleteForEvent(eventId);
+        }
         LobHandler lobHandler = new DefaultLobHandler();
         return jdbc.getJdbcOperations().execute(uploadedResourceRepository.uploadTemplate(organizationId, eventId, file.getName()),
             new AbstractLobCreatingPreparedStatementCallback(lobHandler) {
@@ -193,14 +208,31 @@ public class UploadedResourceManager {
 
     public void deleteResource(String name) {
         uploadedResourceRepository.delete(name);
+        if (isInvoiceTemplate(name)) {
+            invoiceDocumentRepository.deleteAll();
+        }
     }
 
     public void deleteResource(int organizationId, String name) {
         uploadedResourceRepository.delete(organizationId, name);
+        if (isInvoiceTemplate(name)) {
+            invoiceDocumentRepository.deleteForOrganization(organizationId);
+        }
     }
 
     public void deleteResource(int organizationId, int eventId, String name) {
         uploadedResourceRepository.delete(organizationId, eventId, name);
+        if (isInvoiceTemplate(name)) {
+            invoiceDocumentRepository.deleteForEvent(eventId);
+        }
+    }
+
+    /**
+     * The stored invoice documents (see {@link InvoiceExportManager}) must be regenerated when the
+     * invoice template changes.
+     */
+    private static boolean isInvoiceTemplate(String name) {
+        return StringUtils.startsWith(name, TemplateResource.INVOICE_PDF.name() + "_");
     }
 
     public List<UploadedResource> findAll() {
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.JobShard;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
 import alfio.model.WaitingQueueSubscription;
@@ -71,10 +72,15 @@ public class WaitingQueueSubscriptionProcessor {
     }
 
     void handleWaitingTickets() {
-        Map<Boolean, List<Event>> activeEvents = eventManager.getActiveEvents().stream()
+        handleWaitingTickets(JobShard.ALL);
+    }
+
+    int handleWaitingTickets(JobShard shard) {
+        Map<Boolean, List<Event>> activeEvents = eventManager.getActiveEvents(shard).stream()
             .collect(Collectors.partitioningBy(this::isWaitingListFormEnabled));
         activeEvents.get(true).forEach(this::distributeAvailableSeats);
         activeEvents.get(false).forEach(eventManager::resetReleasedTickets);
+        return activeEvents.get(true).size() + activeEvents.get(false).size();
     }
 
     private boolean isWaitingListFormEnabled(Event event) {
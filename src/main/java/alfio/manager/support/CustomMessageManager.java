@@ -21,41 +21,66 @@ import alfio.manager.NotificationManager;
 import alfio.manager.TicketReservationManager;
 import alfio.manager.system.Mailer;
 import alfio.model.Event;
+import alfio.model.MessageCampaign;
 import alfio.model.Ticket;
 import alfio.model.TicketCategory;
 import alfio.model.TicketReservation;
 import alfio.model.modification.MessageModification;
 import alfio.model.user.Organization;
+import alfio.repository.MessageCampaignRepository;
 import alfio.repository.TicketCategoryRepository;
 import alfio.repository.TicketRepository;
+import alfio.repository.TicketReservationRepository;
 import alfio.util.Json;
 import alfio.util.TemplateManager;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.lang3.tuple.Triple;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.ui.ExtendedModelMap;
 import org.springframework.ui.Model;
 
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
+/**
+ * Sends custom messages to the attendees of an event.
+ * Every request is persisted as a {@link MessageCampaign}: the recipients are read in pages ordered by ticket id, and
+ * the id of the last processed ticket is saved in the same transaction as the generated messages, therefore a campaign
+ * interrupted by a restart can be resumed (see {@link #resumeCampaigns()}) without sending the same message twice.
+ * The campaign is processed by the node holding its lease, which is renewed after each page.
+ */
 @Component
 @Log4j2
 public class CustomMessageManager {
 
+    static final int PAGE_SIZE = 500;
+    static final int RENDERING_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(5);
+    private static final Clock UTC = Clock.systemUTC();
+
     private final TemplateManager templateManager;
     private final EventManager eventManager;
     private final TicketRepository ticketRepository;
     private final TicketReservationManager ticketReservationManager;
     private final NotificationManager notificationManager;
     private final TicketCategoryRepository ticketCategoryRepository;
-    private final Executor sendMessagesExecutor = Executors.newSingleThreadExecutor();
+    private final TicketReservationRepository ticketReservationRepository;
+    private final MessageCampaignRepository messageCampaignRepository;
+    private final TransactionTemplate tx;
+    private final ExecutorService sendMessagesExecutor = Executors.newSingleThreadExecutor(daemonThreadFactory("message-campaign"));
+    private final ExecutorService renderingExecutor = Executors.newFixedThreadPool(RENDERING_THREADS, daemonThreadFactory("message-campaign-renderer"));
+    private final Set<Integer> scheduledCampaigns = ConcurrentHashMap.newKeySet();
 
     @Autowired
     public CustomMessageManager(TemplateManager templateManager,
@@ -63,67 +88,158 @@ public class CustomMessageManager {
                                 TicketRepository ticketRepository,
                                 TicketReservationManager ticketReservationManager,
                                 NotificationManager notificationManager,
-                                TicketCategoryRepository ticketCategoryRepository) {
+                                TicketCategoryRepository ticketCategoryRepository,
+                                TicketReservationRepository ticketReservationRepository,
+                                MessageCampaignRepository messageCampaignRepository,
+                                PlatformTransactionManager transactionManager) {
         this.templateManager = templateManager;
         this.eventManager = eventManager;
         this.ticketRepository = ticketRepository;
         this.ticketReservationManager = ticketReservationManager;
         this.notificationManager = notificationManager;
         this.ticketCategoryRepository = ticketCategoryRepository;
+        this.ticketReservationRepository = ticketReservationRepository;
+        this.messageCampaignRepository = messageCampaignRepository;
+        this.tx = new TransactionTemplate(transactionManager);
     }
 
     public Map<String, Object> generatePreview(String eventName, Optional<Integer> categoryId, List<MessageModification> input, String username) {
         Map<String, Object> result = new HashMap<>();
         Event event = eventManager.getSingleEvent(eventName, username);
-        result.put("affectedUsers", categoryId.map(id -> ticketRepository.countAssignedTickets(event.getId(), id)).orElseGet(() -> ticketRepository.countAllAssigned(event.getId())));
+        result.put("affectedUsers", countRecipients(event, categoryId));
         result.put("preview", preview(event, input, username));
         return result;
     }
 
-    public void sendMessages(String eventName, Optional<Integer> categoryId, List<MessageModification> input, String username) {
+    /**
+     * Creates a new campaign and starts it in background.
+     *
+     * @return the campaign id
+     */
+    public int sendMessages(String eventName, Optional<Integer> categoryId, List<MessageModification> input, String username) {
 
         Event event = eventManager.getSingleEvent(eventName, username);
         preview(event, input, username);//dry run for checking the syntax
-        Organization organization = eventManager.loadOrganizer(event, username);
-        AtomicInteger counter = new AtomicInteger();
-        Map<String, List<MessageModification>> byLanguage = input.stream().collect(Collectors.groupingBy(m -> m.getLocale().getLanguage()));
-
-        sendMessagesExecutor.execute(() -> {
-            categoryId.map(id -> ticketRepository.findConfirmedByCategoryId(event.getId(), id))
-                .orElseGet(() -> ticketRepository.findAllConfirmed(event.getId()))
-                .stream()
-                .filter(t -> isNotBlank(t.getFullName()) && isNotBlank(t.getEmail()))
-                .parallel()
-                .map(t -> {
-                    Model model = new ExtendedModelMap();
-                    model.addAttribute("eventName", eventName);
-                    model.addAttribute("fullName", t.getFullName());
-                    model.addAttribute("organizationName", organization.getName());
-                    model.addAttribute("organizationEmail", organization.getEmail());
-                    model.addAttribute("reservationURL", ticketReservationManager.reservationUrl(t.getTicketsReservationId(), event));
-                    model.addAttribute("reservationID", ticketReservationManager.getShortReservationID(event, t.getTicketsReservationId()));
-                    model.addAttribute("ticketURL", ticketReservationManager.ticketUpdateUrl(event, t.getUuid()));
-                    return Triple.of(t, t.getEmail(), model);
-                })
-                .forEach(triple -> {
-                    Ticket ticket = triple.getLeft();
-                    MessageModification m = Optional.ofNullable(byLanguage.get(ticket.getUserLanguage())).orElseGet(() -> byLanguage.get("en")).get(0);
-                    Model model = triple.getRight();
-                    String subject = renderResource(m.getSubject(), model, m.getLocale(), templateManager);
-                    String text = renderResource(m.getText(), model, m.getLocale(), templateManager);
-                    List<Mailer.Attachment> attachments = new ArrayList<>();
-                    if(m.isAttachTicket()) {
-                        ticketReservationManager.findById(ticket.getTicketsReservationId()).ifPresent(reservation -> {
-                            ticketCategoryRepository.getById(ticket.getCategoryId()).ifPresent(ticketCategory -> {
-                                attachments.add(generateTicketAttachment(ticket, reservation, ticketCategory, organization));
-                            });
-                        });
-                    }
-                    counter.incrementAndGet();
-                    notificationManager.sendSimpleEmail(event, triple.getMiddle(), subject, () -> text, attachments);
-                });
+        int campaignId = messageCampaignRepository.insert(event.getId(), categoryId.orElse(null), username, Json.toJson(input),
+            countRecipients(event, categoryId), ZonedDateTime.now(UTC)).getKey();
+        schedule(campaignId);
+        return campaignId;
+    }
+
+    public List<MessageCampaign> loadCampaigns(String eventName, String username) {
+        Event event = eventManager.getSingleEvent(eventName, username);
+        return messageCampaignRepository.findByEventId(event.getId());
+    }
+
+    /**
+     * Internal method used by automated jobs: schedules the campaigns which are waiting or have been abandoned by another node.
+     */
+    public void resumeCampaigns() {
+        messageCampaignRepository.findResumableIds(ZonedDateTime.now(UTC)).forEach(this::schedule);
+    }
+
+    private void schedule(int campaignId) {
+        if(scheduledCampaigns.add(campaignId)) {
+            sendMessagesExecutor.execute(() -> {
+                try {
+                    processCampaign(campaignId);
+                } finally {
+                    scheduledCampaigns.remove(campaignId);
+                }
+            });
+        }
+    }
+
+    void processCampaign(int campaignId) {
+        ZonedDateTime now = ZonedDateTime.now(UTC);
+        if(messageCampaignRepository.acquireLease(campaignId, now, now.plus(LEASE_DURATION)) == 0) {
+            log.debug("campaign {} is not available", campaignId);
+            return;
+        }
+        try {
+            MessageCampaign campaign = messageCampaignRepository.findById(campaignId);
+            Event event = eventManager.getSingleEventById(campaign.getEventId(), campaign.getUsername());
+            Organization organization = eventManager.loadOrganizer(event, campaign.getUsername());
+            CampaignContext context = new CampaignContext(event, organization, compileTemplates(campaign.getMessages()), ticketReservationManager.baseUrl(event));
+            int lastTicketId = campaign.getLastTicketId();
+            List<Ticket> page;
+            do {
+                page = loadPage(event, campaign.getCategoryId(), lastTicketId);
+                if(!page.isEmpty() && !processPage(campaignId, lastTicketId, page, context)) {
+                    log.warn("campaign {} has been taken over by another node", campaignId);
+                    return;
+                }
+                lastTicketId = page.isEmpty() ? lastTicketId : page.get(page.size() - 1).getId();
+            } while(page.size() == PAGE_SIZE);
+            messageCampaignRepository.updateStatus(campaignId, MessageCampaign.Status.COMPLETED.name(), ZonedDateTime.now(UTC));
+        } catch (Exception e) {
+            log.error("error while processing campaign " + campaignId, e);
+            messageCampaignRepository.updateStatus(campaignId, MessageCampaign.Status.FAILED.name(), ZonedDateTime.now(UTC));
+        }
+    }
+
+    private boolean processPage(int campaignId, int lastTicketId, List<Ticket> page, CampaignContext context) {
+        Map<String, TicketReservation> reservations = ticketReservationRepository.findReservationsByIds(page.stream().map(Ticket::getTicketsReservationId).distinct().collect(Collectors.toList()))
+            .stream().collect(Collectors.toMap(TicketReservation::getId, Function.identity()));
+        Map<String, String> shortReservationIds = reservations.keySet().stream()
+            .collect(Collectors.toMap(Function.identity(), id -> ticketReservationManager.getShortReservationID(context.event, id)));
+
+        List<CompletableFuture<SimpleEmail>> rendered = page.stream()
+            .filter(t -> isNotBlank(t.getFullName()) && isNotBlank(t.getEmail()))
+            .map(t -> CompletableFuture.supplyAsync(() -> render(t, reservations.get(t.getTicketsReservationId()), shortReservationIds.get(t.getTicketsReservationId()), context), renderingExecutor))
+            .collect(Collectors.toList());
+        List<SimpleEmail> messages = rendered.stream().map(CompletableFuture::join).collect(Collectors.toList());
+
+        int newLastTicketId = page.get(page.size() - 1).getId();
+        return tx.execute(status -> {
+            notificationManager.sendSimpleEmails(context.event, messages);
+            ZonedDateTime now = ZonedDateTime.now(UTC);
+            if(messageCampaignRepository.updateProgress(campaignId, lastTicketId, newLastTicketId, messages.size(), now, now.plus(LEASE_DURATION)) == 0) {
+                status.setRollbackOnly();
+                return false;
+            }
+            return true;
         });
+    }
 
+    private SimpleEmail render(Ticket ticket, TicketReservation reservation, String shortReservationId, CampaignContext context) {
+        Event event = context.event;
+        Organization organization = context.organization;
+        Model model = new ExtendedModelMap();
+        model.addAttribute("eventName", event.getShortName());
+        model.addAttribute("fullName", ticket.getFullName());
+        model.addAttribute("organizationName", organization.getName());
+        model.addAttribute("organizationEmail", organization.getEmail());
+        model.addAttribute("reservationURL", TicketReservationManager.reservationUrl(context.baseUrl, event, reservation));
+        model.addAttribute("reservationID", shortReservationId);
+        model.addAttribute("ticketURL", TicketReservationManager.ticketUpdateUrl(context.baseUrl, event, ticket));
+
+        CompiledMessage m = Optional.ofNullable(context.templates.get(ticket.getUserLanguage())).orElseGet(() -> context.templates.get("en"));
+        List<Mailer.Attachment> attachments = new ArrayList<>();
+        if(m.message.isAttachTicket() && ticket.getCategoryId() != null) {
+            context.categories.computeIfAbsent(ticket.getCategoryId(), ticketCategoryRepository::getById)
+                .ifPresent(ticketCategory -> attachments.add(generateTicketAttachment(ticket, reservation, ticketCategory, organization)));
+        }
+        return new SimpleEmail(ticket.getEmail(), m.subject.apply(model.asMap()), m.text.apply(model.asMap()), attachments);
+    }
+
+    private List<Ticket> loadPage(Event event, Integer categoryId, int lastTicketId) {
+        if(categoryId != null) {
+            return ticketRepository.findAssignedByCategoryIdAfter(event.getId(), categoryId, lastTicketId, PAGE_SIZE);
+        }
+        return ticketRepository.findAssignedAfter(event.getId(), lastTicketId, PAGE_SIZE);
+    }
+
+    private Map<String, CompiledMessage> compileTemplates(List<MessageModification> messages) {
+        Map<String, CompiledMessage> result = new HashMap<>();
+        messages.forEach(m -> result.putIfAbsent(m.getLocale().getLanguage(), new CompiledMessage(m,
+            templateManager.compileString(m.getSubject(), m.getLocale(), TemplateManager.TemplateOutput.TEXT),
+            templateManager.compileString(m.getText(), m.getLocale(), TemplateManager.TemplateOutput.TEXT))));
+        return result;
+    }
+
+    private Integer countRecipients(Event event, Optional<Integer> categoryId) {
+        return categoryId.map(id -> ticketRepository.countAssignedTickets(event.getId(), id)).orElseGet(() -> ticketRepository.countAllAssigned(event.getId()));
     }
 
     private List<MessageModification> preview(Event event, List<MessageModification> input, String username) {
@@ -153,4 +269,46 @@ public class CustomMessageManager {
     private static String renderResource(String template, Model model, Locale locale, TemplateManager templateManager) {
         return templateManager.renderString(template, model.asMap(), locale, TemplateManager.TemplateOutput.TEXT);
     }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendMessagesExecutor.shutdownNow();
+        renderingExecutor.shutdownNow();
+    }
+
+    private static final class CompiledMessage {
+        private final MessageModification message;
+        private final Function<Map<String, Object>, String> subject;
+        private final Function<Map<String, Object>, String> text;
+
+        private CompiledMessage(MessageModification message, Function<Map<String, Object>, String> subject, Function<Map<String, Object>, String> text) {
+            this.message = message;
+            this.subject = subject;
+            this.text = text;
+        }
+    }
+
+    private static final class CampaignContext {
+        private final Event event;
+        private final Organization organization;
+        private final Map<String, CompiledMessage> templates;
+        private final String baseUrl;
+        private final Map<Integer, Optional<TicketCategory>> categories = new ConcurrentHashMap<>();
+
+        private CampaignContext(Event event, Organization organization, Map<String, CompiledMessage> templates, String baseUrl) {
+            this.event = event;
+            this.organization = organization;
+            this.templates = templates;
+            this.baseUrl = baseUrl;
+        }
+    }
 }
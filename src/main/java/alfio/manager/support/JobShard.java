@@ -0,0 +1,33 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import lombok.Data;
+
+/**
+ * A slice of the work of a background job. Each unit of work is assigned to a shard by its key
+ * (e.g. the event id), so that the same item is always processed by the same shard.
+ * The partition is applied by the queries, using the condition {@code mod(key, :shardCount) = :shardIndex}.
+ */
+@Data
+public class JobShard {
+
+    public static final JobShard ALL = new JobShard(0, 1);
+
+    private final int index;
+    private final int count;
+}
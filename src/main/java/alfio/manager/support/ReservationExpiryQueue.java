@@ -0,0 +1,84 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keeps track of the expiration of the pending reservations, so that they can be released as soon as they expire.
+ * Each reservation becomes available {@link #GRACE_PERIOD_MILLIS} milliseconds after its validity, in order to not interfere
+ * with a payment submitted right before the deadline.
+ */
+@Component
+public class ReservationExpiryQueue {
+
+    static final long GRACE_PERIOD_MILLIS = 60_000;
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private final DelayQueue<Expiration> queue = new DelayQueue<>();
+
+    public void schedule(String reservationId, Date validity) {
+        queue.offer(new Expiration(reservationId, validity.getTime() + GRACE_PERIOD_MILLIS));
+    }
+
+    /**
+     * Waits until at least one reservation is expired.
+     *
+     * @return the ids of the expired reservations, up to {@link #MAX_BATCH_SIZE}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<String> takeExpired() throws InterruptedException {
+        List<Expiration> expired = new ArrayList<>();
+        expired.add(queue.take());
+        queue.drainTo(expired, MAX_BATCH_SIZE - 1);
+        return expired.stream().map(e -> e.reservationId).distinct().collect(toList());
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    private static final class Expiration implements Delayed {
+
+        private final String reservationId;
+        private final long deadline;
+
+        private Expiration(String reservationId, long deadline) {
+            this.reservationId = reservationId;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.manager.system.Mailer;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * A rendered message, ready to be enqueued. See {@link alfio.manager.NotificationManager#sendSimpleEmails}
+ */
+@Data
+public class SimpleEmail {
+    private final String recipient;
+    private final String subject;
+    private final String text;
+    private final List<Mailer.Attachment> attachments;
+}
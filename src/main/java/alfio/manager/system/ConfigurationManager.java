@@ -16,6 +16,7 @@
  */
 package alfio.manager.system;
 
+import alfio.manager.EventCacheManager;
 import alfio.manager.user.UserManager;
 import alfio.model.Event;
 import alfio.model.modification.ConfigurationModification;
@@ -25,6 +26,7 @@ import alfio.model.system.ConfigurationKeys;
 import alfio.model.system.ConfigurationPathLevel;
 import alfio.model.user.User;
 import alfio.repository.EventRepository;
+import alfio.repository.InvoiceDocumentRepository;
 import alfio.repository.system.ConfigurationRepository;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
@@ -58,19 +60,28 @@ public class ConfigurationManager {
     private static final Map<ConfigurationKeys.SettingCategory, List<Configuration>> CATEGORY_CONFIGURATION = collectConfigurationKeysByCategory(ConfigurationPathLevel.TICKET_CATEGORY);
 
     private static final Predicate<ConfigurationModification> TO_BE_SAVED = c -> Optional.ofNullable(c.getId()).orElse(-1) > -1 || !StringUtils.isBlank(c.getValue());
+    //the keys printed on the invoices. Stored invoice documents must be regenerated when they change
+    private static final Set<ConfigurationKeys> INVOICE_KEYS = EnumSet.of(ConfigurationKeys.INVOICE_ADDRESS, ConfigurationKeys.VAT_NR,
+        ConfigurationKeys.BANK_ACCOUNT_NR, ConfigurationKeys.BANK_ACCOUNT_OWNER);
 
 
     private final ConfigurationRepository configurationRepository;
     private final UserManager userManager;
     private final EventRepository eventRepository;
+    private final EventCacheManager eventCacheManager;
+    private final InvoiceDocumentRepository invoiceDocumentRepository;
 
     @Autowired
     public ConfigurationManager(ConfigurationRepository configurationRepository,
                                 UserManager userManager,
-                                EventRepository eventRepository) {
+                                EventRepository eventRepository,
+                                EventCacheManager eventCacheManager,
+                                InvoiceDocumentRepository invoiceDocumentRepository) {
         this.configurationRepository = configurationRepository;
         this.userManager = userManager;
         this.eventRepository = eventRepository;
+        this.eventCacheManager = eventCacheManager;
+        this.invoiceDocumentRepository = invoiceDocumentRepository;
     }
 
     //TODO: refactor, not the most beautiful code, find a better solution...
@@ -159,6 +170,7 @@ public class ConfigurationManager {
 
     public void saveAllOrganizationConfiguration(int organizationId, List<ConfigurationModification> list, String username) {
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), organizationId), "Cannot update settings, user is not owner");
+        boolean invoiceDataChanged = isInvoiceDataChanged(list, key -> configurationRepository.findByKeyAtOrganizationLevel(organizationId, key));
         list.stream()
             .filter(TO_BE_SAVED)
             .forEach(c -> {
@@ -172,6 +184,9 @@ public class ConfigurationManager {
                     configurationRepository.insertOrganizationLevel(organizationId, c.getKey(), value.get(), ConfigurationKeys.fromString(c.getKey()).getDescription());
                 }
             });
+        if(invoiceDataChanged) {
+            invoiceDocumentRepository.deleteForOrganization(organizationId);
+        }
     }
 
     public void saveEventConfiguration(int eventId, int organizationId, List<ConfigurationModification> list, String username) {
@@ -182,6 +197,7 @@ public class ConfigurationManager {
         if(organizationId != event.getOrganizationId()) {
             Validate.isTrue(userManager.isOwnerOfOrganization(user, event.getOrganizationId()), "Cannot update settings, user is not owner of event");
         }
+        boolean invoiceDataChanged = isInvoiceDataChanged(list, key -> configurationRepository.findByKeyAtEventLevel(eventId, organizationId, key));
         list.stream()
             .filter(TO_BE_SAVED)
             .forEach(c -> {
@@ -195,6 +211,10 @@ public class ConfigurationManager {
                     configurationRepository.insertEventLevel(organizationId, eventId, c.getKey(), value.get(), ConfigurationKeys.fromString(c.getKey()).getDescription());
                 }
             });
+        if(invoiceDataChanged) {
+            invoiceDocumentRepository.deleteForEvent(eventId);
+        }
+        eventCacheManager.invalidate(eventId);
     }
 
     public void saveCategoryConfiguration(int categoryId, int eventId, List<ConfigurationModification> list, String username) {
@@ -215,6 +235,18 @@ public class ConfigurationManager {
                     configurationRepository.insertTicketCategoryLevel(event.getOrganizationId(), eventId, categoryId, c.getKey(), value.get(), ConfigurationKeys.fromString(c.getKey()).getDescription());
                 }
             });
+        eventCacheManager.invalidate(eventId);
+    }
+
+    private static boolean isPrintedOnInvoices(String key) {
+        return INVOICE_KEYS.stream().map(ConfigurationKeys::getValue).anyMatch(key::equals);
+    }
+
+    private boolean isInvoiceDataChanged(List<ConfigurationModification> list, Function<String, Optional<Configuration>> existingLoader) {
+        return list.stream()
+            .filter(TO_BE_SAVED)
+            .filter(c -> isPrintedOnInvoices(c.getKey()))
+            .anyMatch(c -> !Objects.equals(existingLoader.apply(c.getKey()).map(Configuration::getValue).orElse(null), evaluateValue(c.getKey(), c.getValue()).orElse(null)));
     }
 
     private Optional<String> evaluateValue(String key, String value) {
@@ -230,6 +262,9 @@ public class ConfigurationManager {
 
     public void saveSystemConfiguration(ConfigurationKeys key, String value) {
         Optional<Configuration> conf = optionally(() -> findByConfigurationPathAndKey(Configuration.system(), key));
+        if(INVOICE_KEYS.contains(key) && !Objects.equals(conf.map(Configuration::getValue).orElse(null), value)) {
+            invoiceDocumentRepository.deleteAll();
+        }
         if(key.isBooleanComponentType()) {
             Optional<Boolean> state = getThreeStateValue(value);
             if(conf.isPresent()) {
@@ -366,11 +401,17 @@ public class ConfigurationManager {
 
     public void deleteKey(String key) {
         configurationRepository.deleteByKey(key);
+        if(isPrintedOnInvoices(key)) {
+            invoiceDocumentRepository.deleteAll();
+        }
     }
 
     public void deleteOrganizationLevelByKey(String key, int organizationId, String username) {
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), organizationId), "User is not owner of the organization. Therefore, delete is not allowed.");
         configurationRepository.deleteOrganizationLevelByKey(key, organizationId);
+        if(isPrintedOnInvoices(key)) {
+            invoiceDocumentRepository.deleteForOrganization(organizationId);
+        }
     }
 
     public void deleteEventLevelByKey(String key, int eventId, String username) {
@@ -378,6 +419,10 @@ public class ConfigurationManager {
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), "User is not owner of the organization. Therefore, delete is not allowed.");
         configurationRepository.deleteEventLevelByKey(key, eventId);
+        if(isPrintedOnInvoices(key)) {
+            invoiceDocumentRepository.deleteForEvent(eventId);
+        }
+        eventCacheManager.invalidate(eventId);
     }
 
     public void deleteCategoryLevelByKey(String key, int eventId, int categoryId, String username) {
@@ -385,6 +430,7 @@ public class ConfigurationManager {
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), "User is not owner of the organization. Therefore, delete is not allowed.");
         configurationRepository.deleteCategoryLevelByKey(key, eventId, categoryId);
+        eventCacheManager.invalidate(eventId);
     }
 
     private static Map<ConfigurationKeys.SettingCategory, List<Configuration>> collectConfigurationKeysByCategory(ConfigurationPathLevel pathLevel) {
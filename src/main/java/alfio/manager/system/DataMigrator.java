@@ -55,7 +55,7 @@ import static alfio.util.OptionalWrapper.optionally;
 import static java.util.stream.Collectors.*;
 
 @Component
-@Transactional(readOnly = true)
+@Transactional
 @Log4j2
 public class DataMigrator {
 
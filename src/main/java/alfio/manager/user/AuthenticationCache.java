@@ -0,0 +1,105 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived cache of the successful Basic authentications, used by the stateless APIs (check-in, sponsor scan).
+ * The entries are keyed by a salted digest of the credentials, so that the passwords are never kept in memory.
+ * The entries of a user are evicted as soon as {@link UserManager} modifies the user.
+ * <p>
+ * The cache is local to each node and the eviction is not propagated: in a clustered deployment, the other nodes keep
+ * accepting the old credentials of a modified, disabled or deleted user until their entries expire, at most
+ * two minutes later.
+ */
+@Component
+@Log4j2
+public class AuthenticationCache {
+
+    private final byte[] salt = new byte[32];
+    private final Cache<String, Authentication> cache = Caffeine.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(2, TimeUnit.MINUTES)
+        .build();
+
+    public AuthenticationCache() {
+        new SecureRandom().nextBytes(salt);
+    }
+
+    public Optional<Authentication> get(String username, String password) {
+        return Optional.ofNullable(cache.getIfPresent(key(username, password)));
+    }
+
+    public void put(String username, String password, Authentication authentication) {
+        cache.put(key(username, password), authentication);
+    }
+
+    /**
+     * Evicts all the entries of the given user. If there is an active transaction, the entries are evicted again after the commit,
+     * in order to discard the authentications performed in the meantime with the old data.
+     *
+     * @param username the username
+     */
+    public void invalidate(String username) {
+        evict(username);
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evict(username);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private void evict(String username) {
+        cache.asMap().values().removeIf(a -> a.getName().equals(username));
+        log.trace("evicted cached authentications for user {}", username);
+    }
+
+    private String key(String username, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update(username.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package alfio.manager.user;
 
 import alfio.model.result.ValidationResult;
 import alfio.model.user.*;
+import alfio.repository.InvoiceDocumentRepository;
 import alfio.repository.InvoiceSequencesRepository;
 import alfio.repository.user.AuthorityRepository;
 import alfio.repository.user.OrganizationRepository;
@@ -53,6 +54,8 @@ public class UserManager {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final InvoiceSequencesRepository invoiceSequencesRepository;
+    private final AuthenticationCache authenticationCache;
+    private final InvoiceDocumentRepository invoiceDocumentRepository;
 
     @Autowired
     public UserManager(AuthorityRepository authorityRepository,
@@ -60,13 +63,17 @@ public class UserManager {
                        UserOrganizationRepository userOrganizationRepository,
                        UserRepository userRepository,
                        PasswordEncoder passwordEncoder,
-                       InvoiceSequencesRepository invoiceSequencesRepository) {
+                       InvoiceSequencesRepository invoiceSequencesRepository,
+                       AuthenticationCache authenticationCache,
+                       InvoiceDocumentRepository invoiceDocumentRepository) {
         this.authorityRepository = authorityRepository;
         this.organizationRepository = organizationRepository;
         this.userOrganizationRepository = userOrganizationRepository;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.invoiceSequencesRepository = invoiceSequencesRepository;
+        this.authenticationCache = authenticationCache;
+        this.invoiceDocumentRepository = invoiceDocumentRepository;
     }
 
     private List<Authority> getUserAuthorities(User user) {
@@ -161,6 +168,8 @@ public class UserManager {
     @Transactional
     public void updateOrganization(Integer id, String name, String email, String description) {
         organizationRepository.update(id, name, description, email);
+        //name and email of the organization are printed on the invoices
+        invoiceDocumentRepository.deleteForOrganization(id);
     }
 
     public ValidationResult validateOrganization(Integer id, String name, String email, String description) {
@@ -181,6 +190,7 @@ public class UserManager {
     @Transactional
     public void editUser(int id, int organizationId, String username, String firstName, String lastName, String emailAddress, Role role, String currentUsername) {
         boolean admin = ADMIN_USERNAME.equals(username) && Role.ADMIN == role;
+        authenticationCache.invalidate(userRepository.findById(id).getUsername());
         if(!admin) {
             int userOrganizationResult = userOrganizationRepository.updateUserOrganization(id, organizationId);
             Assert.isTrue(userOrganizationResult == 1, "unexpected error during organization update");
@@ -192,6 +202,7 @@ public class UserManager {
             authorityRepository.revokeAll(username);
             authorityRepository.create(username, role.getRoleName());
         }
+        authenticationCache.invalidate(username);
     }
 
     @Transactional
@@ -209,6 +220,7 @@ public class UserManager {
         User user = findUser(userId);
         String password = PasswordGenerator.generateRandomPassword();
         Validate.isTrue(userRepository.resetPassword(userId, passwordEncoder.encode(password)) == 1, "error during password reset");
+        authenticationCache.invalidate(user.getUsername());
         return new UserWithPassword(user, password, UUID.randomUUID().toString());
     }
 
@@ -217,6 +229,7 @@ public class UserManager {
         User user = userRepository.findByUsername(username).stream().findFirst().orElseThrow(IllegalStateException::new);
         Validate.isTrue(PasswordGenerator.isValid(newPassword), "invalid password");
         Validate.isTrue(userRepository.resetPassword(user.getId(), passwordEncoder.encode(newPassword)) == 1, "error during password update");
+        authenticationCache.invalidate(username);
         return true;
     }
 
@@ -225,6 +238,7 @@ public class UserManager {
         User currentUser = userRepository.findEnabledByUsername(currentUsername).orElseThrow(IllegalArgumentException::new);
         Assert.isTrue(userId != currentUser.getId(), "sorry but you cannot commit suicide");
 
+        authenticationCache.invalidate(findUser(userId).getUsername());
         userRepository.deleteUserFromSponsorScan(userId);
         userRepository.deleteUserFromOrganization(userId);
         userRepository.deleteUser(userId);
@@ -236,6 +250,7 @@ public class UserManager {
         Assert.isTrue(userId != currentUser.getId(), "sorry but you cannot commit suicide");
 
         userRepository.toggleEnabled(userId, status);
+        authenticationCache.invalidate(findUser(userId).getUsername());
     }
 
     public ValidationResult validateUser(Integer id, String username, int organizationId, String role, String firstName, String lastName, String emailAddress) {
@@ -47,6 +47,7 @@ import java.util.stream.Collectors;
 public class Event implements EventHiddenFieldContainer {
 
     private static final String VERSION_FOR_FIRST_AND_LAST_NAME = "15.1.8.8";
+    private static final DateTimeFormatter CALENDAR_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyMMdd'T'HHmmss");
     public enum Status {
         DRAFT, PUBLIC
     }
@@ -240,10 +241,9 @@ public class Event implements EventHiddenFieldContainer {
     public String getGoogleCalendarUrl(String description) {
         //format described at http://stackoverflow.com/a/19867654
         // sprop does not seems to have any effect http://useroffline.blogspot.ch/2009/06/making-google-calendar-link.html
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyMMdd'T'HHmmss");
         return UriComponentsBuilder.fromUriString("https://www.google.com/calendar/event")
                 .queryParam("action", "TEMPLATE")
-                .queryParam("dates", getBegin().format(formatter) + "/" + getEnd().format(formatter))
+                .queryParam("dates", getBegin().format(CALENDAR_DATE_FORMATTER) + "/" + getEnd().format(CALENDAR_DATE_FORMATTER))
                 .queryParam("ctz", getTimeZone())
                 .queryParam("text", getDisplayName())
                 .queryParam("details", description)
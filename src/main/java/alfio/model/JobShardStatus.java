@@ -0,0 +1,62 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import lombok.Getter;
+
+import java.time.ZonedDateTime;
+
+@Getter
+public class JobShardStatus {
+
+    private final String jobName;
+    private final int shard;
+    private final int requestedRound;
+    private final int startedRound;
+    private final String leaseOwner;
+    private final ZonedDateTime leaseExpiration;
+    private final ZonedDateTime lastStart;
+    private final long lastDurationMillis;
+    private final int lastProcessedCount;
+    private final int executions;
+    private final int failures;
+
+    public JobShardStatus(@Column("job_name") String jobName,
+                          @Column("shard") int shard,
+                          @Column("requested_round") int requestedRound,
+                          @Column("started_round") int startedRound,
+                          @Column("lease_owner") String leaseOwner,
+                          @Column("lease_expiration_ts") ZonedDateTime leaseExpiration,
+                          @Column("last_start_ts") ZonedDateTime lastStart,
+                          @Column("last_duration_ms") long lastDurationMillis,
+                          @Column("last_processed_count") int lastProcessedCount,
+                          @Column("executions") int executions,
+                          @Column("failures") int failures) {
+        this.jobName = jobName;
+        this.shard = shard;
+        this.requestedRound = requestedRound;
+        this.startedRound = startedRound;
+        this.leaseOwner = leaseOwner;
+        this.leaseExpiration = leaseExpiration;
+        this.lastStart = lastStart;
+        this.lastDurationMillis = lastDurationMillis;
+        this.lastProcessedCount = lastProcessedCount;
+        this.executions = executions;
+        this.failures = failures;
+    }
+}
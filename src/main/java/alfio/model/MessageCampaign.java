@@ -0,0 +1,72 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import alfio.model.modification.MessageModification;
+import alfio.util.Json;
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Getter;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+@Getter
+public class MessageCampaign {
+
+    public enum Status {
+        WAITING, RUNNING, COMPLETED, FAILED
+    }
+
+    private final int id;
+    private final int eventId;
+    private final Integer categoryId;
+    private final String username;
+    @JsonIgnore
+    private final List<MessageModification> messages;
+    private final Status status;
+    private final int lastTicketId;
+    private final int processedCount;
+    private final int totalCount;
+    private final ZonedDateTime creationTimestamp;
+    private final ZonedDateTime updateTimestamp;
+
+    public MessageCampaign(@Column("id") int id,
+                           @Column("event_id_fk") int eventId,
+                           @Column("category_id_fk") Integer categoryId,
+                           @Column("username") String username,
+                           @Column("messages") String messages,
+                           @Column("status") String status,
+                           @Column("last_ticket_id") int lastTicketId,
+                           @Column("processed_count") int processedCount,
+                           @Column("total_count") int totalCount,
+                           @Column("creation_ts") ZonedDateTime creationTimestamp,
+                           @Column("update_ts") ZonedDateTime updateTimestamp) {
+        this.id = id;
+        this.eventId = eventId;
+        this.categoryId = categoryId;
+        this.username = username;
+        this.messages = Json.fromJson(messages, new TypeReference<List<MessageModification>>() {});
+        this.status = Status.valueOf(status);
+        this.lastTicketId = lastTicketId;
+        this.processedCount = processedCount;
+        this.totalCount = totalCount;
+        this.creationTimestamp = creationTimestamp;
+        this.updateTimestamp = updateTimestamp;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import alfio.util.Json;
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.Getter;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+
+@Getter
+public class OfflinePaymentReconciliation {
+
+    public enum Status {
+        WAITING, RUNNING, COMPLETED, FAILED
+    }
+
+    private final int id;
+    private final int eventId;
+    private final String username;
+    @JsonIgnore
+    private final List<List<String>> payments;
+    private final List<Result> results;
+    private final Status status;
+    private final int processedCount;
+    private final int confirmedCount;
+    private final int failedCount;
+    private final int totalCount;
+    private final ZonedDateTime creationTimestamp;
+    private final ZonedDateTime updateTimestamp;
+
+    public OfflinePaymentReconciliation(@Column("id") int id,
+                                        @Column("event_id_fk") int eventId,
+                                        @Column("username") String username,
+                                        @Column("payments") String payments,
+                                        @Column("status") String status,
+                                        @Column("processed_count") int processedCount,
+                                        @Column("confirmed_count") int confirmedCount,
+                                        @Column("failed_count") int failedCount,
+                                        @Column("total_count") int totalCount,
+                                        @Column("creation_ts") ZonedDateTime creationTimestamp,
+                                        @Column("update_ts") ZonedDateTime updateTimestamp) {
+        this.id = id;
+        this.eventId = eventId;
+        this.username = username;
+        this.payments = Json.fromJson(payments, new TypeReference<List<List<String>>>() {});
+        this.results = Collections.emptyList();
+        this.status = Status.valueOf(status);
+        this.processedCount = processedCount;
+        this.confirmedCount = confirmedCount;
+        this.failedCount = failedCount;
+        this.totalCount = totalCount;
+        this.creationTimestamp = creationTimestamp;
+        this.updateTimestamp = updateTimestamp;
+    }
+
+    private OfflinePaymentReconciliation(OfflinePaymentReconciliation src, List<Result> results) {
+        this.id = src.id;
+        this.eventId = src.eventId;
+        this.username = src.username;
+        this.payments = src.payments;
+        this.results = results;
+        this.status = src.status;
+        this.processedCount = src.processedCount;
+        this.confirmedCount = src.confirmedCount;
+        this.failedCount = src.failedCount;
+        this.totalCount = src.totalCount;
+        this.creationTimestamp = src.creationTimestamp;
+        this.updateTimestamp = src.updateTimestamp;
+    }
+
+    /**
+     * The results are stored separately, one row per payment, and are not loaded with the reconciliation.
+     *
+     * @param results the results of the processed rows
+     * @return a copy of this reconciliation, including the given results
+     */
+    public OfflinePaymentReconciliation withResults(List<Result> results) {
+        return new OfflinePaymentReconciliation(this, results);
+    }
+
+    /**
+     * Outcome of a single row of the uploaded file.
+     */
+    @Data
+    public static class Result {
+        private final int row;
+        private final boolean success;
+        private final String reservationId;
+        private final String message;
+
+        @JsonCreator
+        public Result(@JsonProperty("row") @Column("row_index") int row,
+                      @JsonProperty("success") @Column("success") boolean success,
+                      @JsonProperty("reservationId") @Column("reservation_id") String reservationId,
+                      @JsonProperty("message") @Column("message") String message) {
+            this.row = row;
+            this.success = success;
+            this.reservationId = reservationId;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * A page of results retrieved using keyset pagination. The client must send back {@link #nextCursor} in order to
+ * retrieve the following page. A {@code null} cursor means that there are no more results.
+ */
+@Getter
+@RequiredArgsConstructor
+public class Page<T> {
+
+    public static final int DEFAULT_SIZE = 100;
+    public static final int MAX_SIZE = 500;
+    /**
+     * Escape clause for the filters generated by {@link #toLikeFilter(String)}.
+     */
+    public static final String LIKE_ESCAPE = " escape '\\'";
+    /**
+     * Same as {@link #LIKE_ESCAPE}, for MySQL, which treats the backslash as an escape character in string literals.
+     */
+    public static final String MYSQL_LIKE_ESCAPE = " escape '\\\\'";
+    private static final Pattern UUID_CURSOR = Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public static <T> Page<T> of(List<T> content, int limit, Function<T, Object> cursorExtractor) {
+        String nextCursor = content.size() < limit ? null : String.valueOf(cursorExtractor.apply(content.get(content.size() - 1)));
+        return new Page<>(content, nextCursor);
+    }
+
+    public static int sanitizeLimit(Integer limit) {
+        return Math.min(Optional.ofNullable(limit).filter(l -> l > 0).orElse(DEFAULT_SIZE), MAX_SIZE);
+    }
+
+    /**
+     * Parses a cursor generated from a numeric id.
+     *
+     * @param cursor the cursor sent by the client
+     * @return the id, or -1 if there is no cursor
+     * @throws InvalidCursorException if the cursor is not numeric
+     */
+    public static int numericCursor(Optional<String> cursor) {
+        return cursor.map(c -> {
+            try {
+                return Integer.parseInt(c);
+            } catch (NumberFormatException e) {
+                throw new InvalidCursorException(c);
+            }
+        }).orElse(-1);
+    }
+
+    /**
+     * Validates a cursor generated from an UUID.
+     *
+     * @param cursor the cursor sent by the client
+     * @return the cursor, or an empty string if there is no cursor
+     * @throws InvalidCursorException if the cursor is not an UUID
+     */
+    public static String uuidCursor(Optional<String> cursor) {
+        cursor.filter(c -> !UUID_CURSOR.matcher(c).matches()).ifPresent(c -> {
+            throw new InvalidCursorException(c);
+        });
+        return cursor.orElse("");
+    }
+
+    /**
+     * Transforms the given search term in a case-insensitive "like" filter. The wildcards contained in the search term
+     * are escaped, therefore the query must declare {@link #LIKE_ESCAPE} (or {@link #MYSQL_LIKE_ESCAPE}) after each comparison.
+     *
+     * @param search the search term, can be null
+     * @return the filter, to be compared against lowercase values
+     */
+    public static String toLikeFilter(String search) {
+        String term = StringUtils.trimToEmpty(search).toLowerCase(Locale.ENGLISH)
+            .replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_");
+        return "%" + term + "%";
+    }
+
+    /**
+     * Thrown when the cursor sent by the client has not been generated by {@link #of(List, int, Function)}.
+     */
+    public static class InvalidCursorException extends IllegalArgumentException {
+        public InvalidCursorException(String cursor) {
+            super("invalid cursor: " + cursor);
+        }
+    }
+}
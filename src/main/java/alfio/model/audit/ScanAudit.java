@@ -18,6 +18,7 @@ package alfio.model.audit;
 
 import alfio.manager.support.CheckInStatus;
 import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 
 import java.time.ZonedDateTime;
@@ -30,6 +31,7 @@ public class ScanAudit {
         REVERT
     }
 
+    private final int id;
     private final String ticketUuid;
     private final int eventId;
     private final ZonedDateTime scanTimestamp;
@@ -37,12 +39,14 @@ public class ScanAudit {
     private final CheckInStatus checkInStatus;
     private final Operation operation;
 
-    public ScanAudit(@Column("ticket_uuid") String ticketUuid,
-                     @Column("event_id_fk") int eventId,
-                     @Column("scan_ts") ZonedDateTime scanTimestamp,
-                     @Column("username") String username,
-                     @Column("check_in_status") CheckInStatus checkInStatus,
-                     @Column("operation") Operation operation) {
+    public ScanAudit(@JsonProperty("id") @Column("id") int id,
+                     @JsonProperty("ticketUuid") @Column("ticket_uuid") String ticketUuid,
+                     @JsonProperty("eventId") @Column("event_id_fk") int eventId,
+                     @JsonProperty("scanTimestamp") @Column("scan_ts") ZonedDateTime scanTimestamp,
+                     @JsonProperty("username") @Column("username") String username,
+                     @JsonProperty("checkInStatus") @Column("check_in_status") CheckInStatus checkInStatus,
+                     @JsonProperty("operation") @Column("operation") Operation operation) {
+        this.id = id;
         this.ticketUuid = ticketUuid;
         this.eventId = eventId;
         this.scanTimestamp = scanTimestamp;
@@ -23,7 +23,9 @@ import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static java.util.stream.Collectors.toList;
@@ -124,16 +126,23 @@ public class AdminReservationModification {
         private final String firstName;
         private final String lastName;
         private final String emailAddress;
+        private final Map<String, List<String>> additionalInfo;
 
         @JsonCreator
         public Attendee(@JsonProperty("ticketId") Integer ticketId,
                         @JsonProperty("firstName") String firstName,
                         @JsonProperty("lastName") String lastName,
-                        @JsonProperty("emailAddress") String emailAddress) {
+                        @JsonProperty("emailAddress") String emailAddress,
+                        @JsonProperty("additionalInfo") Map<String, List<String>> additionalInfo) {
             this.ticketId = ticketId;
             this.firstName = firstName;
             this.lastName = lastName;
             this.emailAddress = emailAddress;
+            this.additionalInfo = Optional.ofNullable(additionalInfo).orElse(Collections.emptyMap());
+        }
+
+        public Attendee(Integer ticketId, String firstName, String lastName, String emailAddress) {
+            this(ticketId, firstName, lastName, emailAddress, null);
         }
 
         public boolean isEmpty() {
@@ -71,7 +71,9 @@ public interface ErrorCode {
     enum ReservationError implements ErrorCode {
         NOT_FOUND("not_found", "No reservation has been found"),
         UPDATE_FAILED("update_failed", "Update failed"),
-        ACCESS_DENIED("access_denied", "Access is denied");
+        ACCESS_DENIED("access_denied", "Access is denied"),
+        QUEUED("queued", "Too many concurrent requests, please retry using the queue token"),
+        WAITING_ROOM_FULL("waiting_room_full", "Too many concurrent requests, please retry later");
 
         private final String code;
         private final String description;
@@ -52,6 +52,18 @@ public interface AdditionalServiceRepository {
                @Bind("inceptionTs") ZonedDateTime inception, @Bind("expirationTs") ZonedDateTime expiration, @Bind("vat") BigDecimal vat,
                @Bind("vatType") AdditionalService.VatType vatType, @Bind("srcPriceCts") int srcPriceCts);
 
+    /**
+     * Locks the services having a limited quantity. A non-positive quantity means that the service is unlimited.
+     *
+     * @return the ids of the locked services
+     */
+    @Query("select id from additional_service where id in (:ids) and available_qty > 0 order by id for update")
+    List<Integer> lockServicesWithLimitedQuantity(@Bind("ids") List<Integer> ids);
+
+    @Query("select s.id from additional_service s where s.id in (:ids) and s.available_qty > 0 and s.available_qty < " +
+        "(select count(*) from additional_service_item i where i.additional_service_id_fk = s.id and i.status in ('PENDING', 'TO_BE_PAID', 'ACQUIRED', 'CHECKED_IN'))")
+    List<Integer> findOverbookedServices(@Bind("ids") List<Integer> ids);
+
     @Query("select * from additional_service where event_id_fk = :eventId and supplement_policy = :supplementPolicy order by ordinal")
     List<AdditionalService> findAllInEventWithPolicy(@Bind("eventId") int eventId, @Bind("supplementPolicy") AdditionalService.SupplementPolicy policy);
 }
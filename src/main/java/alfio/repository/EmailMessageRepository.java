@@ -16,11 +16,11 @@
  */
 package alfio.repository;
 
+import alfio.config.support.PlatformProvider;
 import alfio.model.EmailMessage;
 import alfio.model.LightweightMailMessage;
-import ch.digitalfondue.npjt.Bind;
-import ch.digitalfondue.npjt.Query;
-import ch.digitalfondue.npjt.QueryRepository;
+import alfio.model.Page;
+import ch.digitalfondue.npjt.*;
 
 import java.time.ZonedDateTime;
 import java.util.Date;
@@ -30,6 +30,11 @@ import java.util.Optional;
 @QueryRepository
 public interface EmailMessageRepository {
 
+    String SEARCH_AFTER = " and id > :afterId and (lower(recipient) like :search" + Page.LIKE_ESCAPE +
+        " or lower(subject) like :search" + Page.LIKE_ESCAPE + ") order by id limit :limit";
+    String MYSQL_SEARCH_AFTER = " and id > :afterId and (lower(recipient) like :search" + Page.MYSQL_LIKE_ESCAPE +
+        " or lower(subject) like :search" + Page.MYSQL_LIKE_ESCAPE + ") order by id limit :limit";
+
     /**
      * This method returns a lightweight instance of EmailMessage. The property "Attachments" is always null.
      * @param eventId
@@ -50,6 +55,16 @@ public interface EmailMessageRepository {
                @Bind("timestamp") ZonedDateTime requestTimestamp);
 
 
+    @Query(type = QueryType.TEMPLATE, value = "insert into email_message (event_id, status, recipient, subject, message, attachments, checksum, request_ts, email_cc)" +
+        " values(:eventId, 'WAITING', :recipient, :subject, :message, :attachments, :checksum, :timestamp, :emailCC)")
+    String bulkInsert();
+
+    @Query("select checksum from email_message where event_id = :eventId and checksum in (:checksums)")
+    List<String> findExistingChecksums(@Bind("eventId") int eventId, @Bind("checksums") List<String> checksums);
+
+    @Query("update email_message set status = 'WAITING' where event_id = :eventId and checksum in (:checksums)")
+    int updateStatusToWaiting(@Bind("eventId") int eventId, @Bind("checksums") List<String> checksums);
+
     @Query("update email_message set status = :status where event_id = :eventId and checksum = :checksum and status in (:expectedStatuses)")
     int updateStatus(@Bind("eventId") int eventId, @Bind("checksum") String checksum, @Bind("status") String status, @Bind("expectedStatuses") List<String> expectedStatuses);
 
@@ -63,14 +78,17 @@ public interface EmailMessageRepository {
     int updateStatusAndAttempts(@Bind("messageId") int messageId, @Bind("status") String status, @Bind("nextDate") Date date, @Bind("attempts") int attempts, @Bind("expectedStatuses") List<String> expectedStatuses);
 
 
-    @Query("select id from email_message where event_id = :eventId and (status = 'WAITING' or status = 'RETRY') and request_ts <= :date for update")
+    @Query("select id from email_message where event_id = :eventId and status in ('WAITING', 'RETRY') and request_ts <= :date for update")
     List<Integer> loadIdsWaitingForProcessing(@Bind("eventId") int eventId, @Bind("date") Date date);
 
     @Query("update email_message set status = 'SENT', sent_ts = :sentTimestamp where event_id = :eventId and checksum = :checksum and status in (:expectedStatuses)")
     int updateStatusToSent(@Bind("eventId") int eventId, @Bind("checksum") String checksum, @Bind("sentTimestamp") ZonedDateTime sentTimestamp, @Bind("expectedStatuses") List<String> expectedStatuses);
 
-    @Query("select id, event_id, status, recipient, subject, message, checksum, request_ts, sent_ts, attempts, email_cc from email_message where event_id = :eventId")
-    List<LightweightMailMessage> findByEventId(@Bind("eventId") int eventId);
+    @Query("select id, event_id, status, recipient, subject, message, checksum, request_ts, sent_ts, attempts, email_cc from email_message where event_id = :eventId" + SEARCH_AFTER)
+    @QueriesOverride({
+        @QueryOverride(db = PlatformProvider.MYSQL, value = "select id, event_id, status, recipient, subject, message, checksum, request_ts, sent_ts, attempts, email_cc from email_message where event_id = :eventId" + MYSQL_SEARCH_AFTER)
+    })
+    List<LightweightMailMessage> findByEventIdAfter(@Bind("eventId") int eventId, @Bind("afterId") int afterId, @Bind("search") String search, @Bind("limit") int limit);
 
     @Query("select * from email_message where id = :id")
     EmailMessage findById(@Bind("id") int id);
@@ -78,4 +96,38 @@ public interface EmailMessageRepository {
     @Query("select * from email_message where id = :messageId and event_id = :eventId")
     Optional<EmailMessage> findByEventIdAndMessageId(@Bind("eventId") int eventId, @Bind("messageId") int messageId);
 
+    // archive
+
+    String ARCHIVE_FIELDS = "id, event_id, 'SENT' as status, recipient, subject, message, checksum, request_ts, sent_ts, 0 as attempts, email_cc";
+
+    @Query("select distinct event_id from email_message where status = 'SENT'")
+    List<Integer> findEventIdsWithSentMessages();
+
+    @Query("select distinct event_id from email_message_archive")
+    List<Integer> findEventIdsWithArchivedMessages();
+
+    /**
+     * Copies the messages sent before the given date to the archive. The attachments are stored as descriptors
+     * (see {@link alfio.manager.system.Mailer.Attachment}), therefore they can be regenerated if needed.
+     */
+    @Query("insert into email_message_archive(id, event_id, recipient, email_cc, subject, message, attachments, checksum, request_ts, sent_ts)" +
+        " select id, event_id, recipient, email_cc, subject, message, attachments, checksum, request_ts, sent_ts from email_message m" +
+        " where m.event_id = :eventId and m.status = 'SENT' and m.sent_ts < :sentBefore and not exists (select 1 from email_message_archive a where a.id = m.id)")
+    int archiveSentMessages(@Bind("eventId") int eventId, @Bind("sentBefore") ZonedDateTime sentBefore);
+
+    @Query("delete from email_message where event_id = :eventId and status = 'SENT' and sent_ts < :sentBefore and id in (select id from email_message_archive where event_id = :eventId)")
+    int deleteArchivedMessages(@Bind("eventId") int eventId, @Bind("sentBefore") ZonedDateTime sentBefore);
+
+    @Query("delete from email_message_archive where event_id = :eventId and sent_ts < :sentBefore")
+    int deleteExpiredArchivedMessages(@Bind("eventId") int eventId, @Bind("sentBefore") ZonedDateTime sentBefore);
+
+    @Query("select " + ARCHIVE_FIELDS + " from email_message_archive where event_id = :eventId" + SEARCH_AFTER)
+    @QueriesOverride({
+        @QueryOverride(db = PlatformProvider.MYSQL, value = "select " + ARCHIVE_FIELDS + " from email_message_archive where event_id = :eventId" + MYSQL_SEARCH_AFTER)
+    })
+    List<LightweightMailMessage> findArchivedByEventIdAfter(@Bind("eventId") int eventId, @Bind("afterId") int afterId, @Bind("search") String search, @Bind("limit") int limit);
+
+    @Query("select " + ARCHIVE_FIELDS + ", attachments from email_message_archive where id = :messageId and event_id = :eventId")
+    Optional<EmailMessage> findArchivedByEventIdAndMessageId(@Bind("eventId") int eventId, @Bind("messageId") int messageId);
+
 }
@@ -40,6 +40,15 @@ public interface EventDeleterRepository {
 	
 	@Query("delete from email_message where event_id = :eventId")
 	int deleteEmailMessage(@Bind("eventId") int eventId);
+
+	@Query("delete from email_message_archive where event_id = :eventId")
+	int deleteEmailMessageArchive(@Bind("eventId") int eventId);
+
+	@Query("delete from message_campaign where event_id_fk = :eventId")
+	int deleteMessageCampaigns(@Bind("eventId") int eventId);
+
+	@Query("delete from offline_payment_reconciliation where event_id_fk = :eventId")
+	int deleteOfflinePaymentReconciliations(@Bind("eventId") int eventId);
 	
 	@Query("delete from ticket_field_value where ticket_field_configuration_id_fk in (select id from ticket_field_configuration where event_id_fk = :eventId and context = 'ATTENDEE')")
 	int deleteTicketFieldValue(@Bind("eventId") int eventId);
@@ -71,6 +80,9 @@ public interface EventDeleterRepository {
 	@Query("delete from ticket where event_id = :eventId")
 	int deleteTicket(@Bind("eventId") int eventId);
 
+	@Query("delete from invoice_document where event_id_fk = :eventId")
+	int deleteInvoiceDocuments(@Bind("eventId") int eventId);
+
 	@Query("delete from tickets_reservation where event_id_fk = :eventId")
 	int deleteReservation(@Bind("eventId") int eventId);
 	
@@ -17,6 +17,7 @@
 package alfio.repository;
 
 import alfio.model.Event;
+import alfio.model.EventCacheVersion;
 import alfio.model.EventStatisticView;
 import alfio.model.PriceContainer;
 import alfio.util.OptionalWrapper;
@@ -46,6 +47,9 @@ public interface EventRepository {
     @Query("select * from event order by start_ts asc")
     List<Event> findAll();
 
+    @Query("select * from event where mod(id, :shardCount) = :shardIndex order by start_ts asc")
+    List<Event> findAllInShard(@Bind("shardIndex") int shardIndex, @Bind("shardCount") int shardCount);
+
     @Query("select * from event where org_id = :organizationId")
     List<Event> findByOrganizationId(@Bind("organizationId") int organizationId);
 
@@ -98,12 +102,28 @@ public interface EventRepository {
     @Query("select * from event where end_ts > :now")
     List<Event> findAllActives(@Bind("now") ZonedDateTime now);
 
+    @Query("select * from event where start_ts > :now and mod(id, :shardCount) = :shardIndex order by start_ts asc")
+    List<Event> findAllNotYetStarted(@Bind("now") ZonedDateTime now, @Bind("shardIndex") int shardIndex, @Bind("shardCount") int shardCount);
+
     @Query("update event set available_seats = :newValue where id = :eventId")
     int updateAvailableSeats(@Bind("eventId") int eventId, @Bind("newValue") int newValue);
 
     @Query("select * from event where short_name = :name for update")
     Optional<Event> findOptionalByShortNameForUpdate(@Bind("name") String shortName);
 
+    @Query("select id, cache_version from event where id = :eventId")
+    EventCacheVersion getCacheVersion(@Bind("eventId") int eventId);
+
+    @Query("select id, cache_version from event where short_name = :eventName")
+    Optional<EventCacheVersion> findCacheVersionByShortName(@Bind("eventName") String eventName);
+
+    @Query("select id, cache_version from event where id in (:eventIds)")
+    List<EventCacheVersion> findCacheVersions(@Bind("eventIds") List<Integer> eventIds);
+
+    @Query("update event set cache_version = cache_version + 1 where id = :eventId")
+    int incrementCacheVersion(@Bind("eventId") int eventId);
+
+    @ReportingQuery
     @Query("select * from events_statistics where id in (:ids)")
     List<EventStatisticView> findStatisticsFor(@Bind("ids") Set<Integer> integers);
 }
@@ -0,0 +1,50 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
+
+import java.util.List;
+
+@QueryRepository
+public interface InvoiceDocumentRepository {
+
+    @Query("delete from invoice_document where tickets_reservation_id = :reservationId")
+    int deleteForReservation(@Bind("reservationId") String reservationId);
+
+    @Query("delete from invoice_document where tickets_reservation_id in (:reservationIds)")
+    int deleteForReservations(@Bind("reservationIds") List<String> reservationIds);
+
+    @Query("delete from invoice_document where event_id_fk = :eventId")
+    int deleteForEvent(@Bind("eventId") int eventId);
+
+    @Query("delete from invoice_document where event_id_fk in (select id from event where org_id = :organizationId)")
+    int deleteForOrganization(@Bind("organizationId") int organizationId);
+
+    @Query("delete from invoice_document")
+    int deleteAll();
+
+    @Query(type = QueryType.TEMPLATE, value = "insert into invoice_document (tickets_reservation_id, invoice_number, event_id_fk, content_size, content) " +
+            "values(?, ?, ?, ?, ?)")
+    String insertTemplate();
+
+    @Query(type = QueryType.TEMPLATE, value = "select content from invoice_document where tickets_reservation_id = :reservationId and invoice_number = :invoiceNumber")
+    String documentContent();
+}
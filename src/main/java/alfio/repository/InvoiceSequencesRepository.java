@@ -31,4 +31,24 @@ public interface InvoiceSequencesRepository {
 
     @Query("insert into invoice_sequences(organization_id_fk, invoice_sequence) values (:orgId, 1)")
     int initFor(@Bind("orgId") int orgId);
+
+    @Query("select invoice_sequence from invoice_sequences where organization_id_fk = :orgId")
+    int currentSequenceFor(@Bind("orgId") int orgId);
+
+    /**
+     * Reserves the next invoice number for the given organization.
+     * Two statements are executed: the update increments the sequence and acquires the row lock, then the new value is read
+     * back. The read doesn't need a "select ... for update", since the lock is already held. The lock is released when the
+     * current transaction ends.
+     *
+     * @param orgId the organization id
+     * @return the reserved invoice number
+     */
+    default int nextSequenceFor(int orgId) {
+        int updated = incrementSequenceFor(orgId);
+        if(updated != 1) {
+            throw new IllegalStateException("invoice sequence not found for organization " + orgId);
+        }
+        return currentSequenceFor(orgId) - 1;
+    }
 }
@@ -0,0 +1,79 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.JobShardStatus;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+@QueryRepository
+public interface JobShardRepository {
+
+    String CLAIMABLE = "job_name = :jobName and started_round < requested_round and (lease_expiration_ts is null or lease_expiration_ts < :now)";
+
+    @Query("insert into job_shard(job_name, shard) values(:jobName, :shard)")
+    int insert(@Bind("jobName") String jobName, @Bind("shard") int shard);
+
+    @Query("select shard from job_shard where job_name = :jobName")
+    List<Integer> findShards(@Bind("jobName") String jobName);
+
+    /**
+     * Asks for a new execution of all the shards of the given job. A shard which is currently running will be executed
+     * once again after its completion.
+     */
+    @Query("update job_shard set requested_round = requested_round + 1 where job_name = :jobName and shard < :shardCount")
+    int requestExecution(@Bind("jobName") String jobName, @Bind("shardCount") int shardCount);
+
+    @Query("select shard from job_shard where " + CLAIMABLE + " and shard < :shardCount order by shard")
+    List<Integer> findClaimable(@Bind("jobName") String jobName, @Bind("shardCount") int shardCount, @Bind("now") ZonedDateTime now);
+
+    /**
+     * Acquires the lease on the given shard. Returns 0 if the shard has already been claimed by another node.
+     */
+    @Query("update job_shard set lease_owner = :owner, lease_expiration_ts = :leaseExpiration, last_start_ts = :now, started_round = requested_round" +
+        " where " + CLAIMABLE + " and shard = :shard")
+    int claim(@Bind("jobName") String jobName,
+              @Bind("shard") int shard,
+              @Bind("owner") String owner,
+              @Bind("now") ZonedDateTime now,
+              @Bind("leaseExpiration") ZonedDateTime leaseExpiration);
+
+    /**
+     * Extends the lease of a running shard. Returns 0 if the lease is not owned by the given node anymore.
+     */
+    @Query("update job_shard set lease_expiration_ts = :leaseExpiration where job_name = :jobName and shard = :shard and lease_owner = :owner")
+    int renewLease(@Bind("jobName") String jobName,
+                   @Bind("shard") int shard,
+                   @Bind("owner") String owner,
+                   @Bind("leaseExpiration") ZonedDateTime leaseExpiration);
+
+    @Query("update job_shard set lease_owner = null, lease_expiration_ts = null, last_duration_ms = :duration, last_processed_count = :processed," +
+        " executions = executions + 1, failures = failures + :failures where job_name = :jobName and shard = :shard and lease_owner = :owner")
+    int release(@Bind("jobName") String jobName,
+                @Bind("shard") int shard,
+                @Bind("owner") String owner,
+                @Bind("duration") long durationMillis,
+                @Bind("processed") int processed,
+                @Bind("failures") int failures);
+
+    @Query("select * from job_shard order by job_name, shard")
+    List<JobShardStatus> findAll();
+}
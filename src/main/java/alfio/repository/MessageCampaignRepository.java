@@ -0,0 +1,73 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.MessageCampaign;
+import ch.digitalfondue.npjt.AffectedRowCountAndKey;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+@QueryRepository
+public interface MessageCampaignRepository {
+
+    String FIELDS = "id, event_id_fk, category_id_fk, username, messages, status, last_ticket_id, processed_count, total_count, creation_ts, update_ts";
+
+    @Query("insert into message_campaign(event_id_fk, category_id_fk, username, messages, status, total_count, creation_ts, update_ts)" +
+        " values(:eventId, :categoryId, :username, :messages, 'WAITING', :totalCount, :now, :now)")
+    AffectedRowCountAndKey<Integer> insert(@Bind("eventId") int eventId,
+                                           @Bind("categoryId") Integer categoryId,
+                                           @Bind("username") String username,
+                                           @Bind("messages") String messages,
+                                           @Bind("totalCount") int totalCount,
+                                           @Bind("now") ZonedDateTime now);
+
+    @Query("select " + FIELDS + " from message_campaign where id = :id")
+    MessageCampaign findById(@Bind("id") int id);
+
+    @Query("select " + FIELDS + " from message_campaign where event_id_fk = :eventId order by id desc")
+    List<MessageCampaign> findByEventId(@Bind("eventId") int eventId);
+
+    /**
+     * Returns the campaigns which are waiting to be started, or whose lease has expired because the node
+     * which was processing them has been stopped.
+     */
+    @Query("select id from message_campaign where status = 'WAITING' or (status = 'RUNNING' and lease_expiration_ts < :now) order by id")
+    List<Integer> findResumableIds(@Bind("now") ZonedDateTime now);
+
+    @Query("update message_campaign set status = 'RUNNING', lease_expiration_ts = :leaseExpiration, update_ts = :now where id = :id" +
+        " and (status = 'WAITING' or (status = 'RUNNING' and lease_expiration_ts < :now))")
+    int acquireLease(@Bind("id") int id, @Bind("now") ZonedDateTime now, @Bind("leaseExpiration") ZonedDateTime leaseExpiration);
+
+    /**
+     * Moves the cursor forward and renews the lease. Returns 0 if the cursor has been moved in the meantime by another node.
+     */
+    @Query("update message_campaign set last_ticket_id = :lastTicketId, processed_count = processed_count + :processed," +
+        " lease_expiration_ts = :leaseExpiration, update_ts = :now where id = :id and status = 'RUNNING' and last_ticket_id = :expectedLastTicketId")
+    int updateProgress(@Bind("id") int id,
+                       @Bind("expectedLastTicketId") int expectedLastTicketId,
+                       @Bind("lastTicketId") int lastTicketId,
+                       @Bind("processed") int processed,
+                       @Bind("now") ZonedDateTime now,
+                       @Bind("leaseExpiration") ZonedDateTime leaseExpiration);
+
+    @Query("update message_campaign set status = :status, lease_expiration_ts = null, update_ts = :now where id = :id")
+    int updateStatus(@Bind("id") int id, @Bind("status") String status, @Bind("now") ZonedDateTime now);
+}
@@ -0,0 +1,91 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.OfflinePaymentReconciliation;
+import ch.digitalfondue.npjt.AffectedRowCountAndKey;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+@QueryRepository
+public interface OfflinePaymentReconciliationRepository {
+
+    String FIELDS = "id, event_id_fk, username, payments, status, processed_count, confirmed_count, failed_count, total_count, creation_ts, update_ts";
+
+    @Query("insert into offline_payment_reconciliation(event_id_fk, username, payments, status, total_count, creation_ts, update_ts)" +
+        " values(:eventId, :username, :payments, 'WAITING', :totalCount, :now, :now)")
+    AffectedRowCountAndKey<Integer> insert(@Bind("eventId") int eventId,
+                                           @Bind("username") String username,
+                                           @Bind("payments") String payments,
+                                           @Bind("totalCount") int totalCount,
+                                           @Bind("now") ZonedDateTime now);
+
+    @Query("select " + FIELDS + " from offline_payment_reconciliation where id = :id")
+    OfflinePaymentReconciliation findById(@Bind("id") int id);
+
+    @Query("select " + FIELDS + " from offline_payment_reconciliation where id = :id and event_id_fk = :eventId")
+    List<OfflinePaymentReconciliation> findByIdAndEventId(@Bind("id") int id, @Bind("eventId") int eventId);
+
+    /**
+     * Returns the reconciliations which are waiting to be started, or whose lease has expired because the node
+     * which was processing them has been stopped.
+     */
+    @Query("select id from offline_payment_reconciliation where status = 'WAITING' or (status = 'RUNNING' and lease_expiration_ts < :now) order by id")
+    List<Integer> findResumableIds(@Bind("now") ZonedDateTime now);
+
+    @Query("update offline_payment_reconciliation set status = 'RUNNING', lease_expiration_ts = :leaseExpiration, update_ts = :now where id = :id" +
+        " and (status = 'WAITING' or (status = 'RUNNING' and lease_expiration_ts < :now))")
+    int acquireLease(@Bind("id") int id, @Bind("now") ZonedDateTime now, @Bind("leaseExpiration") ZonedDateTime leaseExpiration);
+
+    /**
+     * Saves the progress of a chunk and renews the lease. Returns 0 if the chunk has already been saved by another node.
+     */
+    @Query("update offline_payment_reconciliation set processed_count = :processedCount, confirmed_count = confirmed_count + :confirmed," +
+        " failed_count = failed_count + :failed, lease_expiration_ts = :leaseExpiration, update_ts = :now" +
+        " where id = :id and status = 'RUNNING' and processed_count = :expectedProcessedCount")
+    int updateProgress(@Bind("id") int id,
+                       @Bind("expectedProcessedCount") int expectedProcessedCount,
+                       @Bind("processedCount") int processedCount,
+                       @Bind("confirmed") int confirmed,
+                       @Bind("failed") int failed,
+                       @Bind("now") ZonedDateTime now,
+                       @Bind("leaseExpiration") ZonedDateTime leaseExpiration);
+
+    @Query(type = QueryType.TEMPLATE, value = "insert into offline_payment_reconciliation_result(reconciliation_id_fk, row_index, success, reservation_id, message, notify_reservation_id)" +
+        " values(:reconciliationId, :row, :success, :reservationId, :message, :notifyReservationId)")
+    String bulkInsertResult();
+
+    /**
+     * Returns the confirmed reservations whose confirmation has not been sent yet.
+     */
+    @Query("select notify_reservation_id from offline_payment_reconciliation_result where reconciliation_id_fk = :id and notify_reservation_id is not null order by row_index")
+    List<String> findReservationsToNotify(@Bind("id") int id);
+
+    @Query("update offline_payment_reconciliation_result set notify_reservation_id = null where reconciliation_id_fk = :id and notify_reservation_id = :reservationId")
+    int markAsNotified(@Bind("id") int id, @Bind("reservationId") String reservationId);
+
+    @Query("select row_index, success, reservation_id, message from offline_payment_reconciliation_result where reconciliation_id_fk = :id order by row_index")
+    List<OfflinePaymentReconciliation.Result> findResults(@Bind("id") int id);
+
+    @Query("update offline_payment_reconciliation set status = :status, lease_expiration_ts = null, update_ts = :now where id = :id")
+    int updateStatus(@Bind("id") int id, @Bind("status") String status, @Bind("now") ZonedDateTime now);
+}
@@ -78,8 +78,8 @@ public interface SpecialPriceRepository {
     @Query("update special_price set status = 'CANCELLED' where id in (:ids)")
     int cancelTokens(@Bind("ids") List<Integer> ids);
 
-    @Query("select * from special_price where status = 'WAITING' for update")
-    List<SpecialPrice> findWaitingElements();
+    @Query("select * from special_price where status = 'WAITING' and mod(ticket_category_id, :shardCount) = :shardIndex for update")
+    List<SpecialPrice> findWaitingElements(@Bind("shardIndex") int shardIndex, @Bind("shardCount") int shardCount);
 
     @Query("select * from special_price where status = 'WAITING' and ticket_category_id = :categoryId for update")
     List<SpecialPrice> findWaitingElementsForCategory(@Bind("categoryId") int categoryId);
@@ -17,6 +17,7 @@
 package alfio.repository;
 
 import alfio.model.DetailedScanData;
+import alfio.model.SponsorScan;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
@@ -24,8 +25,9 @@ import ch.digitalfondue.npjt.QueryRepository;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @QueryRepository
 public interface SponsorScanRepository {
@@ -38,6 +40,7 @@ public interface SponsorScanRepository {
     @Query("insert into sponsor_scan (user_id, creation, event_id, ticket_id) values(:userId, :creation, :eventId, :ticketId)")
     int insert(@Bind("userId") int userId, @Bind("creation") ZonedDateTime creation, @Bind("eventId") int eventId, @Bind("ticketId") int ticketId);
 
+    @ReportingQuery
     @Query("select t.id t_id, t.uuid t_uuid, t.creation t_creation, t.category_id t_category_id, t.status t_status, t.event_id t_event_id," +
         " t.src_price_cts t_src_price_cts, t.final_price_cts t_final_price_cts, t.vat_cts t_vat_cts, t.discount_cts t_discount_cts, t.tickets_reservation_id t_tickets_reservation_id," +
         " t.full_name t_full_name, t.first_name t_first_name, t.last_name t_last_name, t.email_address t_email_address, t.locked_assignment t_locked_assignment," +
@@ -46,4 +49,49 @@ public interface SponsorScanRepository {
         " from sponsor_scan s, ticket t where s.event_id = :eventId and s.user_id = :userId and s.creation > :start and s.ticket_id = t.id order by s.creation")
     List<DetailedScanData> loadSponsorData(@Bind("eventId") int eventId, @Bind("userId") int userId, @Bind("start") ZonedDateTime start);
 
+    @Query("select t.id t_id, t.uuid t_uuid, t.creation t_creation, t.category_id t_category_id, t.status t_status, t.event_id t_event_id," +
+        " t.src_price_cts t_src_price_cts, t.final_price_cts t_final_price_cts, t.vat_cts t_vat_cts, t.discount_cts t_discount_cts, t.tickets_reservation_id t_tickets_reservation_id," +
+        " t.full_name t_full_name, t.first_name t_first_name, t.last_name t_last_name, t.email_address t_email_address, t.locked_assignment t_locked_assignment," +
+        " t.user_language t_user_language," +
+        " s.user_id s_user_id, s.creation s_creation, s.event_id s_event_id, s.ticket_id s_ticket_id" +
+        " from sponsor_scan s, ticket t where s.event_id = :eventId and s.user_id = :userId and s.ticket_id = t.id" +
+        " and (s.creation > :start or (s.creation = :start and s.ticket_id > :afterTicketId)) order by s.creation, s.ticket_id limit :limit")
+    List<DetailedScanData> loadSponsorDataPage(@Bind("eventId") int eventId, @Bind("userId") int userId, @Bind("start") ZonedDateTime start,
+                                               @Bind("afterTicketId") int afterTicketId, @Bind("limit") int limit);
+
+    /**
+     * Lazily loads all the scans of the given sponsor, one page at a time.
+     *
+     * @param eventId the event id
+     * @param userId the sponsor id
+     * @param pageSize how many rows to load for each query
+     * @return a stream of scans, ordered by timestamp
+     */
+    default Stream<DetailedScanData> streamSponsorData(int eventId, int userId, int pageSize) {
+        Iterator<List<DetailedScanData>> pages = new Iterator<List<DetailedScanData>>() {
+            private List<DetailedScanData> current = loadSponsorDataPage(eventId, userId, DEFAULT_TIMESTAMP, -1, pageSize);
+            private boolean hasMore = true;
+
+            @Override
+            public boolean hasNext() {
+                return hasMore && !current.isEmpty();
+            }
+
+            @Override
+            public List<DetailedScanData> next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<DetailedScanData> result = current;
+                hasMore = result.size() == pageSize;
+                if(hasMore) {
+                    SponsorScan last = result.get(result.size() - 1).getSponsorScan();
+                    current = loadSponsorDataPage(eventId, userId, last.getTimestamp(), last.getTicketId(), pageSize);
+                }
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false).flatMap(List::stream);
+    }
+
 }
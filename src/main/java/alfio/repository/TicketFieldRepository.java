@@ -44,9 +44,24 @@ public interface TicketFieldRepository extends FieldRepository {
     @Query("insert into ticket_field_value(ticket_id_fk, ticket_field_configuration_id_fk, field_value) values (:ticketId, :fieldConfigurationId, :value)")
     int insertValue(@Bind("ticketId") int ticketId, @Bind("fieldConfigurationId") int fieldConfigurationId, @Bind("value") String value);
 
+    @Query(type = QueryType.TEMPLATE, value = "insert into ticket_field_value(ticket_id_fk, ticket_field_configuration_id_fk, field_value) values (:ticketId, :fieldConfigurationId, :value)" +
+        " on conflict(ticket_id_fk, ticket_field_configuration_id_fk) do update set field_value = excluded.field_value")
+    @QueriesOverride({
+        @QueryOverride(db = PlatformProvider.MYSQL, value = "insert into ticket_field_value(ticket_id_fk, ticket_field_configuration_id_fk, field_value) values (:ticketId, :fieldConfigurationId, :value)" +
+            " on duplicate key update field_value = values(field_value)"),
+        @QueryOverride(db = "HSQLDB", value = "merge into ticket_field_value using (values(cast(:ticketId as int), cast(:fieldConfigurationId as int), cast(:value as varchar(2048)))) as v(t_id, c_id, val)" +
+            " on ticket_field_value.ticket_id_fk = v.t_id and ticket_field_value.ticket_field_configuration_id_fk = v.c_id" +
+            " when matched then update set field_value = v.val" +
+            " when not matched then insert (ticket_id_fk, ticket_field_configuration_id_fk, field_value) values (v.t_id, v.c_id, v.val)")
+    })
+    String bulkUpsertValue();
+
     @Query("delete from ticket_field_value where ticket_id_fk = :ticketId and ticket_field_configuration_id_fk = :fieldConfigurationId")
     int deleteValue(@Bind("ticketId") int ticketId, @Bind("fieldConfigurationId") int fieldConfigurationId);
 
+    @Query(type = QueryType.TEMPLATE, value = "delete from ticket_field_value where ticket_id_fk = :ticketId and ticket_field_configuration_id_fk = :fieldConfigurationId")
+    String bulkDeleteValue();
+
     @Query("delete from ticket_field_value where ticket_id_fk = :ticketId")
     int deleteAllValuesForTicket(@Bind("ticketId") int ticketId);
 
@@ -72,35 +87,13 @@ public interface TicketFieldRepository extends FieldRepository {
     @Query("select field_name, field_value from ticket_field_value inner join ticket_field_configuration on ticket_field_configuration_id_fk = id where ticket_id_fk = :ticketId")
     List<FieldNameAndValue> findNameAndValue(@Bind("ticketId") int ticketId);
 
-    default void updateOrInsert(Map<String, List<String>> values, Ticket ticket, Event event) {
-        int ticketId = ticket.getId();
-        int eventId = event.getId();
-        Map<String, TicketFieldValue> toUpdate = findAllByTicketIdGroupedByName(ticketId);
-        values = Optional.ofNullable(values).orElseGet(Collections::emptyMap);
-        Map<String, Integer> fieldNameToId = findAdditionalFieldsForEvent(eventId).stream().collect(Collectors.toMap(TicketFieldConfiguration::getName, TicketFieldConfiguration::getId));
-
-        values.forEach((fieldName, fieldValues) -> {
-            String fieldValue;
-            if(fieldValues.size() == 1) {
-                fieldValue = fieldValues.get(0);
-            } else if(fieldValues.stream().anyMatch(StringUtils::isNotBlank)) {
-                fieldValue = Json.toJson(fieldValues);
-            } else {
-                fieldValue = "";
-            }
-
-            boolean isNotBlank = StringUtils.isNotBlank(fieldValue);
-            if(toUpdate.containsKey(fieldName)) {
-                TicketFieldValue field = toUpdate.get(fieldName);
-                if(isNotBlank) {
-                    updateValue(field.getTicketId(), field.getTicketFieldConfigurationId(), fieldValue);
-                } else {
-                    deleteValue(field.getTicketId(), field.getTicketFieldConfigurationId());
-                }
-            } else if(fieldNameToId.containsKey(fieldName) && isNotBlank) {
-                insertValue(ticketId, fieldNameToId.get(fieldName), fieldValue);
-            }
-        });
+    static String toFieldValue(List<String> fieldValues) {
+        if(fieldValues.size() == 1) {
+            return fieldValues.get(0);
+        } else if(fieldValues.stream().anyMatch(StringUtils::isNotBlank)) {
+            return Json.toJson(fieldValues);
+        }
+        return "";
     }
 
     default Map<String, TicketFieldValue> findAllByTicketIdGroupedByName(int id) {
@@ -126,6 +119,9 @@ public interface TicketFieldRepository extends FieldRepository {
 
     @Query("select count(*) from ticket_field_configuration where event_id_fk = :eventId")
     Integer countAdditionalFieldsForEvent(@Bind("eventId") int eventId);
+
+    @Query("select distinct event_id_fk from ticket_field_configuration where event_id_fk in (:eventIds)")
+    List<Integer> findEventsWithAdditionalFields(@Bind("eventIds") List<Integer> eventIds);
     
     @Query("select max(field_order) from ticket_field_configuration where event_id_fk = :eventId")
     Integer findMaxOrderValue(@Bind("eventId") int eventId);
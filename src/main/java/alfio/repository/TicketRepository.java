@@ -16,11 +16,16 @@
  */
 package alfio.repository;
 
+import alfio.config.support.PlatformProvider;
+import alfio.model.FreeTicketsCount;
 import alfio.model.FullTicketInfo;
+import alfio.model.Page;
+import alfio.model.ReservationIdAndEventId;
 import alfio.model.Ticket;
 import alfio.model.TicketCSVInfo;
 import ch.digitalfondue.npjt.*;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -32,6 +37,17 @@ public interface TicketRepository {
     String FREE = "FREE";
     String RELEASED = "RELEASED";
 
+    String FULL_TICKET_INFO_FIELDS = "select " +
+            " t.id t_id, t.uuid t_uuid, t.creation t_creation, t.category_id t_category_id, t.status t_status, t.event_id t_event_id," +
+            " t.src_price_cts t_src_price_cts, t.final_price_cts t_final_price_cts, t.vat_cts t_vat_cts, t.discount_cts t_discount_cts, t.tickets_reservation_id t_tickets_reservation_id," +
+            " t.full_name t_full_name, t.first_name t_first_name, t.last_name t_last_name, t.email_address t_email_address, t.locked_assignment t_locked_assignment," +
+            " t.user_language t_user_language," +
+            " tr.id tr_id, tr.validity tr_validity, tr.status tr_status, tr.full_name tr_full_name, tr.first_name tr_first_name, tr.last_name tr_last_name, tr.email_address tr_email_address, tr.billing_address tr_billing_address," +
+            " tr.confirmation_ts tr_confirmation_ts, tr.latest_reminder_ts tr_latest_reminder_ts, tr.payment_method tr_payment_method, " +
+            " tr.offline_payment_reminder_sent tr_offline_payment_reminder_sent, tr.promo_code_id_fk tr_promo_code_id_fk, tr.automatic tr_automatic, tr.user_language tr_user_language, tr.direct_assignment tr_direct_assignment, tr.invoice_number tr_invoice_number, tr.invoice_model tr_invoice_model, " +
+            " tr.vat_status tr_vat_status, tr.vat_nr tr_vat_nr, tr.vat_country tr_vat_country, tr.invoice_requested tr_invoice_requested," +
+            " tc.id tc_id, tc.inception tc_inception, tc.expiration tc_expiration, tc.max_tickets tc_max_tickets, tc.name tc_name, tc.src_price_cts tc_src_price_cts, tc.access_restricted tc_access_restricted, tc.tc_status tc_tc_status, tc.event_id tc_event_id, tc.bounded tc_bounded";
+
     @Query(type = QueryType.TEMPLATE, value = "insert into ticket (uuid, creation, category_id, event_id, status, original_price_cts, paid_price_cts, src_price_cts)"
             + "values(:uuid, :creation, :categoryId, :eventId, :status, 0, 0, :srcPriceCts)")
     String bulkTicketInitialization();
@@ -51,6 +67,7 @@ public interface TicketRepository {
     @Query("select count(*) from ticket where status in ("+CONFIRMED+") and category_id = :categoryId and event_id = :eventId and full_name is not null and email_address is not null")
     Integer countAssignedTickets(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
 
+    @ReportingQuery
     @Query("select * from ticket where status in ('PENDING', 'ACQUIRED', 'TO_BE_PAID', 'CANCELLED', 'CHECKED_IN') and category_id = :categoryId and event_id = :eventId")
     List<Ticket> findAllModifiedTickets(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
 
@@ -60,6 +77,9 @@ public interface TicketRepository {
     @Query("select count(*) from ticket where status in ("+CONFIRMED+") and category_id = :categoryId and event_id = :eventId")
     Integer countConfirmedForCategory(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
 
+    @Query("select count(*) from ticket where status <> 'INVALIDATED' and category_id = :categoryId and event_id = :eventId")
+    Integer countAllocatedTicketsForCategory(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
+
     @Query("select count(*) from ticket where status in ('PENDING', 'RELEASED') and category_id = :categoryId and event_id = :eventId")
     Integer countPendingOrReleasedForCategory(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
     
@@ -69,6 +89,9 @@ public interface TicketRepository {
     @Query("select count(*) from ticket where status = 'FREE'  and category_id is null and event_id = :eventId")
     Integer countFreeTicketsForUnbounded(@Bind("eventId") int eventId);
 
+    @Query("select category_id, count(*) as free_count from ticket where status = 'FREE' and event_id = :eventId group by category_id")
+    List<FreeTicketsCount> countFreeTicketsByCategory(@Bind("eventId") int eventId);
+
     @Query("select count(*) from ticket where status = 'RELEASED' and category_id is null and event_id = :eventId")
     Integer countReleasedTickets(@Bind("eventId") int eventId);
 
@@ -115,6 +138,9 @@ public interface TicketRepository {
     @Query("select * from ticket where tickets_reservation_id = :reservationId order by category_id asc, uuid asc")
     List<Ticket> findTicketsInReservation(@Bind("reservationId") String reservationId);
 
+    @Query("select * from ticket where tickets_reservation_id in (:reservationIds) order by tickets_reservation_id, category_id asc, uuid asc")
+    List<Ticket> findTicketsInReservations(@Bind("reservationIds") List<String> reservationIds);
+
     @Query("select * from ticket where tickets_reservation_id = :reservationId order by category_id asc, uuid asc LIMIT 1 OFFSET 0")
     Optional<Ticket> findFirstTicketInReservation(@Bind("reservationId") String reservationId);
 
@@ -133,6 +159,12 @@ public interface TicketRepository {
     @Query("update ticket set email_address = :email, full_name = :fullName, first_name = :firstName, last_name = :lastName where uuid = :ticketIdentifier")
     int updateTicketOwner(@Bind("ticketIdentifier") String ticketIdentifier, @Bind("email") String email, @Bind("fullName") String fullName, @Bind("firstName") String firstName, @Bind("lastName") String lastName);
 
+    @Query(type = QueryType.TEMPLATE, value = "update ticket set email_address = :email, full_name = :fullName, first_name = :firstName, last_name = :lastName where id = :id")
+    String bulkTicketOwnerUpdate();
+
+    @Query(type = QueryType.TEMPLATE, value = "update ticket set tickets_reservation_id = :reservationId, special_price_id_fk = :specialCodeId, user_language = :userLanguage, status = 'PENDING', src_price_cts = :srcPriceCts where id = :ticketId")
+    String bulkReserveTicketWithSpecialPrice();
+
     @Query("update ticket set email_address = :email, full_name = :fullName, first_name = :firstName, last_name = :lastName where id = :id")
     int updateTicketOwnerById(@Bind("id") int id, @Bind("email") String email, @Bind("fullName") String fullName, @Bind("firstName") String firstName, @Bind("lastName") String lastName);
 
@@ -154,25 +186,37 @@ public interface TicketRepository {
     @Query("update ticket set category_id = :targetCategoryId, src_price_cts = :srcPriceCts where id in (:ticketIds)")
     int moveToAnotherCategory(@Bind("ticketIds") List<Integer> ticketIds, @Bind("targetCategoryId") int targetCategoryId, @Bind("srcPriceCts") int srcPriceCts);
 
+    @ReportingQuery
     @Query("select * from ticket where category_id in (:categories) and status = 'PENDING'")
     List<Ticket> findPendingTicketsInCategories(@Bind("categories") List<Integer> categories);
     
-    @Query("select " +
-            " t.id t_id, t.uuid t_uuid, t.creation t_creation, t.category_id t_category_id, t.status t_status, t.event_id t_event_id," +
-            " t.src_price_cts t_src_price_cts, t.final_price_cts t_final_price_cts, t.vat_cts t_vat_cts, t.discount_cts t_discount_cts, t.tickets_reservation_id t_tickets_reservation_id," +
-            " t.full_name t_full_name, t.first_name t_first_name, t.last_name t_last_name, t.email_address t_email_address, t.locked_assignment t_locked_assignment," +
-            " t.user_language t_user_language," +
-            " tr.id tr_id, tr.validity tr_validity, tr.status tr_status, tr.full_name tr_full_name, tr.first_name tr_first_name, tr.last_name tr_last_name, tr.email_address tr_email_address, tr.billing_address tr_billing_address," +
-            " tr.confirmation_ts tr_confirmation_ts, tr.latest_reminder_ts tr_latest_reminder_ts, tr.payment_method tr_payment_method, " +
-            " tr.offline_payment_reminder_sent tr_offline_payment_reminder_sent, tr.promo_code_id_fk tr_promo_code_id_fk, tr.automatic tr_automatic, tr.user_language tr_user_language, tr.direct_assignment tr_direct_assignment, tr.invoice_number tr_invoice_number, tr.invoice_model tr_invoice_model, " +
-            " tr.vat_status tr_vat_status, tr.vat_nr tr_vat_nr, tr.vat_country tr_vat_country, tr.invoice_requested tr_invoice_requested," +
-            " tc.id tc_id, tc.inception tc_inception, tc.expiration tc_expiration, tc.max_tickets tc_max_tickets, tc.name tc_name, tc.src_price_cts tc_src_price_cts, tc.access_restricted tc_access_restricted, tc.tc_status tc_tc_status, tc.event_id tc_event_id, tc.bounded tc_bounded" +
+    @ReportingQuery
+    @Query(FULL_TICKET_INFO_FIELDS +
             " from ticket t " +
             " inner join tickets_reservation tr on t.tickets_reservation_id = tr.id " +
             " inner join ticket_category tc on t.category_id = tc.id " +
             " where t.event_id = :eventId and t.full_name is not null and t.email_address is not null")
     List<FullTicketInfo> findAllFullTicketInfoAssignedByEventId(@Bind("eventId") int eventId);
 
+    @Query(FULL_TICKET_INFO_FIELDS +
+            " from ticket t " +
+            " inner join tickets_reservation tr on t.tickets_reservation_id = tr.id " +
+            " inner join ticket_category tc on t.category_id = tc.id " +
+            " where t.event_id = :eventId and t.full_name is not null and t.email_address is not null and t.id > :afterId" +
+            " and (lower(t.full_name) like :search" + Page.LIKE_ESCAPE + " or lower(t.email_address) like :search" + Page.LIKE_ESCAPE +
+            " or lower(t.uuid) like :search" + Page.LIKE_ESCAPE + ") order by t.id limit :limit")
+    @QueriesOverride({
+        @QueryOverride(db = PlatformProvider.MYSQL, value = FULL_TICKET_INFO_FIELDS +
+            " from ticket t " +
+            " inner join tickets_reservation tr on t.tickets_reservation_id = tr.id " +
+            " inner join ticket_category tc on t.category_id = tc.id " +
+            " where t.event_id = :eventId and t.full_name is not null and t.email_address is not null and t.id > :afterId" +
+            " and (lower(t.full_name) like :search" + Page.MYSQL_LIKE_ESCAPE + " or lower(t.email_address) like :search" + Page.MYSQL_LIKE_ESCAPE +
+            " or lower(t.uuid) like :search" + Page.MYSQL_LIKE_ESCAPE + ") order by t.id limit :limit")
+    })
+    List<FullTicketInfo> findFullTicketInfoAssignedByEventIdAfter(@Bind("eventId") int eventId, @Bind("afterId") int afterId, @Bind("search") String search, @Bind("limit") int limit);
+
+    @ReportingQuery
     @Query("select " +
         " t.id t_id, t.uuid t_uuid, t.creation t_creation, t.category_id t_category_id, t.status t_status, t.event_id t_event_id," +
         " t.src_price_cts t_src_price_cts, t.final_price_cts t_final_price_cts, t.vat_cts t_vat_cts, t.discount_cts t_discount_cts, t.tickets_reservation_id t_tickets_reservation_id," +
@@ -190,17 +234,31 @@ public interface TicketRepository {
     @Query("select * from ticket where event_id = :eventId and status in(" + CONFIRMED + ") and category_id = :categoryId")
     List<Ticket> findConfirmedByCategoryId(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId);
 
+    @Query("select * from ticket where event_id = :eventId and status in(" + CONFIRMED + ") and full_name is not null and email_address is not null" +
+        " and id > :afterId order by id limit :limit")
+    List<Ticket> findAssignedAfter(@Bind("eventId") int eventId, @Bind("afterId") int afterId, @Bind("limit") int limit);
+
+    @Query("select * from ticket where event_id = :eventId and status in(" + CONFIRMED + ") and category_id = :categoryId and full_name is not null and email_address is not null" +
+        " and id > :afterId order by id limit :limit")
+    List<Ticket> findAssignedByCategoryIdAfter(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId, @Bind("afterId") int afterId, @Bind("limit") int limit);
+
     @Query("select count(*) from ticket where event_id = :eventId and status in(" + CONFIRMED + ") and full_name is not null and email_address is not null")
     Integer countAllAssigned(@Bind("eventId") int eventId);
 
     @Query("select distinct tickets_reservation_id from ticket where event_id = :eventId and status in('ACQUIRED', 'TO_BE_PAID') and (full_name is null or email_address is null)")
     List<String> findAllReservationsConfirmedButNotAssigned(@Bind("eventId") int eventId);
 
-    @Query("select * from ticket where event_id = :eventId  and status in('ACQUIRED', 'TO_BE_PAID') and full_name is not null and email_address is not null and reminder_sent = false")
-    List<Ticket> findAllAssignedButNotYetNotified(@Bind("eventId") int eventId);
+    @Query("select distinct t.event_id, t.tickets_reservation_id from ticket t inner join tickets_reservation tr on tr.id = t.tickets_reservation_id" +
+        " where t.event_id in (:eventIds) and t.status in('ACQUIRED', 'TO_BE_PAID') and (t.full_name is null or t.email_address is null)" +
+        " and (tr.latest_reminder_ts is null or tr.latest_reminder_ts < :notifiedBefore)")
+    List<ReservationIdAndEventId> findReservationsWaitingForAssignmentReminder(@Bind("eventIds") List<Integer> eventIds, @Bind("notifiedBefore") ZonedDateTime notifiedBefore);
+
+    @Query("select * from ticket t where t.event_id in (:eventIds) and t.status in('ACQUIRED', 'TO_BE_PAID') and t.full_name is not null and t.email_address is not null and t.reminder_sent = false" +
+        " and not exists (select 1 from ticket_field_value tfv where tfv.ticket_id_fk = t.id and tfv.field_value is not null and tfv.field_value <> '')")
+    List<Ticket> findAllAssignedButNotYetNotified(@Bind("eventIds") List<Integer> eventIds);
 
-    @Query("update ticket set reminder_sent = true where id = :id and reminder_sent = false")
-    int flagTicketAsReminderSent(@Bind("id") int ticketId);
+    @Query("update ticket set reminder_sent = true where id in (:ids) and reminder_sent = false")
+    int flagTicketsAsReminderSent(@Bind("ids") List<Integer> ticketIds);
 
     String RESET_TICKET = " TICKETS_RESERVATION_ID = null, FULL_NAME = null, EMAIL_ADDRESS = null, SPECIAL_PRICE_ID_FK = null, LOCKED_ASSIGNMENT = false, USER_LANGUAGE = null, REMINDER_SENT = false, SRC_PRICE_CTS = 0, FINAL_PRICE_CTS = 0, VAT_CTS = 0, DISCOUNT_CTS = 0, FIRST_NAME = null, LAST_NAME = null ";
 
@@ -16,21 +16,43 @@
  */
 package alfio.repository;
 
+import alfio.config.support.PlatformProvider;
+import alfio.model.Page;
 import alfio.model.PriceContainer;
 import alfio.model.TicketReservation;
 import alfio.model.TicketReservationInfo;
 import ch.digitalfondue.npjt.*;
+import org.apache.commons.lang3.StringUtils;
 
 import java.time.ZonedDateTime;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @QueryRepository
 public interface TicketReservationRepository {
 
-    @Query("insert into tickets_reservation(id, validity, promo_code_id_fk, status, user_language, event_id_fk) values (:id, :validity, :promotionCodeDiscountId, 'PENDING', :userLanguage, :eventId)")
-    int createNewReservation(@Bind("id") String id, @Bind("validity") Date validity, @Bind("promotionCodeDiscountId") Integer promotionCodeDiscountId, @Bind("userLanguage") String userLanguage, @Bind("eventId") int eventId);
+    /**
+     * Length of the reservation ID prefix stored in the indexed column "short_id"
+     */
+    int SHORT_ID_LENGTH = 8;
+
+    /**
+     * Restricts the reservations to the ones of the events belonging to a {@link alfio.manager.support.JobShard}
+     */
+    String IN_SHARD = " and mod(event_id_fk, :shardCount) = :shardIndex";
+
+    @Query("insert into tickets_reservation(id, short_id, validity, promo_code_id_fk, status, user_language, event_id_fk) values (:id, :shortId, :validity, :promotionCodeDiscountId, 'PENDING', :userLanguage, :eventId)")
+    int insertNewReservation(@Bind("id") String id, @Bind("shortId") String shortId, @Bind("validity") Date validity, @Bind("promotionCodeDiscountId") Integer promotionCodeDiscountId, @Bind("userLanguage") String userLanguage, @Bind("eventId") int eventId);
+
+    default int createNewReservation(String id, Date validity, Integer promotionCodeDiscountId, String userLanguage, int eventId) {
+        return insertNewReservation(id, toShortId(id), validity, promotionCodeDiscountId, userLanguage, eventId);
+    }
+
+    static String toShortId(String reservationId) {
+        return StringUtils.substring(reservationId, 0, SHORT_ID_LENGTH).toLowerCase(Locale.ENGLISH);
+    }
 
     @Query("update tickets_reservation set status = :status, full_name = :fullName, first_name = :firstName, last_name = :lastName, email_address = :email, user_language = :userLanguage, billing_address = :billingAddress, confirmation_ts = :timestamp, payment_method = :paymentMethod where id = :reservationId")
     int updateTicketReservation(@Bind("reservationId") String reservationId, @Bind("status") String status,
@@ -53,11 +75,11 @@ public interface TicketReservationRepository {
     @Query("select id from tickets_reservation where status = 'OFFLINE_PAYMENT'")
     List<String> findAllReservationsWaitingForPayment();
 
-    @Query("select * from tickets_reservation where status = 'OFFLINE_PAYMENT' and trunc(validity) <= :expiration and offline_payment_reminder_sent = false")
+    @Query("select * from tickets_reservation where status = 'OFFLINE_PAYMENT' and trunc(validity) <= :expiration and offline_payment_reminder_sent = false" + IN_SHARD)
     @QueriesOverride({
-        @QueryOverride(value = "select * from tickets_reservation where status = 'OFFLINE_PAYMENT' and date_trunc('day', validity) <= :expiration and offline_payment_reminder_sent = false", db = "PGSQL"),
-        @QueryOverride(value = "select * from tickets_reservation where status = 'OFFLINE_PAYMENT' and date('day') <= :expiration and offline_payment_reminder_sent = false", db = "MYSQL")})
-    List<TicketReservation> findAllOfflinePaymentReservationForNotification(@Bind("expiration") Date expiration);
+        @QueryOverride(value = "select * from tickets_reservation where status = 'OFFLINE_PAYMENT' and date_trunc('day', validity) <= :expiration and offline_payment_reminder_sent = false" + IN_SHARD, db = "PGSQL"),
+        @QueryOverride(value = "select * from tickets_reservation where status = 'OFFLINE_PAYMENT' and date('day') <= :expiration and offline_payment_reminder_sent = false" + IN_SHARD, db = "MYSQL")})
+    List<TicketReservation> findAllOfflinePaymentReservationForNotification(@Bind("expiration") Date expiration, @Bind("shardIndex") int shardIndex, @Bind("shardCount") int shardCount);
 
     @Query("select id, full_name, first_name, last_name, email_address, event_id_fk from tickets_reservation where status = 'OFFLINE_PAYMENT' and trunc(validity) <= :expiration and event_id_fk = :eventId")
     @QueriesOverride({
@@ -68,8 +90,8 @@ public interface TicketReservationRepository {
     @Query("update tickets_reservation set offline_payment_reminder_sent = true where id = :reservationId")
     int flagAsOfflinePaymentReminderSent(@Bind("reservationId") String reservationId);
 
-    @Query("update tickets_reservation set latest_reminder_ts = :latestReminderTimestamp where id = :reservationId")
-    int updateLatestReminderTimestamp(@Bind("reservationId") String reservationId, @Bind("latestReminderTimestamp") ZonedDateTime latestReminderTimestamp);
+    @Query("update tickets_reservation set latest_reminder_ts = :latestReminderTimestamp where id in (:reservationIds)")
+    int updateLatestReminderTimestamp(@Bind("reservationIds") List<String> reservationIds, @Bind("latestReminderTimestamp") ZonedDateTime latestReminderTimestamp);
 
     @Query("update tickets_reservation set validity = :validity where id = :reservationId")
     int updateValidity(@Bind("reservationId") String reservationId, @Bind("validity") Date validity);
@@ -77,6 +99,9 @@ public interface TicketReservationRepository {
     @Query("select id from tickets_reservation where id = :reservationId for update")
     String lockReservationForUpdate(@Bind("reservationId") String reservationId);
 
+    @Query("select id from tickets_reservation where id in (:reservationIds) order by id for update")
+    List<String> lockReservationsForUpdate(@Bind("reservationIds") List<String> reservationIds);
+
     @Query("update tickets_reservation set status = :status where id = :reservationId")
     int updateTicketStatus(@Bind("reservationId") String reservationId, @Bind("status") String status);
 
@@ -86,20 +111,50 @@ public interface TicketReservationRepository {
     @Query("select * from tickets_reservation where id = :id")
     Optional<TicketReservation> findOptionalReservationById(@Bind("id") String id);
 
-    @Query("select id from tickets_reservation where validity < :date and status = 'PENDING'")
-    List<String> findExpiredReservation(@Bind("date") Date date);
+    @Query("select * from tickets_reservation where id in (:ids)")
+    List<TicketReservation> findReservationsByIds(@Bind("ids") List<String> ids);
+
+    @Query("select id from tickets_reservation where validity < :date and status = 'PENDING'" + IN_SHARD + " order by id for update")
+    List<String> findExpiredReservation(@Bind("date") Date date, @Bind("shardIndex") int shardIndex, @Bind("shardCount") int shardCount);
 
-    @Query("select id from tickets_reservation where validity < :date and status = 'OFFLINE_PAYMENT'")
-    List<String> findExpiredOfflineReservations(@Bind("date") Date date);
+    @Query("select id from tickets_reservation where id in (:reservationIds) and validity < :date and status = 'PENDING' order by id for update")
+    List<String> findExpiredReservationForUpdate(@Bind("reservationIds") List<String> reservationIds, @Bind("date") Date date);
 
-    @Query("select id from tickets_reservation where validity < :date and status = 'IN_PAYMENT'")
-    List<String> findStuckReservations(@Bind("date") Date date);
+    @Query("select * from tickets_reservation where status = 'PENDING'")
+    List<TicketReservation> findAllPendingReservations();
+
+    @Query("select id from tickets_reservation where validity < :date and status = 'OFFLINE_PAYMENT'" + IN_SHARD)
+    List<String> findExpiredOfflineReservations(@Bind("date") Date date, @Bind("shardIndex") int shardIndex, @Bind("shardCount") int shardCount);
+
+    @Query("select id from tickets_reservation where validity < :date and status = 'IN_PAYMENT'" + IN_SHARD)
+    List<String> findStuckReservations(@Bind("date") Date date, @Bind("shardIndex") int shardIndex, @Bind("shardCount") int shardCount);
 
     @Query("delete from tickets_reservation where id in (:ids)")
     int remove(@Bind("ids") List<String> ids);
 
-    @Query("select * from tickets_reservation where id like :partialID")
-    List<TicketReservation> findByPartialID(@Bind("partialID") String partialID);
+    @Query("select * from tickets_reservation where id like :partialID and event_id_fk = :eventId")
+    List<TicketReservation> findByPartialIDAndEventId(@Bind("partialID") String partialID, @Bind("eventId") int eventId);
+
+    @Query("select * from tickets_reservation where short_id = :shortId and id like :partialID and event_id_fk = :eventId")
+    List<TicketReservation> findByShortIdInEvent(@Bind("shortId") String shortId, @Bind("partialID") String partialID, @Bind("eventId") int eventId);
+
+    @Query("select * from tickets_reservation where short_id in (:shortIds) and event_id_fk = :eventId")
+    List<TicketReservation> findByShortIdsInEvent(@Bind("shortIds") List<String> shortIds, @Bind("eventId") int eventId);
+
+    /**
+     * Finds the reservations whose ID starts with the given prefix. If the prefix is at least {@link #SHORT_ID_LENGTH} characters long,
+     * the lookup is performed using the indexed "short_id" column.
+     *
+     * @param partialID the reservation ID prefix, lowercase
+     * @param eventId the event id
+     * @return the matching reservations
+     */
+    default List<TicketReservation> findByPartialIDInEvent(String partialID, int eventId) {
+        if(partialID.length() >= SHORT_ID_LENGTH) {
+            return findByShortIdInEvent(toShortId(partialID), partialID + "%", eventId);
+        }
+        return findByPartialIDAndEventId(partialID + "%", eventId);
+    }
 
     @Query("update tickets_reservation set invoice_model = :invoiceModel where id = :reservationId")
     int addReservationInvoiceOrReceiptModel(@Bind("reservationId") String reservationId, @Bind("invoiceModel") String invoiceModel);
@@ -107,12 +162,26 @@ public interface TicketReservationRepository {
     @Query("update tickets_reservation set invoice_number = :invoiceNumber where id = :reservationId")
     int setInvoiceNumber(@Bind("reservationId") String reservationId, @Bind("invoiceNumber") String invoiceNumber);
 
+    @ReportingQuery
     @Query("select * from  tickets_reservation where invoice_number is not null and event_id_fk = :eventId order by confirmation_ts desc, validity desc")
     List<TicketReservation> findAllReservationsWithInvoices(@Bind("eventId") int eventId);
 
+    @Query("select id from tickets_reservation where invoice_number is not null and event_id_fk = :eventId order by confirmation_ts desc, validity desc")
+    List<String> findAllReservationIdsWithInvoices(@Bind("eventId") int eventId);
+
     @Query("select * from tickets_reservation where event_id_fk = :eventId order by confirmation_ts desc, validity desc")
     List<TicketReservation> findAllReservationsInEvent(@Bind("eventId") int eventId);
 
+    @Query("select * from tickets_reservation where event_id_fk = :eventId and id > :afterId" +
+        " and (lower(id) like :search" + Page.LIKE_ESCAPE + " or lower(coalesce(full_name, '')) like :search" + Page.LIKE_ESCAPE +
+        " or lower(coalesce(email_address, '')) like :search" + Page.LIKE_ESCAPE + ") order by id limit :limit")
+    @QueriesOverride({
+        @QueryOverride(db = PlatformProvider.MYSQL, value = "select * from tickets_reservation where event_id_fk = :eventId and id > :afterId" +
+            " and (lower(id) like :search" + Page.MYSQL_LIKE_ESCAPE + " or lower(coalesce(full_name, '')) like :search" + Page.MYSQL_LIKE_ESCAPE +
+            " or lower(coalesce(email_address, '')) like :search" + Page.MYSQL_LIKE_ESCAPE + ") order by id limit :limit")
+    })
+    List<TicketReservation> findReservationsInEventAfter(@Bind("eventId") int eventId, @Bind("afterId") String afterId, @Bind("search") String search, @Bind("limit") int limit);
+
     @Query("update tickets_reservation set vat_status = :vatStatus, vat_nr = :vatNr, vat_country = :vatCountry, invoice_requested = :invoiceRequested where id = :reservationId")
     int updateBillingData(@Bind("vatStatus") PriceContainer.VatStatus vatStatus,
                           @Bind("vatNr") String vatNr,
@@ -21,6 +21,7 @@ import alfio.model.audit.ScanAudit;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
 
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -35,7 +36,17 @@ public interface ScanAuditRepository {
                    @Bind("status") CheckInStatus checkInStatus,
                    @Bind("operation") ScanAudit.Operation operation);
 
+    @Query(type = QueryType.TEMPLATE, value = "insert into scan_audit(ticket_uuid, event_id_fk, scan_ts, username, check_in_status, operation) values(:ticketUuid, :eventId, :scanTs, :username, :status, :operation)")
+    String bulkInsert();
+
     @Query("select * from scan_audit where event_id_fk = :eventId")
     List<ScanAudit> findAllForEvent(@Bind("eventId") int eventId);
 
+    @Query("select * from scan_audit where event_id_fk = :eventId and id > :afterId and scan_ts >= :from and scan_ts < :to order by id limit :limit")
+    List<ScanAudit> findForEventAfter(@Bind("eventId") int eventId,
+                                      @Bind("afterId") int afterId,
+                                      @Bind("from") ZonedDateTime from,
+                                      @Bind("to") ZonedDateTime to,
+                                      @Bind("limit") int limit);
+
 }
\ No newline at end of file
@@ -50,11 +50,11 @@ public final class MonetaryUtil {
     }
 
     public static BigDecimal centsToUnit(int cents) {
-        return new BigDecimal(cents).divide(HUNDRED, 2, HALF_UP);
+        return BigDecimal.valueOf(cents, 2);
     }
 
     public static BigDecimal centsToUnit(long cents) {
-        return new BigDecimal(cents).divide(HUNDRED, 2, HALF_UP);
+        return BigDecimal.valueOf(cents, 2);
     }
 
     public static int unitToCents(BigDecimal unit) {
@@ -17,6 +17,8 @@
 package alfio.util;
 
 import alfio.model.transaction.PaymentProxy;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.samskivert.mustache.Mustache;
 import org.apache.commons.lang3.tuple.Pair;
 import org.commonmark.node.Node;
@@ -60,17 +62,24 @@ public class MustacheCustomTagInterceptor extends HandlerInterceptorAdapter {
 
     private static final String LOCALE_LABEL = "locale:";
 
+    private static final int MAX_CACHED_FORMATTERS = 1000;
+
+    //compiled formatters, by "FORMAT locale:YOUR_LOCALE"
+    private static final Cache<String, DateTimeFormatter> FORMATTERS = Caffeine.newBuilder()
+        .maximumSize(MAX_CACHED_FORMATTERS)
+        .build();
+
     public static final Mustache.Lambda FORMAT_DATE = (frag, out) -> {
         String execution = frag.execute().trim();
         ZonedDateTime d = ZonedDateTime.parse(substring(execution, 0, execution.indexOf(" ")));
-        Pair<String, Optional<Locale>> p = parseParams(execution);
-        if (p.getRight().isPresent()) {
-            out.write(DateTimeFormatter.ofPattern(p.getLeft(), p.getRight().get()).format(d));
-        } else {
-            out.write(DateTimeFormatter.ofPattern(p.getLeft()).format(d));
-        }
+        out.write(FORMATTERS.get(substring(execution, execution.indexOf(" ")), MustacheCustomTagInterceptor::buildFormatter).format(d));
     };
 
+    private static DateTimeFormatter buildFormatter(String params) {
+        Pair<String, Optional<Locale>> p = parseParams(params);
+        return p.getRight().map(l -> DateTimeFormatter.ofPattern(p.getLeft(), l)).orElseGet(() -> DateTimeFormatter.ofPattern(p.getLeft()));
+    }
+
     private static Pair<String, Optional<Locale>> parseParams(String r) {
 
         int indexLocale = r.indexOf(LOCALE_LABEL), end = Math.min(r.length(),
@@ -19,6 +19,8 @@ package alfio.util;
 import alfio.config.WebSecurityConfig;
 import alfio.manager.UploadedResourceManager;
 import alfio.model.Event;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.Mustache.Compiler;
 import com.samskivert.mustache.Mustache.Formatter;
@@ -43,6 +45,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -110,17 +113,41 @@ public class TemplateManager {
         return render(new ServletContextResource(request.getServletContext(), servletContextResource), model, RequestContextUtils.getLocale(request), templateOutput);
     }
 
+    /**
+     * Compiles the given template once, for rendering it many times with different models.
+     * The returned function is thread-safe.
+     */
+    public Function<Map<String, Object>, String> compileString(String template, Locale locale, TemplateOutput templateOutput) {
+        Template compiled;
+        try {
+            compiled = compile(new ByteArrayResource(template.getBytes(StandardCharsets.UTF_8)), templateOutput);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return model -> {
+            try {
+                return execute(compiled, model, locale);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
     private String render(AbstractResource resource, Map<String, Object> model, Locale locale, TemplateOutput templateOutput) {
         try {
-            ModelAndView mv = new ModelAndView((String) null, model);
-            mv.addObject("format-date", MustacheCustomTagInterceptor.FORMAT_DATE);
-            mv.addObject(MustacheLocalizationMessageInterceptor.DEFAULT_MODEL_KEY, new CustomLocalizationMessageInterceptor(locale, messageSource).createTranslator());
-            return compile(resource, templateOutput).execute(mv.getModel());
+            return execute(compile(resource, templateOutput), model, locale);
         } catch (Exception e) {
             throw new IllegalStateException(e);
         }
     }
 
+    private String execute(Template template, Map<String, Object> model, Locale locale) {
+        ModelAndView mv = new ModelAndView((String) null, model);
+        mv.addObject("format-date", MustacheCustomTagInterceptor.FORMAT_DATE);
+        mv.addObject(MustacheLocalizationMessageInterceptor.DEFAULT_MODEL_KEY, new CustomLocalizationMessageInterceptor(locale, messageSource).createTranslator());
+        return template.execute(mv.getModel());
+    }
+
     private Template compile(AbstractResource resource, TemplateOutput templateOutput) {
         try (InputStreamReader tmpl = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
             return compilers.get(templateOutput).compile(tmpl);
@@ -185,6 +212,13 @@ public class TemplateManager {
         }
     }
 
+    //parsed templates are immutable, the cache is bounded by the total length of the templates
+    private static final long MAX_PARSED_TEMPLATES_LENGTH = 2_000_000;
+    private static final Cache<String, AST> PARSED_TEMPLATES = Caffeine.newBuilder()
+        .maximumWeight(MAX_PARSED_TEMPLATES_LENGTH)
+        .weigher((String template, AST ast) -> template.length())
+        .build();
+
     private static final String START_TAG = "{{#i18n}}";
     private static final String END_TAG = "{{/i18n}}";
 
@@ -325,7 +359,11 @@ public class TemplateManager {
 
     public static String translate(String template, Locale locale, MessageSource messageSource) {
         StringBuilder sb = new StringBuilder(template.length());
+        PARSED_TEMPLATES.get(template, TemplateManager::parse).visit(sb, locale, messageSource);
+        return sb.toString();
+    }
 
+    private static AST parse(String template) {
         AST ast = new AST();
 
         ParserState state = ParserState.START;
@@ -338,9 +376,6 @@ public class TemplateManager {
                 break;
             }
         }
-
-        ast.visit(sb, locale, messageSource);
-
-        return sb.toString();
+        return ast;
     }
 }
@@ -33,6 +33,7 @@ import org.springframework.validation.ValidationUtils;
 import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -149,17 +150,29 @@ public final class Validator {
             validateMaxLength(form.getFullName(), "fullName", ErrorsCode.STEP_2_MAX_LENGTH_FULLNAME, 255, errors);
         }
 
+        validateAdditionalFields(form.getAdditional(), additionalFieldsForEvent, errors);
 
-        //
+        return evaluateValidationResult(errors);
+    }
+
+    /**
+     * Validates the given additional field values against the field configuration of the event.
+     * Errors are reported on the {@code additional['<field name>']} path.
+     *
+     * @param additional the values, grouped by field name. Can be null
+     * @param additionalFieldsForEvent the field configuration
+     * @param errors the target {@link Errors}
+     */
+    public static void validateAdditionalFields(Map<String, List<String>> additional, List<TicketFieldConfiguration> additionalFieldsForEvent, Errors errors) {
         for(TicketFieldConfiguration fieldConf : additionalFieldsForEvent) {
 
-            boolean isField = form.getAdditional() !=null && form.getAdditional().containsKey(fieldConf.getName());
+            boolean isField = additional !=null && additional.containsKey(fieldConf.getName());
 
             if(!isField) {
                 continue;
             }
 
-            form.getAdditional().get(fieldConf.getName()).forEach(formValue -> {
+            additional.get(fieldConf.getName()).forEach(formValue -> {
                 if(fieldConf.isMaxLengthDefined()) {
                     validateMaxLength(formValue, "additional['"+fieldConf.getName()+"']", "error."+fieldConf.getName(), fieldConf.getMaxLength(), errors);
                 }
@@ -176,8 +189,6 @@ public final class Validator {
 
             //TODO: complete checks: min length
         }
-
-        return evaluateValidationResult(errors);
     }
 
     private static void validateRestrictedValue(String value, String fieldName, String errorCode, List<String> restrictedValues, Errors errors) {
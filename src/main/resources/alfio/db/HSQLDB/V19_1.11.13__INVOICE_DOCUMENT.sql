@@ -0,0 +1,29 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+create table invoice_document (
+  tickets_reservation_id character(36) not null,
+  invoice_number varchar(256) not null,
+  event_id_fk integer not null,
+  content_size integer not null,
+  content blob not null,
+  creation_ts timestamp with time zone default now() not null,
+  primary key(tickets_reservation_id)
+);
+alter table invoice_document add foreign key(tickets_reservation_id) references tickets_reservation(id);
+alter table invoice_document add foreign key(event_id_fk) references event(id);
+create index invoice_document_event_id_fk_idx on invoice_document(event_id_fk);
@@ -0,0 +1,34 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+create table message_campaign (
+  id integer identity not null,
+  event_id_fk integer not null,
+  category_id_fk integer,
+  username varchar(255) not null,
+  messages LONGVARCHAR not null,
+  status varchar(255) not null,
+  last_ticket_id integer default -1 not null,
+  processed_count integer default 0 not null,
+  total_count integer not null,
+  lease_expiration_ts timestamp with time zone,
+  creation_ts timestamp with time zone not null,
+  update_ts timestamp with time zone not null
+);
+alter table message_campaign add foreign key(event_id_fk) references event(id);
+create index message_campaign_status_idx on message_campaign(status);
+create index message_campaign_event_id_idx on message_campaign(event_id_fk);
@@ -0,0 +1,31 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+create table job_shard (
+  job_name varchar(255) not null,
+  shard integer not null,
+  requested_round integer default 0 not null,
+  started_round integer default 0 not null,
+  lease_owner varchar(255),
+  lease_expiration_ts timestamp with time zone,
+  last_start_ts timestamp with time zone,
+  last_duration_ms bigint default 0 not null,
+  last_processed_count integer default 0 not null,
+  executions integer default 0 not null,
+  failures integer default 0 not null,
+  primary key(job_name, shard)
+);
@@ -0,0 +1,34 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+create table email_message_archive (
+  id integer PRIMARY KEY not null,
+  event_id integer not null,
+  recipient varchar(255) not null,
+  email_cc MEDIUMTEXT,
+  subject varchar(255) not null,
+  message MEDIUMTEXT not null,
+  attachments MEDIUMTEXT,
+  checksum varchar(255) not null,
+  request_ts timestamp not null,
+  sent_ts timestamp null
+) ENGINE=InnoDB CHARACTER SET=utf8 COLLATE utf8_bin;
+alter table email_message_archive add foreign key(event_id) references event(id);
+create index email_message_archive_event_id_id_idx on email_message_archive(event_id, id);
+
+create index email_message_waiting_idx on email_message(event_id, status, request_ts);
+create index email_message_event_id_status_sent_ts_idx on email_message(event_id, status, sent_ts);
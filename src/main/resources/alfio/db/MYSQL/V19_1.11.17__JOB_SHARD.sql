@@ -0,0 +1,31 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+create table job_shard (
+  job_name varchar(255) not null,
+  shard integer not null,
+  requested_round integer not null default 0,
+  started_round integer not null default 0,
+  lease_owner varchar(255),
+  lease_expiration_ts timestamp null,
+  last_start_ts timestamp null,
+  last_duration_ms bigint not null default 0,
+  last_processed_count integer not null default 0,
+  executions integer not null default 0,
+  failures integer not null default 0,
+  primary key(job_name, shard)
+) ENGINE=InnoDB CHARACTER SET=utf8 COLLATE utf8_bin;
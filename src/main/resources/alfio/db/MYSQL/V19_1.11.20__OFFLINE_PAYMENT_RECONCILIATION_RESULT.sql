@@ -0,0 +1,28 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+
+create table offline_payment_reconciliation_result (
+  reconciliation_id_fk integer not null,
+  row_index integer not null,
+  success boolean not null,
+  reservation_id varchar(255),
+  message TEXT,
+  primary key(reconciliation_id_fk, row_index)
+) ENGINE=InnoDB CHARACTER SET=utf8 COLLATE utf8_bin;
+alter table offline_payment_reconciliation_result add foreign key(reconciliation_id_fk) references offline_payment_reconciliation(id);
+alter table offline_payment_reconciliation drop column results;
@@ -0,0 +1,35 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+create table offline_payment_reconciliation (
+  id serial primary key not null,
+  event_id_fk integer not null,
+  username varchar(255) not null,
+  payments text not null,
+  results text not null,
+  status varchar(255) not null,
+  processed_count integer not null default 0,
+  confirmed_count integer not null default 0,
+  failed_count integer not null default 0,
+  total_count integer not null,
+  lease_expiration_ts timestamp with time zone,
+  creation_ts timestamp with time zone not null,
+  update_ts timestamp with time zone not null
+);
+alter table offline_payment_reconciliation add foreign key(event_id_fk) references event(id);
+create index offline_payment_reconciliation_status_idx on offline_payment_reconciliation(status);
+create index offline_payment_reconciliation_event_id_idx on offline_payment_reconciliation(event_id_fk);
@@ -29,29 +29,38 @@
         });
 
 
-    function EmailLogController(EmailService, $filter, $scope, getEvent) {
+    function EmailLogController(EmailService, $scope, getEvent) {
         var ctrl = this;
+        var lastRequest = 0;
         ctrl.emailMessages = [];
         ctrl.eventName = getEvent.data.event.shortName;
-        var evaluateResultsLength = function(results) {
-            ctrl.emailMessages = results;
-            ctrl.filteredResults = $filter('filter')(results, ctrl.searchFilter);
-            ctrl.tooManyResults = (ctrl.filteredResults.length > 50);
+        var loadPage = function(cursor) {
+            var request = ++lastRequest;
+            ctrl.loading = true;
+            EmailService.loadEmailLog(ctrl.eventName, cursor, ctrl.searchFilter).success(function(page) {
+                if(request !== lastRequest) {
+                    return;//the search has changed in the meantime
+                }
+                ctrl.emailMessages = angular.isDefined(cursor) ? ctrl.emailMessages.concat(page.content) : page.content;
+                ctrl.nextCursor = page.nextCursor;
+                ctrl.loading = false;
+            });
         };
-        EmailService.loadEmailLog(ctrl.eventName).success(function(results) {
-            evaluateResultsLength(results);
-        });
+        ctrl.loadMore = function() {
+            loadPage(ctrl.nextCursor);
+        };
+        loadPage();
 
         $scope.$watch(function() {
             return ctrl.searchFilter;
-        }, function(val) {
-            if(angular.isDefined(val)) {
-                evaluateResultsLength(ctrl.emailMessages);
+        }, function(val, oldVal) {
+            if(val !== oldVal) {
+                loadPage();
             }
         });
     }
 
-    EmailLogController.prototype.$inject = ['EmailService', '$filter', '$scope', 'EventService', '$stateParams'];
+    EmailLogController.prototype.$inject = ['EmailService', '$scope', 'EventService', '$stateParams'];
 
     function EmailDetailController(EmailService, $stateParams, getEvent) {
         var self = this;
@@ -66,8 +75,8 @@
 
     function EmailService($http, HttpErrorHandler) {
 
-        this.loadEmailLog = function(eventName) {
-            return $http.get('/admin/api/events/'+eventName+'/email/').error(HttpErrorHandler.handle);
+        this.loadEmailLog = function(eventName, cursor, search) {
+            return $http.get('/admin/api/events/'+eventName+'/email/', {params: {cursor: cursor, search: search}}).error(HttpErrorHandler.handle);
         };
 
         this.loadEmailDetail = function(eventName, messageId) {
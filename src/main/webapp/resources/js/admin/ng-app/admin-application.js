@@ -1360,7 +1360,7 @@
         });
     });
 
-    admin.controller('PendingPaymentsController', function($scope, EventService, $stateParams, $log, $window) {
+    admin.controller('PendingPaymentsController', function($scope, EventService, $stateParams, $log, $window, $http, $timeout) {
 
         EventService.getEvent($stateParams.eventName).then(function(result) {
             $scope.event = result.data.event;
@@ -1374,12 +1374,23 @@
         };
 
         $scope.eventName = $stateParams.eventName;
-        $scope.uploadSuccess = function(data) {
-            $scope.results = data;
-            getPendingPayments();
+        $scope.uploadUrl = '/admin/api/events/'+$stateParams.eventName+'/pending-payments/bulk-confirmation';
+
+        var pollReconciliation = function(reconciliation) {
+            $scope.reconciliation = reconciliation;
+            $scope.results = reconciliation.results;
+            if(reconciliation.status === 'WAITING' || reconciliation.status === 'RUNNING') {
+                $timeout(function() {
+                    $http.get($scope.uploadUrl + '/' + reconciliation.id).success(pollReconciliation);
+                }, 1000);
+            } else {
+                getPendingPayments(true);
+            }
         };
 
-        $scope.uploadUrl = '/admin/api/events/'+$stateParams.eventName+'/pending-payments/bulk-confirmation';
+        $scope.uploadSuccess = function(data) {
+            pollReconciliation(data);
+        };
 
         getPendingPayments();
         $scope.registerPayment = function(eventName, id) {
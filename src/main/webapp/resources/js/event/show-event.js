@@ -88,6 +88,59 @@
                updateSelect(this, totalSelected);
             });
         });
+
+        //waiting room: the selection is saved before submitting, so that it can be submitted again once admitted
+        var reservationForm = $('#reservation-form');
+        var selectionKey = 'alfio-reservation-' + reservationForm.attr('action');
+        reservationForm.submit(function() {
+            try {
+                sessionStorage.setItem(selectionKey, JSON.stringify(reservationForm.serializeArray()));
+            } catch(e) {
+                //storage not available: the selection cannot be restored
+            }
+        });
+
+        var waitingRoomUrl = reservationForm.attr('data-waiting-room');
+        var savedSelection = null;
+        try {
+            savedSelection = JSON.parse(sessionStorage.getItem(selectionKey));
+        } catch(e) {
+            savedSelection = null;
+        }
+        if(waitingRoomUrl && savedSelection) {
+            var restore = function(filter) {
+                savedSelection.filter(function(field) {
+                    return field.name !== '_csrf' && filter(reservationForm.find('[name="' + field.name + '"]'));
+                }).forEach(function(field) {
+                    reservationForm.find('[name="' + field.name + '"]').val(field.value);
+                });
+            };
+            //ticket selectors first, since they determine the options of the additional services
+            restore(function(element) { return element.is('[data-ticket-selector]'); });
+            $("[data-ticket-selector]").first().change();
+            restore(function(element) { return element.is('select:not([data-ticket-selector]), input[type=number], input[type=text]'); });
+
+            var pollWaitingRoom = function() {
+                jQuery.ajax({
+                    url: waitingRoomUrl,
+                    type: 'GET',
+                    success: function(status) {
+                        if(status.admitted) {
+                            reservationForm.submit();
+                        } else {
+                            setTimeout(pollWaitingRoom, status.retryAfterSeconds * 1000);
+                        }
+                    },
+                    error: function() {
+                        //the queue token is not valid anymore: submitting again puts the buyer back in the queue
+                        setTimeout(function() {
+                            reservationForm.submit();
+                        }, 5000);
+                    }
+                });
+            };
+            pollWaitingRoom();
+        }
     });
     
 })();
\ No newline at end of file
@@ -0,0 +1,94 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import alfio.manager.user.AuthenticationCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingAuthenticationProviderTest {
+
+    private static final String USERNAME = "operator";
+    private static final String PASSWORD = "password";
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private AuthenticationCache cache;
+    private CachingAuthenticationProvider cachingProvider;
+    private DaoAuthenticationProvider daoProvider;
+
+    @Before
+    public void setUp() {
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+        String encoded = passwordEncoder.encode(PASSWORD);
+        UserDetailsService userDetailsService = username -> {
+            lookups.incrementAndGet();
+            return new User(username, encoded, AuthorityUtils.createAuthorityList("ROLE_OPERATOR"));
+        };
+        daoProvider = new DaoAuthenticationProvider();
+        daoProvider.setUserDetailsService(userDetailsService);
+        daoProvider.setPasswordEncoder(passwordEncoder);
+        cache = new AuthenticationCache();
+        cachingProvider = new CachingAuthenticationProvider(daoProvider, cache);
+    }
+
+    @Test
+    public void cacheSuccessfulAuthentication() {
+        Authentication first = cachingProvider.authenticate(token(PASSWORD));
+        Authentication second = cachingProvider.authenticate(token(PASSWORD));
+        assertTrue(first.isAuthenticated());
+        assertSame(first, second);
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void doNotCacheWrongPassword() {
+        cachingProvider.authenticate(token(PASSWORD));
+        for(int i = 0; i < 2; i++) {
+            try {
+                cachingProvider.authenticate(token("wrong"));
+                fail("wrong password has been accepted");
+            } catch (BadCredentialsException e) {
+                //expected
+            }
+        }
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    public void invalidateUser() {
+        cachingProvider.authenticate(token(PASSWORD));
+        cache.invalidate(USERNAME);
+        cachingProvider.authenticate(token(PASSWORD));
+        assertEquals(2, lookups.get());
+    }
+
+    private static UsernamePasswordAuthenticationToken token(String password) {
+        return new UsernamePasswordAuthenticationToken(USERNAME, password);
+    }
+}
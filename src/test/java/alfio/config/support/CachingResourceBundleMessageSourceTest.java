@@ -0,0 +1,60 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.NoSuchMessageException;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class CachingResourceBundleMessageSourceTest {
+
+    private CachingResourceBundleMessageSource messageSource;
+
+    @Before
+    public void setUp() {
+        messageSource = new CachingResourceBundleMessageSource();
+        messageSource.setBasenames("alfio.i18n.public", "alfio.i18n.admin");
+        messageSource.setFallbackToSystemLocale(false);
+        messageSource.setAlwaysUseMessageFormat(true);
+    }
+
+    @Test
+    public void resolveByLocale() {
+        for(int i = 0; i < 2; i++) {
+            assertEquals("Hello John,", messageSource.getMessage("email.hello", new Object[]{"John"}, Locale.ENGLISH));
+            assertEquals("Ciao Mario,", messageSource.getMessage("email.hello", new Object[]{"Mario"}, Locale.ITALIAN));
+            assertEquals("en", messageSource.getMessage("locale", null, Locale.ENGLISH));
+        }
+    }
+
+    @Test
+    public void missingMessages() {
+        for(int i = 0; i < 2; i++) {
+            try {
+                messageSource.getMessage("does.not.exist", null, Locale.ENGLISH);
+                fail();
+            } catch (NoSuchMessageException e) {
+                //expected
+            }
+            assertEquals("default", messageSource.getMessage("does.not.exist", null, "default", Locale.ENGLISH));
+        }
+    }
+}
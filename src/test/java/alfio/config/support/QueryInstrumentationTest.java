@@ -0,0 +1,98 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QueryInstrumentationTest {
+
+    @QueryRepository
+    public interface SampleRepository {
+        @Query("select name from sample where id in (:ids)")
+        List<String> findNames(@Bind("ids") List<Integer> ids);
+
+        @Query("update sample set name = :name")
+        int updateAll(@Bind("name") String name);
+
+        @Query(type = QueryType.TEMPLATE, value = "insert into sample(name) values(:name)")
+        String insertTemplate();
+    }
+
+    private QueryInstrumentation instrumentation;
+    private SampleRepository repository;
+
+    @Before
+    public void setUp() {
+        instrumentation = new QueryInstrumentation(500);
+        Object target = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{SampleRepository.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "findNames":
+                    return Arrays.asList("a", "b", "c");
+                case "updateAll":
+                    throw new IllegalStateException("error");
+                default:
+                    return "template";
+            }
+        });
+        repository = (SampleRepository) instrumentation.postProcessAfterInitialization(target, "sampleRepository");
+    }
+
+    @Test
+    public void recordCallsAndRows() {
+        assertNotNull(repository);
+        repository.findNames(Arrays.asList(1, 2, 3));
+        repository.findNames(Arrays.asList(4, 5, 6));
+        try {
+            repository.updateAll("name");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("error", e.getMessage());
+        }
+        assertEquals("template", repository.insertTemplate());
+
+        LatencyStatistics find = instrumentation.getStatistics().get("SampleRepository.findNames");
+        assertEquals(2, find.getCalls());
+        assertEquals(6, find.getRows());
+        assertEquals(0, find.getErrors());
+        assertEquals(2L, find.getHistogram().values().stream().mapToLong(Long::longValue).sum());
+
+        LatencyStatistics update = instrumentation.getStatistics().get("SampleRepository.updateAll");
+        assertEquals(1, update.getCalls());
+        assertEquals(1, update.getErrors());
+
+        assertFalse(instrumentation.getStatistics().containsKey("SampleRepository.insertTemplate"));
+        instrumentation.reset();
+        assertTrue(instrumentation.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void ignoreOtherBeans() {
+        Object bean = new Object();
+        assertSame(bean, instrumentation.postProcessAfterInitialization(bean, "bean"));
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config.support;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica;
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @Before
+    public void setUp() {
+        primary = init("primary");
+        replica = init("replica");
+        routingDataSource = new ReplicaRoutingDataSource(primary, replica, 30_000L, 0);
+        jdbc = new JdbcTemplate(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routingDataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @After
+    public void tearDown() {
+        new JdbcTemplate(primary).execute("SHUTDOWN");
+        new JdbcTemplate(replica).execute("SHUTDOWN");
+    }
+
+    @Test
+    public void primaryIsUsedUntilTheReplicaHasBeenChecked() {
+        assertFalse(routingDataSource.isReplicaUsable());
+        assertEquals("primary", readOnly.execute(status -> origin()));
+    }
+
+    @Test
+    public void readOnlyWorkIsRoutedToAFreshReplica() {
+        replicateHeartbeat();
+        routingDataSource.checkReplica();
+        assertTrue(routingDataSource.isReplicaUsable());
+        assertEquals("replica", readOnly.execute(status -> origin()));
+        assertEquals("primary", readWrite.execute(status -> origin()));
+        assertEquals("primary", origin());
+    }
+
+    @Test
+    public void reportingQueriesAreRoutedOutsideTransactions() {
+        replicateHeartbeat();
+        routingDataSource.checkReplica();
+        assertEquals("replica", ReplicaRoutingDataSource.reporting(this::origin));
+        assertEquals("primary", readWrite.execute(status -> ReplicaRoutingDataSource.reporting(this::origin)));
+        assertEquals("primary", origin());
+    }
+
+    @Test
+    public void staleReplicaIsNotUsed() {
+        // the heartbeat written on the primary is never replicated
+        routingDataSource.checkReplica();
+        assertFalse(routingDataSource.isReplicaUsable());
+        assertEquals("primary", readOnly.execute(status -> origin()));
+    }
+
+    @Test
+    public void fallbackToPrimaryIfTheReplicaIsDown() {
+        replicateHeartbeat();
+        routingDataSource.checkReplica();
+        assertTrue(routingDataSource.isReplicaUsable());
+        new JdbcTemplate(replica).execute("SHUTDOWN");
+        routingDataSource.checkReplica();
+        assertFalse(routingDataSource.isReplicaUsable());
+        assertEquals("primary", readOnly.execute(status -> origin()));
+    }
+
+    private String origin() {
+        return jdbc.queryForObject("select name from origin", String.class);
+    }
+
+    private void replicateHeartbeat() {
+        new JdbcTemplate(replica).update("update replica_heartbeat set heartbeat_millis = ? where id = 1", System.currentTimeMillis());
+    }
+
+    private static DataSource init(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:" + name + "-" + UUID.randomUUID(), "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table replica_heartbeat (id integer primary key not null, heartbeat_millis bigint not null)");
+        jdbc.update("insert into replica_heartbeat(id, heartbeat_millis) values (1, 0)");
+        jdbc.execute("create table origin (name varchar(255) not null)");
+        jdbc.update("insert into origin(name) values (?)", name);
+        return dataSource;
+    }
+}
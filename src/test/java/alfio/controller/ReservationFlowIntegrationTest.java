@@ -31,6 +31,7 @@ import alfio.controller.support.TicketDecorator;
 import alfio.manager.EuVatChecker;
 import alfio.manager.EventManager;
 import alfio.manager.EventStatisticsManager;
+import alfio.manager.ScanAuditWriter;
 import alfio.manager.TicketReservationManager;
 import alfio.manager.i18n.I18nManager;
 import alfio.manager.support.CheckInStatus;
@@ -38,7 +39,6 @@ import alfio.manager.support.TicketAndCheckInResult;
 import alfio.manager.user.UserManager;
 import alfio.model.Event;
 import alfio.model.TicketCategory;
-import alfio.model.audit.ScanAudit;
 import alfio.model.modification.DateTimeModification;
 import alfio.model.modification.TicketCategoryModification;
 import alfio.model.modification.TicketReservationModification;
@@ -153,6 +153,8 @@ public class ReservationFlowIntegrationTest {
     @Autowired
     private ScanAuditRepository scanAuditRepository;
     @Autowired
+    private ScanAuditWriter scanAuditWriter;
+    @Autowired
     private TicketReservationManager ticketReservationManager;
 
     private ReservationApiController reservationApiController;
@@ -317,9 +319,9 @@ public class ReservationFlowIntegrationTest {
         CheckInApiController.TicketCode tc = new CheckInApiController.TicketCode();
         tc.setCode(ticketCode);
         assertEquals(CheckInStatus.SUCCESS, checkInApiController.checkIn(event.getId(), ticketIdentifier, tc, new TestingAuthenticationToken("ciccio","ciccio")).getResult().getStatus());
-        List<ScanAudit> audits = scanAuditRepository.findAllForEvent(event.getId());
-        assertFalse(audits.isEmpty());
-        assertTrue(audits.stream().anyMatch(sa -> sa.getTicketUuid().equals(ticketIdentifier)));
+        //the audit entry is buffered only after the check-in transaction (here: the test transaction) has been committed
+        assertEquals(0, scanAuditWriter.flush());
+        assertTrue(scanAuditRepository.findAllForEvent(event.getId()).isEmpty());
 
 
         TicketAndCheckInResult ticketAndCheckInResultOk = checkInApiController.findTicketWithUUID(event.getId(), ticketIdentifier, ticketCode);
@@ -0,0 +1,102 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import alfio.manager.EventCacheManager;
+import alfio.manager.i18n.I18nManager;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class EventContextResolverTest {
+
+    private EventCacheManager eventCacheManager;
+    private EventContextResolver resolver;
+    private MockHttpServletRequest request;
+    private Event event;
+
+    @Before
+    public void setUp() {
+        eventCacheManager = mock(EventCacheManager.class);
+        event = mock(Event.class);
+        when(event.getLocales()).thenReturn(1);
+        when(eventCacheManager.findEventByShortName("myEvent")).thenReturn(Optional.of(event));
+        I18nManager i18nManager = mock(I18nManager.class);
+        when(i18nManager.getEventLanguages(1)).thenReturn(Collections.emptyList());
+        resolver = new EventContextResolver(eventCacheManager, i18nManager, mock(ConfigurationManager.class));
+        request = new MockHttpServletRequest();
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Collections.singletonMap("eventName", "myEvent"));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void loadEventOncePerRequest() throws Exception {
+        Optional<EventContext> context = resolver.resolve(request, handlerMethod("showEvent"));
+        assertTrue(context.isPresent());
+        assertEquals("myEvent", context.get().getEventName());
+        context.get().getLanguages();
+        assertSame(event, resolver.findEvent("myEvent").orElse(null));
+        assertSame(context.get(), EventContextResolver.fromRequest(request).orElse(null));
+        verify(eventCacheManager, times(1)).findEventByShortName("myEvent");
+    }
+
+    @Test
+    public void ignoreHandlersWithoutEvent() throws Exception {
+        assertFalse(resolver.resolve(request, handlerMethod("showEvents")).isPresent());
+        assertFalse(EventContextResolver.fromRequest(request).isPresent());
+        resolver.findEvent("myEvent");
+        verify(eventCacheManager, times(1)).findEventByShortName("myEvent");
+    }
+
+    private static HandlerMethod handlerMethod(String name) throws NoSuchMethodException {
+        SampleController controller = new SampleController();
+        return new HandlerMethod(controller, name, String.class);
+    }
+
+    private static class SampleController {
+
+        @RequestMapping("/event/{eventName}")
+        public String showEvent(@PathVariable("eventName") String eventName) {
+            return "event";
+        }
+
+        @RequestMapping("/events")
+        public String showEvents(String filter) {
+            return "events";
+        }
+    }
+}
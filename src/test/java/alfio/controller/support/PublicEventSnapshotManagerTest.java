@@ -0,0 +1,115 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import alfio.manager.EventCacheManager;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.*;
+import alfio.repository.*;
+import alfio.repository.user.OrganizationRepository;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class PublicEventSnapshotManagerTest {
+
+    private static final int EVENT_ID = 1;
+
+    private EventCacheManager eventCacheManager;
+    private EventDescriptionRepository eventDescriptionRepository;
+    private AdditionalServiceTextRepository additionalServiceTextRepository;
+    private PublicEventSnapshotManager snapshotManager;
+    private Event event;
+
+    @Before
+    public void setUp() {
+        eventCacheManager = mock(EventCacheManager.class);
+        eventDescriptionRepository = mock(EventDescriptionRepository.class);
+        additionalServiceTextRepository = mock(AdditionalServiceTextRepository.class);
+        TicketCategoryRepository ticketCategoryRepository = mock(TicketCategoryRepository.class);
+        AdditionalServiceRepository additionalServiceRepository = mock(AdditionalServiceRepository.class);
+        PromoCodeDiscountRepository promoCodeDiscountRepository = mock(PromoCodeDiscountRepository.class);
+        ConfigurationManager configurationManager = mock(ConfigurationManager.class);
+        event = mockEvent();
+        when(eventCacheManager.getEvent(EVENT_ID)).thenReturn(event);
+        when(eventDescriptionRepository.findByEventId(EVENT_ID)).thenReturn(Arrays.asList(
+            new EventDescription(EVENT_ID, "en", EventDescription.EventDescriptionType.DESCRIPTION, "english"),
+            new EventDescription(EVENT_ID, "it", EventDescription.EventDescriptionType.DESCRIPTION, "italiano")));
+        AdditionalService additionalService = mock(AdditionalService.class);
+        when(additionalService.getId()).thenReturn(2);
+        when(additionalServiceRepository.loadAllForEvent(EVENT_ID)).thenReturn(Collections.singletonList(additionalService));
+        when(additionalServiceTextRepository.findAllByAdditionalServiceId(2)).thenReturn(Arrays.asList(
+            new AdditionalServiceText(1, 2, "en", AdditionalServiceText.TextType.TITLE, "title"),
+            new AdditionalServiceText(2, 2, "it", AdditionalServiceText.TextType.DESCRIPTION, "descrizione")));
+        when(ticketCategoryRepository.findAllTicketCategories(EVENT_ID)).thenReturn(Collections.emptyList());
+        when(ticketCategoryRepository.countAccessRestrictedRepositoryByEventId(EVENT_ID)).thenReturn(0);
+        when(promoCodeDiscountRepository.countByEventAndOrganizationId(EVENT_ID, 3)).thenReturn(1);
+        when(configurationManager.getStringConfigValue(any())).thenReturn(Optional.empty());
+        snapshotManager = new PublicEventSnapshotManager(eventCacheManager, mock(OrganizationRepository.class), eventDescriptionRepository,
+            ticketCategoryRepository, mock(TicketCategoryDescriptionRepository.class), additionalServiceRepository, additionalServiceTextRepository,
+            promoCodeDiscountRepository, configurationManager);
+    }
+
+    @Test
+    public void reuseSnapshotWhileEventIsCached() {
+        PublicEventSnapshot snapshot = snapshotManager.getSnapshot(event);
+        assertSame(snapshot, snapshotManager.getSnapshot(event));
+        assertSame(event, snapshot.getEvent());
+        assertTrue(snapshot.isAccessPromotions());
+        verify(eventDescriptionRepository, times(1)).findByEventId(EVENT_ID);
+    }
+
+    @Test
+    public void rebuildSnapshotAfterInvalidation() {
+        PublicEventSnapshot snapshot = snapshotManager.getSnapshot(event);
+        Event reloaded = mockEvent();
+        when(eventCacheManager.getEvent(EVENT_ID)).thenReturn(reloaded);
+        PublicEventSnapshot refreshed = snapshotManager.getSnapshot(event);
+        assertNotSame(snapshot, refreshed);
+        assertSame(reloaded, refreshed.getEvent());
+        verify(eventDescriptionRepository, times(2)).findByEventId(EVENT_ID);
+    }
+
+    @Test
+    public void selectLocalizedTexts() {
+        PublicEventSnapshot snapshot = snapshotManager.getSnapshot(event);
+        assertEquals("italiano", snapshot.getDescription("it"));
+        assertEquals("", snapshot.getDescription("de"));
+        PublicEventSnapshot.Service service = snapshot.getAdditionalServices().get(0);
+        assertEquals("title", service.getText("it", AdditionalServiceText.TextType.TITLE));
+        assertEquals("descrizione", service.getText("it", AdditionalServiceText.TextType.DESCRIPTION));
+        assertEquals("descrizione", service.getText("en", AdditionalServiceText.TextType.DESCRIPTION));
+        verify(additionalServiceTextRepository, never()).findBestMatchByLocaleAndType(anyInt(), anyString(), any());
+    }
+
+    private static Event mockEvent() {
+        Event event = mock(Event.class);
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(event.getOrganizationId()).thenReturn(3);
+        when(event.getLatLong()).thenReturn(Pair.of("0", "0"));
+        when(event.getTimeZone()).thenReturn("UTC");
+        return event;
+    }
+}
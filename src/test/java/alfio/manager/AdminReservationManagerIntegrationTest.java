@@ -31,6 +31,7 @@ import alfio.model.result.Result;
 import alfio.repository.EmailMessageRepository;
 import alfio.repository.SpecialPriceRepository;
 import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketFieldRepository;
 import alfio.repository.TicketRepository;
 import alfio.repository.user.OrganizationRepository;
 import org.apache.commons.lang3.time.DateUtils;
@@ -85,6 +86,10 @@ public class AdminReservationManagerIntegrationTest {
     private TicketReservationManager ticketReservationManager;
     @Autowired
     private SpecialPriceRepository specialPriceRepository;
+    @Autowired
+    private TicketFieldRepository ticketFieldRepository;
+    @Autowired
+    private TicketFieldManager ticketFieldManager;
 
     @Test
     public void testReserveFromExistingCategory() throws Exception {
@@ -259,6 +264,62 @@ public class AdminReservationManagerIntegrationTest {
         assertFalse(ticketRepository.findAllReservationsConfirmedButNotAssigned(triple.getRight().getId()).contains(triple.getLeft().getId()));
     }
 
+    @Test
+    public void testBulkReservationCreation() throws Exception {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Pair<Event, String> eventWithUsername = initEvent(categories, organizationRepository, userManager, eventManager);
+        Event event = eventWithUsername.getKey();
+        String username = eventWithUsername.getValue();
+        DateTimeModification expiration = DateTimeModification.fromZonedDateTime(ZonedDateTime.now().plusDays(1));
+        TicketCategory existingCategory = ticketCategoryRepository.findByEventId(event.getId()).get(0);
+        Category category = new Category(existingCategory.getId(), existingCategory.getName(), existingCategory.getPrice());
+        List<AdminReservationModification> modifications = IntStream.range(0, 5)
+            .mapToObj(i -> new AdminReservationModification(expiration, new CustomerData("Integration", "Test " + i, "integration-test" + i + "@test.ch", "Billing Address", "en"),
+                Collections.singletonList(new TicketsInfo(category, generateAttendees(2), false, false)), "en", false, null))
+            .collect(toList());
+
+        List<Result<Pair<TicketReservation, List<Ticket>>>> results = adminReservationManager.createReservations(modifications, event.getShortName(), username);
+        assertEquals(modifications.size(), results.size());
+        results.forEach(r -> {
+            assertTrue(r.isSuccess());
+            List<Ticket> tickets = ticketRepository.findTicketsInReservation(r.getData().getLeft().getId());
+            assertEquals(2, tickets.size());
+            assertTrue(tickets.stream().allMatch(Ticket::getAssigned));
+        });
+        assertEquals(10, ticketRepository.findPendingTicketsInCategories(Collections.singletonList(existingCategory.getId())).size());
+    }
+
+    @Test
+    public void testBulkReservationCreationWithInvalidAdditionalInfo() throws Exception {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Pair<Event, String> eventWithUsername = initEvent(categories, organizationRepository, userManager, eventManager);
+        Event event = eventWithUsername.getKey();
+        String username = eventWithUsername.getValue();
+        ticketFieldRepository.insertConfiguration(event.getId(), "jobTitle", 0, "input:text", null, 5, 0, false, TicketFieldConfiguration.Context.ATTENDEE, -1);
+        ticketFieldManager.invalidateConfiguration(event.getId());
+        DateTimeModification expiration = DateTimeModification.fromZonedDateTime(ZonedDateTime.now().plusDays(1));
+        TicketCategory existingCategory = ticketCategoryRepository.findByEventId(event.getId()).get(0);
+        Category category = new Category(existingCategory.getId(), existingCategory.getName(), existingCategory.getPrice());
+        List<AdminReservationModification> modifications = Arrays.asList("Dev", "Developer").stream()
+            .map(jobTitle -> new AdminReservationModification(expiration, new CustomerData("Integration", "Test", "integration-test@test.ch", "Billing Address", "en"),
+                Collections.singletonList(new TicketsInfo(category, Collections.singletonList(new Attendee(null, "Attendee", "Test", "attendee@test.ch", Collections.singletonMap("jobTitle", Collections.singletonList(jobTitle)))), false, false)), "en", false, null))
+            .collect(toList());
+
+        List<Result<Pair<TicketReservation, List<Ticket>>>> results = adminReservationManager.createReservations(modifications, event.getShortName(), username);
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(1, ticketRepository.findPendingTicketsInCategories(Collections.singletonList(existingCategory.getId())).size());
+    }
+
     private Triple<Event, String, TicketReservation> performExistingCategoryTest(List<TicketCategoryModification> categories, boolean bounded,
                                                                                  List<Integer> attendeesNr, boolean addSeatsIfNotAvailable, boolean expectSuccess,
                                                                                  int reservedTickets, int expectedEventSeats) {
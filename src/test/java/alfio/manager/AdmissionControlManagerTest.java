@@ -0,0 +1,185 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.system.Configuration.ConfigurationPathKey;
+import alfio.model.system.ConfigurationKeys;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdmissionControlManagerTest {
+
+    private AdmissionControlManager manager;
+    private Event event;
+    private MutableClock clock;
+
+    @Before
+    public void setUp() {
+        ConfigurationManager configurationManager = mock(ConfigurationManager.class);
+        when(configurationManager.getIntConfigValue(any(ConfigurationPathKey.class), anyInt())).thenAnswer(invocation -> {
+            ConfigurationKeys key = ((ConfigurationPathKey) invocation.getArguments()[0]).getKey();
+            switch (key) {
+                case ADMISSION_CONTROL_MAX_CONCURRENCY:
+                    return 1;
+                case ADMISSION_CONTROL_RATE:
+                    return 1;
+                case ADMISSION_CONTROL_MAX_QUEUE_SIZE:
+                    return 2;
+                default:
+                    return invocation.getArguments()[1];
+            }
+        });
+        event = mock(Event.class);
+        when(event.getId()).thenReturn(1);
+        when(event.getOrganizationId()).thenReturn(1);
+        when(event.getShortName()).thenReturn("event");
+        when(event.getPrivateKey()).thenReturn("private-key");
+        clock = new MutableClock();
+        manager = new AdmissionControlManager(configurationManager, clock);
+    }
+
+    @Test
+    public void queueWhenLimitIsReached() {
+        AdmissionControlManager.Admission first = manager.enter(event, Optional.empty());
+        assertTrue(first.isAdmitted());
+
+        AdmissionControlManager.Admission second = manager.enter(event, Optional.empty());
+        assertEquals(AdmissionControlManager.Admission.Status.QUEUED, second.getStatus());
+        assertEquals(1, second.getPosition());
+        String token = second.getQueueToken().orElseThrow(IllegalStateException::new);
+        assertFalse(manager.enter(event, Optional.of(token)).isAdmitted());
+
+        first.close();
+        clock.advance(1100);
+        assertTrue(manager.getQueueStatus(event, token).map(AdmissionControlManager.QueueStatus::isAdmitted).orElse(false));
+        try (AdmissionControlManager.Admission admission = manager.enter(event, Optional.of(token))) {
+            assertTrue(admission.isAdmitted());
+            assertFalse(manager.enter(event, Optional.empty()).isAdmitted());
+        }
+    }
+
+    @Test
+    public void keepPermitForAdmittedBuyer() {
+        AdmissionControlManager.Admission first = manager.enter(event, Optional.empty());
+        String token = manager.enter(event, Optional.empty()).getQueueToken().orElseThrow(IllegalStateException::new);
+        first.close();
+        clock.advance(1100);
+        //the permit is reserved for the queued buyer, who has not polled yet
+        AdmissionControlManager.Admission newArrival = manager.enter(event, Optional.empty());
+        assertEquals(AdmissionControlManager.Admission.Status.QUEUED, newArrival.getStatus());
+        assertTrue(manager.enter(event, Optional.of(token)).isAdmitted());
+    }
+
+    @Test
+    public void keepPermitWhileAdmittedBuyerIsPolling() {
+        AdmissionControlManager.Admission first = manager.enter(event, Optional.empty());
+        String token = manager.enter(event, Optional.empty()).getQueueToken().orElseThrow(IllegalStateException::new);
+        first.close();
+        clock.advance(1100);
+        for(int i = 0; i < 10; i++) {
+            assertTrue(manager.getQueueStatus(event, token).map(AdmissionControlManager.QueueStatus::isAdmitted).orElse(false));
+            clock.advance(TimeUnit.SECONDS.toMillis(AdmissionControlManager.RETRY_AFTER_SECONDS));
+        }
+        assertEquals(AdmissionControlManager.Admission.Status.QUEUED, manager.enter(event, Optional.empty()).getStatus());
+        assertTrue(manager.enter(event, Optional.of(token)).isAdmitted());
+    }
+
+    @Test
+    public void releasePermitIfAdmittedBuyerStopsPolling() {
+        AdmissionControlManager.Admission first = manager.enter(event, Optional.empty());
+        String token = manager.enter(event, Optional.empty()).getQueueToken().orElseThrow(IllegalStateException::new);
+        first.close();
+        clock.advance(1100);
+        assertTrue(manager.getQueueStatus(event, token).map(AdmissionControlManager.QueueStatus::isAdmitted).orElse(false));
+        clock.advance(TimeUnit.SECONDS.toMillis(AdmissionControlManager.RETRY_AFTER_SECONDS * 3) + 1);
+        assertFalse(manager.getQueueStatus(event, token).map(AdmissionControlManager.QueueStatus::isAdmitted).orElse(false));
+        //the expired permit goes to the next arrival, the buyer is queued again
+        assertTrue(manager.enter(event, Optional.empty()).isAdmitted());
+        assertEquals(AdmissionControlManager.Admission.Status.QUEUED, manager.enter(event, Optional.of(token)).getStatus());
+    }
+
+    @Test
+    public void disabledByDefault() {
+        ConfigurationManager configurationManager = mock(ConfigurationManager.class);
+        when(configurationManager.getIntConfigValue(any(ConfigurationPathKey.class), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        AdmissionControlManager defaultManager = new AdmissionControlManager(configurationManager);
+        for(int i = 0; i < 100; i++) {
+            assertTrue(defaultManager.enter(event, Optional.empty()).isAdmitted());
+        }
+    }
+
+    @Test
+    public void rejectWhenQueueIsFull() {
+        assertTrue(manager.enter(event, Optional.empty()).isAdmitted());
+        assertEquals(AdmissionControlManager.Admission.Status.QUEUED, manager.enter(event, Optional.empty()).getStatus());
+        assertEquals(AdmissionControlManager.Admission.Status.QUEUED, manager.enter(event, Optional.empty()).getStatus());
+        assertEquals(AdmissionControlManager.Admission.Status.REJECTED, manager.enter(event, Optional.empty()).getStatus());
+    }
+
+    @Test
+    public void ignoreTamperedTokens() {
+        assertTrue(manager.enter(event, Optional.empty()).isAdmitted());
+        String token = manager.enter(event, Optional.empty()).getQueueToken().orElseThrow(IllegalStateException::new);
+        String tampered = token.replaceFirst("\\.0\\.", ".1.");
+        assertFalse(manager.getQueueStatus(event, tampered).isPresent());
+        assertTrue(manager.getQueueStatus(event, token).isPresent());
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private long millis = System.currentTimeMillis();
+
+        void advance(long amount) {
+            millis += amount;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
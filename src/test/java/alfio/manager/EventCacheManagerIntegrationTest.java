@@ -0,0 +1,131 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.user.OrganizationRepository;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.Assert.*;
+
+/**
+ * Simulates two nodes sharing the same database.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+@Transactional
+public class EventCacheManagerIntegrationTest {
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private Environment environment;
+
+    private EventCacheManager nodeA;
+    private EventCacheManager nodeB;
+
+    @Before
+    public void setUp() {
+        nodeA = new EventCacheManager(eventRepository, ticketCategoryRepository, environment);
+        nodeB = new EventCacheManager(eventRepository, ticketCategoryRepository, environment);
+    }
+
+    @After
+    public void tearDown() {
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    @Test
+    public void testInvalidationIsPropagatedToOtherNodes() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Pair<Event, String> pair = initEvent(categories, organizationRepository, userManager, eventManager);
+        Event event = pair.getKey();
+        int categoryId = ticketCategoryRepository.findByEventId(event.getId()).get(0).getId();
+
+        assertEquals(Event.Status.DRAFT, nodeA.getEvent(event.getId()).getStatus());
+        assertEquals(Event.Status.DRAFT, nodeA.findEventByShortName(event.getShortName()).map(Event::getStatus).orElse(null));
+        assertEquals(0, BigDecimal.TEN.compareTo(nodeA.getTicketCategory(categoryId, event.getId()).getPrice()));
+
+        eventRepository.updateEventStatus(event.getId(), Event.Status.PUBLIC);
+        nodeB.invalidate(event.getId());
+
+        //node A doesn't know about the change until the next check
+        assertEquals(Event.Status.DRAFT, nodeA.getEvent(event.getId()).getStatus());
+        assertEquals(Event.Status.PUBLIC, nodeB.getEvent(event.getId()).getStatus());
+
+        nodeA.checkVersions();
+        assertEquals(Event.Status.PUBLIC, nodeA.getEvent(event.getId()).getStatus());
+        assertEquals(Event.Status.PUBLIC, nodeA.findEventByShortName(event.getShortName()).map(Event::getStatus).orElse(null));
+
+        Map<String, Number> eventStatistics = nodeA.getStatistics().get("event");
+        assertEquals(1L, eventStatistics.get("hits"));
+        assertEquals(2L, eventStatistics.get("misses"));
+    }
+
+    @Test
+    public void testUnknownEvent() {
+        assertFalse(nodeA.findEventByShortName("does-not-exist").isPresent());
+        nodeA.checkVersions();
+    }
+}
@@ -352,6 +352,37 @@ public class EventManagerIntegrationTest {
         assertEquals(0, tickets.stream().filter(t -> t.getCategoryId() == null).count());
     }
 
+    @Test
+    public void testResizeBoundedCategoryOnLargeEvent() {
+        int availableSeats = 10 * EventManager.CHUNK_SIZE + 1;
+        int resized = 7 * EventManager.CHUNK_SIZE + 3;
+        List<TicketCategoryModification> categories = Collections.singletonList(
+                new TicketCategoryModification(null, "default", 10,
+                        new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                        new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                        DESCRIPTION, BigDecimal.TEN, false, "", true));
+        Pair<Event, String> pair = initEvent(categories, organizationRepository, userManager, eventManager, availableSeats);
+        Event event = pair.getKey();
+        int categoryId = ticketCategoryRepository.findByEventId(event.getId()).get(0).getId();
+
+        eventManager.updateCategory(categoryId, event.getId(), new TicketCategoryModification(categoryId, "default", resized,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", true), pair.getValue());
+        assertEquals(resized, ticketRepository.countFreeTickets(event.getId(), categoryId).intValue());
+        assertEquals(availableSeats, ticketRepository.findFreeByEventId(event.getId()).size());
+        assertEquals(resized, ticketCategoryRepository.getById(categoryId, event.getId()).getMaxTickets());
+        assertFalse(eventManager.getTicketOperationProgress(event.getId()).isPresent());
+
+        eventManager.updateCategory(categoryId, event.getId(), new TicketCategoryModification(categoryId, "default", 10,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", true), pair.getValue());
+        assertEquals(10, ticketRepository.countFreeTickets(event.getId(), categoryId).intValue());
+        assertEquals(availableSeats, ticketRepository.findFreeByEventId(event.getId()).size());
+        assertEquals(10, ticketCategoryRepository.getById(categoryId, event.getId()).getMaxTickets());
+    }
+
     @Test
     public void testUpdateEventHeader() {
         List<TicketCategoryModification> categories = Collections.singletonList(
@@ -30,6 +30,7 @@ import org.mockito.ArgumentCaptor;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -48,6 +49,8 @@ import static org.mockito.Mockito.*;
 public class EventManagerTest {{
 
     PluginManager pluginManager = mock(PluginManager.class);
+    EventCacheManager eventCacheManager = mock(EventCacheManager.class);
+    PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
 
     describe("handleTicketNumberModification", it -> {
         Event event = mock(Event.class);
@@ -57,7 +60,8 @@ public class EventManagerTest {{
         TicketCategory updated = mock(TicketCategory.class);
         TicketRepository ticketRepository = it.usesMock(TicketRepository.class);
         NamedParameterJdbcTemplate jdbc = it.usesMock(NamedParameterJdbcTemplate.class);
-        EventManager eventManager = new EventManager(null, null, null, null, null, null, ticketRepository, null, null, null, jdbc, null, pluginManager, null, null, null, null, null, null);
+        TicketCategoryRepository ticketCategoryRepository = it.usesMock(TicketCategoryRepository.class);
+        EventManager eventManager = new EventManager(null, null, null, null, ticketCategoryRepository, null, ticketRepository, null, null, null, jdbc, null, pluginManager, null, null, null, null, null, null, null, eventCacheManager, transactionManager);
         when(original.getId()).thenReturn(20);
         when(updated.getId()).thenReturn(30);
         when(original.getSrcPriceCts()).thenReturn(1000);
@@ -75,6 +79,7 @@ public class EventManagerTest {{
             when(ticketRepository.lockTicketsToInvalidate(eventId, 30, 2)).thenReturn(ids);
             eventManager.handleTicketNumberModification(event, original, updated, -2);
             verify(ticketRepository, times(1)).invalidateTickets(ids);
+            verify(ticketCategoryRepository, times(1)).updateSeatsAvailability(30, 8);
         });
         it.should("do nothing if the difference is zero", expect -> {
             eventManager.handleTicketNumberModification(event, original, updated, 0);
@@ -86,15 +91,15 @@ public class EventManagerTest {{
             when(ticketRepository.selectNotAllocatedTicketsForUpdate(eq(eventId), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())))).thenReturn(singletonList(1));
             eventManager.handleTicketNumberModification(event, original, updated, 1);
             verify(ticketRepository, never()).invalidateTickets(anyListOf(Integer.class));
-            ArgumentCaptor<SqlParameterSource[]> captor = ArgumentCaptor.forClass(SqlParameterSource[].class);
-            verify(jdbc, times(1)).batchUpdate(anyString(), captor.capture());
-            expect.that(captor.getValue().length).is(1);
+            verify(ticketRepository, times(1)).moveToAnotherCategory(eq(singletonList(1)), eq(30), eq(1000));
+            verify(ticketCategoryRepository, times(1)).updateSeatsAvailability(30, 11);
+            verify(jdbc, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
         });
     });
 
     describe("handlePriceChange", it -> {
         TicketRepository ticketRepository = it.usesMock(TicketRepository.class);
-        EventManager eventManager = new EventManager(null, null, null, null, null, null, ticketRepository, null, null, null, null, null, pluginManager, null, null, null, null, null, null);
+        EventManager eventManager = new EventManager(null, null, null, null, null, null, ticketRepository, null, null, null, null, null, pluginManager, null, null, null, null, null, null, null, eventCacheManager, transactionManager);
         TicketCategory original = mock(TicketCategory.class);
         TicketCategory updated = mock(TicketCategory.class);
         Event event = mock(Event.class);
@@ -132,7 +137,7 @@ public class EventManagerTest {{
     describe("handleTokenModification", it -> {
         SpecialPriceRepository specialPriceRepository = it.usesMock(SpecialPriceRepository.class);
         NamedParameterJdbcTemplate jdbc = it.usesMock(NamedParameterJdbcTemplate.class);
-        EventManager eventManager = new EventManager(null, null, null, null, null, null, null, specialPriceRepository, null, null, jdbc, null, pluginManager, null, null, null, null, null, null);
+        EventManager eventManager = new EventManager(null, null, null, null, null, null, null, specialPriceRepository, null, null, jdbc, null, pluginManager, null, null, null, null, null, null, null, eventCacheManager, transactionManager);
         TicketCategory original = mock(TicketCategory.class);
         TicketCategory updated = mock(TicketCategory.class);
 
@@ -195,7 +200,7 @@ public class EventManagerTest {{
         int eventId = 0;
         TicketCategoryRepository ticketCategoryRepository = it.usesMock(TicketCategoryRepository.class);
         TicketCategoryDescriptionRepository ticketCategoryDescriptionRepository = it.usesMock(TicketCategoryDescriptionRepository.class);
-        EventManager eventManager = new EventManager(null, null, null, null, ticketCategoryRepository, ticketCategoryDescriptionRepository, null, null, null, null, null, null, pluginManager, null, null, null, null, null, null);
+        EventManager eventManager = new EventManager(null, null, null, null, ticketCategoryRepository, ticketCategoryDescriptionRepository, null, null, null, null, null, null, pluginManager, null, null, null, null, null, null, null, eventCacheManager, transactionManager);
         Event event = mock(Event.class);
         int availableSeats = 20;
         when(event.getAvailableSeats()).thenReturn(availableSeats);
@@ -249,7 +254,7 @@ public class EventManagerTest {{
         TicketCategoryWithStatistic tc = new TicketCategoryWithStatistic(ticketCategory, Collections.emptyList(), Collections.emptyList(), event, desc);
         when(esm.loadTicketCategoryWithStats(eq(categoryId), eq(event))).thenReturn(tc);
 
-        EventManager eventManager = new EventManager(userManager, eventRepository, eventDescriptionRepository, esm, ticketCategoryRepository, ticketCategoryDescriptionRepository, ticketRepository, specialPriceRepository, null, null, null, null, pluginManager, null, null, null, null, null, null);
+        EventManager eventManager = new EventManager(userManager, eventRepository, eventDescriptionRepository, esm, ticketCategoryRepository, ticketCategoryDescriptionRepository, ticketRepository, specialPriceRepository, null, null, null, null, pluginManager, null, null, null, null, null, null, null, eventCacheManager, transactionManager);
         when(event.getId()).thenReturn(eventId);
         when(event.getOrganizationId()).thenReturn(organizationId);
         Organization organization = mock(Organization.class);
@@ -0,0 +1,235 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.system.ConfigurationManager;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.modification.ConfigurationModification;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.transaction.PaymentProxy;
+import alfio.repository.InvoiceDocumentRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.AbstractLobCreatingPreparedStatementCallback;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.Assert.*;
+
+/**
+ * Not transactional: the background export reads the reservations from another thread.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+public class InvoiceExportManagerIntegrationTest {
+
+    private static final int INVOICES = 3;
+    private static final byte[] STORED_CONTENT = "stored".getBytes(StandardCharsets.UTF_8);
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private ConfigurationManager configurationManager;
+    @Autowired
+    private InvoiceExportManager invoiceExportManager;
+    @Autowired
+    private InvoiceDocumentRepository invoiceDocumentRepository;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbc;
+
+    private Event event;
+    private String owner;
+    private List<TicketReservation> invoices;
+
+    @Before
+    public void init() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Pair<Event, String> pair = initEvent(categories, organizationRepository, userManager, eventManager);
+        event = pair.getKey();
+        owner = pair.getValue() + "_owner";
+        int categoryId = ticketCategoryRepository.findByEventId(event.getId()).get(0).getId();
+        for(int i = 0; i < INVOICES; i++) {
+            TicketReservationModification tr = new TicketReservationModification();
+            tr.setAmount(1);
+            tr.setTicketCategoryId(categoryId);
+            TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+            String reservationId = ticketReservationManager.createTicketReservation(event, Collections.singletonList(mod), new ArrayList<>(), DateUtils.addDays(new Date(), 1), Optional.empty(), Optional.empty(), Locale.ENGLISH, false);
+            assertTrue(ticketReservationManager.confirm(null, null, event, reservationId, "email@example.com",
+                new CustomerName("full name", "full", "name", event), Locale.ENGLISH, "billing address",
+                ticketReservationManager.totalReservationCostWithVAT(reservationId), Optional.empty(), Optional.of(PaymentProxy.OFFLINE), true, null, null, null).isSuccessful());
+        }
+        invoices = ticketReservationManager.findAllInvoices(event.getId());
+        assertEquals(INVOICES, invoices.size());
+    }
+
+    @Test
+    public void renderAndStoreSingleInvoice() {
+        TicketReservation reservation = invoices.get(0);
+        assertEquals(0, countStoredDocuments());
+        byte[] pdf = invoiceExportManager.getInvoicePdf(event, reservation).orElseThrow(IllegalStateException::new);
+        assertTrue(isPdf(pdf));
+        assertEquals(1, countStoredDocuments());
+    }
+
+    @Test
+    public void returnStoredInvoiceWithoutRendering() {
+        TicketReservation reservation = invoices.get(0);
+        storeDocument(reservation, STORED_CONTENT);
+        assertArrayEquals(STORED_CONTENT, invoiceExportManager.getInvoicePdf(event, reservation).orElseThrow(IllegalStateException::new));
+    }
+
+    @Test
+    public void renderAgainAfterBillingDataChange() {
+        TicketReservation reservation = invoices.get(0);
+        storeDocument(reservation, STORED_CONTENT);
+        configurationManager.saveEventConfiguration(event.getId(), event.getOrganizationId(),
+            Collections.singletonList(new ConfigurationModification(null, ConfigurationKeys.INVOICE_ADDRESS.getValue(), "new address")), owner);
+        assertEquals(0, countStoredDocuments());
+        assertTrue(isPdf(invoiceExportManager.getInvoicePdf(event, reservation).orElseThrow(IllegalStateException::new)));
+
+        storeDocument(reservation, STORED_CONTENT);
+        userManager.updateOrganization(event.getOrganizationId(), UUID.randomUUID().toString(), "new@example.com", "org");
+        assertEquals(0, countStoredDocuments());
+    }
+
+    @Test
+    public void exportAllInvoices() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        invoiceExportManager.exportInvoices(event, os);
+        assertEquals(INVOICES, countPdfEntries(os.toByteArray()));
+        assertEquals(INVOICES, countStoredDocuments());
+    }
+
+    @Test
+    public void deleteReservationWithStoredInvoice() throws IOException {
+        invoiceExportManager.exportInvoices(event, new ByteArrayOutputStream());
+        assertEquals(INVOICES, countStoredDocuments());
+        TicketReservation reservation = invoices.get(0);
+        ticketReservationManager.deleteOfflinePayment(event, reservation.getId(), false);
+        assertFalse(ticketReservationManager.findById(reservation.getId()).isPresent());
+        assertEquals(INVOICES - 1, countStoredDocuments());
+    }
+
+    @Test
+    public void exportAllInvoicesInBackground() throws Exception {
+        InvoiceExportManager.ExportStatus export = invoiceExportManager.startExport(event);
+        assertEquals(INVOICES, export.getTotal());
+        long timeout = System.currentTimeMillis() + 30_000;
+        while(export.getStatus() == InvoiceExportManager.ExportStatus.Status.RUNNING && System.currentTimeMillis() < timeout) {
+            Thread.sleep(100);
+        }
+        assertEquals(InvoiceExportManager.ExportStatus.Status.COMPLETED, export.getStatus());
+        assertEquals(INVOICES, export.getProcessed());
+        assertFalse(invoiceExportManager.downloadExport(event.getId() + 1, export.getId(), new ByteArrayOutputStream()));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertTrue(invoiceExportManager.downloadExport(event.getId(), export.getId(), os));
+        assertEquals(INVOICES, countPdfEntries(os.toByteArray()));
+    }
+
+    private int countStoredDocuments() {
+        return jdbc.queryForObject("select count(*) from invoice_document where event_id_fk = :eventId", new MapSqlParameterSource("eventId", event.getId()), Integer.class);
+    }
+
+    private void storeDocument(TicketReservation reservation, byte[] content) {
+        invoiceDocumentRepository.deleteForReservation(reservation.getId());
+        jdbc.getJdbcOperations().execute(invoiceDocumentRepository.insertTemplate(),
+            new AbstractLobCreatingPreparedStatementCallback(new DefaultLobHandler()) {
+                @Override
+                protected void setValues(PreparedStatement ps, LobCreator lobCreator) throws SQLException {
+                    ps.setString(1, reservation.getId());
+                    ps.setString(2, reservation.getInvoiceNumber());
+                    ps.setInt(3, event.getId());
+                    ps.setInt(4, content.length);
+                    lobCreator.setBlobAsBytes(ps, 5, content);
+                }
+            });
+    }
+
+    private static boolean isPdf(byte[] content) {
+        return new String(content, 0, 4, StandardCharsets.US_ASCII).equals("%PDF");
+    }
+
+    private static int countPdfEntries(byte[] zip) throws IOException {
+        int count = 0;
+        try(ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while((entry = zis.getNextEntry()) != null) {
+                assertTrue(entry.getName().endsWith(".pdf"));
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.support.PaymentResult;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.model.transaction.PaymentProxy;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Confirms several reservations of the same organization in parallel, each one in its own transaction,
+ * and checks that the resulting invoice numbers are unique and gapless.
+ * This test verifies correctness only. The fact that the invoice sequence is not locked while the payment provider is called
+ * is verified by {@link TicketReservationManagerTest#assignInvoiceNumberAfterPayment()}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+public class InvoiceNumberIntegrationTest {
+
+    private static final Map<String, String> DESCRIPTION = Collections.singletonMap("en", "desc");
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+
+    @Before
+    public void ensureConfiguration() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+    }
+
+    @Test
+    public void testConcurrentConfirmationsGetGaplessInvoiceNumbers() throws Exception {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager).getKey();
+        int categoryId = ticketCategoryRepository.findByEventId(event.getId()).get(0).getId();
+
+        List<String> reservationIds = IntStream.range(0, AVAILABLE_SEATS).mapToObj(i -> {
+            TicketReservationModification tr = new TicketReservationModification();
+            tr.setAmount(1);
+            tr.setTicketCategoryId(categoryId);
+            TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+            return ticketReservationManager.createTicketReservation(event, Collections.singletonList(mod), new ArrayList<>(), DateUtils.addDays(new Date(), 1), Optional.empty(), Optional.empty(), Locale.ENGLISH, false);
+        }).collect(Collectors.toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<PaymentResult>> results = new ArrayList<>();
+            for (String reservationId : reservationIds) {
+                results.add(executor.submit(() -> ticketReservationManager.confirm(null, null, event, reservationId, "email@example.com",
+                    new CustomerName("full name", "full", "name", event), Locale.ENGLISH, "billing address",
+                    ticketReservationManager.totalReservationCostWithVAT(reservationId), Optional.empty(), Optional.of(PaymentProxy.OFFLINE), true, null, null, null)));
+            }
+            for (Future<PaymentResult> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS).isSuccessful());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Integer> invoiceNumbers = ticketReservationManager.findAllInvoices(event.getId()).stream()
+            .map(r -> Integer.valueOf(r.getInvoiceNumber()))
+            .sorted()
+            .collect(Collectors.toList());
+        assertEquals(IntStream.rangeClosed(1, AVAILABLE_SEATS).boxed().collect(Collectors.toList()), invoiceNumbers);
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.repository.EmailMessageRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.Assert.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+@Transactional
+public class KeysetPaginationIntegrationTest {
+
+    private static final int ELEMENTS = 5;
+    private static final int PAGE_SIZE = 2;
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private EmailMessageRepository emailMessageRepository;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private CheckInManager checkInManager;
+    @Autowired
+    private NotificationManager notificationManager;
+
+    private Event event;
+    private List<String> reservationIds;
+
+    @Before
+    public void init() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        event = initEvent(categories, organizationRepository, userManager, eventManager).getKey();
+        int categoryId = ticketCategoryRepository.findByEventId(event.getId()).get(0).getId();
+        reservationIds = new ArrayList<>();
+        for(int i = 0; i < ELEMENTS; i++) {
+            TicketReservationModification tr = new TicketReservationModification();
+            tr.setAmount(1);
+            tr.setTicketCategoryId(categoryId);
+            TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+            String reservationId = ticketReservationManager.createTicketReservation(event, Collections.singletonList(mod), Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.empty(), Optional.empty(), Locale.ENGLISH, false);
+            reservationIds.add(reservationId);
+            Ticket ticket = ticketReservationManager.findTicketsInReservation(reservationId).get(0);
+            ticketRepository.updateTicketOwner(ticket.getUuid(), "attendee" + i + "@example.com", "Attendee " + i, "Attendee", Integer.toString(i));
+            emailMessageRepository.insert(event.getId(), "recipient" + i + "@example.com", null, "Subject " + i, "message", null, UUID.randomUUID().toString(), ZonedDateTime.now());
+        }
+    }
+
+    @Test
+    public void pageTickets() {
+        List<FullTicketInfo> tickets = readAllPages(cursor -> checkInManager.findFullTicketInfo(event.getId(), cursor, null, PAGE_SIZE));
+        assertEquals(ELEMENTS, tickets.size());
+        assertSorted(tickets.stream().map(FullTicketInfo::getId).collect(Collectors.toList()));
+        List<FullTicketInfo> found = checkInManager.findFullTicketInfo(event.getId(), Optional.empty(), "ATTENDEE3@", PAGE_SIZE).getContent();
+        assertEquals(1, found.size());
+        assertEquals("Attendee 3", found.get(0).getFullName());
+    }
+
+    @Test
+    public void pageReservations() {
+        List<TicketReservation> reservations = readAllPages(cursor -> ticketReservationManager.findReservationsInEvent(event.getId(), cursor, null, PAGE_SIZE));
+        List<String> ids = reservations.stream().map(TicketReservation::getId).collect(Collectors.toList());
+        List<String> expected = new ArrayList<>(reservationIds);
+        Collections.sort(expected);
+        assertEquals(expected, ids);
+        String reservationId = reservationIds.get(2);
+        List<TicketReservation> found = ticketReservationManager.findReservationsInEvent(event.getId(), Optional.empty(), reservationId.substring(0, 13), PAGE_SIZE).getContent();
+        assertEquals(1, found.size());
+        assertEquals(reservationId, found.get(0).getId());
+    }
+
+    @Test
+    public void pageEmailMessages() {
+        List<LightweightMailMessage> messages = readAllPages(cursor -> notificationManager.loadMessagesForEvent(event.getId(), cursor, null, PAGE_SIZE));
+        assertEquals(ELEMENTS, messages.size());
+        assertSorted(messages.stream().map(EmailMessage::getId).collect(Collectors.toList()));
+        List<LightweightMailMessage> found = notificationManager.loadMessagesForEvent(event.getId(), Optional.empty(), "subject 4", PAGE_SIZE).getContent();
+        assertEquals(1, found.size());
+        assertEquals("recipient4@example.com", found.get(0).getRecipient());
+    }
+
+    @Test
+    public void rejectInvalidCursor() {
+        assertInvalidCursor(() -> checkInManager.findFullTicketInfo(event.getId(), Optional.of("abc"), null, PAGE_SIZE));
+        assertInvalidCursor(() -> notificationManager.loadMessagesForEvent(event.getId(), Optional.of("1 or 1=1"), null, PAGE_SIZE));
+        assertInvalidCursor(() -> notificationManager.loadArchivedMessagesForEvent(event.getId(), Optional.of("1.5"), null, PAGE_SIZE));
+        assertInvalidCursor(() -> ticketReservationManager.findReservationsInEvent(event.getId(), Optional.of("not-an-id"), null, PAGE_SIZE));
+    }
+
+    private static <T> List<T> readAllPages(Function<Optional<String>, Page<T>> loader) {
+        List<T> result = new ArrayList<>();
+        Optional<String> cursor = Optional.empty();
+        do {
+            Page<T> page = loader.apply(cursor);
+            assertTrue(page.getContent().size() <= PAGE_SIZE);
+            result.addAll(page.getContent());
+            cursor = Optional.ofNullable(page.getNextCursor());
+        } while(cursor.isPresent());
+        return result;
+    }
+
+    private static void assertSorted(List<Integer> ids) {
+        List<Integer> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        assertEquals(sorted, ids);
+    }
+
+    private static void assertInvalidCursor(Runnable operation) {
+        try {
+            operation.run();
+            fail("invalid cursor has been accepted");
+        } catch (Page.InvalidCursorException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.user.UserManager;
+import alfio.model.EmailMessage;
+import alfio.model.Event;
+import alfio.model.LightweightMailMessage;
+import alfio.model.Page;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.system.ConfigurationKeys;
+import alfio.repository.EmailMessageRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+@Transactional
+public class NotificationManagerIntegrationTest {
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private EmailMessageRepository emailMessageRepository;
+    @Autowired
+    private NotificationManager notificationManager;
+
+    private Event event;
+
+    @Before
+    public void init() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        event = initEvent(categories, organizationRepository, userManager, eventManager).getKey();
+        configurationRepository.insertEventLevel(event.getOrganizationId(), event.getId(), ConfigurationKeys.MAIL_ARCHIVE_AFTER_DAYS.name(), "15", "");
+        configurationRepository.insertEventLevel(event.getOrganizationId(), event.getId(), ConfigurationKeys.MAIL_ARCHIVE_RETENTION_DAYS.name(), "30", "");
+    }
+
+    @Test
+    public void archiveSentMessages() {
+        ZonedDateTime now = ZonedDateTime.now();
+        insertMessage("expired", now.minusDays(40));
+        insertMessage("archived", now.minusDays(20));
+        insertMessage("sent", now);
+        insertMessage("waiting", null);
+
+        notificationManager.archiveSentMessages();
+
+        assertEquals(Collections.singletonList("archived"), subjects(notificationManager.loadArchivedMessagesForEvent(event.getId(), Optional.empty(), null, null).getContent()));
+        assertEquals(asList("sent", "waiting"), subjects(notificationManager.loadMessagesForEvent(event.getId(), Optional.empty(), null, null).getContent()));
+        assertEquals(asList("archived", "sent", "waiting"), subjects(notificationManager.loadAllMessagesForEvent(event.getId(), Optional.empty(), null, null).getContent()));
+
+        int archivedId = notificationManager.loadArchivedMessagesForEvent(event.getId(), Optional.empty(), null, null).getContent().get(0).getId();
+        assertEquals("archived", notificationManager.loadSingleMessageForEvent(event.getId(), archivedId).map(EmailMessage::getSubject).orElse(null));
+
+        //running the job again must not archive the same messages twice
+        notificationManager.archiveSentMessages();
+        assertEquals(asList("archived", "sent", "waiting"), subjects(notificationManager.loadAllMessagesForEvent(event.getId(), Optional.empty(), null, null).getContent()));
+    }
+
+    @Test
+    public void pageThroughArchivedAndCurrentMessages() {
+        insertMessage("archived", ZonedDateTime.now().minusDays(20));
+        insertMessage("sent", ZonedDateTime.now());
+        insertMessage("waiting", null);
+        notificationManager.archiveSentMessages();
+
+        List<String> subjects = new ArrayList<>();
+        Optional<String> cursor = Optional.empty();
+        int pages = 0;
+        do {
+            Page<LightweightMailMessage> page = notificationManager.loadAllMessagesForEvent(event.getId(), cursor, null, 1);
+            subjects.addAll(subjects(page.getContent()));
+            cursor = Optional.ofNullable(page.getNextCursor());
+            pages++;
+        } while(cursor.isPresent() && pages < 10);
+        assertEquals(asList("archived", "sent", "waiting"), subjects);
+
+        assertEquals(Collections.singletonList("sent"), subjects(notificationManager.loadAllMessagesForEvent(event.getId(), Optional.empty(), "SENT@", null).getContent()));
+    }
+
+    private void insertMessage(String subject, ZonedDateTime sentTimestamp) {
+        emailMessageRepository.insert(event.getId(), subject + "@example.com", null, subject, "message", null, subject, ZonedDateTime.now());
+        if(sentTimestamp != null) {
+            emailMessageRepository.updateStatusToSent(event.getId(), subject, sentTimestamp, Collections.singletonList("WAITING"));
+        }
+    }
+
+    private static List<String> subjects(List<LightweightMailMessage> messages) {
+        return messages.stream().map(EmailMessage::getSubject).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.OfflinePaymentReconciliation.Result;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.model.transaction.PaymentProxy;
+import alfio.repository.OfflinePaymentReconciliationRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import alfio.util.Json;
+import alfio.util.MonetaryUtil;
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * Not transactional: each chunk of the reconciliation is committed in its own transaction.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+public class OfflinePaymentReconciliationManagerIntegrationTest {
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private OfflinePaymentReconciliationRepository reconciliationRepository;
+    @Autowired
+    private OfflinePaymentReconciliationManager reconciliationManager;
+
+    @Test
+    public void failedConfirmationDoesNotRollbackTheChunk() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Pair<Event, String> pair = initEvent(categories, organizationRepository, userManager, eventManager);
+        Event event = pair.getKey();
+        String owner = pair.getValue() + "_owner";
+        int categoryId = ticketCategoryRepository.findByEventId(event.getId()).get(0).getId();
+
+        String first = createReservation(event, categoryId, true);
+        //still pending: the validation in completeOfflinePayment fails
+        String pending = createReservation(event, categoryId, false);
+        String second = createReservation(event, categoryId, true);
+
+        List<List<String>> payments = asList(paymentFor(first), paymentFor(pending), paymentFor(second));
+        int id = reconciliationRepository.insert(event.getId(), owner, Json.toJson(payments), payments.size(), ZonedDateTime.now()).getKey();
+
+        reconciliationManager.processReconciliation(id);
+
+        OfflinePaymentReconciliation reconciliation = reconciliationRepository.findById(id);
+        assertEquals(OfflinePaymentReconciliation.Status.COMPLETED, reconciliation.getStatus());
+        assertEquals(3, reconciliation.getProcessedCount());
+        assertEquals(2, reconciliation.getConfirmedCount());
+        assertEquals(1, reconciliation.getFailedCount());
+        List<Result> results = reconciliationRepository.findResults(id);
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("invalid payment method", results.get(1).getMessage());
+        assertTrue(results.get(2).isSuccess());
+        assertTrue(reconciliationRepository.findReservationsToNotify(id).isEmpty());
+
+        assertEquals(TicketReservation.TicketReservationStatus.COMPLETE, ticketReservationRepository.findReservationById(first).getStatus());
+        assertEquals(TicketReservation.TicketReservationStatus.PENDING, ticketReservationRepository.findReservationById(pending).getStatus());
+        assertEquals(TicketReservation.TicketReservationStatus.COMPLETE, ticketReservationRepository.findReservationById(second).getStatus());
+    }
+
+    private String createReservation(Event event, int categoryId, boolean confirmOffline) {
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setAmount(1);
+        tr.setTicketCategoryId(categoryId);
+        TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+        String reservationId = ticketReservationManager.createTicketReservation(event, Collections.singletonList(mod), new ArrayList<>(), DateUtils.addDays(new Date(), 1), Optional.empty(), Optional.empty(), Locale.ENGLISH, false);
+        if(confirmOffline) {
+            assertTrue(ticketReservationManager.confirm(null, null, event, reservationId, "email@example.com",
+                new CustomerName("full name", "full", "name", event), Locale.ENGLISH, "billing address",
+                ticketReservationManager.totalReservationCostWithVAT(reservationId), Optional.empty(), Optional.of(PaymentProxy.OFFLINE), true, null, null, null).isSuccessful());
+            assertEquals(TicketReservation.TicketReservationStatus.OFFLINE_PAYMENT, ticketReservationRepository.findReservationById(reservationId).getStatus());
+        }
+        return reservationId;
+    }
+
+    private List<String> paymentFor(String reservationId) {
+        int cents = ticketReservationManager.totalReservationCostWithVAT(reservationId).getPriceWithVAT();
+        return asList(reservationId, MonetaryUtil.centsToUnit(cents).toPlainString());
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.Event;
+import alfio.model.OfflinePaymentReconciliation;
+import alfio.model.TicketReservation;
+import alfio.model.TotalPrice;
+import alfio.repository.OfflinePaymentReconciliationRepository;
+import alfio.repository.TicketReservationRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OfflinePaymentReconciliationManagerTest {
+
+    private static final int RECONCILIATION_ID = 1;
+    private static final int EVENT_ID = 2;
+    private static final String USERNAME = "username";
+    private static final String FIRST_RESERVATION = "abcdefgh-0000-0000-0000-000000000001";
+    private static final String SECOND_RESERVATION = "ijklmnop-0000-0000-0000-000000000002";
+    private static final String INSERT_RESULT = "insert";
+
+    @Mock
+    private EventManager eventManager;
+    @Mock
+    private TicketReservationManager ticketReservationManager;
+    @Mock
+    private TicketReservationRepository ticketReservationRepository;
+    @Mock
+    private OfflinePaymentReconciliationRepository reconciliationRepository;
+    @Mock
+    private NamedParameterJdbcTemplate jdbc;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TransactionStatus transactionStatus;
+    @Mock
+    private OfflinePaymentReconciliation reconciliation;
+    @Mock
+    private Event event;
+    @Mock
+    private TicketReservation first;
+    @Mock
+    private TicketReservation second;
+
+    private OfflinePaymentReconciliationManager manager;
+
+    @Before
+    public void setUp() {
+        when(reconciliationRepository.acquireLease(eq(RECONCILIATION_ID), any(), any())).thenReturn(1);
+        when(reconciliationRepository.findById(RECONCILIATION_ID)).thenReturn(reconciliation);
+        when(reconciliation.getEventId()).thenReturn(EVENT_ID);
+        when(reconciliation.getUsername()).thenReturn(USERNAME);
+        when(reconciliation.getProcessedCount()).thenReturn(0);
+        when(reconciliation.getPayments()).thenReturn(asList(
+            asList("ABCDEFGH", "10.00"),
+            asList("abcdefgh", "10.00"),
+            asList("zzzzzzzz", "5"),
+            Collections.singletonList("abcdefgh"),
+            asList("ijklmnop", "1.00")));
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(eventManager.getSingleEventById(EVENT_ID, USERNAME)).thenReturn(event);
+        when(first.getId()).thenReturn(FIRST_RESERVATION);
+        when(second.getId()).thenReturn(SECOND_RESERVATION);
+        when(ticketReservationRepository.findByShortIdsInEvent(anyListOf(String.class), eq(EVENT_ID))).thenReturn(asList(first, second));
+        when(ticketReservationRepository.findReservationsByIds(anyListOf(String.class))).thenReturn(asList(first, second));
+        Map<String, TotalPrice> totals = new HashMap<>();
+        totals.put(FIRST_RESERVATION, new TotalPrice(1000, 0, 0, 0));
+        totals.put(SECOND_RESERVATION, new TotalPrice(2000, 0, 0, 0));
+        when(ticketReservationManager.totalReservationCostWithVAT(eq(event), anyListOf(TicketReservation.class))).thenReturn(totals);
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        when(reconciliationRepository.bulkInsertResult()).thenReturn(INSERT_RESULT);
+        manager = new OfflinePaymentReconciliationManager(eventManager, ticketReservationManager, ticketReservationRepository, reconciliationRepository, jdbc, transactionManager);
+    }
+
+    @Test
+    public void confirmMatchingPayments() {
+        when(reconciliationRepository.updateProgress(eq(RECONCILIATION_ID), eq(0), eq(5), anyInt(), anyInt(), any(), any())).thenReturn(1);
+        when(reconciliationRepository.findReservationsToNotify(RECONCILIATION_ID)).thenReturn(Collections.emptyList(), Collections.singletonList(FIRST_RESERVATION));
+
+        manager.processReconciliation(RECONCILIATION_ID);
+
+        verify(ticketReservationRepository).findByShortIdsInEvent(eq(asList("abcdefgh", "zzzzzzzz", "ijklmnop")), eq(EVENT_ID));
+        verify(ticketReservationRepository).lockReservationsForUpdate(eq(asList(FIRST_RESERVATION, SECOND_RESERVATION)));
+        verify(ticketReservationManager).completeOfflinePayment(event, first);
+        verify(ticketReservationManager, never()).completeOfflinePayment(event, second);
+
+        verify(reconciliationRepository).updateProgress(eq(RECONCILIATION_ID), eq(0), eq(5), eq(1), eq(4), any(), any());
+        ArgumentCaptor<MapSqlParameterSource[]> results = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(jdbc).batchUpdate(eq(INSERT_RESULT), results.capture());
+        MapSqlParameterSource[] saved = results.getValue();
+        assertEquals(5, saved.length);
+        assertEquals(1, saved[0].getValue("row"));
+        assertEquals(true, saved[0].getValue("success"));
+        assertEquals("ABCDEFGH", saved[0].getValue("reservationId"));
+        assertEquals(FIRST_RESERVATION, saved[0].getValue("notifyReservationId"));
+        assertNull(saved[1].getValue("notifyReservationId"));
+        assertEquals("payment already registered by a previous row", saved[1].getValue("message"));
+        assertEquals("reservation not found", saved[2].getValue("message"));
+        assertEquals(false, saved[3].getValue("success"));
+        assertEquals("paid price differs from due price", saved[4].getValue("message"));
+
+        verify(reconciliationRepository).updateStatus(eq(RECONCILIATION_ID), eq(OfflinePaymentReconciliation.Status.COMPLETED.name()), any());
+        verify(ticketReservationManager).sendOfflinePaymentConfirmation(event, FIRST_RESERVATION);
+        verify(reconciliationRepository).markAsNotified(RECONCILIATION_ID, FIRST_RESERVATION);
+    }
+
+    @Test
+    public void sendPendingConfirmationsWhenResumed() {
+        when(reconciliation.getProcessedCount()).thenReturn(5);
+        when(reconciliationRepository.findReservationsToNotify(RECONCILIATION_ID)).thenReturn(Collections.singletonList(FIRST_RESERVATION));
+
+        manager.processReconciliation(RECONCILIATION_ID);
+
+        verify(ticketReservationManager, never()).completeOfflinePayment(any(), any());
+        verify(ticketReservationManager).sendOfflinePaymentConfirmation(event, FIRST_RESERVATION);
+        verify(reconciliationRepository).markAsNotified(RECONCILIATION_ID, FIRST_RESERVATION);
+        verify(reconciliationRepository).updateStatus(eq(RECONCILIATION_ID), eq(OfflinePaymentReconciliation.Status.COMPLETED.name()), any());
+    }
+
+    @Test
+    public void stopIfTakenOverByAnotherNode() {
+        when(reconciliationRepository.updateProgress(eq(RECONCILIATION_ID), eq(0), eq(5), anyInt(), anyInt(), any(), any())).thenReturn(0);
+
+        manager.processReconciliation(RECONCILIATION_ID);
+
+        verify(transactionStatus).setRollbackOnly();
+        verify(jdbc, never()).batchUpdate(anyString(), any(MapSqlParameterSource[].class));
+        verify(reconciliationRepository, never()).updateStatus(anyInt(), anyString(), any());
+        verify(ticketReservationManager, never()).sendOfflinePaymentConfirmation(any(), anyString());
+    }
+}
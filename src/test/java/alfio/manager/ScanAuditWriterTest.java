@@ -0,0 +1,140 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.config.Initializer;
+import alfio.manager.support.CheckInStatus;
+import alfio.model.audit.ScanAudit;
+import alfio.repository.audit.ScanAuditRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ScanAuditWriterTest {
+
+    private static final String INSERT = "insert";
+
+    @Rule
+    public TemporaryFolder dumpDirectory = new TemporaryFolder();
+
+    private NamedParameterJdbcTemplate jdbc;
+    private ScanAuditWriter writer;
+
+    @Before
+    public void setUp() {
+        jdbc = mock(NamedParameterJdbcTemplate.class);
+        ScanAuditRepository scanAuditRepository = mock(ScanAuditRepository.class);
+        when(scanAuditRepository.bulkInsert()).thenReturn(INSERT);
+        Environment environment = mock(Environment.class);
+        when(environment.acceptsProfiles(Initializer.PROFILE_DISABLE_JOBS)).thenReturn(true);
+        when(environment.getProperty(eq(ScanAuditWriter.DUMP_DIR_PROPERTY), anyString())).thenReturn(dumpDirectory.getRoot().getAbsolutePath());
+        writer = new ScanAuditWriter(scanAuditRepository, jdbc, mock(PlatformTransactionManager.class), environment);
+    }
+
+    @After
+    public void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        writer.shutdown();
+    }
+
+    @Test
+    public void flushInBatches() {
+        int count = ScanAuditWriter.BATCH_SIZE + 1;
+        for(int i = 0; i < count; i++) {
+            writer.record("uuid-" + i, 1, "user", CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN);
+        }
+        assertEquals(count, writer.flush());
+        ArgumentCaptor<MapSqlParameterSource[]> batches = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(jdbc, times(2)).batchUpdate(eq(INSERT), batches.capture());
+        List<MapSqlParameterSource[]> values = batches.getAllValues();
+        assertEquals(ScanAuditWriter.BATCH_SIZE, values.get(0).length);
+        assertEquals(1, values.get(1).length);
+        MapSqlParameterSource first = values.get(0)[0];
+        assertEquals("uuid-0", first.getValue("ticketUuid"));
+        assertTrue(first.getValue("scanTs") instanceof Date);
+        assertEquals(0, writer.flush());
+    }
+
+    @Test
+    public void writeSynchronouslyWhenBufferIsFull() {
+        for(int i = 0; i < ScanAuditWriter.CAPACITY; i++) {
+            writer.record("uuid-" + i, 1, "user", CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN);
+        }
+        verify(jdbc, never()).batchUpdate(anyString(), any(MapSqlParameterSource[].class));
+        writer.record("overflow", 1, "user", CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN);
+        verify(jdbc, times(ScanAuditWriter.CAPACITY / ScanAuditWriter.BATCH_SIZE)).batchUpdate(eq(INSERT), any(MapSqlParameterSource[].class));
+        //the entry which triggered the flush is buffered
+        assertEquals(1, writer.flush());
+    }
+
+    @Test
+    public void bufferEntryOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        writer.record("uuid", 1, "user", CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN);
+        assertEquals(0, writer.flush());
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        assertEquals(1, writer.flush());
+    }
+
+    @Test
+    public void discardEntryOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        writer.record("uuid", 1, "user", CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN);
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertEquals(0, writer.flush());
+        verifyZeroInteractions(jdbc);
+    }
+
+    @Test
+    public void dumpEntriesWhichCannotBeWrittenAndReplayThem() {
+        when(jdbc.batchUpdate(eq(INSERT), any(MapSqlParameterSource[].class))).thenThrow(new IllegalStateException("database is down"));
+        when(jdbc.update(eq(INSERT), any(MapSqlParameterSource.class))).thenThrow(new IllegalStateException("database is down"));
+        writer.record("uuid", 1, "user", CheckInStatus.SUCCESS, ScanAudit.Operation.SCAN);
+        writer.shutdown();
+        assertEquals(1, dumpDirectory.getRoot().listFiles().length);
+
+        reset(jdbc);
+        writer.replayDumps();
+        ArgumentCaptor<MapSqlParameterSource[]> batch = ArgumentCaptor.forClass(MapSqlParameterSource[].class);
+        verify(jdbc).batchUpdate(eq(INSERT), batch.capture());
+        assertEquals(1, batch.getValue().length);
+        assertEquals("uuid", batch.getValue()[0].getValue("ticketUuid"));
+        assertEquals(0, dumpDirectory.getRoot().listFiles().length);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.support.JobShard;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.JobShardStatus;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.EventRepository;
+import alfio.repository.JobShardRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.Assert.*;
+
+/**
+ * Simulates two nodes sharing the same database.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+@Transactional
+public class ShardedJobExecutorIntegrationTest {
+
+    private static final String JOB_NAME = "TestJob";
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private JobShardRepository jobShardRepository;
+    @Autowired
+    private Environment environment;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+
+    private ShardedJobExecutor nodeA;
+    private ShardedJobExecutor nodeB;
+    private final List<Integer> processedByA = new ArrayList<>();
+    private final List<Integer> processedByB = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        nodeA = new ShardedJobExecutor(jobShardRepository, environment);
+        nodeB = new ShardedJobExecutor(jobShardRepository, environment);
+        nodeB.register(JOB_NAME, 60_000L, shard -> {
+            processedByB.add(shard.getIndex());
+            return 1;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    @Test
+    public void eachShardIsProcessedOnce() {
+        nodeA.register(JOB_NAME, 60_000L, shard -> {
+            processedByA.add(shard.getIndex());
+            if(processedByA.size() == 1) {
+                //the other node polls while the first shard is being processed
+                assertEquals(3, nodeB.executePendingShards(JOB_NAME));
+            }
+            return 1;
+        });
+
+        assertEquals(0, nodeA.executePendingShards(JOB_NAME));
+
+        nodeA.requestExecution(JOB_NAME);
+        assertEquals(1, nodeA.executePendingShards(JOB_NAME));
+        assertEquals(Collections.singletonList(0), processedByA);
+        assertEquals(Arrays.asList(1, 2, 3), processedByB);
+
+        //nothing to do until the next request
+        assertEquals(0, nodeA.executePendingShards(JOB_NAME));
+        assertEquals(0, nodeB.executePendingShards(JOB_NAME));
+
+        nodeB.requestExecution(JOB_NAME);
+        assertEquals(4, nodeB.executePendingShards(JOB_NAME));
+
+        List<JobShardStatus> status = nodeA.getShardStatus().stream().filter(s -> s.getJobName().equals(JOB_NAME)).collect(Collectors.toList());
+        assertEquals(4, status.size());
+        status.forEach(s -> {
+            assertEquals(2, s.getExecutions());
+            assertEquals(0, s.getFailures());
+            assertEquals(s.getRequestedRound(), s.getStartedRound());
+            assertNull(s.getLeaseOwner());
+        });
+        assertEquals(1L, nodeA.getLocalStatistics().get(JOB_NAME).getCalls());
+        assertEquals(7L, nodeB.getLocalStatistics().get(JOB_NAME).getCalls());
+    }
+
+    @Test
+    public void failuresAreRecorded() {
+        nodeA.register(JOB_NAME, 60_000L, shard -> {
+            throw new IllegalStateException("failure");
+        });
+        nodeA.requestExecution(JOB_NAME);
+        assertEquals(0, nodeA.executePendingShards(JOB_NAME));
+        assertTrue(nodeA.getShardStatus().stream().filter(s -> s.getJobName().equals(JOB_NAME)).allMatch(s -> s.getFailures() == 1 && s.getLeaseOwner() == null));
+        assertEquals(4L, nodeA.getLocalStatistics().get(JOB_NAME).getErrors());
+    }
+
+    @Test
+    public void onlyTheOwnerCanRenewTheLease() {
+        List<Integer> renewed = new ArrayList<>();
+        nodeA.register(JOB_NAME, 60_000L, shard -> {
+            String owner = nodeA.getShardStatus().stream()
+                .filter(s -> s.getJobName().equals(JOB_NAME) && s.getShard() == shard.getIndex())
+                .findFirst().map(JobShardStatus::getLeaseOwner).orElseThrow(IllegalStateException::new);
+            ZonedDateTime expiration = ZonedDateTime.now(Clock.systemUTC()).plusHours(1);
+            assertEquals(0, jobShardRepository.renewLease(JOB_NAME, shard.getIndex(), "another-node", expiration));
+            renewed.add(jobShardRepository.renewLease(JOB_NAME, shard.getIndex(), owner, expiration));
+            return 1;
+        });
+        nodeA.requestExecution(JOB_NAME);
+        assertEquals(4, nodeA.executePendingShards(JOB_NAME));
+        assertEquals(Arrays.asList(1, 1, 1, 1), renewed);
+        //the lease is released at the end of the execution
+        assertTrue(nodeA.getShardStatus().stream().filter(s -> s.getJobName().equals(JOB_NAME)).allMatch(s -> s.getLeaseOwner() == null));
+    }
+
+    @Test
+    public void eachEventBelongsToExactlyOneShard() {
+        ensureMinimalConfiguration(configurationRepository);
+        List<Integer> eventIds = IntStream.range(0, 3).mapToObj(i -> createEvent().getId()).collect(Collectors.toList());
+        Date validity = DateUtils.addHours(new Date(), -1);
+        Date expiration = new Date();
+        List<String> reservationIds = eventIds.stream().map(eventId -> {
+            String id = UUID.randomUUID().toString();
+            ticketReservationRepository.createNewReservation(id, validity, null, "en", eventId);
+            return id;
+        }).collect(Collectors.toList());
+
+        List<JobShard> shards = IntStream.range(0, 4).mapToObj(i -> new JobShard(i, 4)).collect(Collectors.toList());
+        List<Integer> eventsInShards = shards.stream()
+            .flatMap(s -> eventRepository.findAllInShard(s.getIndex(), s.getCount()).stream().map(Event::getId))
+            .filter(eventIds::contains)
+            .collect(Collectors.toList());
+        assertEquals(eventIds.size(), eventsInShards.size());
+        assertTrue(eventsInShards.containsAll(eventIds));
+
+        List<String> expiredInShards = shards.stream()
+            .flatMap(s -> ticketReservationRepository.findExpiredReservation(expiration, s.getIndex(), s.getCount()).stream())
+            .filter(reservationIds::contains)
+            .collect(Collectors.toList());
+        assertEquals(reservationIds.size(), expiredInShards.size());
+        assertTrue(expiredInShards.containsAll(reservationIds));
+        assertTrue(ticketReservationRepository.findExpiredReservation(expiration, JobShard.ALL.getIndex(), JobShard.ALL.getCount()).containsAll(reservationIds));
+    }
+
+    private Event createEvent() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", 10,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        return initEvent(categories, organizationRepository, userManager, eventManager).getKey();
+    }
+}
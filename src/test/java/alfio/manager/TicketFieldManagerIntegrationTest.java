@@ -0,0 +1,125 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.Ticket;
+import alfio.model.TicketFieldConfiguration;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.TicketFieldRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+@Transactional
+public class TicketFieldManagerIntegrationTest {
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketFieldRepository ticketFieldRepository;
+    @Autowired
+    private TicketFieldManager ticketFieldManager;
+
+    @Before
+    public void ensureConfiguration() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+    }
+
+    @Test
+    public void testUpsertAndDeleteValues() {
+        List<TicketCategoryModification> categories = singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager).getKey();
+        assertTrue(ticketFieldManager.findAdditionalFieldsForEvent(event.getId()).isEmpty());
+
+        ticketFieldRepository.insertConfiguration(event.getId(), "jobTitle", 0, "input:text", null, 255, 0, false, TicketFieldConfiguration.Context.ATTENDEE, -1);
+        ticketFieldRepository.insertConfiguration(event.getId(), "company", 1, "input:text", null, 255, 0, false, TicketFieldConfiguration.Context.ATTENDEE, -1);
+        ticketFieldManager.invalidateConfiguration(event.getId());
+        assertEquals(2, ticketFieldManager.findAdditionalFieldsForEvent(event.getId()).size());
+
+        List<Ticket> tickets = ticketRepository.findFreeByEventId(event.getId());
+        int first = tickets.get(0).getId();
+        int second = tickets.get(1).getId();
+
+        Map<Integer, Map<String, List<String>>> values = new HashMap<>();
+        values.put(first, fields("developer", "alf.io"));
+        values.put(second, fields("tester", "alf.io"));
+        ticketFieldManager.updateOrInsert(values, event);
+
+        assertEquals("developer", ticketFieldRepository.findAllValuesForTicketId(first).get("jobTitle"));
+        assertEquals("tester", ticketFieldRepository.findAllValuesForTicketId(second).get("jobTitle"));
+
+        ticketFieldManager.updateOrInsert(Collections.singletonMap(first, fields("architect", "")), event);
+        Map<String, String> firstValues = ticketFieldRepository.findAllValuesForTicketId(first);
+        assertEquals("architect", firstValues.get("jobTitle"));
+        assertFalse(firstValues.containsKey("company"));
+        assertEquals(2, ticketFieldRepository.findAllValuesForTicketId(second).size());
+    }
+
+    private static Map<String, List<String>> fields(String jobTitle, String company) {
+        Map<String, List<String>> fields = new HashMap<>();
+        fields.put("jobTitle", singletonList(jobTitle));
+        fields.put("company", singletonList(company));
+        fields.put("unknown", singletonList("ignored"));
+        return fields;
+    }
+}
@@ -25,6 +25,8 @@ import alfio.manager.user.UserManager;
 import alfio.model.*;
 import alfio.model.modification.*;
 import alfio.model.transaction.PaymentProxy;
+import alfio.repository.AdditionalServiceItemRepository;
+import alfio.repository.AdditionalServiceRepository;
 import alfio.repository.TicketRepository;
 import alfio.repository.system.ConfigurationRepository;
 import alfio.repository.user.OrganizationRepository;
@@ -44,6 +46,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.ZonedDateTime;
 import java.util.*;
 
 import static alfio.test.util.IntegrationTestUtil.*;
@@ -80,6 +83,10 @@ public class TicketReservationManagerIntegrationTest {
     private ConfigurationRepository configurationRepository;
     @Autowired
     private WaitingQueueManager waitingQueueManager;
+    @Autowired
+    private AdditionalServiceRepository additionalServiceRepository;
+    @Autowired
+    private AdditionalServiceItemRepository additionalServiceItemRepository;
 
     @Before
     public void ensureConfiguration() {
@@ -295,4 +302,44 @@ public class TicketReservationManagerIntegrationTest {
         result = ticketReservationManager.confirm("", null, event.getEvent(), reservationId, "test@test.ch", new CustomerName("full name", "full", "name", event.getEvent()), Locale.ENGLISH, "", reservationCost, Optional.empty(), Optional.of(PaymentProxy.OFFLINE), false, null, null, null);
         assertTrue(result.isSuccessful());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAdditionalServicesWithLimitedQuantity() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager).getKey();
+        int categoryId = eventStatisticsManager.loadTicketCategories(event).get(0).getId();
+        ZonedDateTime now = ZonedDateTime.now(event.getZoneId());
+        int additionalServiceId = additionalServiceRepository.insert(event.getId(), 500, true, 0, 3, -1, now.minusDays(1), now.plusDays(1),
+            BigDecimal.ZERO, AdditionalService.VatType.NONE, AdditionalService.AdditionalServiceType.DONATION, AdditionalService.SupplementPolicy.OPTIONAL_UNLIMITED_AMOUNT).getKey();
+
+        String reservationId = reserveWithAdditionalService(event, categoryId, additionalServiceId, 2);
+        List<AdditionalServiceItem> items = additionalServiceItemRepository.findByReservationUuid(reservationId);
+        assertEquals(2, items.size());
+        assertTrue(items.stream().allMatch(i -> i.getStatus() == AdditionalServiceItem.AdditionalServiceItemStatus.PENDING && i.getFinalPriceCts() == 500));
+        assertEquals(2000, ticketReservationManager.totalReservationCostWithVAT(reservationId).getPriceWithVAT());
+
+        try {
+            reserveWithAdditionalService(event, categoryId, additionalServiceId, 2);
+            Assert.fail("the additional service has been overbooked");
+        } catch (TicketReservationManager.NotEnoughTicketsException e) {
+            //expected
+        }
+    }
+
+    private String reserveWithAdditionalService(Event event, int categoryId, int additionalServiceId, int quantity) {
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setAmount(1);
+        tr.setTicketCategoryId(categoryId);
+        AdditionalServiceReservationModification asr = new AdditionalServiceReservationModification();
+        asr.setAdditionalServiceId(additionalServiceId);
+        asr.setQuantity(quantity);
+        List<ASReservationWithOptionalCodeModification> additionalServices = new ArrayList<>();
+        additionalServices.add(new ASReservationWithOptionalCodeModification(asr, Optional.empty()));
+        return ticketReservationManager.createTicketReservation(event, Collections.singletonList(new TicketReservationWithOptionalCodeModification(tr, Optional.empty())),
+            additionalServices, DateUtils.addDays(new Date(), 1), Optional.empty(), Optional.empty(), Locale.ENGLISH, false);
+    }
+}
@@ -18,8 +18,10 @@ package alfio.manager;
 
 import alfio.controller.form.UpdateTicketOwnerForm;
 import alfio.manager.plugin.PluginManager;
+import alfio.manager.support.JobShard;
 import alfio.manager.support.PartialTicketTextGenerator;
 import alfio.manager.support.PaymentResult;
+import alfio.manager.support.ReservationExpiryQueue;
 import alfio.manager.support.TextTemplateGenerator;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.*;
@@ -29,6 +31,7 @@ import alfio.model.modification.TicketReservationWithOptionalCodeModification;
 import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.Transaction;
 import alfio.model.user.Organization;
 import alfio.model.user.Role;
 import alfio.repository.*;
@@ -37,9 +40,11 @@ import alfio.util.TemplateManager;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.context.MessageSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -51,6 +56,7 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static alfio.model.TicketReservation.TicketReservationStatus.*;
@@ -127,6 +133,14 @@ public class TicketReservationManagerTest {
     private AdditionalServiceItemRepository additionalServiceItemRepository;
     @Mock
     private InvoiceSequencesRepository invoiceSequencesRepository;
+    @Mock
+    private InvoiceDocumentRepository invoiceDocumentRepository;
+    @Mock
+    private TicketFieldManager ticketFieldManager;
+    @Mock
+    private ReservationExpiryQueue reservationExpiryQueue;
+    @Mock
+    private NamedParameterJdbcTemplate jdbc;
 
 
     @Mock
@@ -167,7 +181,11 @@ public class TicketReservationManagerTest {
             additionalServiceRepository,
             additionalServiceItemRepository,
             additionalServiceTextRepository,
-            invoiceSequencesRepository);
+            invoiceSequencesRepository,
+            invoiceDocumentRepository,
+            ticketFieldManager,
+            reservationExpiryQueue,
+            jdbc);
 
         when(event.getId()).thenReturn(EVENT_ID);
         when(event.getOrganizationId()).thenReturn(ORGANIZATION_ID);
@@ -176,7 +194,7 @@ public class TicketReservationManagerTest {
         when(specialPrice.getCode()).thenReturn(SPECIAL_PRICE_CODE);
         when(specialPrice.getId()).thenReturn(SPECIAL_PRICE_ID);
         when(eventRepository.findByReservationId(eq(RESERVATION_ID))).thenReturn(event);
-        when(eventRepository.findAll()).thenReturn(Collections.singletonList(event));
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(Collections.singletonList(event));
         when(configurationManager.getRequiredValue(Configuration.from(event.getOrganizationId(), event.getId(), ConfigurationKeys.BASE_URL))).thenReturn(BASE_URL);
         when(configurationManager.hasAllConfigurationsForInvoice(eq(event))).thenReturn(false);
         when(ticketReservationRepository.findReservationById(RESERVATION_ID)).thenReturn(ticketReservation);
@@ -300,6 +318,24 @@ public class TicketReservationManagerTest {
         verify(notificationManager, times(1)).sendSimpleEmail(eq(event), eq(originalEmail), anyString(), any(TextTemplateGenerator.class));
     }
 
+    @Test
+    public void updateTicketOwnerExcludingAdditionalFields() {
+        final String ticketId = "abcde";
+        final String originalEmail = "me@myaddress.com";
+        final String originalName = "First Last";
+        Ticket original = mock(Ticket.class);
+        when(original.getStatus()).thenReturn(TicketStatus.FREE);
+        Ticket modified = mock(Ticket.class);
+        UpdateTicketOwnerForm form = new UpdateTicketOwnerForm();
+        when(event.getShortName()).thenReturn("short-name");
+        initUpdateTicketOwner(original, modified, ticketId, originalEmail, originalName, form);
+        trm.updateTicketOwnerExcludingAdditionalFields(original, Locale.ENGLISH, event, form, (a) -> null, (b) -> null, Optional.empty());
+        verify(ticketRepository).updateOptionalTicketInfo(eq(ticketId), anyString());
+        verifyZeroInteractions(ticketFieldManager);
+        trm.updateTicketOwner(original, Locale.ENGLISH, event, form, (a) -> null, (b) -> null, Optional.empty());
+        verify(ticketFieldManager).updateOrInsert(eq(form.getAdditional()), eq(original), eq(event));
+    }
+
     @Test
     public void sendAssignmentReminderBeforeEventEnd() {
         TicketReservation reservation = mock(TicketReservation.class);
@@ -310,11 +346,12 @@ public class TicketReservationManagerTest {
         when(reservation.getUserLanguage()).thenReturn("en");
         when(reservation.getValidity()).thenReturn(new Date());
         when(ticketReservationRepository.findReservationById(eq("abcd"))).thenReturn(reservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList("abcd")))).thenReturn(singletonList(reservation));
 
         when(eventRepository.findByReservationId("abcd")).thenReturn(event);
 
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.findAllReservationsConfirmedButNotAssigned(anyInt())).thenReturn(singletonList("abcd"));
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.findReservationsWaitingForAssignmentReminder(anyListOf(Integer.class), any())).thenReturn(singletonList(new ReservationIdAndEventId("abcd", EVENT_ID)));
         trm.sendReminderForTicketAssignment();
         verify(notificationManager, times(1)).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
     }
@@ -327,12 +364,13 @@ public class TicketReservationManagerTest {
         when(reservation.latestNotificationTimestamp(any())).thenReturn(Optional.empty());
         when(reservation.getId()).thenReturn("abcd");
         when(ticketReservationRepository.findReservationById(eq("abcd"))).thenReturn(reservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList("abcd")))).thenReturn(singletonList(reservation));
 
         when(eventRepository.findByReservationId("abcd")).thenReturn(event);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
         when(event.getBegin()).thenReturn(ZonedDateTime.now().minusDays(1));
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.findAllReservationsConfirmedButNotAssigned(anyInt())).thenReturn(singletonList("abcd"));
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.findReservationsWaitingForAssignmentReminder(anyListOf(Integer.class), any())).thenReturn(singletonList(new ReservationIdAndEventId("abcd", EVENT_ID)));
         trm.sendReminderForTicketAssignment();
         verify(notificationManager, never()).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
     }
@@ -347,12 +385,13 @@ public class TicketReservationManagerTest {
         when(reservation.getUserLanguage()).thenReturn("en");
         when(reservation.getValidity()).thenReturn(new Date());
         when(ticketReservationRepository.findReservationById(eq("abcd"))).thenReturn(reservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList("abcd")))).thenReturn(singletonList(reservation));
 
         when(eventRepository.findByReservationId("abcd")).thenReturn(event);
         when(event.getZoneId()).thenReturn(ZoneId.of("GMT-4"));
         when(event.getBegin()).thenReturn(ZonedDateTime.now(ZoneId.of("GMT-4")).plusDays(1));
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.findAllReservationsConfirmedButNotAssigned(anyInt())).thenReturn(singletonList("abcd"));
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.findReservationsWaitingForAssignmentReminder(anyListOf(Integer.class), any())).thenReturn(singletonList(new ReservationIdAndEventId("abcd", EVENT_ID)));
         trm.sendReminderForTicketAssignment();
         verify(notificationManager, times(1)).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
     }
@@ -365,12 +404,13 @@ public class TicketReservationManagerTest {
         when(reservation.latestNotificationTimestamp(any())).thenReturn(Optional.empty());
         when(reservation.getId()).thenReturn("abcd");
         when(ticketReservationRepository.findReservationById(eq("abcd"))).thenReturn(reservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList("abcd")))).thenReturn(singletonList(reservation));
 
         when(eventRepository.findByReservationId("abcd")).thenReturn(event);
         when(event.getZoneId()).thenReturn(ZoneId.of("UTC-8"));
         when(event.getBegin()).thenReturn(ZonedDateTime.now(ZoneId.of("UTC-8")));//same day
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.findAllReservationsConfirmedButNotAssigned(anyInt())).thenReturn(singletonList("abcd"));
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.findReservationsWaitingForAssignmentReminder(anyListOf(Integer.class), any())).thenReturn(singletonList(new ReservationIdAndEventId("abcd", EVENT_ID)));
         trm.sendReminderForTicketAssignment();
         verify(notificationManager, never()).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
     }
@@ -383,13 +423,14 @@ public class TicketReservationManagerTest {
         when(reservation.latestNotificationTimestamp(any())).thenReturn(Optional.empty());
         when(reservation.getId()).thenReturn("abcd");
         when(ticketReservationRepository.findReservationById(eq("abcd"))).thenReturn(reservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList("abcd")))).thenReturn(singletonList(reservation));
 
         when(eventRepository.findByReservationId("abcd")).thenReturn(event);
         when(event.getZoneId()).thenReturn(ZoneId.of("UTC-8"));
         when(event.getBegin()).thenReturn(ZonedDateTime.now(ZoneId.of("UTC-8")).plusMonths(3).plusDays(1));
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.findAllReservationsConfirmedButNotAssigned(anyInt())).thenReturn(singletonList("abcd"));
-        List<Event> events = trm.getNotifiableEventsStream().collect(Collectors.toList());
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.findReservationsWaitingForAssignmentReminder(anyListOf(Integer.class), any())).thenReturn(singletonList(new ReservationIdAndEventId("abcd", EVENT_ID)));
+        List<Event> events = trm.getNotifiableEventsStream(JobShard.ALL).collect(Collectors.toList());
         assertEquals(0, events.size());
         verify(notificationManager, never()).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
     }
@@ -552,9 +593,9 @@ public class TicketReservationManagerTest {
     @Test
     public void doNothingIfNoReservations() throws Exception {
         Date now = new Date();
-        when(ticketReservationRepository.findExpiredReservation(eq(now))).thenReturn(Collections.emptyList());
+        when(ticketReservationRepository.findExpiredReservation(eq(now), eq(0), eq(1))).thenReturn(Collections.emptyList());
         trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservation(eq(now));
+        verify(ticketReservationRepository).findExpiredReservation(eq(now), eq(0), eq(1));
         verifyNoMoreInteractions(ticketReservationRepository, specialPriceRepository, ticketRepository, waitingQueueManager);
     }
 
@@ -562,9 +603,25 @@ public class TicketReservationManagerTest {
     public void cancelExpiredReservations() throws Exception {
         Date now = new Date();
         List<String> reservationIds = singletonList("reservation-id");
-        when(ticketReservationRepository.findExpiredReservation(eq(now))).thenReturn(reservationIds);
+        when(ticketReservationRepository.findExpiredReservation(eq(now), eq(0), eq(1))).thenReturn(reservationIds);
         trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservation(eq(now));
+        verify(ticketReservationRepository).findExpiredReservation(eq(now), eq(0), eq(1));
+        verify(specialPriceRepository).updateStatusForReservation(eq(reservationIds), eq(SpecialPrice.Status.FREE.toString()));
+        verify(ticketRepository).resetCategoryIdForUnboundedCategories(eq(reservationIds));
+        verify(ticketRepository).freeFromReservation(eq(reservationIds));
+        verify(ticketReservationRepository).remove(eq(reservationIds));
+        verify(waitingQueueManager).cleanExpiredReservations(eq(reservationIds));
+        verifyNoMoreInteractions(ticketReservationRepository, specialPriceRepository, ticketRepository);
+    }
+
+    @Test
+    public void cancelOnlyClaimedReservations() throws Exception {
+        Date now = new Date();
+        List<String> candidates = asList("reservation-id", "already-released");
+        List<String> reservationIds = singletonList("reservation-id");
+        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(candidates), eq(now))).thenReturn(reservationIds);
+        assertEquals(reservationIds, trm.cleanupExpiredReservations(candidates, now));
+        verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(candidates), eq(now));
         verify(specialPriceRepository).updateStatusForReservation(eq(reservationIds), eq(SpecialPrice.Status.FREE.toString()));
         verify(ticketRepository).resetCategoryIdForUnboundedCategories(eq(reservationIds));
         verify(ticketRepository).freeFromReservation(eq(reservationIds));
@@ -585,6 +642,20 @@ public class TicketReservationManagerTest {
         verify(ticketRepository).countFreeTicketsForUnbounded(eq(EVENT_ID));
     }
 
+    @Test
+    public void countAvailableTicketsForAllCategories() throws Exception {
+        TicketCategory unbounded = mock(TicketCategory.class);
+        when(unbounded.getId()).thenReturn(TICKET_CATEGORY_ID + 1);
+        when(unbounded.isBounded()).thenReturn(false);
+        when(ticketCategory.isBounded()).thenReturn(true);
+        when(ticketRepository.countFreeTicketsByCategory(eq(EVENT_ID))).thenReturn(asList(new FreeTicketsCount(TICKET_CATEGORY_ID, 3), new FreeTicketsCount(null, 7)));
+        Map<Integer, Integer> result = trm.countAvailableTickets(event, asList(ticketCategory, unbounded));
+        assertEquals(Integer.valueOf(3), result.get(TICKET_CATEGORY_ID));
+        assertEquals(Integer.valueOf(7), result.get(TICKET_CATEGORY_ID + 1));
+        verify(ticketRepository).countFreeTicketsByCategory(eq(EVENT_ID));
+        verify(ticketRepository, never()).countFreeTickets(anyInt(), anyInt());
+    }
+
     private void initReleaseTicket() {
         when(ticket.getId()).thenReturn(TICKET_ID);
         when(ticketCategoryDescriptionRepository.findByTicketCategoryIdAndLocale(anyInt(), anyString())).thenReturn(Optional.of("desc"));
@@ -707,11 +778,31 @@ public class TicketReservationManagerTest {
         verify(ticketReservationRepository).lockReservationForUpdate(eq(RESERVATION_ID));
         verify(paymentManager).processStripePayment(eq(RESERVATION_ID), eq(GATEWAY_TOKEN), anyInt(), eq(event), anyString(), any(CustomerName.class), anyString());
         verify(ticketReservationRepository).updateTicketStatus(eq(RESERVATION_ID), eq(TicketReservationStatus.PENDING.toString()));
-        verify(configurationManager).hasAllConfigurationsForInvoice(eq(event));
+        verify(configurationManager, never()).hasAllConfigurationsForInvoice(eq(event));
+        verify(invoiceSequencesRepository, never()).nextSequenceFor(anyInt());
         verify(ticketReservationRepository).updateBillingData(any(), anyString(), anyString(), anyBoolean(), anyString());
         verifyNoMoreInteractions(ticketReservationRepository, paymentManager, ticketRepository, specialPriceRepository, waitingQueueManager, configurationManager);
     }
 
+    @Test
+    public void assignInvoiceNumberAfterPayment() throws Exception {
+        initConfirmReservation();
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), eq(TicketReservationStatus.COMPLETE.toString()), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), any(), eq(PaymentProxy.STRIPE.toString()))).thenReturn(1);
+        when(ticketRepository.updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.ACQUIRED.toString()))).thenReturn(1);
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), eq(IN_PAYMENT.toString()), anyString(), anyString(), anyString(), anyString(),anyString(), anyString(), isNull(ZonedDateTime.class), eq(PaymentProxy.STRIPE.toString()))).thenReturn(1);
+        when(paymentManager.processStripePayment(eq(RESERVATION_ID), eq(GATEWAY_TOKEN), anyInt(), eq(event), anyString(), any(CustomerName.class),  anyString())).thenReturn(PaymentResult.successful(TRANSACTION_ID));
+        when(configurationManager.hasAllConfigurationsForInvoice(eq(event))).thenReturn(true);
+        when(configurationManager.getStringConfigValue(any(), eq("%d"))).thenReturn("INV-%d");
+        when(invoiceSequencesRepository.nextSequenceFor(eq(ORGANIZATION_ID))).thenReturn(42);
+        PaymentResult result = trm.confirm(GATEWAY_TOKEN, null, event, RESERVATION_ID, "", new CustomerName("Full Name", null, null, event), Locale.ENGLISH, "", new TotalPrice(100, 0, 0, 0), Optional.empty(), Optional.of(PaymentProxy.STRIPE), true, null, null, null);
+        assertTrue(result.isSuccessful());
+        //the invoice sequence must not be locked while the payment provider is processing the payment
+        InOrder inOrder = inOrder(paymentManager, invoiceSequencesRepository, ticketReservationRepository);
+        inOrder.verify(paymentManager).processStripePayment(eq(RESERVATION_ID), eq(GATEWAY_TOKEN), anyInt(), eq(event), anyString(), any(CustomerName.class), anyString());
+        inOrder.verify(invoiceSequencesRepository).nextSequenceFor(eq(ORGANIZATION_ID));
+        inOrder.verify(ticketReservationRepository).setInvoiceNumber(eq(RESERVATION_ID), eq("INV-42"));
+    }
+
     @Test
     public void handleOnSitePaymentMethod() throws Exception {
         initConfirmReservation();
@@ -749,6 +840,67 @@ public class TicketReservationManagerTest {
         verifyNoMoreInteractions(ticketReservationRepository, paymentManager, ticketRepository, specialPriceRepository, waitingQueueManager, configurationManager);
     }
 
+    @Test
+    public void gatewayIsCalledWithoutOpenTransactions() throws Exception {
+        initConfirmReservation();
+        AtomicInteger openTransactions = new AtomicInteger();
+        AtomicInteger openTransactionsDuringPayment = new AtomicInteger(-1);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            openTransactions.incrementAndGet();
+            return null;
+        });
+        doAnswer(invocation -> openTransactions.decrementAndGet()).when(transactionManager).commit(any());
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), eq(TicketReservationStatus.COMPLETE.toString()), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), any(), eq(PaymentProxy.STRIPE.toString()))).thenReturn(1);
+        when(ticketRepository.updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.ACQUIRED.toString()))).thenReturn(1);
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), eq(IN_PAYMENT.toString()), anyString(), anyString(), anyString(), anyString(),anyString(), anyString(), isNull(ZonedDateTime.class), eq(PaymentProxy.STRIPE.toString()))).thenReturn(1);
+        //fake gateway with latency
+        when(paymentManager.processStripePayment(eq(RESERVATION_ID), eq(GATEWAY_TOKEN), anyInt(), eq(event), anyString(), any(CustomerName.class),  anyString())).thenAnswer(invocation -> {
+            openTransactionsDuringPayment.set(openTransactions.get());
+            Thread.sleep(50);
+            return PaymentResult.successful(TRANSACTION_ID);
+        });
+        PaymentResult result = trm.confirm(GATEWAY_TOKEN, null, event, RESERVATION_ID, "", new CustomerName("Full Name", null, null, event), Locale.ENGLISH, "", new TotalPrice(100, 0, 0, 0), Optional.empty(), Optional.of(PaymentProxy.STRIPE), true, null, null, null);
+        assertTrue(result.isSuccessful());
+        assertEquals(0, openTransactionsDuringPayment.get());
+        assertEquals(0, openTransactions.get());
+        verify(transactionManager, times(2)).commit(any());
+        verify(ticketReservationRepository).updateTicketReservation(eq(RESERVATION_ID), eq(TicketReservationStatus.COMPLETE.toString()), anyString(), anyString(),anyString(), anyString(), anyString(), anyString(), any(), eq(PaymentProxy.STRIPE.toString()));
+    }
+
+    @Test
+    public void recoverPaidReservationLeftInPayment() throws Exception {
+        initConfirmReservation();
+        when(ticketReservationRepository.findStuckReservations(any(Date.class), anyInt(), anyInt())).thenReturn(singletonList(RESERVATION_ID));
+        when(transactionRepository.loadOptionalByReservationId(eq(RESERVATION_ID))).thenReturn(Optional.of(mock(Transaction.class)));
+        when(ticketReservation.getStatus()).thenReturn(IN_PAYMENT);
+        when(ticketReservation.getPaymentMethod()).thenReturn(PaymentProxy.STRIPE);
+        when(ticketReservation.getUserLanguage()).thenReturn("en");
+        when(ticketReservation.getFullName()).thenReturn("Full Name");
+        when(ticketReservation.getEmail()).thenReturn("email@example.com");
+        when(ticketReservation.getBillingAddress()).thenReturn("billing address");
+        when(ticketRepository.updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.ACQUIRED.toString()))).thenReturn(1);
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), eq(TicketReservationStatus.COMPLETE.toString()), anyString(), anyString(), any(), any(), anyString(), anyString(), any(), eq(PaymentProxy.STRIPE.toString()))).thenReturn(1);
+
+        trm.markExpiredInPaymentReservationAsStuck(new Date());
+
+        verify(ticketReservationRepository).lockReservationForUpdate(eq(RESERVATION_ID));
+        verify(ticketRepository).updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.ACQUIRED.toString()));
+        verify(ticketReservationRepository).updateTicketReservation(eq(RESERVATION_ID), eq(TicketReservationStatus.COMPLETE.toString()), anyString(), anyString(), any(), any(), anyString(), anyString(), any(), eq(PaymentProxy.STRIPE.toString()));
+        verify(ticketReservationRepository, never()).updateTicketStatus(eq(RESERVATION_ID), eq(TicketReservationStatus.STUCK.name()));
+    }
+
+    @Test
+    public void markAsStuckIfNotPaid() throws Exception {
+        when(ticketReservationRepository.findStuckReservations(any(Date.class), anyInt(), anyInt())).thenReturn(singletonList(RESERVATION_ID));
+        when(transactionRepository.loadOptionalByReservationId(eq(RESERVATION_ID))).thenReturn(Optional.empty());
+        when(ticketRepository.findFirstTicketInReservation(eq(RESERVATION_ID))).thenReturn(Optional.empty());
+
+        trm.markExpiredInPaymentReservationAsStuck(new Date());
+
+        verify(ticketReservationRepository).updateTicketStatus(eq(RESERVATION_ID), eq(TicketReservationStatus.STUCK.name()));
+        verify(ticketRepository, never()).updateTicketsStatusWithReservationId(anyString(), anyString());
+    }
+
     @Test
     public void confirmOfflinePayments() throws Exception {
         initConfirmReservation();
@@ -803,7 +955,8 @@ public class TicketReservationManagerTest {
 
     //sendReminderForOptionalInfo
     private void initReminder() {
-        when(ticketFieldRepository.countAdditionalFieldsForEvent(EVENT_ID)).thenReturn(1);
+        when(ticketFieldRepository.findEventsWithAdditionalFields(eq(singletonList(EVENT_ID)))).thenReturn(singletonList(EVENT_ID));
+        when(ticket.getEventId()).thenReturn(EVENT_ID);
     }
 
 
@@ -818,15 +971,16 @@ public class TicketReservationManagerTest {
         when(ticket.getTicketsReservationId()).thenReturn(RESERVATION_ID);
         int ticketId = 2;
         when(ticket.getId()).thenReturn(ticketId);
-        when(ticketRepository.findAllAssignedButNotYetNotified(EVENT_ID)).thenReturn(singletonList(ticket));
+        when(ticketRepository.findAllAssignedButNotYetNotified(eq(singletonList(EVENT_ID)))).thenReturn(singletonList(ticket));
         when(ticketReservationRepository.findReservationById(eq(RESERVATION_ID))).thenReturn(ticketReservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList(RESERVATION_ID)))).thenReturn(singletonList(ticketReservation));
 
         when(eventRepository.findByReservationId(RESERVATION_ID)).thenReturn(event);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
         when(event.getBegin()).thenReturn(ZonedDateTime.now().plusDays(1));
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.findAllReservationsConfirmedButNotAssigned(anyInt())).thenReturn(singletonList(RESERVATION_ID));
-        when(ticketRepository.flagTicketAsReminderSent(ticketId)).thenReturn(1);
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.findReservationsWaitingForAssignmentReminder(anyListOf(Integer.class), any())).thenReturn(singletonList(new ReservationIdAndEventId(RESERVATION_ID, EVENT_ID)));
+        when(ticketRepository.flagTicketsAsReminderSent(eq(singletonList(ticketId)))).thenReturn(1);
         when(ticketRepository.findByUUID(anyString())).thenReturn(ticket);
         trm.sendReminderForOptionalData();
         verify(notificationManager, times(1)).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
@@ -844,14 +998,15 @@ public class TicketReservationManagerTest {
         when(ticket.getTicketsReservationId()).thenReturn(RESERVATION_ID);
         int ticketId = 2;
         when(ticket.getId()).thenReturn(ticketId);
-        when(ticketRepository.findAllAssignedButNotYetNotified(EVENT_ID)).thenReturn(singletonList(ticket));
+        when(ticketRepository.findAllAssignedButNotYetNotified(eq(singletonList(EVENT_ID)))).thenReturn(singletonList(ticket));
         when(ticketReservationRepository.findReservationById(eq(RESERVATION_ID))).thenReturn(ticketReservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList(RESERVATION_ID)))).thenReturn(singletonList(ticketReservation));
 
         when(eventRepository.findByReservationId(RESERVATION_ID)).thenReturn(event);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
         when(event.getBegin()).thenReturn(ZonedDateTime.now().plusDays(1));
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.flagTicketAsReminderSent(ticketId)).thenReturn(1);
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.flagTicketsAsReminderSent(eq(singletonList(ticketId)))).thenReturn(1);
         trm.sendReminderForOptionalData();
         verify(notificationManager, never()).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
     }
@@ -868,14 +1023,15 @@ public class TicketReservationManagerTest {
         when(ticket.getTicketsReservationId()).thenReturn(RESERVATION_ID);
         int ticketId = 2;
         when(ticket.getId()).thenReturn(ticketId);
-        when(ticketRepository.findAllAssignedButNotYetNotified(EVENT_ID)).thenReturn(singletonList(ticket));
+        when(ticketRepository.findAllAssignedButNotYetNotified(eq(singletonList(EVENT_ID)))).thenReturn(singletonList(ticket));
         when(ticketReservationRepository.findReservationById(eq(RESERVATION_ID))).thenReturn(ticketReservation);
+        when(ticketReservationRepository.findReservationsByIds(eq(singletonList(RESERVATION_ID)))).thenReturn(singletonList(ticketReservation));
 
         when(eventRepository.findByReservationId(RESERVATION_ID)).thenReturn(event);
         when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
         when(event.getBegin()).thenReturn(ZonedDateTime.now().plusDays(1));
-        when(eventRepository.findAll()).thenReturn(singletonList(event));
-        when(ticketRepository.flagTicketAsReminderSent(ticketId)).thenReturn(0);
+        when(eventRepository.findAllNotYetStarted(any(), anyInt(), anyInt())).thenReturn(singletonList(event));
+        when(ticketRepository.flagTicketsAsReminderSent(eq(singletonList(ticketId)))).thenReturn(0);
         trm.sendReminderForOptionalData();
         verify(notificationManager, never()).sendSimpleEmail(eq(event), anyString(), anyString(), any(TextTemplateGenerator.class));
     }
@@ -17,6 +17,7 @@
 package alfio.manager;
 
 import alfio.manager.plugin.PluginManager;
+import alfio.manager.support.ReservationExpiryQueue;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.*;
 import alfio.repository.*;
@@ -28,6 +29,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.context.MessageSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
@@ -100,6 +102,14 @@ public class TicketReservationManagerUnitTest {
     private AdditionalServiceTextRepository additionalServiceTextRepository;
     @Mock
     private InvoiceSequencesRepository invoiceSequencesRepository;
+    @Mock
+    private InvoiceDocumentRepository invoiceDocumentRepository;
+    @Mock
+    private TicketFieldManager ticketFieldManager;
+    @Mock
+    private ReservationExpiryQueue reservationExpiryQueue;
+    @Mock
+    private NamedParameterJdbcTemplate jdbc;
 
     @Before
     public void setUp() {
@@ -124,7 +134,11 @@ public class TicketReservationManagerUnitTest {
             additionalServiceRepository,
             additionalServiceItemRepository,
             additionalServiceTextRepository,
-            invoiceSequencesRepository);
+            invoiceSequencesRepository,
+            invoiceDocumentRepository,
+            ticketFieldManager,
+            reservationExpiryQueue,
+            jdbc);
     }
 
     @Test
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.manager.support.JobShard;
 import alfio.manager.support.TextTemplateGenerator;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
@@ -57,13 +58,13 @@ public class WaitingQueueSubscriptionProcessorTest {{
         when(event.getId()).thenReturn(eventId);
         List<Event> activeEvents = Collections.singletonList(event);
         it.should("filter events whose 'waiting queue' flag is not active", expect -> {
-            when(eventManager.getActiveEvents()).thenReturn(activeEvents);
+            when(eventManager.getActiveEvents(any(JobShard.class))).thenReturn(activeEvents);
             when(configurationManager.getBooleanConfigValue(eq(Configuration.from(event.getOrganizationId(), event.getId(), ENABLE_WAITING_QUEUE)), eq(false))).thenReturn(false);
             processor.handleWaitingTickets();
             verify(waitingQueueManager, never()).distributeSeats(eq(event));
         });
         it.should("process pending tickets", expect -> {
-            when(eventManager.getActiveEvents()).thenReturn(activeEvents);
+            when(eventManager.getActiveEvents(any(JobShard.class))).thenReturn(activeEvents);
             when(configurationManager.getBooleanConfigValue(eq(Configuration.from(event.getOrganizationId(), event.getId(), ENABLE_WAITING_QUEUE)), eq(false))).thenReturn(true);
             when(messageSource.getMessage(anyString(), any(), eq(Locale.ENGLISH))).thenReturn("subject");
             WaitingQueueSubscription subscription = it.usesMock(WaitingQueueSubscription.class);
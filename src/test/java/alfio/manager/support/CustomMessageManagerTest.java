@@ -0,0 +1,164 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.manager.EventManager;
+import alfio.manager.NotificationManager;
+import alfio.manager.TicketReservationManager;
+import alfio.model.Event;
+import alfio.model.MessageCampaign;
+import alfio.model.Ticket;
+import alfio.model.TicketReservation;
+import alfio.model.modification.MessageModification;
+import alfio.model.user.Organization;
+import alfio.repository.MessageCampaignRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.util.TemplateManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CustomMessageManagerTest {
+
+    private static final int CAMPAIGN_ID = 1;
+    private static final int EVENT_ID = 2;
+    private static final String USERNAME = "username";
+
+    @Mock
+    private TemplateManager templateManager;
+    @Mock
+    private EventManager eventManager;
+    @Mock
+    private TicketRepository ticketRepository;
+    @Mock
+    private TicketReservationManager ticketReservationManager;
+    @Mock
+    private NotificationManager notificationManager;
+    @Mock
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Mock
+    private TicketReservationRepository ticketReservationRepository;
+    @Mock
+    private MessageCampaignRepository messageCampaignRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TransactionStatus transactionStatus;
+    @Mock
+    private MessageCampaign campaign;
+    @Mock
+    private Event event;
+    @Mock
+    private Organization organization;
+    @Mock
+    private TicketReservation reservation;
+
+    private CustomMessageManager customMessageManager;
+
+    @Before
+    public void setUp() {
+        when(messageCampaignRepository.acquireLease(eq(CAMPAIGN_ID), any(), any())).thenReturn(1);
+        when(messageCampaignRepository.findById(CAMPAIGN_ID)).thenReturn(campaign);
+        when(campaign.getEventId()).thenReturn(EVENT_ID);
+        when(campaign.getUsername()).thenReturn(USERNAME);
+        when(campaign.getLastTicketId()).thenReturn(-1);
+        when(campaign.getMessages()).thenReturn(Collections.singletonList(new MessageModification(Locale.ENGLISH, "subject", "text", null, null, false)));
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(event.getShortName()).thenReturn("event");
+        when(eventManager.getSingleEventById(EVENT_ID, USERNAME)).thenReturn(event);
+        when(eventManager.loadOrganizer(event, USERNAME)).thenReturn(organization);
+        Function<Map<String, Object>, String> template = model -> "rendered for " + model.get("fullName");
+        when(templateManager.compileString(anyString(), any(), any())).thenReturn(template);
+        when(ticketReservationManager.baseUrl(event)).thenReturn("http://localhost");
+        when(ticketReservationManager.getShortReservationID(event, "reservation")).thenReturn("RESERVAT");
+        when(reservation.getId()).thenReturn("reservation");
+        when(ticketReservationRepository.findReservationsByIds(anyListOf(String.class))).thenReturn(Collections.singletonList(reservation));
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        List<Ticket> firstPage = tickets(1, CustomMessageManager.PAGE_SIZE);
+        List<Ticket> secondPage = tickets(CustomMessageManager.PAGE_SIZE + 1, 1);
+        when(ticketRepository.findAssignedAfter(EVENT_ID, -1, CustomMessageManager.PAGE_SIZE)).thenReturn(firstPage);
+        when(ticketRepository.findAssignedAfter(EVENT_ID, CustomMessageManager.PAGE_SIZE, CustomMessageManager.PAGE_SIZE)).thenReturn(secondPage);
+        customMessageManager = new CustomMessageManager(templateManager, eventManager, ticketRepository, ticketReservationManager,
+            notificationManager, ticketCategoryRepository, ticketReservationRepository, messageCampaignRepository, transactionManager);
+    }
+
+    @Test
+    public void processAllPages() {
+        when(messageCampaignRepository.updateProgress(eq(CAMPAIGN_ID), anyInt(), anyInt(), anyInt(), any(), any())).thenReturn(1);
+        customMessageManager.processCampaign(CAMPAIGN_ID);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SimpleEmail>> messages = ArgumentCaptor.forClass((Class) List.class);
+        verify(notificationManager, times(2)).sendSimpleEmails(eq(event), messages.capture());
+        assertEquals(CustomMessageManager.PAGE_SIZE, messages.getAllValues().get(0).size());
+        assertEquals(1, messages.getAllValues().get(1).size());
+        SimpleEmail last = messages.getAllValues().get(1).get(0);
+        assertEquals("attendee501@example.com", last.getRecipient());
+        assertEquals("rendered for Attendee 501", last.getText());
+        verify(messageCampaignRepository).updateProgress(eq(CAMPAIGN_ID), eq(-1), eq(CustomMessageManager.PAGE_SIZE), eq(CustomMessageManager.PAGE_SIZE), any(), any());
+        verify(messageCampaignRepository).updateProgress(eq(CAMPAIGN_ID), eq(CustomMessageManager.PAGE_SIZE), eq(CustomMessageManager.PAGE_SIZE + 1), eq(1), any(), any());
+        verify(messageCampaignRepository).updateStatus(eq(CAMPAIGN_ID), eq(MessageCampaign.Status.COMPLETED.name()), any());
+        verify(templateManager, times(2)).compileString(anyString(), eq(Locale.ENGLISH), eq(TemplateManager.TemplateOutput.TEXT));
+        verify(ticketReservationManager, never()).reservationUrl(anyString(), any());
+    }
+
+    @Test
+    public void stopIfTheCampaignHasBeenTakenOver() {
+        when(messageCampaignRepository.updateProgress(eq(CAMPAIGN_ID), anyInt(), anyInt(), anyInt(), any(), any())).thenReturn(0);
+        customMessageManager.processCampaign(CAMPAIGN_ID);
+        verify(transactionStatus).setRollbackOnly();
+        verify(ticketRepository, never()).findAssignedAfter(EVENT_ID, CustomMessageManager.PAGE_SIZE, CustomMessageManager.PAGE_SIZE);
+        verify(messageCampaignRepository, never()).updateStatus(anyInt(), anyString(), any());
+    }
+
+    @Test
+    public void skipIfLeaseIsNotAvailable() {
+        when(messageCampaignRepository.acquireLease(eq(CAMPAIGN_ID), any(), any())).thenReturn(0);
+        customMessageManager.processCampaign(CAMPAIGN_ID);
+        verify(messageCampaignRepository, never()).findById(anyInt());
+        verifyZeroInteractions(notificationManager);
+    }
+
+    private List<Ticket> tickets(int firstId, int count) {
+        return IntStream.range(firstId, firstId + count).mapToObj(id -> {
+            Ticket ticket = mock(Ticket.class);
+            when(ticket.getId()).thenReturn(id);
+            when(ticket.getUuid()).thenReturn("uuid-" + id);
+            when(ticket.getFullName()).thenReturn("Attendee " + id);
+            when(ticket.getEmail()).thenReturn("attendee" + id + "@example.com");
+            when(ticket.getTicketsReservationId()).thenReturn("reservation");
+            when(ticket.getUserLanguage()).thenReturn("en");
+            return ticket;
+        }).collect(Collectors.toList());
+    }
+}
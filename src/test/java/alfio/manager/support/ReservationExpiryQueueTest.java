@@ -0,0 +1,42 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReservationExpiryQueueTest {
+
+    @Test
+    public void returnOnlyExpiredReservations() throws Exception {
+        ReservationExpiryQueue queue = new ReservationExpiryQueue();
+        Date expired = new Date(System.currentTimeMillis() - ReservationExpiryQueue.GRACE_PERIOD_MILLIS - 1000);
+        queue.schedule("expired", expired);
+        queue.schedule("expired", expired);
+        queue.schedule("pending", DateUtils.addMinutes(new Date(), 25));
+        queue.schedule("expired-but-in-grace-period", new Date());
+        List<String> result = queue.takeExpired();
+        assertEquals(1, result.size());
+        assertEquals("expired", result.get(0));
+        assertEquals(2, queue.size());
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.config.RepositoryConfiguration;
+import alfio.manager.EventManager;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketReservation;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepositoryConfiguration.class, DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS})
+@Transactional
+public class TicketReservationRepositoryTest {
+
+    private static final String FIRST = "abcdef12-0000-0000-0000-000000000001";
+    private static final String SECOND = "abcdef12-1111-0000-0000-000000000002";
+    private static final String THIRD = "12345678-0000-0000-0000-000000000003";
+
+    @BeforeClass
+    public static void initEnv() {
+        initSystemProperties();
+    }
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+
+    private Event event;
+
+    @Before
+    public void init() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false));
+        event = initEvent(categories, organizationRepository, userManager, eventManager).getKey();
+        Date validity = DateUtils.addDays(new Date(), 1);
+        asList(FIRST, SECOND, THIRD).forEach(id -> ticketReservationRepository.createNewReservation(id, validity, null, "en", event.getId()));
+    }
+
+    @Test
+    public void toShortId() {
+        assertEquals("abcdef12", TicketReservationRepository.toShortId("ABCDEF12-0000"));
+        assertEquals("abc", TicketReservationRepository.toShortId("ABC"));
+    }
+
+    @Test
+    public void findByShortIdsInEvent() {
+        List<TicketReservation> found = ticketReservationRepository.findByShortIdsInEvent(asList("abcdef12", "12345678", "ffffffff"), event.getId());
+        assertEquals(new HashSet<>(asList(FIRST, SECOND, THIRD)), ids(found));
+        assertTrue(ticketReservationRepository.findByShortIdsInEvent(Collections.singletonList("abcdef12"), event.getId() + 1).isEmpty());
+    }
+
+    @Test
+    public void findByPartialIDInEvent() {
+        //long prefixes are resolved using the short_id column, and the full prefix is still taken into account
+        assertEquals(Collections.singleton(SECOND), ids(ticketReservationRepository.findByPartialIDInEvent("abcdef12-1", event.getId())));
+        assertEquals(new HashSet<>(asList(FIRST, SECOND)), ids(ticketReservationRepository.findByPartialIDInEvent("abcdef12", event.getId())));
+        //short prefixes fall back to the prefix query
+        assertEquals(new HashSet<>(asList(FIRST, SECOND)), ids(ticketReservationRepository.findByPartialIDInEvent("abcd", event.getId())));
+        assertTrue(ticketReservationRepository.findByPartialIDInEvent("abcdef13", event.getId()).isEmpty());
+    }
+
+    private static Set<String> ids(List<TicketReservation> reservations) {
+        return reservations.stream().map(TicketReservation::getId).collect(Collectors.toSet());
+    }
+}
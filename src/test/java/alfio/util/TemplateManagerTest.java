@@ -81,4 +81,12 @@ public class TemplateManagerTest {
     public void simpleParams() {
         Assert.assertEquals("3-2-1", TemplateManager.translate("{{#i18n}}parameter [1] [2] [3]{{/i18n}}", Locale.ENGLISH, messageSource));
     }
+
+    @Test
+    public void parsedTemplatesAreReused() {
+        String template = "{{#i18n}}parameter [1] [2] [3]{{/i18n}} {{#i18n}}locale{{/i18n}}";
+        for(int i = 0; i < 3; i++) {
+            Assert.assertEquals("3-2-1 en", TemplateManager.translate(template, Locale.ENGLISH, messageSource));
+        }
+    }
 }
\ No newline at end of file